@@ -0,0 +1,168 @@
+package io.keen.client.android;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.keen.client.java.KeenConstants;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the streaming and tree-based modes of {@link AndroidJsonHandler}. These tests use the
+ * platform JSON classes, so they run on a device or emulator rather than as local unit tests.
+ */
+public class StreamingJsonHandlerTest {
+
+    private static final int NUM_EVENTS = 500;
+
+    private AndroidJsonHandler treeHandler;
+    private AndroidJsonHandler streamingHandler;
+
+    @Before
+    public void createJsonHandlers() {
+        treeHandler = new AndroidJsonHandler();
+        streamingHandler = new AndroidJsonHandler();
+        streamingHandler.setStreamingEnabled(true);
+    }
+
+    @Test
+    public void streamingOutputMatchesTreeOutput() throws Exception {
+        Map<String, Object> batch = buildBatch();
+
+        String treeJson = serialize(treeHandler, batch);
+        String streamingJson = serialize(streamingHandler, batch);
+
+        // Key order can differ, so compare the parsed results, parsing each with both handlers.
+        Map<String, Object> expected = treeHandler.readJson(new StringReader(treeJson));
+        assertEquals(expected, treeHandler.readJson(new StringReader(streamingJson)));
+        assertEquals(expected, streamingHandler.readJson(new StringReader(treeJson)));
+        assertEquals(expected, streamingHandler.readJson(new StringReader(streamingJson)));
+    }
+
+    @Test
+    public void streamingNeverBuffersTheWholeDocument() throws Exception {
+        Map<String, Object> batch = buildBatch();
+
+        ChunkTrackingWriter treeWriter = new ChunkTrackingWriter();
+        treeHandler.writeJson(treeWriter, batch);
+        ChunkTrackingWriter streamingWriter = new ChunkTrackingWriter();
+        streamingHandler.writeJson(streamingWriter, batch);
+
+        // The tree-based handler materializes the whole document as one string before writing it,
+        // on top of the JSONObject tree. The streaming handler only ever holds a single token.
+        assertEquals(treeWriter.totalChars, treeWriter.largestChunk);
+        assertTrue("largest streamed chunk was " + streamingWriter.largestChunk,
+                   streamingWriter.largestChunk < 256);
+        assertTrue(streamingWriter.totalChars > 100 * 1024);
+    }
+
+    @Test
+    public void rootArrayIsWrappedInFakeRoot() throws Exception {
+        Map<String, Object> map = streamingHandler.readJson(new StringReader("[{\"a\": 1}, 2]"));
+
+        assertEquals(1, map.size());
+        List<?> root = (List<?>) map.get(KeenConstants.KEEN_FAKE_JSON_ROOT);
+        assertEquals(2, root.size());
+        assertEquals(1, ((Map<?, ?>) root.get(0)).get("a"));
+        assertEquals(2, root.get(1));
+    }
+
+    @Test
+    public void numbersAreReadLikeTheTreeHandler() throws Exception {
+        String json = "{\"int\": 1, \"long\": 12345678901, \"double\": 1.5, \"null\": null}";
+
+        Map<String, Object> expected = treeHandler.readJson(new StringReader(json));
+        Map<String, Object> actual = streamingHandler.readJson(new StringReader(json));
+
+        assertEquals(expected, actual);
+        assertEquals(Integer.class, actual.get("int").getClass());
+        assertEquals(Long.class, actual.get("long").getClass());
+        assertEquals(Double.class, actual.get("double").getClass());
+        assertNull(actual.get("null"));
+    }
+
+    @Test
+    public void integralDoublesAreWrittenWithoutDecimalPoint() throws Exception {
+        Map<String, Object> map = new HashMap<String, Object>();
+        map.put("value", 10.0);
+
+        assertEquals(serialize(treeHandler, map), serialize(streamingHandler, map));
+    }
+
+    @Test(expected = IOException.class)
+    public void nonFiniteNumbersAreRejected() throws Exception {
+        Map<String, Object> map = new HashMap<String, Object>();
+        map.put("value", Double.NaN);
+
+        serialize(streamingHandler, map);
+    }
+
+    private static Map<String, Object> buildBatch() {
+        List<Object> events = new ArrayList<Object>();
+        for (int i = 0; i < NUM_EVENTS; i++) {
+            Map<String, Object> item = new HashMap<String, Object>();
+            item.put("name", "item " + i);
+            item.put("price", i * 1.25);
+            item.put("tags", Arrays.asList("a", "b", "c"));
+
+            Map<String, Object> event = new HashMap<String, Object>();
+            event.put("user_id", "user-" + (i % 17));
+            event.put("count", i);
+            event.put("valid", i % 2 == 0);
+            event.put("item", item);
+            event.put("ids", new String[] { "x" + i, "y" + i });
+            events.add(event);
+        }
+
+        Map<String, Object> batch = new HashMap<String, Object>();
+        batch.put("purchases", events);
+        return batch;
+    }
+
+    private static String serialize(AndroidJsonHandler handler, Map<String, Object> map)
+            throws IOException {
+        StringWriter writer = new StringWriter();
+        handler.writeJson(writer, map);
+        return writer.toString();
+    }
+
+    /**
+     * Writer which discards its output, recording only its total length and the largest single
+     * write.
+     */
+    private static class ChunkTrackingWriter extends Writer {
+        int totalChars = 0;
+        int largestChunk = 0;
+
+        @Override
+        public void write(char[] buffer, int offset, int count) {
+            totalChars += count;
+            largestChunk = Math.max(largestChunk, count);
+        }
+
+        @Override
+        public void write(String string, int offset, int count) {
+            write(null, offset, count);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
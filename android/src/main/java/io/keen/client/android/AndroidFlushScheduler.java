@@ -0,0 +1,173 @@
+package io.keen.client.android;
+
+import android.annotation.TargetApi;
+import android.app.job.JobInfo;
+import android.app.job.JobScheduler;
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.Build;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import io.keen.client.java.FlushJob;
+import io.keen.client.java.FlushScheduler;
+
+/**
+ * Implementation of the {@link io.keen.client.java.FlushScheduler} interface using the Android
+ * {@link android.app.job.JobScheduler}.
+ * <p>
+ * Each {@link FlushJob} becomes a single job, run by {@link KeenFlushJobService}, which requires
+ * a network connection (unmetered if the policy asks for it) and optionally charging. The job's
+ * maximum latency is used as its override deadline. Because the system batches jobs from all
+ * applications, flushes tend to share radio wakeups with other work. The job is persisted across
+ * reboots, which is why the library's manifest requests the
+ * {@code RECEIVE_BOOT_COMPLETED} permission.
+ * </p>
+ * <p>
+ * JobScheduler requires API level 21. On older versions flushes are run in-process after each
+ * job's delay, without the network or charging constraints.
+ * </p>
+ * <p>
+ * Only one client per application should use this scheduler.
+ * </p>
+ */
+public class AndroidFlushScheduler implements FlushScheduler {
+
+    /**
+     * The default ID of the scheduled job. Override it with
+     * {@link #AndroidFlushScheduler(Context, int)} if it collides with one of the application's
+     * own jobs.
+     */
+    public static final int DEFAULT_JOB_ID = 0x4b45454e;
+
+    /**
+     * The flush task of the client using this scheduler. It's static so that
+     * {@link KeenFlushJobService}, which is instantiated by the system, can find it.
+     */
+    private static volatile Runnable flushTask;
+
+    private final Context context;
+    private final int jobId;
+
+    /**
+     * Executor and pending flush used below API level 21.
+     */
+    private ScheduledExecutorService fallbackExecutor;
+    private ScheduledFuture<?> fallbackFlush;
+
+    public AndroidFlushScheduler(Context context) {
+        this(context, DEFAULT_JOB_ID);
+    }
+
+    public AndroidFlushScheduler(Context context, int jobId) {
+        this.context = context.getApplicationContext();
+        this.jobId = jobId;
+    }
+
+    ///// FlushScheduler METHODS /////
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setFlushTask(Runnable flushTask) {
+        AndroidFlushScheduler.flushTask = flushTask;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void schedule(FlushJob job) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            scheduleJob(job);
+        } else {
+            scheduleFallback(job);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void cancel() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            getJobScheduler().cancel(jobId);
+        } else {
+            synchronized (this) {
+                if (fallbackFlush != null) {
+                    fallbackFlush.cancel(false);
+                    fallbackFlush = null;
+                }
+            }
+        }
+    }
+
+    ///// PACKAGE METHODS /////
+
+    /**
+     * Gets the flush task of the client using this scheduler.
+     *
+     * @return The flush task, or null if no client has been built in this process yet.
+     */
+    static Runnable getFlushTask() {
+        return flushTask;
+    }
+
+    ///// PRIVATE METHODS /////
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private JobScheduler getJobScheduler() {
+        return (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private void scheduleJob(FlushJob job) {
+        JobInfo jobInfo = new JobInfo.Builder(jobId, new ComponentName(context, KeenFlushJobService.class))
+                .setMinimumLatency(job.getDelayMillis())
+                .setOverrideDeadline(job.getMaxLatencyMillis())
+                .setRequiredNetworkType(job.isUnmeteredNetworkRequired()
+                        ? JobInfo.NETWORK_TYPE_UNMETERED
+                        : JobInfo.NETWORK_TYPE_ANY)
+                .setRequiresCharging(job.isChargingRequired())
+                // Keep the job across reboots, so queued events don't wait for the next one.
+                .setPersisted(true)
+                .build();
+
+        // Scheduling a job with the same ID replaces the pending one.
+        if (getJobScheduler().schedule(jobInfo) != JobScheduler.RESULT_SUCCESS) {
+            throw new IllegalStateException("Failed to schedule flush job " + job);
+        }
+    }
+
+    private synchronized void scheduleFallback(FlushJob job) {
+        if (fallbackExecutor == null) {
+            fallbackExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "keen-flush");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        if (fallbackFlush != null) {
+            fallbackFlush.cancel(false);
+        }
+        fallbackFlush = fallbackExecutor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                Runnable task = flushTask;
+                if (task != null) {
+                    task.run();
+                }
+            }
+        }, job.getDelayMillis(), TimeUnit.MILLISECONDS);
+    }
+
+}
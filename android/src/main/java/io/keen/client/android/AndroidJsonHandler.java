@@ -42,6 +42,10 @@ public class AndroidJsonHandler implements KeenJsonHandler {
             throw new IllegalArgumentException("Reader must not be null");
         }
 
+        if (isStreamingUsed()) {
+            return StreamingJsonCodec.readJson(reader);
+        }
+
         String json = readerToString(reader);
         try {
             Object jsonObjOrArray = getJsonObjectManager().newTokener(json).nextValue();
@@ -77,6 +81,11 @@ public class AndroidJsonHandler implements KeenJsonHandler {
             throw new IllegalArgumentException("Writer must not be null");
         }
 
+        if (isStreamingUsed()) {
+            StreamingJsonCodec.writeJson(writer, value);
+            return;
+        }
+
         JSONObject jsonObject = convertMapToJSONObject(value);
         writer.write(getJsonObjectManager().stringify(jsonObject));
         writer.close();
@@ -100,6 +109,30 @@ public class AndroidJsonHandler implements KeenJsonHandler {
         this.isWrapNestedMapsAndCollections = value;
     }
 
+    /**
+     * Sets whether or not this handler should stream JSON with {@link android.util.JsonReader} and
+     * {@link android.util.JsonWriter} instead of building {@link JSONObject} trees.
+     *
+     * Streaming avoids holding both the object tree and the complete JSON string in memory, which
+     * roughly halves the peak memory used to serialize a large batch of events. The output is
+     * equivalent, but the exact formatting (such as key order) may differ. Streaming requires API
+     * level 11; on older versions this setting is ignored. It is disabled by default.
+     *
+     * @param value {@code true} to enable streaming, {@code false} to disable it.
+     */
+    public void setStreamingEnabled(boolean value) {
+        this.isStreamingEnabled = value;
+    }
+
+    /**
+     * Gets whether or not streaming has been enabled via {@link #setStreamingEnabled(boolean)}.
+     *
+     * @return {@code true} if streaming is enabled, otherwise {@code false}.
+     */
+    public boolean isStreamingEnabled() {
+        return isStreamingEnabled;
+    }
+
     ///// PROTECTED METHODS /////
 
     /**
@@ -164,6 +197,11 @@ public class AndroidJsonHandler implements KeenJsonHandler {
      */
     private boolean isWrapNestedMapsAndCollections = (Build.VERSION.SDK_INT < 19);
 
+    /**
+     * Boolean indicating whether or not to stream JSON instead of building JSONObject trees.
+     */
+    private boolean isStreamingEnabled = false;
+
     /**
      * Manager for creating JSONObjects and converting them to Strings; used for unit tests.
      */
@@ -171,6 +209,15 @@ public class AndroidJsonHandler implements KeenJsonHandler {
 
     ///// PRIVATE METHODS /////
 
+    /**
+     * Checks whether streaming is both enabled and supported by the current platform.
+     *
+     * @return {@code true} if the streaming implementation should be used.
+     */
+    private boolean isStreamingUsed() {
+        return isStreamingEnabled && Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB;
+    }
+
     /**
      * Get the default jsonObjectManager, or use one that was explicitly specified.
      *
@@ -3,6 +3,7 @@ package io.keen.client.android;
 import android.content.Context;
 
 import io.keen.client.java.FileEventStore;
+import io.keen.client.java.FlushScheduler;
 import io.keen.client.java.KeenClient;
 import io.keen.client.java.KeenEventStore;
 import io.keen.client.java.KeenJsonHandler;
@@ -18,12 +19,23 @@ import io.keen.client.java.KeenNetworkStatusHandler;
  * the {@link #withJsonHandler(KeenJsonHandler)} method.
  * </p>
  * <p>
+ * To reduce memory use when serializing large batches on low-end devices, the default JSON
+ * handler can stream JSON instead of building intermediate object trees; enable this with
+ * {@link #withStreamingJson(boolean)}.
+ * </p>
+ * <p>
  * To cache events in between batch uploads, this client uses a file-based event store with its
  * root in the application's cache directory. It is important to use a file-based (or
  * otherwise persistent, i.e. non-RAM) event store because the application process could be
  * destroyed without notice.
  * </p>
  * <p>
+ * To flush queued events automatically without waking the radio for every batch, enable
+ * scheduled flushing with {@link #withScheduledFlush(boolean)}. Flushes are then run by the
+ * platform job scheduler, by default on an unmetered network while the device is charging, as
+ * decided by the builder's {@link io.keen.client.java.FlushPolicy}.
+ * </p>
+ * <p>
  * Other defaults are those provided by the parent {@link io.keen.client.java.KeenClient.Builder}
  * implementation.
  * </p>
@@ -34,14 +46,82 @@ import io.keen.client.java.KeenNetworkStatusHandler;
 public class AndroidKeenClientBuilder extends KeenClient.Builder {
 
     private final Context context;
+    private boolean streamingJson = false;
+    private boolean scheduledFlush = false;
 
     public AndroidKeenClientBuilder(Context context) {
         this.context = context;
     }
 
+    /**
+     * Gets whether the default JSON handler will stream JSON.
+     *
+     * @return Whether the default JSON handler will stream JSON.
+     */
+    public boolean isStreamingJson() {
+        return streamingJson;
+    }
+
+    /**
+     * Sets whether the default JSON handler should stream JSON. This has no effect if a JSON
+     * handler is set explicitly.
+     *
+     * @param streamingJson Whether the default JSON handler should stream JSON.
+     * @see AndroidJsonHandler#setStreamingEnabled(boolean)
+     */
+    public void setStreamingJson(boolean streamingJson) {
+        this.streamingJson = streamingJson;
+    }
+
+    /**
+     * Sets whether the default JSON handler should stream JSON. This has no effect if a JSON
+     * handler is set explicitly.
+     *
+     * @param streamingJson Whether the default JSON handler should stream JSON.
+     * @return This instance (for method chaining).
+     * @see AndroidJsonHandler#setStreamingEnabled(boolean)
+     */
+    public AndroidKeenClientBuilder withStreamingJson(boolean streamingJson) {
+        setStreamingJson(streamingJson);
+        return this;
+    }
+
+    /**
+     * Gets whether queued events will be flushed by an {@link AndroidFlushScheduler}.
+     *
+     * @return Whether scheduled flushing is enabled.
+     */
+    public boolean isScheduledFlush() {
+        return scheduledFlush;
+    }
+
+    /**
+     * Sets whether queued events should be flushed by an {@link AndroidFlushScheduler}. This has
+     * no effect if a flush scheduler is set explicitly.
+     *
+     * @param scheduledFlush Whether to enable scheduled flushing.
+     */
+    public void setScheduledFlush(boolean scheduledFlush) {
+        this.scheduledFlush = scheduledFlush;
+    }
+
+    /**
+     * Sets whether queued events should be flushed by an {@link AndroidFlushScheduler}. This has
+     * no effect if a flush scheduler is set explicitly.
+     *
+     * @param scheduledFlush Whether to enable scheduled flushing.
+     * @return This instance (for method chaining).
+     */
+    public AndroidKeenClientBuilder withScheduledFlush(boolean scheduledFlush) {
+        setScheduledFlush(scheduledFlush);
+        return this;
+    }
+
     @Override
     protected KeenJsonHandler getDefaultJsonHandler() {
-        return new AndroidJsonHandler();
+        AndroidJsonHandler jsonHandler = new AndroidJsonHandler();
+        jsonHandler.setStreamingEnabled(streamingJson);
+        return jsonHandler;
     }
 
     @Override
@@ -54,4 +134,9 @@ public class AndroidKeenClientBuilder extends KeenClient.Builder {
         return new AndroidNetworkStatusHandler(context);
     }
 
+    @Override
+    protected FlushScheduler getDefaultFlushScheduler() {
+        return scheduledFlush ? new AndroidFlushScheduler(context) : null;
+    }
+
 }
@@ -0,0 +1,59 @@
+package io.keen.client.android;
+
+import android.annotation.TargetApi;
+import android.app.job.JobParameters;
+import android.app.job.JobService;
+import android.os.Build;
+
+/**
+ * {@link android.app.job.JobService} which runs flushes scheduled by
+ * {@link AndroidFlushScheduler}. It is declared in the library's manifest, so applications don't
+ * need to declare it themselves.
+ * <p>
+ * If the application process was restarted to run the job, the flush only runs if the client
+ * has been built again by then, so build it in {@code Application.onCreate()}. The flush then
+ * sends the events stored for the client's default project, even though none were queued in the
+ * new process, and schedules a retry for any it couldn't send. Events stored for other projects
+ * wait until an event is queued for them again in the new process.
+ * </p>
+ * <p>
+ * If no client has been built when the job runs, the job is dropped. The stored events stay in
+ * the event store until the next scheduled flush or a manual
+ * {@link io.keen.client.java.KeenClient#sendQueuedEvents()}.
+ * </p>
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public class KeenFlushJobService extends JobService {
+
+    @Override
+    public boolean onStartJob(final JobParameters params) {
+        final Runnable flushTask = AndroidFlushScheduler.getFlushTask();
+        if (flushTask == null) {
+            // No client has been built in this process.
+            return false;
+        }
+
+        // Job callbacks run on the main thread, so flush on a background thread.
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    // Failures are handled and logged by the client.
+                    flushTask.run();
+                } finally {
+                    // The flush policy schedules any retry itself.
+                    jobFinished(params, false);
+                }
+            }
+        }, "keen-flush").start();
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        // The flush can't be interrupted safely; let it finish, and rely on the flush policy to
+        // reschedule whatever it leaves behind.
+        return false;
+    }
+
+}
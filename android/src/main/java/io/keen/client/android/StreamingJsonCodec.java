@@ -0,0 +1,236 @@
+package io.keen.client.android;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.JsonWriter;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.keen.client.java.KeenConstants;
+
+/**
+ * Reads and writes JSON with {@link android.util.JsonReader} and {@link android.util.JsonWriter},
+ * without building an intermediate {@link org.json.JSONObject} tree or copying the whole document
+ * into a String.
+ * <p>
+ * The results match those of the tree-based implementation in {@link AndroidJsonHandler}: objects
+ * are read into maps and arrays into lists, a root array is wrapped in a map under
+ * {@link KeenConstants#KEEN_FAKE_JSON_ROOT}, integral numbers are read as Integer or Long, and
+ * doubles with no fractional part are written without a decimal point.
+ * </p>
+ */
+@TargetApi(Build.VERSION_CODES.HONEYCOMB)
+final class StreamingJsonCodec {
+
+    private StreamingJsonCodec() {}
+
+    /**
+     * Reads a JSON object or array from the given reader, then closes it.
+     *
+     * @param reader The reader to read from.
+     * @return The root object as a map, or a map containing the root array under
+     * {@link KeenConstants#KEEN_FAKE_JSON_ROOT}.
+     * @throws IOException If the JSON is malformed or can't be read.
+     */
+    static Map<String, Object> readJson(Reader reader) throws IOException {
+        JsonReader in = new JsonReader(reader);
+        // org.json's tokener accepts the same relaxed syntax.
+        in.setLenient(true);
+        try {
+            JsonToken token = in.peek();
+            if (token == JsonToken.BEGIN_OBJECT) {
+                return readObject(in);
+            } else if (token == JsonToken.BEGIN_ARRAY) {
+                Map<String, Object> rootMap = new LinkedHashMap<String, Object>();
+                rootMap.put(KeenConstants.KEEN_FAKE_JSON_ROOT, readArray(in));
+                return rootMap;
+            } else if (token == JsonToken.NULL) {
+                throw new IllegalArgumentException("Empty reader or ill-formatted JSON " +
+                                                   "encountered.");
+            } else {
+                // A bare value at the root isn't a map.
+                in.skipValue();
+                return null;
+            }
+        } catch (IllegalStateException e) {
+            throw new IOException(e);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Writes the given map as a JSON object to the given writer, then closes it.
+     *
+     * @param writer The writer to write to.
+     * @param value  The map to write.
+     * @throws IOException If the map contains a value which can't be written as JSON, or there is
+     *                     an error writing.
+     */
+    static void writeJson(Writer writer, Map<String, ?> value) throws IOException {
+        JsonWriter out = new JsonWriter(writer);
+        try {
+            writeValue(out, value);
+            out.flush();
+        } catch (JSONException e) {
+            throw new IOException(e);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e);
+        } finally {
+            // Close the underlying writer directly; JsonWriter.close() throws if the document is
+            // incomplete, which would hide the original exception.
+            writer.close();
+        }
+    }
+
+    ///// PRIVATE METHODS /////
+
+    private static Map<String, Object> readObject(JsonReader in) throws IOException {
+        Map<String, Object> map = new HashMap<String, Object>();
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            map.put(name, readValue(in));
+        }
+        in.endObject();
+        return map;
+    }
+
+    private static List<Object> readArray(JsonReader in) throws IOException {
+        List<Object> list = new ArrayList<Object>();
+        in.beginArray();
+        while (in.hasNext()) {
+            list.add(readValue(in));
+        }
+        in.endArray();
+        return list;
+    }
+
+    private static Object readValue(JsonReader in) throws IOException {
+        switch (in.peek()) {
+            case BEGIN_OBJECT:
+                return readObject(in);
+            case BEGIN_ARRAY:
+                return readArray(in);
+            case NUMBER:
+                return parseNumber(in.nextString());
+            case BOOLEAN:
+                return in.nextBoolean();
+            case NULL:
+                in.nextNull();
+                return null;
+            default:
+                return in.nextString();
+        }
+    }
+
+    /**
+     * Parses a number literal the way org.json's tokener does: as an Integer if it fits, then a
+     * Long, then a Double, and failing all of those as the literal string.
+     */
+    private static Object parseNumber(String literal) {
+        if (literal.indexOf('.') == -1 && literal.indexOf('e') == -1 && literal.indexOf('E') == -1) {
+            try {
+                long longValue = Long.parseLong(literal);
+                if (longValue <= Integer.MAX_VALUE && longValue >= Integer.MIN_VALUE) {
+                    return (int) longValue;
+                }
+                return longValue;
+            } catch (NumberFormatException e) {
+                // Fall through to parsing as a double.
+            }
+        }
+
+        try {
+            return Double.valueOf(literal);
+        } catch (NumberFormatException e) {
+            return literal;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void writeValue(JsonWriter out, Object value) throws IOException, JSONException {
+        if (value == null || value == JSONObject.NULL) {
+            out.nullValue();
+        } else if (value instanceof Map) {
+            out.beginObject();
+            for (Map.Entry<Object, Object> entry : ((Map<Object, Object>) value).entrySet()) {
+                out.name(String.valueOf(entry.getKey()));
+                writeValue(out, entry.getValue());
+            }
+            out.endObject();
+        } else if (value instanceof Iterable) {
+            out.beginArray();
+            for (Object element : (Iterable<Object>) value) {
+                writeValue(out, element);
+            }
+            out.endArray();
+        } else if (value.getClass().isArray()) {
+            out.beginArray();
+            int length = Array.getLength(value);
+            for (int i = 0; i < length; i++) {
+                writeValue(out, Array.get(value, i));
+            }
+            out.endArray();
+        } else if (value instanceof JSONObject) {
+            JSONObject object = (JSONObject) value;
+            out.beginObject();
+            Iterator<String> keys = object.keys();
+            while (keys.hasNext()) {
+                String key = keys.next();
+                out.name(key);
+                writeValue(out, object.get(key));
+            }
+            out.endObject();
+        } else if (value instanceof JSONArray) {
+            JSONArray array = (JSONArray) value;
+            out.beginArray();
+            for (int i = 0; i < array.length(); i++) {
+                writeValue(out, array.get(i));
+            }
+            out.endArray();
+        } else if (value instanceof Boolean) {
+            out.value((Boolean) value);
+        } else if (value instanceof Number) {
+            writeNumber(out, (Number) value);
+        } else {
+            out.value(value.toString());
+        }
+    }
+
+    private static void writeNumber(JsonWriter out, Number value) throws IOException {
+        if (value instanceof Double || value instanceof Float) {
+            double doubleValue = value.doubleValue();
+            if (Double.isNaN(doubleValue) || Double.isInfinite(doubleValue)) {
+                throw new IOException("Numeric values must be finite, but was " + value);
+            }
+            // Like org.json, write integral doubles without a decimal point.
+            if (doubleValue == (long) doubleValue) {
+                out.value((long) doubleValue);
+            } else {
+                out.value(doubleValue);
+            }
+        } else if (value instanceof Integer || value instanceof Long
+                || value instanceof Short || value instanceof Byte) {
+            out.value(value.longValue());
+        } else {
+            out.value(value);
+        }
+    }
+
+}
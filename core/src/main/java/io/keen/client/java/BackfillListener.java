@@ -0,0 +1,16 @@
+package io.keen.client.java;
+
+/**
+ * Receives progress reports from a running {@link KeenBackfill}.
+ */
+public interface BackfillListener {
+
+    /**
+     * Called periodically while a backfill runs, and once when it finishes. Calls may come from
+     * different threads, but never more than one at a time.
+     *
+     * @param progress The backfill's progress so far.
+     */
+    void onProgress(BackfillReport progress);
+
+}
@@ -0,0 +1,166 @@
+package io.keen.client.java;
+
+import java.util.Locale;
+
+/**
+ * Reports the progress of a {@link KeenBackfill}, either while it runs, to its
+ * {@link BackfillListener}, or when it finishes.
+ * <p>
+ * Input lines are numbered from zero. Every line before the checkpoint has been dealt with: its
+ * event was inserted, rejected or failed, or the line wasn't a valid event. A backfill which is
+ * run again with the same checkpoint file resumes from there.
+ * </p>
+ */
+public final class BackfillReport {
+
+    private final long linesRead;
+    private final long linesSkipped;
+    private final long invalidLines;
+    private final long eventsSent;
+    private final long eventsRejected;
+    private final long eventsFailed;
+    private final long requests;
+    private final long bytesSent;
+    private final long elapsedMillis;
+    private final long checkpoint;
+    private final boolean complete;
+    private final Exception error;
+
+    /**
+     * Creates a report.
+     *
+     * @param linesRead      The number of input lines read, including skipped lines.
+     * @param linesSkipped   The number of lines skipped because an earlier run had done them.
+     * @param invalidLines   The number of lines which weren't valid events.
+     * @param eventsSent     The number of events the server inserted.
+     * @param eventsRejected The number of events the server rejected as invalid.
+     * @param eventsFailed   The number of events the server failed to insert for other reasons.
+     * @param requests       The number of batch requests made.
+     * @param bytesSent      The number of request body bytes sent.
+     * @param elapsedMillis  The time since the backfill started, in milliseconds.
+     * @param checkpoint     The number of the first line which hasn't been dealt with.
+     * @param complete       Whether the whole input has been dealt with.
+     * @param error          The exception which stopped the backfill, or null.
+     */
+    public BackfillReport(long linesRead, long linesSkipped, long invalidLines, long eventsSent,
+                          long eventsRejected, long eventsFailed, long requests, long bytesSent,
+                          long elapsedMillis, long checkpoint, boolean complete,
+                          Exception error) {
+        this.linesRead = linesRead;
+        this.linesSkipped = linesSkipped;
+        this.invalidLines = invalidLines;
+        this.eventsSent = eventsSent;
+        this.eventsRejected = eventsRejected;
+        this.eventsFailed = eventsFailed;
+        this.requests = requests;
+        this.bytesSent = bytesSent;
+        this.elapsedMillis = elapsedMillis;
+        this.checkpoint = checkpoint;
+        this.complete = complete;
+        this.error = error;
+    }
+
+    /**
+     * @return The number of input lines read, including lines skipped on resuming.
+     */
+    public long getLinesRead() {
+        return linesRead;
+    }
+
+    /**
+     * @return The number of lines skipped because a previous run had already dealt with them.
+     */
+    public long getLinesSkipped() {
+        return linesSkipped;
+    }
+
+    /**
+     * @return The number of lines which weren't valid events, such as malformed JSON or an event
+     * without a {@code keen.timestamp}.
+     */
+    public long getInvalidLines() {
+        return invalidLines;
+    }
+
+    /**
+     * @return The number of events the server inserted.
+     */
+    public long getEventsSent() {
+        return eventsSent;
+    }
+
+    /**
+     * @return The number of events the server rejected as invalid.
+     */
+    public long getEventsRejected() {
+        return eventsRejected;
+    }
+
+    /**
+     * @return The number of events the server failed to insert for other reasons.
+     */
+    public long getEventsFailed() {
+        return eventsFailed;
+    }
+
+    /**
+     * @return The number of batch requests which got a response.
+     */
+    public long getRequests() {
+        return requests;
+    }
+
+    /**
+     * @return The number of request body bytes sent in requests which got a response.
+     */
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    /**
+     * @return The time since the backfill started, in milliseconds.
+     */
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /**
+     * @return The number of events sent per second, on average.
+     */
+    public double getEventsPerSecond() {
+        return elapsedMillis == 0 ? 0 : eventsSent * 1000.0 / elapsedMillis;
+    }
+
+    /**
+     * @return The number of the first line which hasn't been dealt with. Every line before it has.
+     */
+    public long getCheckpoint() {
+        return checkpoint;
+    }
+
+    /**
+     * @return Whether every line of the input has been dealt with.
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * @return The exception which stopped the backfill before the end of the input, or null.
+     */
+    public Exception getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "BackfillReport{linesRead=%d, linesSkipped=%d, " +
+                        "invalidLines=%d, eventsSent=%d, eventsRejected=%d, eventsFailed=%d, " +
+                        "requests=%d, bytesSent=%d, elapsedMillis=%d, eventsPerSecond=%.1f, " +
+                        "checkpoint=%d, complete=%b, error=%s}",
+                linesRead, linesSkipped, invalidLines, eventsSent, eventsRejected, eventsFailed,
+                requests, bytesSent, elapsedMillis, getEventsPerSecond(), checkpoint, complete,
+                error);
+    }
+
+}
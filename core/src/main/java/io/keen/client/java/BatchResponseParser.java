@@ -0,0 +1,361 @@
+package io.keen.client.java;
+
+import java.io.IOException;
+
+/**
+ * Parses the response to a batch post of events in a single pass, reporting each event's result
+ * to a listener as it's read.
+ * <p>
+ * The response maps each event collection to an array with one result per event, in the order
+ * the events were sent:
+ * </p>
+ * <pre>
+ *     {"purchases": [{"success": true},
+ *                    {"success": false, "error": {"name": "...", "description": "..."}}]}
+ * </pre>
+ * <p>
+ * Unlike reading the response into Maps with the {@link KeenJsonHandler}, no objects are
+ * created for an event which succeeded, so large batches are cheap to process. Only the
+ * collection names and the error names and descriptions are turned into strings. Unknown
+ * properties are skipped.
+ * </p>
+ */
+final class BatchResponseParser {
+
+    /**
+     * Receives the result of each event in a batch.
+     */
+    interface Listener {
+
+        /**
+         * Called for each event result, in the order they appear in the response.
+         *
+         * @param eventCollection  The event's collection.
+         * @param index            The event's position in the collection's array.
+         * @param success          Whether the event was inserted.
+         * @param errorName        The name of the error if it wasn't, or null.
+         * @param errorDescription The description of the error if it wasn't, or null.
+         */
+        void onEventResult(String eventCollection, int index, boolean success, String errorName,
+                           String errorDescription);
+    }
+
+    /**
+     * Parses a batch response.
+     *
+     * @param response The response body.
+     * @param listener The listener to report each event's result to.
+     * @throws IOException If the response isn't a valid batch response.
+     */
+    static void parse(String response, Listener listener) throws IOException {
+        new BatchResponseParser(response).parseResponse(listener);
+    }
+
+    ///// PRIVATE CONSTANTS /////
+
+    private static final int KEY_OTHER = 0;
+    private static final int KEY_SUCCESS = 1;
+    private static final int KEY_ERROR = 2;
+    private static final int KEY_NAME = 3;
+    private static final int KEY_DESCRIPTION = 4;
+
+    ///// PRIVATE FIELDS /////
+
+    private final String json;
+    private int pos;
+
+    ///// PRIVATE METHODS /////
+
+    private BatchResponseParser(String json) {
+        this.json = json;
+    }
+
+    private void parseResponse(Listener listener) throws IOException {
+        expect('{');
+        if (!skipIf('}')) {
+            do {
+                String eventCollection = readString();
+                expect(':');
+                expect('[');
+                if (!skipIf(']')) {
+                    int index = 0;
+                    do {
+                        parseEventResult(eventCollection, index++, listener);
+                    } while (skipIf(','));
+                    expect(']');
+                }
+            } while (skipIf(','));
+            expect('}');
+        }
+
+        skipWhitespace();
+        if (pos != json.length()) {
+            throw error("Unexpected content after the response");
+        }
+    }
+
+    private void parseEventResult(String eventCollection, int index, Listener listener)
+            throws IOException {
+        boolean success = false;
+        String errorName = null;
+        String errorDescription = null;
+
+        expect('{');
+        if (!skipIf('}')) {
+            do {
+                int key = readKey();
+                expect(':');
+                if (key == KEY_SUCCESS) {
+                    success = readBoolean();
+                } else if (key == KEY_ERROR && peek() == '{') {
+                    expect('{');
+                    if (!skipIf('}')) {
+                        do {
+                            int errorKey = readKey();
+                            expect(':');
+                            if (errorKey == KEY_NAME && peek() == '"') {
+                                errorName = readString();
+                            } else if (errorKey == KEY_DESCRIPTION && peek() == '"') {
+                                errorDescription = readString();
+                            } else {
+                                skipValue();
+                            }
+                        } while (skipIf(','));
+                        expect('}');
+                    }
+                } else {
+                    skipValue();
+                }
+            } while (skipIf(','));
+            expect('}');
+        }
+
+        listener.onEventResult(eventCollection, index, success, errorName, errorDescription);
+    }
+
+    /**
+     * Reads an object key, identifying the keys of interest without creating a string.
+     */
+    private int readKey() throws IOException {
+        skipWhitespace();
+        if (pos >= json.length() || json.charAt(pos) != '"') {
+            throw error("Expected a property name");
+        }
+        int start = pos + 1;
+        int end = start;
+        while (end < json.length()) {
+            char c = json.charAt(end);
+            if (c == '"') {
+                break;
+            } else if (c == '\\') {
+                // Escaped names are rare; decode them the slow way.
+                return identifyKey(readString());
+            }
+            end++;
+        }
+        if (end >= json.length()) {
+            throw error("Unterminated string");
+        }
+        pos = end + 1;
+
+        int length = end - start;
+        if (matches(start, length, KeenConstants.SUCCESS_PARAM)) {
+            return KEY_SUCCESS;
+        } else if (matches(start, length, KeenConstants.ERROR_PARAM)) {
+            return KEY_ERROR;
+        } else if (matches(start, length, KeenConstants.NAME_PARAM)) {
+            return KEY_NAME;
+        } else if (matches(start, length, KeenConstants.DESCRIPTION_PARAM)) {
+            return KEY_DESCRIPTION;
+        }
+        return KEY_OTHER;
+    }
+
+    private boolean matches(int start, int length, String key) {
+        return length == key.length() && json.regionMatches(start, key, 0, length);
+    }
+
+    private static int identifyKey(String key) {
+        if (KeenConstants.SUCCESS_PARAM.equals(key)) {
+            return KEY_SUCCESS;
+        } else if (KeenConstants.ERROR_PARAM.equals(key)) {
+            return KEY_ERROR;
+        } else if (KeenConstants.NAME_PARAM.equals(key)) {
+            return KEY_NAME;
+        } else if (KeenConstants.DESCRIPTION_PARAM.equals(key)) {
+            return KEY_DESCRIPTION;
+        }
+        return KEY_OTHER;
+    }
+
+    private boolean readBoolean() throws IOException {
+        skipWhitespace();
+        if (json.startsWith("true", pos)) {
+            pos += 4;
+            return true;
+        } else if (json.startsWith("false", pos)) {
+            pos += 5;
+            return false;
+        }
+        throw error("Expected a boolean");
+    }
+
+    private String readString() throws IOException {
+        skipWhitespace();
+        if (pos >= json.length() || json.charAt(pos) != '"') {
+            throw error("Expected a string");
+        }
+        pos++;
+
+        int start = pos;
+        StringBuilder builder = null;
+        while (pos < json.length()) {
+            char c = json.charAt(pos);
+            if (c == '"') {
+                String value = (builder == null ? json.substring(start, pos) :
+                        builder.append(json, start, pos).toString());
+                pos++;
+                return value;
+            } else if (c == '\\') {
+                if (builder == null) {
+                    builder = new StringBuilder();
+                }
+                builder.append(json, start, pos);
+                builder.append(readEscape());
+                start = pos;
+            } else {
+                pos++;
+            }
+        }
+        throw error("Unterminated string");
+    }
+
+    private char readEscape() throws IOException {
+        if (pos + 1 >= json.length()) {
+            throw error("Unterminated escape");
+        }
+        char c = json.charAt(pos + 1);
+        pos += 2;
+        switch (c) {
+            case '"':
+            case '\\':
+            case '/':
+                return c;
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            case 'u':
+                if (pos + 4 > json.length()) {
+                    throw error("Unterminated escape");
+                }
+                try {
+                    char unicode = (char) Integer.parseInt(json.substring(pos, pos + 4), 16);
+                    pos += 4;
+                    return unicode;
+                } catch (NumberFormatException e) {
+                    throw error("Invalid unicode escape");
+                }
+            default:
+                throw error("Invalid escape");
+        }
+    }
+
+    private void skipValue() throws IOException {
+        skipWhitespace();
+        if (pos >= json.length()) {
+            throw error("Expected a value");
+        }
+        char c = json.charAt(pos);
+        if (c == '"') {
+            skipString();
+        } else if (c == '{') {
+            pos++;
+            if (!skipIf('}')) {
+                do {
+                    skipString();
+                    expect(':');
+                    skipValue();
+                } while (skipIf(','));
+                expect('}');
+            }
+        } else if (c == '[') {
+            pos++;
+            if (!skipIf(']')) {
+                do {
+                    skipValue();
+                } while (skipIf(','));
+                expect(']');
+            }
+        } else {
+            // A number, boolean or null.
+            int start = pos;
+            while (pos < json.length() && "{}[],: \t\r\n\"".indexOf(json.charAt(pos)) < 0) {
+                pos++;
+            }
+            if (pos == start) {
+                throw error("Expected a value");
+            }
+        }
+    }
+
+    private void skipString() throws IOException {
+        skipWhitespace();
+        if (pos >= json.length() || json.charAt(pos) != '"') {
+            throw error("Expected a string");
+        }
+        pos++;
+        while (pos < json.length()) {
+            char c = json.charAt(pos);
+            if (c == '"') {
+                pos++;
+                return;
+            }
+            pos += (c == '\\' ? 2 : 1);
+        }
+        throw error("Unterminated string");
+    }
+
+    private char peek() throws IOException {
+        skipWhitespace();
+        if (pos >= json.length()) {
+            throw error("Unexpected end of response");
+        }
+        return json.charAt(pos);
+    }
+
+    private void expect(char expected) throws IOException {
+        if (peek() != expected) {
+            throw error("Expected '" + expected + "'");
+        }
+        pos++;
+    }
+
+    private boolean skipIf(char expected) throws IOException {
+        if (peek() == expected) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    private void skipWhitespace() {
+        while (pos < json.length()) {
+            char c = json.charAt(pos);
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+                return;
+            }
+            pos++;
+        }
+    }
+
+    private IOException error(String message) {
+        return new IOException(message + " at position " + pos + " of batch response");
+    }
+}
@@ -0,0 +1,591 @@
+package io.keen.client.java;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A compact binary encoding for queued events, which an event store implementing
+ * {@link KeenBinaryEventStore} can keep instead of JSON text.
+ * <p>
+ * Events are encoded as tagged values. Small integers and references to strings seen earlier in
+ * the same event take a single byte, and the property names used by Keen (such as
+ * {@code keen}, {@code timestamp} and the add-on names) are built into a fixed dictionary, so
+ * they're never written out. Events larger than the compression threshold are also deflated,
+ * which removes most of the remaining repetition in events with arrays of similar objects.
+ * </p>
+ * <p>
+ * Encoded events start with a zero byte, which can't start a JSON document, so stores can hold
+ * a mix of compact and JSON events and tell them apart with {@link #isCompact(byte[])}. Decoding
+ * needs no configuration: {@link #decode(byte[])} returns the event map, which is what
+ * {@link KeenClient} does when it builds a batch, and {@link #decodeToJson(byte[])} returns the
+ * equivalent JSON text for callers of {@link KeenEventStore#get(Object)}.
+ * </p>
+ * <p>
+ * Only JSON-compatible values can be encoded: maps, iterables and arrays, strings, numbers,
+ * booleans and null. {@link #encode(Map)} rejects anything else, and the client then stores the
+ * event as JSON as usual. Codecs are immutable and thread-safe.
+ * </p>
+ */
+public class CompactEventCodec {
+
+    /**
+     * The default size, in bytes, above which encoded events are compressed.
+     */
+    public static final int DEFAULT_COMPRESSION_THRESHOLD = 256;
+
+    private static final byte MARKER = 0;
+    private static final byte MAGIC = 'K';
+    private static final byte VERSION = 1;
+    private static final int HEADER_LENGTH = 4;
+    private static final int FLAG_DEFLATED = 1;
+
+    // Value tags. Tags from TAG_SMALL_INT up encode the value in the tag itself.
+    private static final int TAG_NULL = 0;
+    private static final int TAG_FALSE = 1;
+    private static final int TAG_TRUE = 2;
+    private static final int TAG_INT = 3;
+    private static final int TAG_DOUBLE = 4;
+    private static final int TAG_STRING = 5;
+    private static final int TAG_STRING_REF = 6;
+    private static final int TAG_MAP = 7;
+    private static final int TAG_LIST = 8;
+    private static final int TAG_DECIMAL = 9;
+    private static final int TAG_SMALL_INT = 0x40;  // 0x40-0x7F: integers 0-63
+    private static final int TAG_SHORT_REF = 0x80;  // 0x80-0xFF: string references 0-127
+    private static final int MAX_SMALL_INT = 0x3F;
+    private static final int MAX_SHORT_REF = 0x7F;
+
+    /**
+     * Strings up to this length are added to the string table, so repeating them costs a
+     * reference. Longer strings are unlikely to repeat.
+     */
+    private static final int MAX_TABLE_STRING_LENGTH = 64;
+
+    /**
+     * Property names which are built into the string table. The order is part of the format and
+     * must never change; a new version would be needed to add names.
+     */
+    private static final List<String> DICTIONARY = Collections.unmodifiableList(Arrays.asList(
+            "keen", "timestamp", "created_at", "id", "addons", "name", "input", "output",
+            "ip_to_geo", "ua_parser", "url_parser", "referrer_parser", "date_time_parser",
+            "ip", "ua_string", "url", "page_url", "referrer_url", "datetime_info", "location",
+            "coordinates", "user", "user_id", "user_agent", "session", "session_id", "device",
+            "os", "version", "app", "platform", "type", "value", "event", "properties",
+            "country", "city", "region", "latitude", "longitude", "email", "count", "price",
+            "amount", "currency", "source", "category", "action", "label", "status",
+            "duration", "screen", "page", "title", "path", "referrer", "channel", "campaign",
+            "browser", "info", "error", "message", "tech", "visitor"));
+
+    private static final Map<String, Integer> DICTIONARY_INDEX;
+
+    static {
+        Map<String, Integer> index = new HashMap<String, Integer>();
+        for (int i = 0; i < DICTIONARY.size(); i++) {
+            index.put(DICTIONARY.get(i), i);
+        }
+        DICTIONARY_INDEX = Collections.unmodifiableMap(index);
+    }
+
+    private final int compressionThreshold;
+
+    /**
+     * Creates a codec which compresses events larger than
+     * {@link #DEFAULT_COMPRESSION_THRESHOLD} bytes.
+     */
+    public CompactEventCodec() {
+        this(DEFAULT_COMPRESSION_THRESHOLD);
+    }
+
+    /**
+     * Creates a codec.
+     *
+     * @param compressionThreshold The size, in bytes, above which encoded events are deflated if
+     *                             that makes them smaller, or a negative value to never compress.
+     */
+    public CompactEventCodec(int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    /**
+     * @return The size, in bytes, above which encoded events are compressed, or a negative value
+     * if they're never compressed.
+     */
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    /**
+     * Encodes an event.
+     *
+     * @param event The event to encode.
+     * @return The encoded event.
+     * @throws IllegalArgumentException If the event contains a value which can't be encoded.
+     */
+    public byte[] encode(Map<String, ?> event) {
+        Encoder encoder = new Encoder();
+        encoder.writeValue(event);
+        byte[] body = encoder.out.toByteArray();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length + HEADER_LENGTH);
+        out.write(MARKER);
+        out.write(MAGIC);
+        out.write(VERSION);
+        if (compressionThreshold >= 0 && body.length > compressionThreshold) {
+            byte[] deflated = deflate(body);
+            if (deflated.length + 5 < body.length) {
+                out.write(FLAG_DEFLATED);
+                writeVarint(out, body.length);
+                out.write(deflated, 0, deflated.length);
+                return out.toByteArray();
+            }
+        }
+        out.write(0);
+        out.write(body, 0, body.length);
+        return out.toByteArray();
+    }
+
+    /**
+     * Checks whether the given data is an event encoded by this codec, rather than JSON text.
+     *
+     * @param data The stored event.
+     * @return Whether the data is a compact event.
+     */
+    public static boolean isCompact(byte[] data) {
+        return data != null && data.length >= HEADER_LENGTH && data[0] == MARKER &&
+                data[1] == MAGIC;
+    }
+
+    /**
+     * Decodes an event.
+     *
+     * @param data The encoded event.
+     * @return The event. Maps preserve the order in which properties were encoded; integral
+     * numbers are decoded as Integer if they fit and Long otherwise.
+     * @throws IOException If the data isn't a valid compact event.
+     */
+    @SuppressWarnings("unchecked")
+    public static Map<String, Object> decode(byte[] data) throws IOException {
+        Object value = new Decoder(getBody(data)).readValue();
+        if (!(value instanceof Map)) {
+            throw new IOException("Compact event is not an object");
+        }
+        return (Map<String, Object>) value;
+    }
+
+    /**
+     * Decodes an event into JSON text.
+     *
+     * @param data The encoded event.
+     * @return The event as JSON.
+     * @throws IOException If the data isn't a valid compact event.
+     */
+    public static String decodeToJson(byte[] data) throws IOException {
+        StringBuilder json = new StringBuilder(data.length * 2);
+        appendJson(json, decode(data));
+        return json.toString();
+    }
+
+    ///// PRIVATE METHODS /////
+
+    private static byte[] getBody(byte[] data) throws IOException {
+        if (!isCompact(data)) {
+            throw new IOException("Not a compact event");
+        }
+        if (data[2] != VERSION) {
+            throw new IOException("Unsupported compact event version " + data[2]);
+        }
+
+        if ((data[3] & FLAG_DEFLATED) == 0) {
+            return Arrays.copyOfRange(data, HEADER_LENGTH, data.length);
+        }
+
+        int[] position = { HEADER_LENGTH };
+        long length = readVarint(data, position);
+        if (length < 0 || length > Integer.MAX_VALUE) {
+            throw new IOException("Invalid compact event length " + length);
+        }
+        byte[] body = new byte[(int) length];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data, position[0], data.length - position[0]);
+            int inflated = 0;
+            while (inflated < body.length) {
+                int count = inflater.inflate(body, inflated, body.length - inflated);
+                if (count == 0 && (inflater.finished() || inflater.needsInput() ||
+                        inflater.needsDictionary())) {
+                    break;
+                }
+                inflated += count;
+            }
+            if (inflated != body.length) {
+                throw new IOException("Truncated compact event");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt compact event", e);
+        } finally {
+            inflater.end();
+        }
+        return body;
+    }
+
+    private static byte[] deflate(byte[] body) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(body);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 2);
+            byte[] buffer = new byte[512];
+            while (!deflater.finished()) {
+                int count = deflater.deflate(buffer);
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarint(byte[] data, int[] position) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (position[0] >= data.length) {
+                throw new IOException("Truncated compact event");
+            }
+            byte b = data[position[0]++];
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint in compact event");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void appendJson(StringBuilder json, Object value) {
+        if (value == null) {
+            json.append("null");
+        } else if (value instanceof Map) {
+            json.append('{');
+            boolean first = true;
+            for (Map.Entry<String, Object> entry : ((Map<String, Object>) value).entrySet()) {
+                if (!first) {
+                    json.append(',');
+                }
+                first = false;
+                appendString(json, entry.getKey());
+                json.append(':');
+                appendJson(json, entry.getValue());
+            }
+            json.append('}');
+        } else if (value instanceof List) {
+            json.append('[');
+            boolean first = true;
+            for (Object element : (List<Object>) value) {
+                if (!first) {
+                    json.append(',');
+                }
+                first = false;
+                appendJson(json, element);
+            }
+            json.append(']');
+        } else if (value instanceof String) {
+            appendString(json, (String) value);
+        } else {
+            // Booleans and numbers; the encoder only accepts finite doubles.
+            json.append(value.toString());
+        }
+    }
+
+    static void appendString(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                case '\b':
+                    json.append("\\b");
+                    break;
+                case '\f':
+                    json.append("\\f");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format(Locale.US, "\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        json.append('"');
+    }
+
+    /**
+     * Writes the body of one event, interning short strings as it goes.
+     */
+    private static class Encoder {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+        final Map<String, Integer> table = new HashMap<String, Integer>();
+        int tableSize = DICTIONARY.size();
+
+        void writeValue(Object value) {
+            if (value == null) {
+                out.write(TAG_NULL);
+            } else if (value instanceof String) {
+                writeString((String) value);
+            } else if (value instanceof Boolean) {
+                out.write((Boolean) value ? TAG_TRUE : TAG_FALSE);
+            } else if (value instanceof Integer || value instanceof Long ||
+                    value instanceof Short || value instanceof Byte) {
+                writeInt(((Number) value).longValue());
+            } else if (value instanceof Double || value instanceof Float) {
+                writeDouble(((Number) value).doubleValue());
+            } else if (value instanceof BigInteger || value instanceof BigDecimal) {
+                writeDecimal((Number) value);
+            } else if (value instanceof Map) {
+                Map<?, ?> map = (Map<?, ?>) value;
+                out.write(TAG_MAP);
+                writeVarint(out, map.size());
+                for (Map.Entry<?, ?> entry : map.entrySet()) {
+                    if (!(entry.getKey() instanceof String)) {
+                        throw new IllegalArgumentException("Property names must be strings, " +
+                                "but found " + entry.getKey());
+                    }
+                    writeString((String) entry.getKey());
+                    writeValue(entry.getValue());
+                }
+            } else if (value instanceof Iterable) {
+                List<Object> elements = new ArrayList<Object>();
+                for (Object element : (Iterable<?>) value) {
+                    elements.add(element);
+                }
+                writeList(elements);
+            } else if (value.getClass().isArray()) {
+                int length = Array.getLength(value);
+                List<Object> elements = new ArrayList<Object>(length);
+                for (int i = 0; i < length; i++) {
+                    elements.add(Array.get(value, i));
+                }
+                writeList(elements);
+            } else {
+                throw new IllegalArgumentException("Can't encode a value of type " +
+                        value.getClass().getName());
+            }
+        }
+
+        void writeList(List<Object> elements) {
+            out.write(TAG_LIST);
+            writeVarint(out, elements.size());
+            for (Object element : elements) {
+                writeValue(element);
+            }
+        }
+
+        void writeInt(long value) {
+            if (value >= 0 && value <= MAX_SMALL_INT) {
+                out.write(TAG_SMALL_INT + (int) value);
+            } else {
+                out.write(TAG_INT);
+                // Zig-zag encode, so small negative numbers stay short.
+                writeVarint(out, (value << 1) ^ (value >> 63));
+            }
+        }
+
+        void writeDouble(double value) {
+            if (Double.isNaN(value) || Double.isInfinite(value)) {
+                throw new IllegalArgumentException("Numeric values must be finite, but was " +
+                        value);
+            }
+            out.write(TAG_DOUBLE);
+            long bits = Double.doubleToLongBits(value);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                out.write((int) (bits >>> shift));
+            }
+        }
+
+        void writeDecimal(Number value) {
+            out.write(TAG_DECIMAL);
+            writeUtf8(value.toString());
+        }
+
+        void writeString(String value) {
+            Integer index = DICTIONARY_INDEX.get(value);
+            if (index == null) {
+                index = table.get(value);
+            }
+            if (index != null) {
+                if (index <= MAX_SHORT_REF) {
+                    out.write(TAG_SHORT_REF + index);
+                } else {
+                    out.write(TAG_STRING_REF);
+                    writeVarint(out, index);
+                }
+                return;
+            }
+
+            out.write(TAG_STRING);
+            writeUtf8(value);
+            if (value.length() <= MAX_TABLE_STRING_LENGTH) {
+                table.put(value, tableSize++);
+            }
+        }
+
+        void writeUtf8(String value) {
+            byte[] bytes;
+            try {
+                bytes = value.getBytes("UTF-8");
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+            writeVarint(out, bytes.length);
+            out.write(bytes, 0, bytes.length);
+        }
+    }
+
+    /**
+     * Reads the body of one event, rebuilding the encoder's string table as it goes.
+     */
+    private static class Decoder {
+        final byte[] data;
+        final int[] position = { 0 };
+        final List<String> table = new ArrayList<String>(DICTIONARY);
+
+        Decoder(byte[] data) {
+            this.data = data;
+        }
+
+        Object readValue() throws IOException {
+            int tag = readByte();
+            if (tag >= TAG_SHORT_REF) {
+                return lookUp(tag - TAG_SHORT_REF);
+            } else if (tag >= TAG_SMALL_INT) {
+                return tag - TAG_SMALL_INT;
+            }
+
+            switch (tag) {
+                case TAG_NULL:
+                    return null;
+                case TAG_FALSE:
+                    return Boolean.FALSE;
+                case TAG_TRUE:
+                    return Boolean.TRUE;
+                case TAG_INT:
+                    long zigzag = readVarint(data, position);
+                    long value = (zigzag >>> 1) ^ -(zigzag & 1);
+                    if (value <= Integer.MAX_VALUE && value >= Integer.MIN_VALUE) {
+                        return (int) value;
+                    }
+                    return value;
+                case TAG_DOUBLE:
+                    long bits = 0;
+                    for (int i = 0; i < 8; i++) {
+                        bits = (bits << 8) | readByte();
+                    }
+                    return Double.longBitsToDouble(bits);
+                case TAG_STRING:
+                    String string = readUtf8();
+                    if (string.length() <= MAX_TABLE_STRING_LENGTH) {
+                        table.add(string);
+                    }
+                    return string;
+                case TAG_STRING_REF:
+                    return lookUp(readVarint(data, position));
+                case TAG_MAP:
+                    int size = readCount();
+                    Map<String, Object> map = new LinkedHashMap<String, Object>();
+                    for (int i = 0; i < size; i++) {
+                        Object key = readValue();
+                        if (!(key instanceof String)) {
+                            throw new IOException("Invalid property name in compact event");
+                        }
+                        map.put((String) key, readValue());
+                    }
+                    return map;
+                case TAG_LIST:
+                    int length = readCount();
+                    List<Object> list = new ArrayList<Object>(Math.min(length, 1024));
+                    for (int i = 0; i < length; i++) {
+                        list.add(readValue());
+                    }
+                    return list;
+                case TAG_DECIMAL:
+                    String decimal = readUtf8();
+                    try {
+                        return (decimal.indexOf('.') < 0 && decimal.indexOf('E') < 0 &&
+                                decimal.indexOf('e') < 0) ?
+                                new BigInteger(decimal) : new BigDecimal(decimal);
+                    } catch (NumberFormatException e) {
+                        throw new IOException("Invalid number in compact event: " + decimal);
+                    }
+                default:
+                    throw new IOException("Unknown tag " + tag + " in compact event");
+            }
+        }
+
+        int readByte() throws IOException {
+            if (position[0] >= data.length) {
+                throw new IOException("Truncated compact event");
+            }
+            return data[position[0]++] & 0xFF;
+        }
+
+        int readCount() throws IOException {
+            long count = readVarint(data, position);
+            if (count < 0 || count > data.length - position[0]) {
+                // Every element takes at least one byte.
+                throw new IOException("Invalid element count in compact event");
+            }
+            return (int) count;
+        }
+
+        String readUtf8() throws IOException {
+            int length = readCount();
+            String value = new String(data, position[0], length, "UTF-8");
+            position[0] += length;
+            return value;
+        }
+
+        String lookUp(long index) throws IOException {
+            if (index < 0 || index >= table.size()) {
+                throw new IOException("Invalid string reference in compact event");
+            }
+            return table.get((int) index);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package io.keen.client.java;
+
+/**
+ * A queued event which was removed from the event store without being inserted, either because
+ * the server rejected it as invalid or because it used up its attempts. It's passed to the
+ * client's {@link KeenDeadLetterSink}, and can be sent again with
+ * {@link KeenClient#replayDeadLetters(KeenProject, Iterable, DeadLetterRepair)}.
+ */
+public final class DeadLetter {
+
+    private final long timestampMillis;
+    private final String projectId;
+    private final String eventCollection;
+    private final KeenEventStatus reason;
+    private final String errorName;
+    private final String errorDescription;
+    private final String event;
+
+    /**
+     * Creates a dead letter.
+     *
+     * @param timestampMillis  When the event was removed, in milliseconds since the epoch.
+     * @param projectId        The ID of the event's project.
+     * @param eventCollection  The name of the event's collection.
+     * @param reason           {@link KeenEventStatus#REJECTED} or {@link KeenEventStatus#DROPPED}.
+     * @param errorName        The name of the server's error, or null.
+     * @param errorDescription The description of the server's error, or null.
+     * @param event            The event as JSON, including its {@code keen} properties.
+     */
+    public DeadLetter(long timestampMillis, String projectId, String eventCollection,
+                      KeenEventStatus reason, String errorName, String errorDescription,
+                      String event) {
+        this.timestampMillis = timestampMillis;
+        this.projectId = projectId;
+        this.eventCollection = eventCollection;
+        this.reason = reason;
+        this.errorName = errorName;
+        this.errorDescription = errorDescription;
+        this.event = event;
+    }
+
+    /**
+     * @return When the event was removed, in milliseconds since the epoch.
+     */
+    public long getTimestampMillis() {
+        return timestampMillis;
+    }
+
+    /**
+     * @return The ID of the event's project.
+     */
+    public String getProjectId() {
+        return projectId;
+    }
+
+    /**
+     * @return The name of the event's collection.
+     */
+    public String getEventCollection() {
+        return eventCollection;
+    }
+
+    /**
+     * @return Why the event was removed: {@link KeenEventStatus#REJECTED} if the server found it
+     * invalid, or {@link KeenEventStatus#DROPPED} if it used up its attempts.
+     */
+    public KeenEventStatus getReason() {
+        return reason;
+    }
+
+    /**
+     * @return The name of the server's error, such as "InvalidPropertyNameError", or null.
+     */
+    public String getErrorName() {
+        return errorName;
+    }
+
+    /**
+     * @return The description of the server's error, or null.
+     */
+    public String getErrorDescription() {
+        return errorDescription;
+    }
+
+    /**
+     * @return The event as JSON, including its {@code keen} properties.
+     */
+    public String getEvent() {
+        return event;
+    }
+
+    @Override
+    public String toString() {
+        return "DeadLetter{projectId=" + projectId +
+                ", eventCollection=" + eventCollection +
+                ", reason=" + reason +
+                ", errorName=" + errorName + "}";
+    }
+
+}
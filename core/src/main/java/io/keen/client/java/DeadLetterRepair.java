@@ -0,0 +1,23 @@
+package io.keen.client.java;
+
+import java.util.Map;
+
+/**
+ * Fixes dead letters before they're queued again by
+ * {@link KeenClient#replayDeadLetters(KeenProject, Iterable, DeadLetterRepair)}, for example by
+ * renaming properties the server rejected.
+ */
+public interface DeadLetterRepair {
+
+    /**
+     * Repairs a dead letter's event.
+     *
+     * @param deadLetter The dead letter.
+     * @param event      The event's properties, without its {@code keen} properties, which are
+     *                   kept as they were. The map may be modified and returned.
+     * @return The event to queue, or null to skip it. A skipped dead letter is put back in the
+     * sink given to the replay, if any.
+     */
+    Map<String, Object> repair(DeadLetter deadLetter, Map<String, Object> event);
+
+}
@@ -0,0 +1,167 @@
+package io.keen.client.java;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Remembers the event IDs seen recently, in a fixed amount of memory, to recognize events which
+ * are queued twice.
+ * <p>
+ * IDs are kept in two Bloom filters, each sized for the window: new IDs go into the current
+ * one, and once it holds a window's worth it replaces the previous one, which is cleared. So
+ * every ID is remembered for at least one window, and at most two, using about 20 bits per ID
+ * in each filter. A Bloom filter never forgets an ID it holds, but may claim to hold one it
+ * doesn't; with this sizing that happens to fewer than 2 in 10,000 new IDs.
+ * </p>
+ * <p>
+ * Since an ID can't be taken out of a Bloom filter, an ID whose event is still being stored is
+ * held in a set of pending IDs by {@link #reserve(String)}, and only added to the filter by
+ * {@link #confirm(String)} once the event is stored; {@link #cancel(String)} drops it if the
+ * event couldn't be stored.
+ * </p>
+ * <p>
+ * The filter is thread-safe.
+ * </p>
+ */
+final class EventIdFilter {
+
+    /**
+     * Creates a filter.
+     *
+     * @param window The number of IDs to remember; must be positive.
+     */
+    EventIdFilter(int window) {
+        if (window < 1) {
+            throw new IllegalArgumentException("window must be at least 1");
+        }
+        this.window = window;
+
+        // The optimal size and number of hashes for the false positive rate.
+        long bits = (long) Math.ceil(-window * Math.log(FALSE_POSITIVE_RATE) /
+                (Math.log(2) * Math.log(2)));
+        this.numBits = (int) Math.min(bits, (long) Integer.MAX_VALUE - 63);
+        this.numHashes = Math.max(1, (int) Math.round((double) numBits / window * Math.log(2)));
+        this.current = new long[(numBits + 63) / 64];
+        this.previous = new long[current.length];
+    }
+
+    /**
+     * Checks whether an ID may have been added. False positives are possible, but false
+     * negatives aren't, for IDs added within the last window.
+     *
+     * @param id The ID.
+     * @return Whether the ID was probably added.
+     */
+    synchronized boolean mightContain(String id) {
+        long hash = hash(id);
+        return contains(current, hash) || contains(previous, hash);
+    }
+
+    /**
+     * Reserves an ID for an event about to be stored, unless it may have been added already or
+     * is reserved. Checking and reserving are one step, so of several callers reserving the same
+     * ID at once only one succeeds.
+     *
+     * @param id The ID.
+     * @return Whether the ID was reserved.
+     */
+    synchronized boolean reserve(String id) {
+        if (pending.contains(id) || mightContain(id)) {
+            return false;
+        }
+        pending.add(id);
+        return true;
+    }
+
+    /**
+     * Adds a reserved ID, once its event has been stored.
+     *
+     * @param id The ID.
+     */
+    synchronized void confirm(String id) {
+        pending.remove(id);
+        add(id);
+    }
+
+    /**
+     * Releases a reserved ID without adding it, because its event wasn't stored.
+     *
+     * @param id The ID.
+     */
+    synchronized void cancel(String id) {
+        pending.remove(id);
+    }
+
+    /**
+     * Adds an ID.
+     *
+     * @param id The ID.
+     */
+    synchronized void add(String id) {
+        if (currentCount >= window) {
+            long[] cleared = previous;
+            Arrays.fill(cleared, 0L);
+            previous = current;
+            current = cleared;
+            currentCount = 0;
+        }
+
+        long hash = hash(id);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < numHashes; i++) {
+            int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % numBits;
+            current[bit >>> 6] |= 1L << bit;
+        }
+        currentCount++;
+    }
+
+    ///// PRIVATE CONSTANTS /////
+
+    private static final double FALSE_POSITIVE_RATE = 0.0001;
+
+    ///// PRIVATE FIELDS /////
+
+    private final int window;
+    private final int numBits;
+    private final int numHashes;
+    private long[] current;
+    private long[] previous;
+    private int currentCount;
+    // IDs reserved for events which are being stored.
+    private final Set<String> pending = new HashSet<String>();
+
+    ///// PRIVATE METHODS /////
+
+    private boolean contains(long[] filter, long hash) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < numHashes; i++) {
+            int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % numBits;
+            if ((filter[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Hashes an ID to 64 bits: FNV-1a over its characters, then the MurmurHash3 finalizer, so
+     * that IDs which differ in a single character have unrelated halves for double hashing.
+     */
+    private static long hash(String id) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < id.length(); i++) {
+            hash ^= id.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+}
@@ -0,0 +1,61 @@
+package io.keen.client.java;
+
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Generates and reads the client-side event IDs which are added under an event's {@code keen}
+ * properties when a client is built with an idempotency window.
+ */
+final class EventIds {
+
+    private EventIds() {}
+
+    /**
+     * Generates a new event ID: a random UUID, written as 22 URL-safe base64 characters rather
+     * than the usual 36.
+     *
+     * @return The new ID.
+     */
+    static String generate() {
+        UUID uuid = UUID.randomUUID();
+        long high = uuid.getMostSignificantBits();
+        long low = uuid.getLeastSignificantBits();
+        char[] id = new char[ID_LENGTH];
+        for (int i = 0; i < ID_LENGTH; i++) {
+            // Each character holds the next 6 of the 128 bits; the last one holds just 2.
+            int value = 0;
+            for (int bit = i * 6; bit < i * 6 + 6; bit++) {
+                value <<= 1;
+                if (bit < 64) {
+                    value |= (int) (high >>> (63 - bit)) & 1;
+                } else if (bit < 128) {
+                    value |= (int) (low >>> (127 - bit)) & 1;
+                }
+            }
+            id[i] = ALPHABET[value];
+        }
+        return new String(id);
+    }
+
+    /**
+     * Reads an event's ID.
+     *
+     * @param event The event, with its {@code keen} properties.
+     * @return The ID, or null if the event doesn't have one.
+     */
+    static String get(Map<String, Object> event) {
+        Object keen = (event == null ? null : event.get("keen"));
+        if (!(keen instanceof Map)) {
+            return null;
+        }
+        Object id = ((Map<?, ?>) keen).get(KeenConstants.EVENT_ID_PARAM);
+        return (id instanceof String ? (String) id : null);
+    }
+
+    ///// PRIVATE CONSTANTS /////
+
+    private static final int ID_LENGTH = 22;
+    private static final char[] ALPHABET =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+}
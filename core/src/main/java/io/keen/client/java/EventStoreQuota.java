@@ -0,0 +1,438 @@
+package io.keen.client.java;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * A limit on the total size of an event store, shared by all of its projects and collections.
+ * <p>
+ * The quota bounds both the total number of bytes and the total number of events in the store,
+ * as well as the number of events in any one collection. When a new event takes the store over
+ * its limits, events are evicted oldest-first from the collection using the most bytes in the
+ * lowest priority tier, so one noisy collection with large events can't crowd out the others.
+ * Collections are in priority tier 0 unless configured otherwise; higher tiers are only evicted
+ * from once all lower tiers are empty.
+ * </p>
+ * <p>
+ * The quota keeps its own index of stored events, so an event store using it never needs to list
+ * or sort its contents to decide what to evict. Each eviction takes constant time per event,
+ * plus a logarithmic lookup in the number of collections.
+ * </p>
+ * <p>
+ * Priorities must be configured before the quota is passed to an event store. A quota must only
+ * be used by one event store.
+ * </p>
+ *
+ * @see FileEventStore#FileEventStore(java.io.File, EventStoreQuota)
+ * @see RamEventStore#setQuota(EventStoreQuota)
+ */
+public class EventStoreQuota {
+
+    /**
+     * The default number of events that can be stored for a single collection.
+     */
+    public static final int DEFAULT_MAX_EVENTS_PER_COLLECTION = 10000;
+
+    ///// PUBLIC CONSTRUCTORS /////
+
+    /**
+     * Constructs a quota.
+     *
+     * @param maxTotalBytes  The maximum total size of all stored events, in bytes.
+     * @param maxTotalEvents The maximum total number of stored events.
+     */
+    public EventStoreQuota(long maxTotalBytes, int maxTotalEvents) {
+        if (maxTotalBytes < 1 || maxTotalEvents < 1) {
+            throw new IllegalArgumentException("Quota limits must be positive");
+        }
+
+        this.maxTotalBytes = maxTotalBytes;
+        this.maxTotalEvents = maxTotalEvents;
+    }
+
+    ///// PUBLIC METHODS /////
+
+    /**
+     * Sets the maximum number of events that can be stored for a single collection.
+     *
+     * @param maxEventsPerCollection The maximum number of events per collection.
+     * @return This instance (for method chaining).
+     */
+    public synchronized EventStoreQuota withMaxEventsPerCollection(int maxEventsPerCollection) {
+        if (maxEventsPerCollection < 1) {
+            throw new IllegalArgumentException("maxEventsPerCollection must be at least 1");
+        }
+
+        this.maxEventsPerCollection = maxEventsPerCollection;
+        return this;
+    }
+
+    /**
+     * Sets the priority tier of a collection in every project. Events in lower tiers are evicted
+     * first.
+     *
+     * @param eventCollection The name of the event collection.
+     * @param priority        The priority tier. The default is 0.
+     * @return This instance (for method chaining).
+     */
+    public EventStoreQuota withCollectionPriority(String eventCollection, int priority) {
+        return withCollectionPriority(null, eventCollection, priority);
+    }
+
+    /**
+     * Sets the priority tier of a collection in one project. This takes precedence over a
+     * priority set for the collection in every project.
+     *
+     * @param projectId       The project ID, or null for every project.
+     * @param eventCollection The name of the event collection.
+     * @param priority        The priority tier. The default is 0.
+     * @return This instance (for method chaining).
+     */
+    public synchronized EventStoreQuota withCollectionPriority(String projectId,
+                                                               String eventCollection,
+                                                               int priority) {
+        priorities.put(getKey(projectId, eventCollection), priority);
+        return this;
+    }
+
+    /**
+     * @return The maximum total size of all stored events, in bytes.
+     */
+    public long getMaxTotalBytes() {
+        return maxTotalBytes;
+    }
+
+    /**
+     * @return The maximum total number of stored events.
+     */
+    public int getMaxTotalEvents() {
+        return maxTotalEvents;
+    }
+
+    /**
+     * @return The maximum number of events that can be stored for a single collection.
+     */
+    public synchronized int getMaxEventsPerCollection() {
+        return maxEventsPerCollection;
+    }
+
+    /**
+     * @return The total size of the events currently counted against the quota, in bytes.
+     */
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * @return The number of events currently counted against the quota.
+     */
+    public synchronized int getTotalEvents() {
+        return totalEvents;
+    }
+
+    /**
+     * @return The total number of events evicted to stay within the quota.
+     */
+    public synchronized long getEvictedEvents() {
+        return evictedEvents;
+    }
+
+    /**
+     * @return The total size of the events evicted to stay within the quota, in bytes.
+     */
+    public synchronized long getEvictedBytes() {
+        return evictedBytes;
+    }
+
+    /**
+     * Gets the number of events evicted from a single collection.
+     *
+     * @param projectId       The project ID.
+     * @param eventCollection The name of the event collection.
+     * @return The number of events evicted from the collection.
+     */
+    public synchronized long getEvictedEvents(String projectId, String eventCollection) {
+        CollectionUsage usage = collections.get(getKey(projectId, eventCollection));
+        return (usage == null ? 0 : usage.evictedEvents);
+    }
+
+    ///// EVENT STORE METHODS /////
+
+    /**
+     * Counts a newly stored event against the quota, and decides which events to evict to stay
+     * within it. The new event itself may be evicted, if it's larger than the whole quota.
+     *
+     * @param projectId       The project ID.
+     * @param eventCollection The name of the event collection.
+     * @param handle          The event store's handle for the event.
+     * @param bytes           The size of the event, in bytes.
+     * @return The handles of the events the store must delete. The quota no longer counts them.
+     */
+    synchronized List<Object> add(String projectId, String eventCollection, Object handle,
+                                  long bytes) {
+        // Replacing an event doesn't count it twice.
+        remove(handle);
+
+        String key = getKey(projectId, eventCollection);
+        CollectionUsage usage = collections.get(key);
+        if (usage == null) {
+            usage = new CollectionUsage(key, getPriority(projectId, eventCollection));
+            collections.put(key, usage);
+        }
+
+        List<Object> evicted = new ArrayList<Object>();
+
+        // Make room in the collection first, then in the store as a whole.
+        while (usage.liveEvents >= maxEventsPerCollection) {
+            evicted.add(evictOldest(usage));
+        }
+
+        Entry entry = new Entry(handle, bytes, usage);
+        entries.put(handle, entry);
+        usage.entries.addLast(entry);
+        usage.liveEvents++;
+        totalEvents++;
+        addBytes(usage, bytes);
+
+        while (totalBytes > maxTotalBytes || totalEvents > maxTotalEvents) {
+            evicted.add(evictOldest(getEvictionVictim()));
+        }
+
+        return evicted;
+    }
+
+    /**
+     * Stops counting an event against the quota, because it was removed from the store.
+     *
+     * @param handle The event store's handle for the event.
+     */
+    synchronized void remove(Object handle) {
+        Entry entry = entries.remove(handle);
+        if (entry == null) {
+            return;
+        }
+
+        CollectionUsage usage = entry.usage;
+        entry.removed = true;
+        usage.liveEvents--;
+        usage.deadEntries++;
+        totalEvents--;
+        addBytes(usage, -entry.bytes);
+        pruneDeadEntries(usage);
+    }
+
+    /**
+     * Stops counting all events against the quota. Eviction counters are kept.
+     */
+    synchronized void clear() {
+        entries.clear();
+        tiers.clear();
+        for (CollectionUsage usage : collections.values()) {
+            usage.entries.clear();
+            usage.liveEvents = 0;
+            usage.deadEntries = 0;
+            usage.bytes = 0;
+        }
+        totalBytes = 0;
+        totalEvents = 0;
+    }
+
+    /**
+     * Calculates the size of a string when encoded as UTF-8, without encoding it.
+     *
+     * @param value The string.
+     * @return The size of the encoded string, in bytes.
+     */
+    static long getUtf8Length(String value) {
+        long length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    ///// PRIVATE TYPES /////
+
+    /**
+     * A stored event counted against the quota.
+     */
+    private static class Entry {
+        final Object handle;
+        final long bytes;
+        final CollectionUsage usage;
+        boolean removed;
+
+        Entry(Object handle, long bytes, CollectionUsage usage) {
+            this.handle = handle;
+            this.bytes = bytes;
+            this.usage = usage;
+        }
+    }
+
+    /**
+     * The events stored for one collection, oldest first. Entries removed from the middle of the
+     * queue are only marked as removed, and are skipped or compacted away later.
+     */
+    private static class CollectionUsage {
+        final String key;
+        final int priority;
+        final ArrayDeque<Entry> entries = new ArrayDeque<Entry>();
+        int liveEvents;
+        int deadEntries;
+        long bytes;
+        long evictedEvents;
+
+        CollectionUsage(String key, int priority) {
+            this.key = key;
+            this.priority = priority;
+        }
+    }
+
+    /**
+     * Orders collections by the number of bytes they use, largest first.
+     */
+    private static final Comparator<CollectionUsage> LARGEST_FIRST = new Comparator<CollectionUsage>() {
+        @Override
+        public int compare(CollectionUsage a, CollectionUsage b) {
+            if (a.bytes != b.bytes) {
+                return a.bytes > b.bytes ? -1 : 1;
+            }
+            return a.key.compareTo(b.key);
+        }
+    };
+
+    ///// PRIVATE FIELDS /////
+
+    private final long maxTotalBytes;
+    private final int maxTotalEvents;
+    private int maxEventsPerCollection = DEFAULT_MAX_EVENTS_PER_COLLECTION;
+
+    private final Map<String, Integer> priorities = new HashMap<String, Integer>();
+    private final Map<String, CollectionUsage> collections = new HashMap<String, CollectionUsage>();
+    private final Map<Object, Entry> entries = new HashMap<Object, Entry>();
+
+    /**
+     * The collections which currently hold events, by priority tier and then by size.
+     */
+    private final TreeMap<Integer, TreeSet<CollectionUsage>> tiers =
+            new TreeMap<Integer, TreeSet<CollectionUsage>>();
+
+    private long totalBytes;
+    private int totalEvents;
+    private long evictedEvents;
+    private long evictedBytes;
+
+    ///// PRIVATE METHODS /////
+
+    private static String getKey(String projectId, String eventCollection) {
+        return (projectId == null ? "" : projectId) + '\0' + eventCollection;
+    }
+
+    private int getPriority(String projectId, String eventCollection) {
+        Integer priority = priorities.get(getKey(projectId, eventCollection));
+        if (priority == null) {
+            priority = priorities.get(getKey(null, eventCollection));
+        }
+        return (priority == null ? 0 : priority);
+    }
+
+    /**
+     * Changes the number of bytes used by a collection, keeping its position in its tier up to
+     * date.
+     */
+    private void addBytes(CollectionUsage usage, long delta) {
+        TreeSet<CollectionUsage> tier = tiers.get(usage.priority);
+        if (tier != null) {
+            tier.remove(usage);
+        }
+
+        usage.bytes += delta;
+        totalBytes += delta;
+
+        if (usage.liveEvents > 0) {
+            if (tier == null) {
+                tier = new TreeSet<CollectionUsage>(LARGEST_FIRST);
+                tiers.put(usage.priority, tier);
+            }
+            tier.add(usage);
+        } else if (tier != null && tier.isEmpty()) {
+            tiers.remove(usage.priority);
+        }
+    }
+
+    /**
+     * @return The largest collection in the lowest non-empty priority tier.
+     */
+    private CollectionUsage getEvictionVictim() {
+        return tiers.firstEntry().getValue().first();
+    }
+
+    /**
+     * Evicts the oldest live event of a collection.
+     *
+     * @return The handle of the evicted event.
+     */
+    private Object evictOldest(CollectionUsage usage) {
+        Entry entry = usage.entries.pollFirst();
+        while (entry.removed) {
+            usage.deadEntries--;
+            entry = usage.entries.pollFirst();
+        }
+
+        entries.remove(entry.handle);
+        usage.liveEvents--;
+        totalEvents--;
+        addBytes(usage, -entry.bytes);
+
+        usage.evictedEvents++;
+        evictedEvents++;
+        evictedBytes += entry.bytes;
+        return entry.handle;
+    }
+
+    /**
+     * Discards removed entries from the head of a collection's queue, which is where they usually
+     * are since events are sent oldest first. If too many accumulate elsewhere, the queue is
+     * compacted; this is linear, but happens at most once per removal of half the queue.
+     */
+    private void pruneDeadEntries(CollectionUsage usage) {
+        while (!usage.entries.isEmpty() && usage.entries.peekFirst().removed) {
+            usage.entries.pollFirst();
+            usage.deadEntries--;
+        }
+
+        if (usage.deadEntries > 16 && usage.deadEntries > usage.liveEvents) {
+            Iterator<Entry> iterator = usage.entries.iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().removed) {
+                    iterator.remove();
+                }
+            }
+            usage.deadEntries = 0;
+        }
+
+        if (usage.liveEvents == 0 && usage.evictedEvents == 0) {
+            // Forget collections which are empty and have no counters worth keeping.
+            collections.remove(usage.key);
+        }
+    }
+
+}
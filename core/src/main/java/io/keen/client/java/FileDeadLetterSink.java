@@ -0,0 +1,272 @@
+package io.keen.client.java;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Implementation of the {@link KeenDeadLetterSink} interface which appends dead letters to a
+ * single file.
+ * <p>
+ * Each dead letter is one line of tab-separated fields: the time, project ID, event collection,
+ * reason, error name, error description and the event's JSON. Tabs, line breaks and backslashes
+ * in the fields are escaped with a backslash, and a missing value is written as {@code \N}. The
+ * file is kept open, and each line is handed to the operating system as it's added but not
+ * synced to the disk, so adding a dead letter costs one buffered write. If the file was left
+ * ending in an incomplete line, for example by a crash, a line break is added before the next
+ * dead letter so that only the incomplete line is lost.
+ * </p>
+ * <p>
+ * Once the cause of the failures has been fixed, the dead letters can be taken out of the file
+ * and replayed. {@link #drain()} reads and removes them in one step, so that none added in the
+ * meantime are lost. Passing the sink to the replay as well puts back every dead letter which
+ * isn't queued, such as those of other projects or those the repair skips:
+ * </p>
+ * <pre>
+ *     client.replayDeadLetters(project, sink.drain(), repair, sink);
+ * </pre>
+ * <p>
+ * Between the drain and the replay the dead letters are only in memory, so a crash in between
+ * loses them.
+ * </p>
+ */
+public class FileDeadLetterSink implements KeenDeadLetterSink, Closeable {
+
+    ///// PUBLIC CONSTRUCTORS /////
+
+    /**
+     * Constructs a new file-based dead letter sink. The file is created when the first dead
+     * letter is added, and dead letters already in it are kept.
+     *
+     * @param file The file to append dead letters to.
+     * @throws IOException If the file's directory doesn't exist.
+     */
+    public FileDeadLetterSink(File file) throws IOException {
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (directory == null || !directory.isDirectory()) {
+            throw new IOException("Dead letter directory '" + directory +
+                    "' must exist and be a directory");
+        }
+        this.file = file;
+    }
+
+    ///// PUBLIC METHODS /////
+
+    /**
+     * @return The file dead letters are appended to.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void add(DeadLetter deadLetter) throws IOException {
+        StringBuilder line = new StringBuilder(256);
+        line.append(deadLetter.getTimestampMillis());
+        appendField(line, deadLetter.getProjectId());
+        appendField(line, deadLetter.getEventCollection());
+        appendField(line, deadLetter.getReason() == null ? null : deadLetter.getReason().name());
+        appendField(line, deadLetter.getErrorName());
+        appendField(line, deadLetter.getErrorDescription());
+        appendField(line, deadLetter.getEvent());
+        line.append('\n');
+
+        if (writer == null) {
+            boolean incompleteLine = endsWithIncompleteLine();
+            writer = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(file, true), ENCODING));
+            if (incompleteLine) {
+                writer.write('\n');
+            }
+        }
+        writer.write(line.toString());
+        writer.flush();
+    }
+
+    /**
+     * Reads every dead letter in the file. Lines which can't be parsed, such as one left
+     * incomplete by a crash, are skipped.
+     *
+     * @return The dead letters, oldest first.
+     * @throws IOException If the file can't be read.
+     */
+    public synchronized List<DeadLetter> read() throws IOException {
+        List<DeadLetter> deadLetters = new ArrayList<DeadLetter>();
+        if (!file.exists()) {
+            return deadLetters;
+        }
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), ENCODING));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                DeadLetter deadLetter = parseLine(line);
+                if (deadLetter == null) {
+                    KeenLogging.log("Skipping unreadable dead letter in " + file);
+                } else {
+                    deadLetters.add(deadLetter);
+                }
+            }
+        } finally {
+            KeenUtils.closeQuietly(reader);
+        }
+        return deadLetters;
+    }
+
+    /**
+     * Reads every dead letter in the file and removes them. Dead letters can't be added while
+     * this runs, so each one is either returned or left in the file.
+     *
+     * @return The dead letters, oldest first.
+     * @throws IOException If the file can't be read or truncated.
+     */
+    public synchronized List<DeadLetter> drain() throws IOException {
+        List<DeadLetter> deadLetters = read();
+        clear();
+        return deadLetters;
+    }
+
+    /**
+     * Removes every dead letter from the file. Use {@link #drain()} to read and remove them
+     * without losing any added in between.
+     *
+     * @throws IOException If the file can't be truncated.
+     */
+    public synchronized void clear() throws IOException {
+        close();
+        if (file.exists()) {
+            new FileOutputStream(file, false).close();
+        }
+    }
+
+    /**
+     * Closes the file. It's opened again if another dead letter is added.
+     */
+    @Override
+    public synchronized void close() {
+        if (writer != null) {
+            KeenUtils.closeQuietly(writer);
+            writer = null;
+        }
+    }
+
+    ///// PRIVATE CONSTANTS /////
+
+    private static final String ENCODING = "UTF-8";
+    private static final String NULL_FIELD = "\\N";
+    private static final int NUM_FIELDS = 7;
+
+    ///// PRIVATE FIELDS /////
+
+    private final File file;
+    private Writer writer;
+
+    ///// PRIVATE METHODS /////
+
+    /**
+     * Checks whether the file ends part way through a line.
+     */
+    private boolean endsWithIncompleteLine() throws IOException {
+        long length = file.length();
+        if (length == 0) {
+            return false;
+        }
+
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            in.seek(length - 1);
+            return in.read() != '\n';
+        } finally {
+            KeenUtils.closeQuietly(in);
+        }
+    }
+
+    private static void appendField(StringBuilder line, String value) {
+        line.append('\t');
+        if (value == null) {
+            line.append(NULL_FIELD);
+            return;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\t':
+                    line.append("\\t");
+                    break;
+                case '\n':
+                    line.append("\\n");
+                    break;
+                case '\r':
+                    line.append("\\r");
+                    break;
+                case '\\':
+                    line.append("\\\\");
+                    break;
+                default:
+                    line.append(c);
+            }
+        }
+    }
+
+    private static DeadLetter parseLine(String line) {
+        String[] fields = line.split("\t", -1);
+        if (fields.length != NUM_FIELDS) {
+            return null;
+        }
+        try {
+            String reason = unescape(fields[3]);
+            return new DeadLetter(Long.parseLong(fields[0]), unescape(fields[1]),
+                    unescape(fields[2]), reason == null ? null : KeenEventStatus.valueOf(reason),
+                    unescape(fields[4]), unescape(fields[5]), unescape(fields[6]));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static String unescape(String field) {
+        if (NULL_FIELD.equals(field)) {
+            return null;
+        }
+        if (field.indexOf('\\') < 0) {
+            return field;
+        }
+
+        StringBuilder value = new StringBuilder(field.length());
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c != '\\' || i + 1 == field.length()) {
+                value.append(c);
+                continue;
+            }
+            char escaped = field.charAt(++i);
+            switch (escaped) {
+                case 't':
+                    value.append('\t');
+                    break;
+                case 'n':
+                    value.append('\n');
+                    break;
+                case 'r':
+                    value.append('\r');
+                    break;
+                default:
+                    value.append(escaped);
+            }
+        }
+        return value.toString();
+    }
+}
@@ -2,8 +2,10 @@ package io.keen.client.java;
 
 import java.io.File;
 import java.io.FileFilter;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
@@ -24,7 +26,7 @@ import java.util.Map;
  * @author Kevin Litwack (kevin@kevinlitwack.com)
  * @since 2.0.0
  */
-public class FileEventStore implements KeenAttemptCountingEventStore {
+public class FileEventStore implements KeenAttemptCountingEventStore, KeenBinaryEventStore {
 
     ///// PUBLIC CONSTRUCTORS /////
 
@@ -40,6 +42,35 @@ public class FileEventStore implements KeenAttemptCountingEventStore {
         }
 
         this.root = root;
+        this.quota = null;
+    }
+
+    /**
+     * Constructs a new File-based event store whose total size is limited by a quota. Instead of
+     * the fixed per-collection limit, the quota's limits apply, and events are evicted as
+     * described by {@link EventStoreQuota}.
+     * <p>
+     * Events already in the store are counted against the quota, oldest first, which requires
+     * listing the store once. Afterwards the quota keeps track of the store's contents, and
+     * storing an event no longer lists the collection directory.
+     * </p>
+     *
+     * @param root  The root directory in which to store queued event files.
+     * @param quota The quota to enforce.
+     * @throws IOException If the provided {@code root} isn't an existing directory, or the
+     *                     existing events can't be listed.
+     */
+    public FileEventStore(File root, EventStoreQuota quota) throws IOException {
+        if (!root.exists() || !root.isDirectory()) {
+            throw new IOException("Event store root '" + root + "' must exist and be a directory");
+        }
+        if (quota == null) {
+            throw new IllegalArgumentException("Quota must not be null");
+        }
+
+        this.root = root;
+        this.quota = quota;
+        countExistingEvents();
     }
 
     ///// PUBLIC METHODS /////
@@ -50,21 +81,41 @@ public class FileEventStore implements KeenAttemptCountingEventStore {
     @Override
     public Object store(String projectId, String eventCollection,
                         String event) throws IOException {
-        // Prepare the collection cache directory.
-        File collectionCacheDir = prepareCollectionDir(projectId, eventCollection);
+        return storeBytes(projectId, eventCollection, event.getBytes(ENCODING));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object storeBytes(String projectId, String eventCollection,
+                             byte[] event) throws IOException {
+        // Prepare the collection cache directory. With a quota, the quota makes room instead.
+        File collectionCacheDir = (quota == null ?
+                prepareCollectionDir(projectId, eventCollection) :
+                getCollectionDir(projectId, eventCollection));
 
         // Create the cache file.
         Calendar timestamp = Calendar.getInstance();
         File cacheFile = getFileForEvent(collectionCacheDir, timestamp);
 
         // Write the event to the cache file.
-        Writer writer = null;
+        OutputStream out = null;
         try {
-            OutputStream out = new FileOutputStream(cacheFile);
-            writer = new OutputStreamWriter(out, ENCODING);
-            writer.write(event);
+            out = new FileOutputStream(cacheFile);
+            out.write(event);
         } finally {
-            KeenUtils.closeQuietly(writer);
+            KeenUtils.closeQuietly(out);
+        }
+
+        FileEventStoreIndex index = this.index;
+        if (index != null) {
+            index.added(cacheFile);
+        }
+
+        // Evict events to stay within the quota.
+        if (quota != null) {
+            deleteEvictedEvents(quota.add(projectId, eventCollection, cacheFile, event.length));
         }
 
         // Return the file as the handle to use for retrieving/removing the event.
@@ -82,7 +133,26 @@ public class FileEventStore implements KeenAttemptCountingEventStore {
 
         File eventFile = (File) handle;
         if (eventFile.exists() && eventFile.isFile()) {
-            return KeenUtils.convertFileToString(eventFile);
+            byte[] bytes = readFile(eventFile);
+            return (CompactEventCodec.isCompact(bytes) ?
+                    CompactEventCodec.decodeToJson(bytes) : new String(bytes, ENCODING));
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte[] getBytes(Object handle) throws IOException {
+        if (!(handle instanceof File)) {
+            throw new IllegalArgumentException("Expected File, but was " + handle.getClass());
+        }
+
+        File eventFile = (File) handle;
+        if (eventFile.exists() && eventFile.isFile()) {
+            return readFile(eventFile);
         } else {
             return null;
         }
@@ -103,14 +173,24 @@ public class FileEventStore implements KeenAttemptCountingEventStore {
                 KeenLogging.log(String.format(Locale.US, "Successfully deleted file: %s",
                         eventFile.getAbsolutePath()));
             } else {
+                // The event is still there, so keep counting it.
                 KeenLogging.log(String.format(Locale.US,
                         "CRITICAL ERROR: Could not remove event at %s",
                         eventFile.getAbsolutePath()));
+                return;
             }
         } else {
             KeenLogging.log(String.format(Locale.US, "WARNING: no event found at %s",
                     eventFile.getAbsolutePath()));
         }
+
+        if (quota != null) {
+            quota.remove(eventFile);
+        }
+        FileEventStoreIndex index = this.index;
+        if (index != null) {
+            index.removed(eventFile);
+        }
     }
 
     /**
@@ -118,6 +198,13 @@ public class FileEventStore implements KeenAttemptCountingEventStore {
      */
     @Override
     public Map<String, List<Object>> getHandles(String projectId) throws IOException {
+        FileEventStoreIndex index = this.index;
+        if (index != null) {
+            Map<String, List<Object>> handleMap = index.getHandles(projectId);
+            saveIndexIfDue(index);
+            return handleMap;
+        }
+
         File projectDir = getProjectDir(projectId, false);
         if (projectDir.exists() && projectDir.isDirectory()) {
             return getHandlesFromProjectDirectory(projectDir);
@@ -142,8 +229,10 @@ public class FileEventStore implements KeenAttemptCountingEventStore {
      */
     @Override
     public void setAttempts(String projectId, String eventCollection, String attemptsString) throws IOException {
-        // Prepare the collection cache directory.
-        File collectionCacheDir = prepareCollectionDir(projectId, eventCollection);
+        // Prepare the collection cache directory. With a quota, the quota makes room instead.
+        File collectionCacheDir = (quota == null ?
+                prepareCollectionDir(projectId, eventCollection) :
+                getCollectionDir(projectId, eventCollection));
 
         // Create the cache file.
         File cacheFile = new File(collectionCacheDir, ATTEMPTS_JSON_FILE_NAME);
@@ -159,6 +248,61 @@ public class FileEventStore implements KeenAttemptCountingEventStore {
         }
     }
 
+    /**
+     * Enables or disables the persisted index of queued events.
+     * <p>
+     * Without the index, listing queued events and storing each event both list the collection
+     * directories. With the index enabled, the store loads a manifest of its contents from the
+     * {@code keen} directory with one sequential read. Each project is checked against its
+     * directories the first time it's used; collections which haven't changed since the manifest
+     * was written aren't listed at all, and the others are listed in parallel. If the manifest is
+     * missing or corrupt, it is rebuilt the same way. From then on the store keeps the index up
+     * to date itself. The manifest is written again when queued events are listed for a flush,
+     * but at most once a minute; an out of date manifest only means that the collections changed
+     * since are listed again next time. Call {@link #saveIndex()} to write it immediately.
+     * </p>
+     * <p>
+     * The index assumes that only this store changes the directory once a project has been
+     * checked. Enable it before using the store.
+     * </p>
+     *
+     * @param enabled Whether to use the index.
+     * @throws IOException If the {@code keen} directory can't be created, or the manifest can't
+     *                     be written when disabling the index.
+     */
+    public synchronized void setIndexEnabled(boolean enabled) throws IOException {
+        if (enabled && index == null) {
+            FileEventStoreIndex newIndex = new FileEventStoreIndex(getKeenCacheDirectory(),
+                    ATTEMPTS_JSON_FILE_NAME);
+            newIndex.load();
+            index = newIndex;
+        } else if (!enabled && index != null) {
+            FileEventStoreIndex oldIndex = index;
+            index = null;
+            oldIndex.save();
+        }
+    }
+
+    /**
+     * @return Whether the persisted index of queued events is enabled.
+     */
+    public boolean isIndexEnabled() {
+        return index != null;
+    }
+
+    /**
+     * Writes the index manifest now if it has changed, for example before the application
+     * exits. Does nothing if the index isn't enabled.
+     *
+     * @throws IOException If the manifest can't be written.
+     */
+    public void saveIndex() throws IOException {
+        FileEventStoreIndex index = this.index;
+        if (index != null) {
+            index.save();
+        }
+    }
+
     ///// PRIVATE CONSTANTS /////
 
     /**
@@ -181,12 +325,126 @@ public class FileEventStore implements KeenAttemptCountingEventStore {
      */
     private static final String ATTEMPTS_JSON_FILE_NAME = "__attempts.json";
 
+    /**
+     * The minimum time between writes of the index manifest when listing queued events.
+     */
+    private static final long MIN_INDEX_SAVE_INTERVAL_MILLIS = 60000;
+
+    /**
+     * Orders event files by name, which for files in the same directory puts the oldest first.
+     */
+    private static final Comparator<File> EVENT_FILE_ORDER = new Comparator<File>() {
+        @Override
+        public int compare(File file, File file1) {
+            return file.getAbsolutePath().compareToIgnoreCase(file1.getAbsolutePath());
+        }
+    };
+
     ///// PRIVATE FIELDS /////
 
     private final File root;
+    private final EventStoreQuota quota;
+    private volatile FileEventStoreIndex index;
+    private volatile long lastIndexSaveMillis;
 
     ///// PRIVATE METHODS /////
 
+    /**
+     * Counts the events already in the store against the quota, oldest first, deleting any which
+     * don't fit.
+     *
+     * @throws IOException If there is an error listing the store.
+     */
+    private void countExistingEvents() throws IOException {
+        File[] projectDirs = getSubDirectories(getKeenCacheDirectory());
+        if (projectDirs == null) {
+            return;
+        }
+
+        for (File projectDir : projectDirs) {
+            File[] collectionDirs = getSubDirectories(projectDir);
+            if (collectionDirs == null) {
+                continue;
+            }
+
+            for (File collectionDir : collectionDirs) {
+                File[] files = getFilesInDir(collectionDir);
+                if (files == null) {
+                    continue;
+                }
+
+                // File names start with the time the event was stored.
+                Arrays.sort(files, EVENT_FILE_ORDER);
+                for (File file : files) {
+                    deleteEvictedEvents(quota.add(projectDir.getName(), collectionDir.getName(),
+                            file, file.length()));
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the whole contents of a file.
+     *
+     * @param file The file to read.
+     * @return The contents of the file.
+     * @throws IOException If the file can't be read.
+     */
+    private byte[] readFile(File file) throws IOException {
+        InputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            return KeenUtils.readFully(in);
+        } finally {
+            KeenUtils.closeQuietly(in);
+        }
+    }
+
+    /**
+     * Writes the index manifest unless it was written less than
+     * {@link #MIN_INDEX_SAVE_INTERVAL_MILLIS} ago, so that frequent flushes don't rewrite the
+     * whole manifest each time. Logs rather than throws if it can't be written; the index is
+     * rebuilt from the directories next time if the manifest is out of date.
+     *
+     * @param index The index to save.
+     */
+    private void saveIndexIfDue(FileEventStoreIndex index) {
+        long now = System.currentTimeMillis();
+        if (lastIndexSaveMillis != 0 && now - lastIndexSaveMillis < MIN_INDEX_SAVE_INTERVAL_MILLIS) {
+            return;
+        }
+        lastIndexSaveMillis = now;
+        try {
+            index.save();
+        } catch (IOException e) {
+            KeenLogging.log("Failed to save event store manifest: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Deletes the files of events evicted by the quota.
+     *
+     * @param evicted The handles of the evicted events.
+     */
+    private void deleteEvictedEvents(List<Object> evicted) {
+        FileEventStoreIndex index = this.index;
+        for (Object handle : evicted) {
+            File file = (File) handle;
+            if (index != null) {
+                index.removed(file);
+            }
+            if (!file.delete()) {
+                KeenLogging.log(String.format(Locale.US,
+                        "CRITICAL: can't delete evicted event %s, cache is going to be too big",
+                        file.getAbsolutePath()));
+            }
+        }
+        if (!evicted.isEmpty()) {
+            KeenLogging.log(String.format(Locale.US, "Evicted %d events to stay within the " +
+                    "event store quota", evicted.size()));
+        }
+    }
+
     /**
      * Gets the handle map for all collections in the specified project cache directory.
      *
@@ -373,8 +631,10 @@ public class FileEventStore implements KeenAttemptCountingEventStore {
         File collectionDir = getCollectionDir(projectId, eventCollection);
 
         // Make sure the max number of events has not been exceeded in this collection. If it has,
-        // delete events to make room.
-        File[] eventFiles = getFilesInDir(collectionDir);
+        // delete events to make room. The index, if enabled, saves listing the directory.
+        FileEventStoreIndex index = this.index;
+        File[] eventFiles = (index == null ? getFilesInDir(collectionDir) :
+                index.getFiles(projectId, eventCollection).toArray(new File[0]));
         if (eventFiles.length >= getMaxEventsPerCollection()) {
             // need to age out old data so the cache doesn't grow too large
             KeenLogging.log(String.format(Locale.US, "Too many events in cache for %s, " +
@@ -384,14 +644,15 @@ public class FileEventStore implements KeenAttemptCountingEventStore {
 
             // delete the eldest (i.e. first we have to sort the list by name)
             List<File> fileList = Arrays.asList(eventFiles);
-            Collections.sort(fileList, new Comparator<File>() {
-                @Override
-                public int compare(File file, File file1) {
-                    return file.getAbsolutePath().compareToIgnoreCase(file1.getAbsolutePath());
-                }
-            });
+            Collections.sort(fileList, EVENT_FILE_ORDER);
             for (int i = 0; i < getNumberEventsToForget(); i++) {
                 File f = fileList.get(i);
+                if (index != null) {
+                    index.removed(f);
+                }
+                if (quota != null) {
+                    quota.remove(f);
+                }
                 if (!f.delete()) {
                     KeenLogging.log(String.format(Locale.US,
                             "CRITICAL: can't delete file %s, cache is going to be too big",
@@ -0,0 +1,473 @@
+package io.keen.client.java;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+
+/**
+ * In-memory index of the event files in a {@link FileEventStore}, persisted as a single manifest
+ * file in the store's {@code keen} directory.
+ * <p>
+ * The manifest is loaded with one sequential read. It records, for each collection directory, the
+ * names of its event files and the directory's modification time. Each project is validated
+ * against the file system the first time it's used: collections whose directory hasn't been
+ * modified since the manifest was written are trusted, and the others are listed again, in
+ * parallel. A missing or corrupt manifest is discarded, so every collection is listed, which
+ * rebuilds the index.
+ * </p>
+ * <p>
+ * After validation the index is kept up to date by the store, so listing a project's events no
+ * longer touches the file system. Files added to or removed from a validated project by other
+ * processes aren't noticed until the store is reopened.
+ * </p>
+ */
+final class FileEventStoreIndex {
+
+    /**
+     * The name of the manifest file in the store's {@code keen} directory.
+     */
+    static final String MANIFEST_FILE_NAME = "__manifest";
+
+    private static final int MAGIC = 0x4B455849; // "KEXI"
+    private static final byte VERSION = 1;
+    private static final String TEMP_EXTENSION = ".tmp";
+
+    /**
+     * Marks a collection whose recorded file names must be checked by listing its directory.
+     */
+    private static final long UNKNOWN_MODIFIED = -1;
+
+    /**
+     * Directory modification times are only trusted if they are at least this old when the
+     * manifest is written; some file systems only record them to the second, so a directory
+     * modified again shortly afterwards could keep the same time.
+     */
+    private static final long MODIFIED_GRANULARITY_MILLIS = 2000;
+
+    private static final int MAX_VALIDATION_THREADS = 4;
+
+    private final File keenDir;
+    private final String excludedFileName;
+    private final Map<String, Map<String, CollectionEntry>> projects =
+            new HashMap<String, Map<String, CollectionEntry>>();
+    private final Set<String> validatedProjects = new HashSet<String>();
+    private boolean dirty;
+
+    /**
+     * Creates an empty index.
+     *
+     * @param keenDir          The store's {@code keen} directory, which contains one directory per
+     *                         project.
+     * @param excludedFileName The name of a file in collection directories which isn't an event.
+     */
+    FileEventStoreIndex(File keenDir, String excludedFileName) {
+        this.keenDir = keenDir;
+        this.excludedFileName = excludedFileName;
+    }
+
+    /**
+     * Loads the manifest, if there is one. A manifest which can't be read is ignored, and the
+     * index is rebuilt from the file system as projects are used.
+     */
+    synchronized void load() {
+        projects.clear();
+        validatedProjects.clear();
+
+        File manifest = getManifestFile();
+        if (!manifest.isFile()) {
+            KeenLogging.log("No event store manifest found, rebuilding the index");
+            dirty = true;
+            return;
+        }
+
+        try {
+            readManifest(manifest);
+            dirty = false;
+        } catch (IOException e) {
+            KeenLogging.log(String.format(Locale.US, "Discarding unreadable event store " +
+                    "manifest %s: %s", manifest.getAbsolutePath(), e.getMessage()));
+            projects.clear();
+            dirty = true;
+        }
+    }
+
+    /**
+     * Writes the manifest if the index has changed since it was loaded or last saved. The manifest
+     * is written to a temporary file, which then replaces the previous manifest.
+     *
+     * @throws IOException If the manifest can't be written.
+     */
+    synchronized void save() throws IOException {
+        if (!dirty) {
+            return;
+        }
+
+        long trustedBefore = System.currentTimeMillis() - MODIFIED_GRANULARITY_MILLIS;
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buffer);
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeInt(projects.size());
+        for (Map.Entry<String, Map<String, CollectionEntry>> project : projects.entrySet()) {
+            boolean validated = validatedProjects.contains(project.getKey());
+            File projectDir = new File(keenDir, project.getKey());
+            out.writeUTF(project.getKey());
+            out.writeInt(project.getValue().size());
+            for (Map.Entry<String, CollectionEntry> collection : project.getValue().entrySet()) {
+                CollectionEntry entry = collection.getValue();
+                if (validated) {
+                    // The names are known to match the directory, so record its current state.
+                    long modified = new File(projectDir, collection.getKey()).lastModified();
+                    entry.modified = (modified > 0 && modified < trustedBefore ?
+                            modified : UNKNOWN_MODIFIED);
+                }
+                out.writeUTF(collection.getKey());
+                out.writeLong(entry.modified);
+                out.writeInt(entry.names.size());
+                for (String name : entry.names) {
+                    out.writeUTF(name);
+                }
+            }
+        }
+        out.flush();
+
+        byte[] bytes = buffer.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+
+        File manifest = getManifestFile();
+        File tempFile = new File(keenDir, MANIFEST_FILE_NAME + TEMP_EXTENSION);
+        DataOutputStream fileOut = null;
+        try {
+            fileOut = new DataOutputStream(new FileOutputStream(tempFile));
+            fileOut.write(bytes);
+            fileOut.writeLong(crc.getValue());
+        } finally {
+            KeenUtils.closeQuietly(fileOut);
+        }
+
+        // File.renameTo won't replace an existing file on every platform.
+        if (!tempFile.renameTo(manifest) && !(manifest.delete() && tempFile.renameTo(manifest))) {
+            throw new IOException("Could not replace event store manifest " +
+                    manifest.getAbsolutePath());
+        }
+        dirty = false;
+    }
+
+    /**
+     * Gets the handles of all events in the given project, validating the project first if this
+     * is the first time it's used.
+     *
+     * @param projectId The project ID.
+     * @return A map from collection name to the event files in the collection, oldest first.
+     * @throws IOException If the project's directories can't be listed.
+     */
+    synchronized Map<String, List<Object>> getHandles(String projectId) throws IOException {
+        Map<String, CollectionEntry> collections = getValidatedProject(projectId);
+        File projectDir = new File(keenDir, projectId);
+
+        Map<String, List<Object>> handleMap = new HashMap<String, List<Object>>();
+        for (Map.Entry<String, CollectionEntry> collection : collections.entrySet()) {
+            File collectionDir = new File(projectDir, collection.getKey());
+            List<Object> handleList = new ArrayList<Object>(collection.getValue().names.size());
+            for (String name : collection.getValue().names) {
+                handleList.add(new File(collectionDir, name));
+            }
+            handleMap.put(collection.getKey(), handleList);
+        }
+        return handleMap;
+    }
+
+    /**
+     * Gets the event files in the given collection, validating its project first if this is the
+     * first time it's used.
+     *
+     * @param projectId       The project ID.
+     * @param eventCollection The name of the event collection.
+     * @return The event files in the collection, oldest first.
+     * @throws IOException If the project's directories can't be listed.
+     */
+    synchronized List<File> getFiles(String projectId, String eventCollection) throws IOException {
+        CollectionEntry entry = getValidatedProject(projectId).get(eventCollection);
+        List<File> files = new ArrayList<File>();
+        if (entry != null) {
+            File collectionDir = new File(new File(keenDir, projectId), eventCollection);
+            for (String name : entry.names) {
+                files.add(new File(collectionDir, name));
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Records that an event file was added to a collection.
+     *
+     * @param eventFile The new event file.
+     */
+    synchronized void added(File eventFile) {
+        File collectionDir = eventFile.getParentFile();
+        String projectId = collectionDir.getParentFile().getName();
+        Map<String, CollectionEntry> collections = projects.get(projectId);
+        if (collections == null) {
+            collections = new HashMap<String, CollectionEntry>();
+            projects.put(projectId, collections);
+        }
+        CollectionEntry entry = collections.get(collectionDir.getName());
+        if (entry == null) {
+            entry = new CollectionEntry(new TreeSet<String>(), UNKNOWN_MODIFIED);
+            collections.put(collectionDir.getName(), entry);
+        }
+        entry.names.add(eventFile.getName());
+        dirty = true;
+    }
+
+    /**
+     * Records that an event file was removed from a collection.
+     *
+     * @param eventFile The removed event file.
+     */
+    synchronized void removed(File eventFile) {
+        File collectionDir = eventFile.getParentFile();
+        if (collectionDir == null || collectionDir.getParentFile() == null) {
+            return;
+        }
+        Map<String, CollectionEntry> collections =
+                projects.get(collectionDir.getParentFile().getName());
+        CollectionEntry entry = (collections == null ? null :
+                collections.get(collectionDir.getName()));
+        if (entry != null && entry.names.remove(eventFile.getName())) {
+            dirty = true;
+        }
+    }
+
+    ///// PRIVATE METHODS /////
+
+    private File getManifestFile() {
+        return new File(keenDir, MANIFEST_FILE_NAME);
+    }
+
+    /**
+     * Reads the whole manifest into memory, verifies its checksum and parses it.
+     */
+    private void readManifest(File manifest) throws IOException {
+        long length = manifest.length();
+        if (length < 8 || length > Integer.MAX_VALUE) {
+            throw new IOException("Invalid manifest length " + length);
+        }
+
+        byte[] bytes = new byte[(int) length];
+        InputStream in = null;
+        try {
+            in = new FileInputStream(manifest);
+            new DataInputStream(in).readFully(bytes);
+        } finally {
+            KeenUtils.closeQuietly(in);
+        }
+
+        int contentLength = bytes.length - 8;
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, contentLength);
+        DataInputStream data = new DataInputStream(new ByteArrayInputStream(bytes));
+        data.skipBytes(contentLength);
+        if (data.readLong() != crc.getValue()) {
+            throw new IOException("Checksum mismatch");
+        }
+
+        data = new DataInputStream(new ByteArrayInputStream(bytes, 0, contentLength));
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not an event store manifest");
+        }
+        byte version = data.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported manifest version " + version);
+        }
+
+        int projectCount = data.readInt();
+        for (int i = 0; i < projectCount; i++) {
+            String projectId = data.readUTF();
+            int collectionCount = data.readInt();
+            Map<String, CollectionEntry> collections = new HashMap<String, CollectionEntry>();
+            for (int j = 0; j < collectionCount; j++) {
+                String collection = data.readUTF();
+                long modified = data.readLong();
+                int nameCount = data.readInt();
+                TreeSet<String> names = new TreeSet<String>();
+                for (int k = 0; k < nameCount; k++) {
+                    names.add(data.readUTF());
+                }
+                collections.put(collection, new CollectionEntry(names, modified));
+            }
+            projects.put(projectId, collections);
+        }
+    }
+
+    /**
+     * Gets a project's collections, validating them against the file system first if the project
+     * hasn't been used yet.
+     */
+    private Map<String, CollectionEntry> getValidatedProject(String projectId) throws IOException {
+        if (!validatedProjects.contains(projectId)) {
+            validateProject(projectId);
+            validatedProjects.add(projectId);
+        }
+        Map<String, CollectionEntry> collections = projects.get(projectId);
+        if (collections == null) {
+            collections = new HashMap<String, CollectionEntry>();
+            projects.put(projectId, collections);
+        }
+        return collections;
+    }
+
+    /**
+     * Brings the entries for a project up to date with its directory. Collections which may have
+     * changed are listed in parallel.
+     */
+    private void validateProject(String projectId) throws IOException {
+        Map<String, CollectionEntry> indexed = projects.get(projectId);
+        File[] collectionDirs = new File(keenDir, projectId).listFiles(new FileFilter() {
+            public boolean accept(File file) {
+                return file.isDirectory();
+            }
+        });
+
+        Map<String, CollectionEntry> collections = new HashMap<String, CollectionEntry>();
+        List<Callable<CollectionEntry>> listings = new ArrayList<Callable<CollectionEntry>>();
+        List<String> listedCollections = new ArrayList<String>();
+        if (collectionDirs != null) {
+            for (final File collectionDir : collectionDirs) {
+                CollectionEntry entry = (indexed == null ? null :
+                        indexed.get(collectionDir.getName()));
+                if (entry != null && entry.modified != UNKNOWN_MODIFIED &&
+                        entry.modified == collectionDir.lastModified()) {
+                    collections.put(collectionDir.getName(), entry);
+                } else {
+                    listedCollections.add(collectionDir.getName());
+                    listings.add(new Callable<CollectionEntry>() {
+                        @Override
+                        public CollectionEntry call() throws IOException {
+                            return listCollection(collectionDir);
+                        }
+                    });
+                }
+            }
+        }
+
+        List<CollectionEntry> listed = runAll(listings);
+        for (int i = 0; i < listed.size(); i++) {
+            collections.put(listedCollections.get(i), listed.get(i));
+        }
+
+        if (!listings.isEmpty() || indexed == null || indexed.size() != collections.size()) {
+            KeenLogging.log(String.format(Locale.US, "Validated event store index for project " +
+                    "'%s': %d collections, %d listed", projectId, collections.size(),
+                    listings.size()));
+            dirty = true;
+        }
+        projects.put(projectId, collections);
+    }
+
+    /**
+     * Lists the event files in a collection directory by name, without examining each file.
+     */
+    private CollectionEntry listCollection(File collectionDir) throws IOException {
+        String[] names = collectionDir.list();
+        if (names == null) {
+            throw new IOException("Could not list collection cache directory '" +
+                    collectionDir.getAbsolutePath() + "'");
+        }
+
+        TreeSet<String> eventNames = new TreeSet<String>();
+        for (String name : names) {
+            if (!name.equals(excludedFileName)) {
+                eventNames.add(name);
+            }
+        }
+        return new CollectionEntry(eventNames, UNKNOWN_MODIFIED);
+    }
+
+    /**
+     * Runs the given tasks, in parallel if there is more than one, and returns their results in
+     * order.
+     */
+    private static <T> List<T> runAll(List<Callable<T>> tasks) throws IOException {
+        List<T> results = new ArrayList<T>(tasks.size());
+        if (tasks.size() == 1) {
+            try {
+                results.add(tasks.get(0).call());
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException(e);
+            }
+            return results;
+        } else if (tasks.isEmpty()) {
+            return results;
+        }
+
+        int threads = Math.min(tasks.size(),
+                Math.min(MAX_VALIDATION_THREADS, Runtime.getRuntime().availableProcessors()));
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "keen-event-store-index");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        try {
+            Iterator<Future<T>> futures = executor.invokeAll(tasks).iterator();
+            while (futures.hasNext()) {
+                results.add(futures.next().get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while validating the event store index", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * The indexed event file names of one collection, and the modification time of its directory
+     * when they were recorded.
+     */
+    private static class CollectionEntry {
+        final TreeSet<String> names;
+        long modified;
+
+        CollectionEntry(TreeSet<String> names, long modified) {
+            this.names = names;
+            this.modified = modified;
+        }
+    }
+}
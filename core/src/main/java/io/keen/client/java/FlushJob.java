@@ -0,0 +1,98 @@
+package io.keen.client.java;
+
+/**
+ * Describes a deferred flush for a {@link FlushScheduler} to run: how long it must wait at least,
+ * the conditions it should wait for, and the maximum time it may wait for them.
+ * <p>
+ * A network connection is always required. Once the maximum latency has passed the job should
+ * run even if its other constraints haven't been met, so that queued events are never held
+ * indefinitely.
+ * </p>
+ */
+public final class FlushJob {
+
+    private final long delayMillis;
+    private final long maxLatencyMillis;
+    private final boolean unmeteredNetworkRequired;
+    private final boolean chargingRequired;
+
+    /**
+     * Creates a job.
+     *
+     * @param delayMillis              The minimum time to wait before flushing, in milliseconds.
+     * @param maxLatencyMillis         The maximum time to wait for the constraints to be met, in
+     *                                 milliseconds. Must not be less than {@code delayMillis}.
+     * @param unmeteredNetworkRequired Whether to wait for an unmetered network.
+     * @param chargingRequired         Whether to wait for the device to be charging.
+     */
+    public FlushJob(long delayMillis, long maxLatencyMillis,
+                    boolean unmeteredNetworkRequired, boolean chargingRequired) {
+        if (delayMillis < 0 || maxLatencyMillis < delayMillis) {
+            throw new IllegalArgumentException("Invalid flush job delay " + delayMillis +
+                    "ms and max latency " + maxLatencyMillis + "ms");
+        }
+
+        this.delayMillis = delayMillis;
+        this.maxLatencyMillis = maxLatencyMillis;
+        this.unmeteredNetworkRequired = unmeteredNetworkRequired;
+        this.chargingRequired = chargingRequired;
+    }
+
+    /**
+     * @return The minimum time to wait before flushing, in milliseconds.
+     */
+    public long getDelayMillis() {
+        return delayMillis;
+    }
+
+    /**
+     * @return The maximum time to wait for the constraints to be met, in milliseconds.
+     */
+    public long getMaxLatencyMillis() {
+        return maxLatencyMillis;
+    }
+
+    /**
+     * @return Whether to wait for an unmetered network.
+     */
+    public boolean isUnmeteredNetworkRequired() {
+        return unmeteredNetworkRequired;
+    }
+
+    /**
+     * @return Whether to wait for the device to be charging.
+     */
+    public boolean isChargingRequired() {
+        return chargingRequired;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof FlushJob)) return false;
+
+        FlushJob that = (FlushJob) o;
+        return delayMillis == that.delayMillis &&
+                maxLatencyMillis == that.maxLatencyMillis &&
+                unmeteredNetworkRequired == that.unmeteredNetworkRequired &&
+                chargingRequired == that.chargingRequired;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = (int) (delayMillis ^ (delayMillis >>> 32));
+        result = 31 * result + (int) (maxLatencyMillis ^ (maxLatencyMillis >>> 32));
+        result = 31 * result + (unmeteredNetworkRequired ? 1 : 0);
+        result = 31 * result + (chargingRequired ? 1 : 0);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "FlushJob{delayMillis=" + delayMillis +
+                ", maxLatencyMillis=" + maxLatencyMillis +
+                ", unmeteredNetworkRequired=" + unmeteredNetworkRequired +
+                ", chargingRequired=" + chargingRequired + "}";
+    }
+
+}
@@ -0,0 +1,238 @@
+package io.keen.client.java;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides when a client's queued events should be flushed by its {@link FlushScheduler}, so that
+ * uploads are batched into as few network wakeups as possible.
+ * <p>
+ * When the first event is queued, a deferrable flush is scheduled. It waits at least the batch
+ * window, so that further events join the same upload, and by default waits for an unmetered
+ * network while the device is charging. Those constraints are waived once the oldest queued event
+ * has waited for the maximum latency. If the queue reaches the maximum batch size, a flush is
+ * scheduled to run as soon as any network is available. Flushes which leave events behind (for
+ * example because the network was lost) are retried after another batch window, and until then a
+ * full batch doesn't schedule an immediate flush either.
+ * </p>
+ * <p>
+ * The policy only keeps track of timing and counts; it's given the current time explicitly and
+ * returns the job to schedule, if any, so it can be tested without a platform scheduler. A policy
+ * holds state and must only be used by one client.
+ * </p>
+ */
+public class FlushPolicy {
+
+    /**
+     * The default maximum number of queued events before flushing on any network.
+     */
+    public static final int DEFAULT_MAX_BATCH_SIZE = 100;
+
+    /**
+     * The default minimum time to wait for more events before flushing.
+     */
+    public static final long DEFAULT_BATCH_WINDOW_MILLIS = TimeUnit.MINUTES.toMillis(15);
+
+    /**
+     * The default maximum time an event waits for the flush constraints to be met.
+     */
+    public static final long DEFAULT_MAX_LATENCY_MILLIS = TimeUnit.HOURS.toMillis(4);
+
+    private static final long NONE = -1;
+
+    private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+    private long batchWindowMillis = DEFAULT_BATCH_WINDOW_MILLIS;
+    private long maxLatencyMillis = DEFAULT_MAX_LATENCY_MILLIS;
+    private boolean unmeteredNetworkRequired = true;
+    private boolean chargingRequired = true;
+
+    private int queuedCount;
+    private long oldestQueuedAt = NONE;
+    private boolean jobScheduled;
+    private boolean batchFullJobScheduled;
+    private long retryNotBefore = NONE;
+
+    ///// CONFIGURATION /////
+
+    /**
+     * @return The maximum number of queued events before flushing on any network.
+     */
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /**
+     * Sets the maximum number of queued events before a flush is scheduled to run as soon as any
+     * network is available, ignoring the other constraints.
+     *
+     * @param maxBatchSize The maximum batch size; must be positive.
+     * @return This instance (for method chaining).
+     */
+    public FlushPolicy withMaxBatchSize(int maxBatchSize) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize must be at least 1");
+        }
+        this.maxBatchSize = maxBatchSize;
+        return this;
+    }
+
+    /**
+     * @return The minimum time to wait for more events before flushing, in milliseconds.
+     */
+    public long getBatchWindowMillis() {
+        return batchWindowMillis;
+    }
+
+    /**
+     * Sets the minimum time to wait after the first event is queued before flushing, so that
+     * later events are sent in the same batch.
+     *
+     * @param batchWindowMillis The batch window in milliseconds; must not be negative.
+     * @return This instance (for method chaining).
+     */
+    public FlushPolicy withBatchWindowMillis(long batchWindowMillis) {
+        if (batchWindowMillis < 0) {
+            throw new IllegalArgumentException("batchWindowMillis must not be negative");
+        }
+        this.batchWindowMillis = batchWindowMillis;
+        return this;
+    }
+
+    /**
+     * @return The maximum time an event waits for the flush constraints, in milliseconds.
+     */
+    public long getMaxLatencyMillis() {
+        return maxLatencyMillis;
+    }
+
+    /**
+     * Sets the maximum time the oldest queued event may wait for the unmetered network and
+     * charging constraints to be met, after which it is flushed on any network.
+     *
+     * @param maxLatencyMillis The maximum latency in milliseconds; must not be negative.
+     * @return This instance (for method chaining).
+     */
+    public FlushPolicy withMaxLatencyMillis(long maxLatencyMillis) {
+        if (maxLatencyMillis < 0) {
+            throw new IllegalArgumentException("maxLatencyMillis must not be negative");
+        }
+        this.maxLatencyMillis = maxLatencyMillis;
+        return this;
+    }
+
+    /**
+     * @return Whether deferred flushes wait for an unmetered network.
+     */
+    public boolean isUnmeteredNetworkRequired() {
+        return unmeteredNetworkRequired;
+    }
+
+    /**
+     * Sets whether deferred flushes wait for an unmetered network. Defaults to true.
+     *
+     * @param unmeteredNetworkRequired Whether to wait for an unmetered network.
+     * @return This instance (for method chaining).
+     */
+    public FlushPolicy withUnmeteredNetworkRequired(boolean unmeteredNetworkRequired) {
+        this.unmeteredNetworkRequired = unmeteredNetworkRequired;
+        return this;
+    }
+
+    /**
+     * @return Whether deferred flushes wait for the device to be charging.
+     */
+    public boolean isChargingRequired() {
+        return chargingRequired;
+    }
+
+    /**
+     * Sets whether deferred flushes wait for the device to be charging. Defaults to true.
+     *
+     * @param chargingRequired Whether to wait for the device to be charging.
+     * @return This instance (for method chaining).
+     */
+    public FlushPolicy withChargingRequired(boolean chargingRequired) {
+        this.chargingRequired = chargingRequired;
+        return this;
+    }
+
+    ///// SCHEDULING DECISIONS /////
+
+    /**
+     * Records that an event was queued.
+     *
+     * @param nowMillis The current time, in milliseconds.
+     * @return The job to schedule, replacing any scheduled job, or null if the scheduled job
+     * should be left as it is.
+     */
+    public synchronized FlushJob onEventQueued(long nowMillis) {
+        queuedCount++;
+        if (oldestQueuedAt == NONE) {
+            oldestQueuedAt = nowMillis;
+        }
+
+        // After a failed flush, a full batch waits for the retry like any other event.
+        if (queuedCount >= maxBatchSize && nowMillis >= retryNotBefore) {
+            if (batchFullJobScheduled) {
+                return null;
+            }
+            jobScheduled = true;
+            batchFullJobScheduled = true;
+            return new FlushJob(0, 0, false, false);
+        }
+
+        if (jobScheduled) {
+            return null;
+        }
+        return deferredJob(nowMillis);
+    }
+
+    /**
+     * Records that a scheduled flush has started. Events queued from now on are counted towards
+     * the next flush.
+     */
+    public synchronized void onFlushStarted() {
+        queuedCount = 0;
+        oldestQueuedAt = NONE;
+        jobScheduled = false;
+        batchFullJobScheduled = false;
+    }
+
+    /**
+     * Records that a scheduled flush has finished.
+     *
+     * @param nowMillis       The current time, in milliseconds.
+     * @param remainingEvents The number of events still queued after the flush.
+     * @return The job to schedule to retry the remaining events, or null if none is needed.
+     */
+    public synchronized FlushJob onFlushFinished(long nowMillis, int remainingEvents) {
+        if (remainingEvents <= 0) {
+            retryNotBefore = NONE;
+            if (queuedCount == 0) {
+                return null;
+            }
+        } else {
+            // Events left behind by a failed flush are retried after a full batch window, even
+            // if the batch is full, so a persistent failure doesn't turn into a busy loop.
+            retryNotBefore = nowMillis + batchWindowMillis;
+        }
+
+        queuedCount = Math.max(queuedCount, remainingEvents);
+        if (oldestQueuedAt == NONE) {
+            oldestQueuedAt = nowMillis;
+        }
+        if (jobScheduled) {
+            return null;
+        }
+        return deferredJob(nowMillis);
+    }
+
+    ///// PRIVATE METHODS /////
+
+    private FlushJob deferredJob(long nowMillis) {
+        long deadline = Math.max(0, oldestQueuedAt + maxLatencyMillis - nowMillis);
+        long delay = Math.min(batchWindowMillis, deadline);
+        jobScheduled = true;
+        return new FlushJob(delay, deadline, unmeteredNetworkRequired, chargingRequired);
+    }
+
+}
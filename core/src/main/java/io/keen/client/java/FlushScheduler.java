@@ -0,0 +1,34 @@
+package io.keen.client.java;
+
+/**
+ * Interface for scheduling deferred flushes of a client's queued events. Implementations map a
+ * {@link FlushJob} onto a platform facility, such as Android's JobScheduler, which can run the
+ * flush later once the job's constraints are met.
+ * <p>
+ * A scheduler is used by a single {@link KeenClient}. Scheduling is driven by the client's
+ * {@link FlushPolicy}; the scheduler itself makes no decisions about when to flush.
+ * </p>
+ */
+public interface FlushScheduler {
+
+    /**
+     * Sets the task to run when a scheduled job fires. This is called once, when the client is
+     * built. The task flushes synchronously, so it should be run on a background thread.
+     *
+     * @param flushTask The task which flushes the client's queued events.
+     */
+    void setFlushTask(Runnable flushTask);
+
+    /**
+     * Schedules a flush, replacing any job that is already scheduled.
+     *
+     * @param job The job describing when the flush may run.
+     */
+    void schedule(FlushJob job);
+
+    /**
+     * Cancels the scheduled job, if there is one.
+     */
+    void cancel();
+
+}
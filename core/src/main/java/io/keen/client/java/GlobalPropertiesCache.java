@@ -0,0 +1,157 @@
+package io.keen.client.java;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caches a client's global properties, already split into their Keen properties and the rest,
+ * so that adding an event doesn't call the {@link GlobalPropertiesEvaluator} or copy the global
+ * property maps to remove {@code keen}.
+ * <p>
+ * The static global properties are split once per map, and the evaluator's properties once per
+ * event collection. Each split is reused until it's older than the time to live, until it's
+ * invalidated, or until the client is given a different map or evaluator. Changes made to a
+ * global properties map in place, or to what the evaluator returns, are therefore only seen once
+ * the cached split expires or is invalidated.
+ * </p>
+ * <p>
+ * The cache is thread-safe. Two threads which miss at the same time may both evaluate the
+ * properties, and the last to finish is kept.
+ * </p>
+ */
+class GlobalPropertiesCache {
+
+    /**
+     * Global properties split into their Keen properties and the rest. Both maps are immutable.
+     */
+    static final class Split {
+        final Object source;
+        final Map<String, Object> keenProperties;
+        final Map<String, Object> properties;
+        final long expiresAtNanos;
+
+        private Split(Object source, Map<String, Object> keenProperties,
+                      Map<String, Object> properties, long expiresAtNanos) {
+            this.source = source;
+            this.keenProperties = keenProperties;
+            this.properties = properties;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+
+        /**
+         * Adds the properties to an event being built.
+         *
+         * @param keenProperties The event's Keen properties.
+         * @param event          The event.
+         */
+        void mergeInto(Map<String, Object> keenProperties, Map<String, Object> event) {
+            keenProperties.putAll(this.keenProperties);
+            event.putAll(properties);
+        }
+    }
+
+    /**
+     * @param ttlMillis How long a cached split is used for, in milliseconds.
+     */
+    GlobalPropertiesCache(long ttlMillis) {
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+    }
+
+    /**
+     * @return How long a cached split is used for, in milliseconds.
+     */
+    long getTtlMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(ttlNanos);
+    }
+
+    /**
+     * Gets the split of the static global properties.
+     *
+     * @param globalProperties The client's global properties.
+     * @return The split properties.
+     */
+    Split getStatic(Map<String, Object> globalProperties) {
+        long now = nanoTime();
+        Split split = staticSplit;
+        if (!isFresh(split, globalProperties, now)) {
+            split = split(globalProperties, globalProperties, now);
+            staticSplit = split;
+        }
+        return split;
+    }
+
+    /**
+     * Gets the split of the evaluator's global properties for an event collection, calling the
+     * evaluator if there's no fresh split for it.
+     *
+     * @param evaluator       The client's evaluator.
+     * @param eventCollection The event collection.
+     * @return The split properties.
+     */
+    Split getDynamic(GlobalPropertiesEvaluator evaluator, String eventCollection) {
+        long now = nanoTime();
+        Split split = dynamicSplits.get(eventCollection);
+        if (!isFresh(split, evaluator, now)) {
+            split = split(evaluator, evaluator.getGlobalProperties(eventCollection), now);
+            dynamicSplits.put(eventCollection, split);
+        }
+        return split;
+    }
+
+    /**
+     * Discards all cached splits.
+     */
+    void invalidate() {
+        staticSplit = null;
+        dynamicSplits.clear();
+    }
+
+    /**
+     * Discards the cached split of the evaluator's properties for one event collection.
+     *
+     * @param eventCollection The event collection.
+     */
+    void invalidate(String eventCollection) {
+        dynamicSplits.remove(eventCollection);
+    }
+
+    ///// TEST HOOKS /////
+
+    long nanoTime() {
+        return System.nanoTime();
+    }
+
+    ///// PRIVATE FIELDS /////
+
+    private final long ttlNanos;
+    private final ConcurrentMap<String, Split> dynamicSplits =
+            new ConcurrentHashMap<String, Split>();
+    private volatile Split staticSplit;
+
+    ///// PRIVATE METHODS /////
+
+    private static boolean isFresh(Split split, Object source, long now) {
+        return split != null && split.source == source && now - split.expiresAtNanos < 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Split split(Object source, Map<String, Object> globalProperties, long now) {
+        if (globalProperties == null) {
+            return new Split(source, Collections.<String, Object>emptyMap(),
+                    Collections.<String, Object>emptyMap(), now + ttlNanos);
+        }
+
+        // As KeenClient.mergeGlobalProperties: a "keen" value which isn't a map is dropped.
+        Map<String, Object> properties = new HashMap<String, Object>(globalProperties);
+        Object keen = properties.remove("keen");
+        Map<String, Object> keenProperties = (keen instanceof Map ?
+                new HashMap<String, Object>((Map<String, Object>) keen) :
+                Collections.<String, Object>emptyMap());
+        return new Split(source, Collections.unmodifiableMap(keenProperties),
+                Collections.unmodifiableMap(properties), now + ttlNanos);
+    }
+}
@@ -0,0 +1,678 @@
+package io.keen.client.java;
+
+import io.keen.client.java.exceptions.KeenException;
+import io.keen.client.java.exceptions.NoWriteKeyException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Loads historical events into a collection in bulk, from newline-delimited JSON.
+ * <p>
+ * Each line of the input is one event, with an explicit {@code keen.timestamp}. The input may
+ * be gzip-compressed; it's detected automatically. Events are validated as they're read, like
+ * events passed to {@link KeenClient#addEvent(String, Map)}, including merging the client's
+ * global properties, and batched into requests to the batch events endpoint of at most the
+ * maximum number of events and bytes. Up to the maximum number of concurrent requests are sent
+ * at once, and reading waits for a request to finish when they're all busy, so memory use stays
+ * bounded however large the input is. Requests are retried as the client's {@link RetryPolicy}
+ * allows.
+ * </p>
+ * <p>
+ * Requests are posted through the client, so they're also limited by its
+ * {@link KeenClient.Builder#withMaxInFlightRequests(int) maximum number of requests in flight},
+ * which defaults to one. Build the client with at least the backfill's maximum number of
+ * concurrent requests; if it allows fewer, the backfill logs a warning and sends only as many
+ * at once as the client allows.
+ * </p>
+ * <p>
+ * Events the server rejects, or fails to insert, are passed to the client's
+ * {@link KeenDeadLetterSink} if it has one, so they can be replayed later. Lines which aren't
+ * valid events are logged and counted.
+ * </p>
+ * <p>
+ * Given a checkpoint file, the backfill records the number of the first input line which hasn't
+ * been dealt with each time a batch finishes. If the backfill is stopped, by a request which
+ * fails even after retrying or by the process exiting, running it again on the same input with
+ * the same checkpoint file resumes from that line. Batches which were in flight when it stopped
+ * are sent again, so some events may be inserted twice.
+ * </p>
+ * <pre>
+ *     KeenBackfill backfill = new KeenBackfill(client, project)
+ *             .withCheckpointFile(new File("purchases.checkpoint"));
+ *     BackfillReport report = backfill.run("purchases", new File("purchases.ndjson.gz"));
+ * </pre>
+ */
+public class KeenBackfill {
+
+    /**
+     * The default maximum number of events in one request.
+     */
+    public static final int DEFAULT_MAX_BATCH_EVENTS = 1000;
+
+    /**
+     * The default maximum size of one request body, in bytes.
+     */
+    public static final int DEFAULT_MAX_BATCH_BYTES = 2 * 1024 * 1024;
+
+    /**
+     * The default maximum number of requests in flight at once.
+     */
+    public static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 4;
+
+    /**
+     * The default minimum time between progress reports.
+     */
+    public static final long DEFAULT_PROGRESS_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+    /**
+     * Creates a backfill.
+     *
+     * @param client  The client whose JSON handler, HTTP handler, retry policy and dead letter
+     *                sink to use.
+     * @param project The project to load events into.
+     */
+    public KeenBackfill(KeenClient client, KeenProject project) {
+        if (client == null) {
+            throw new IllegalArgumentException("client must not be null");
+        }
+        if (project == null) {
+            throw new IllegalArgumentException("project must not be null");
+        }
+        this.client = client;
+        this.project = project;
+    }
+
+    ///// CONFIGURATION /////
+
+    /**
+     * @return The maximum number of events in one request.
+     */
+    public int getMaxBatchEvents() {
+        return maxBatchEvents;
+    }
+
+    /**
+     * Sets the maximum number of events in one request.
+     *
+     * @param maxBatchEvents The maximum number of events; must be positive.
+     * @return This instance (for method chaining).
+     */
+    public KeenBackfill withMaxBatchEvents(int maxBatchEvents) {
+        if (maxBatchEvents < 1) {
+            throw new IllegalArgumentException("maxBatchEvents must be at least 1");
+        }
+        this.maxBatchEvents = maxBatchEvents;
+        return this;
+    }
+
+    /**
+     * @return The maximum size of one request body, in bytes.
+     */
+    public int getMaxBatchBytes() {
+        return maxBatchBytes;
+    }
+
+    /**
+     * Sets the maximum size of one request body. An event which is larger than this on its own
+     * is sent in a request by itself.
+     *
+     * @param maxBatchBytes The maximum size, in bytes; must be positive.
+     * @return This instance (for method chaining).
+     */
+    public KeenBackfill withMaxBatchBytes(int maxBatchBytes) {
+        if (maxBatchBytes < 1) {
+            throw new IllegalArgumentException("maxBatchBytes must be at least 1");
+        }
+        this.maxBatchBytes = maxBatchBytes;
+        return this;
+    }
+
+    /**
+     * @return The maximum number of requests in flight at once.
+     */
+    public int getMaxConcurrentRequests() {
+        return maxConcurrentRequests;
+    }
+
+    /**
+     * Sets the maximum number of requests in flight at once. The client must allow at least as
+     * many requests in flight, or the backfill is limited to the client's maximum.
+     *
+     * @param maxConcurrentRequests The maximum number of requests; must be positive.
+     * @return This instance (for method chaining).
+     */
+    public KeenBackfill withMaxConcurrentRequests(int maxConcurrentRequests) {
+        if (maxConcurrentRequests < 1) {
+            throw new IllegalArgumentException("maxConcurrentRequests must be at least 1");
+        }
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        return this;
+    }
+
+    /**
+     * @return The file progress is recorded in, or null.
+     */
+    public File getCheckpointFile() {
+        return checkpointFile;
+    }
+
+    /**
+     * Sets the file progress is recorded in. If it already exists, the backfill resumes from the
+     * line it records.
+     *
+     * @param checkpointFile The checkpoint file, or null to always start from the beginning.
+     * @return This instance (for method chaining).
+     */
+    public KeenBackfill withCheckpointFile(File checkpointFile) {
+        this.checkpointFile = checkpointFile;
+        return this;
+    }
+
+    /**
+     * @return The listener progress is reported to, or null.
+     */
+    public BackfillListener getListener() {
+        return listener;
+    }
+
+    /**
+     * Sets the listener progress is reported to.
+     *
+     * @param listener The listener, or null.
+     * @return This instance (for method chaining).
+     */
+    public KeenBackfill withListener(BackfillListener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    /**
+     * @return The minimum time between progress reports, in milliseconds.
+     */
+    public long getProgressIntervalMillis() {
+        return progressIntervalMillis;
+    }
+
+    /**
+     * Sets the minimum time between progress reports. The final report is always made.
+     *
+     * @param progressIntervalMillis The interval, in milliseconds; must not be negative.
+     * @return This instance (for method chaining).
+     */
+    public KeenBackfill withProgressIntervalMillis(long progressIntervalMillis) {
+        if (progressIntervalMillis < 0) {
+            throw new IllegalArgumentException("progressIntervalMillis must not be negative");
+        }
+        this.progressIntervalMillis = progressIntervalMillis;
+        return this;
+    }
+
+    ///// PUBLIC METHODS /////
+
+    /**
+     * Loads the events in a file.
+     *
+     * @param eventCollection The collection to load the events into.
+     * @param input           The file, with one JSON event per line, optionally gzipped.
+     * @return The backfill's final report.
+     * @throws IOException If the file can't be opened, or the checkpoint file can't be read or
+     *                     belongs to a different collection.
+     */
+    public BackfillReport run(String eventCollection, File input) throws IOException {
+        InputStream in = new FileInputStream(input);
+        try {
+            return run(eventCollection, in);
+        } finally {
+            KeenUtils.closeQuietly(in);
+        }
+    }
+
+    /**
+     * Loads the events in a stream. The stream isn't closed.
+     *
+     * @param eventCollection The collection to load the events into.
+     * @param input           The stream, with one JSON event per line, optionally gzipped.
+     * @return The backfill's final report. If it isn't complete, its error says why.
+     * @throws IOException If the checkpoint file can't be read or belongs to a different
+     *                     collection.
+     */
+    public BackfillReport run(String eventCollection, InputStream input) throws IOException {
+        if (!client.isActive() || client.isShutDown()) {
+            throw new IllegalStateException("The client is inactive or has been shut down");
+        }
+        if (project.getWriteKey() == null) {
+            throw new NoWriteKeyException("You can't send events to Keen if you haven't set a write key.");
+        }
+
+        int concurrency = maxConcurrentRequests;
+        if (client.getMaxInFlightRequests() < concurrency) {
+            KeenLogging.log(String.format(Locale.US, "The client allows only %d requests in " +
+                    "flight, so the backfill sends %d at a time instead of %d",
+                    client.getMaxInFlightRequests(), client.getMaxInFlightRequests(), concurrency));
+            concurrency = client.getMaxInFlightRequests();
+        }
+
+        Run run = new Run(eventCollection, readCheckpoint(eventCollection), concurrency);
+        return run.load(input);
+    }
+
+    ///// PRIVATE TYPES /////
+
+    /**
+     * The events of one request, covering a range of input lines.
+     */
+    private static final class Batch {
+        final long startLine;
+        long endLine;
+        final List<byte[]> events = new ArrayList<byte[]>();
+        int bytes;
+
+        Batch(long startLine) {
+            this.startLine = startLine;
+        }
+
+        void add(byte[] event) {
+            events.add(event);
+            bytes += event.length;
+        }
+    }
+
+    /**
+     * The state of one run of the backfill.
+     */
+    private final class Run {
+        private final String eventCollection;
+        private final byte[] bodyPrefix;
+        private final long startMillis = System.currentTimeMillis();
+        private final Semaphore requestPermits;
+        private final ExecutorService executor;
+
+        private final AtomicLong linesRead = new AtomicLong();
+        private final AtomicLong linesSkipped = new AtomicLong();
+        private final AtomicLong invalidLines = new AtomicLong();
+        private final AtomicLong eventsSent = new AtomicLong();
+        private final AtomicLong eventsRejected = new AtomicLong();
+        private final AtomicLong eventsFailed = new AtomicLong();
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicLong bytesSent = new AtomicLong();
+        private volatile Exception error;
+
+        // Guarded by this: the finished line ranges after the checkpoint, by their first line.
+        private final TreeMap<Long, Long> finishedRanges = new TreeMap<Long, Long>();
+        private long checkpoint;
+        private long lastProgressMillis;
+
+        Run(String eventCollection, long checkpoint, int concurrency) throws IOException {
+            this.eventCollection = eventCollection;
+            this.checkpoint = checkpoint;
+            this.requestPermits = new Semaphore(concurrency);
+            this.executor = Executors.newFixedThreadPool(concurrency);
+            this.lastProgressMillis = startMillis;
+
+            StringBuilder prefix = new StringBuilder("{");
+            CompactEventCodec.appendString(prefix, eventCollection);
+            prefix.append(":[");
+            this.bodyPrefix = prefix.toString().getBytes(ENCODING);
+        }
+
+        BackfillReport load(InputStream input) {
+            long resumeLine = checkpoint;
+            Batch batch = new Batch(resumeLine);
+            try {
+                BufferedReader reader = new BufferedReader(new InputStreamReader(
+                        decompress(input), ENCODING), BUFFER_SIZE);
+                String line;
+                while (error == null && (line = reader.readLine()) != null) {
+                    long lineNumber = linesRead.getAndIncrement();
+                    if (lineNumber < resumeLine) {
+                        linesSkipped.incrementAndGet();
+                        continue;
+                    }
+
+                    byte[] event = encodeEvent(line, lineNumber);
+                    if (event == null) {
+                        continue;
+                    }
+                    if (!batch.events.isEmpty() &&
+                            (batch.events.size() >= maxBatchEvents ||
+                                    bodySize(batch) + 1 + event.length > maxBatchBytes)) {
+                        batch.endLine = lineNumber;
+                        submit(batch);
+                        batch = new Batch(lineNumber);
+                    }
+                    batch.add(event);
+                }
+
+                if (error == null) {
+                    batch.endLine = Math.max(linesRead.get(), resumeLine);
+                    if (batch.events.isEmpty()) {
+                        finishRange(batch.startLine, batch.endLine);
+                    } else {
+                        submit(batch);
+                    }
+                }
+            } catch (IOException e) {
+                setError(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                setError(new InterruptedIOException("Interrupted waiting to send a batch"));
+            }
+
+            awaitRequests();
+            synchronized (this) {
+                writeCheckpoint(eventCollection, checkpoint);
+                BackfillReport report = report();
+                notifyListener(report);
+                return report;
+            }
+        }
+
+        private InputStream decompress(InputStream input) throws IOException {
+            BufferedInputStream buffered = new BufferedInputStream(input, BUFFER_SIZE);
+            buffered.mark(2);
+            int first = buffered.read();
+            int second = buffered.read();
+            buffered.reset();
+            if (first == (GZIPInputStream.GZIP_MAGIC & 0xff) &&
+                    second == (GZIPInputStream.GZIP_MAGIC >> 8)) {
+                return new GZIPInputStream(buffered, BUFFER_SIZE);
+            }
+            return buffered;
+        }
+
+        @SuppressWarnings("unchecked")
+        private byte[] encodeEvent(String line, long lineNumber) {
+            if (line.trim().length() == 0) {
+                return null;
+            }
+
+            StringReader reader = new StringReader(line);
+            try {
+                Map<String, Object> event = client.getJsonHandler().readJson(reader);
+                if (event == null) {
+                    throw new IOException("The line isn't a JSON object");
+                }
+                Object keen = event.remove("keen");
+                if (!(keen instanceof Map) || ((Map<String, Object>) keen).get("timestamp") == null) {
+                    throw new IOException("The event has no keen.timestamp");
+                }
+
+                Map<String, Object> newEvent = client.validateAndBuildEvent(project,
+                        eventCollection, event, (Map<String, Object>) keen);
+                StringWriter writer = new StringWriter();
+                client.getJsonHandler().writeJson(writer, newEvent);
+                return writer.toString().getBytes(ENCODING);
+            } catch (IOException e) {
+                logInvalidLine(lineNumber, e);
+            } catch (KeenException e) {
+                logInvalidLine(lineNumber, e);
+            } finally {
+                KeenUtils.closeQuietly(reader);
+            }
+            return null;
+        }
+
+        private void logInvalidLine(long lineNumber, Exception e) {
+            invalidLines.incrementAndGet();
+            KeenLogging.log("Skipping invalid event on line " + lineNumber + ": " +
+                    e.getMessage());
+        }
+
+        private int bodySize(Batch batch) {
+            // The prefix, the events with commas between them, and "]}".
+            return bodyPrefix.length + batch.bytes + batch.events.size() - 1 + 2;
+        }
+
+        private void submit(final Batch batch) throws InterruptedException {
+            requestPermits.acquire();
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        // If another batch has failed, leave this one for the next run.
+                        if (error == null) {
+                            send(batch);
+                            finishRange(batch.startLine, batch.endLine);
+                        }
+                    } catch (Exception e) {
+                        setError(e);
+                    } finally {
+                        requestPermits.release();
+                    }
+                }
+            });
+        }
+
+        private void send(final Batch batch) throws IOException {
+            ByteArrayOutputStream body = new ByteArrayOutputStream(bodySize(batch));
+            body.write(bodyPrefix);
+            for (int i = 0; i < batch.events.size(); i++) {
+                if (i > 0) {
+                    body.write(',');
+                }
+                body.write(batch.events.get(i));
+            }
+            body.write(']');
+            body.write('}');
+            byte[] bytes = body.toByteArray();
+
+            String response = client.publishBatch(project, bytes);
+            requests.incrementAndGet();
+            bytesSent.addAndGet(bytes.length);
+
+            BatchResponseParser.parse(response, new BatchResponseParser.Listener() {
+                @Override
+                public void onEventResult(String collection, int index, boolean success,
+                                          String errorName, String errorDescription) {
+                    if (success) {
+                        eventsSent.incrementAndGet();
+                        return;
+                    }
+
+                    KeenEventStatus reason;
+                    if (KeenClient.isInvalidEventError(errorName)) {
+                        eventsRejected.incrementAndGet();
+                        reason = KeenEventStatus.REJECTED;
+                    } else {
+                        eventsFailed.incrementAndGet();
+                        reason = KeenEventStatus.DROPPED;
+                    }
+                    if (index < batch.events.size()) {
+                        addDeadLetter(batch.events.get(index), reason, errorName,
+                                errorDescription);
+                    }
+                }
+            });
+        }
+
+        private void addDeadLetter(byte[] event, KeenEventStatus reason, String errorName,
+                                   String errorDescription) {
+            KeenDeadLetterSink sink = client.getDeadLetterSink();
+            if (sink == null) {
+                KeenLogging.log("The event could not be inserted. Error name and description: " +
+                        errorName + " " + errorDescription);
+                return;
+            }
+            try {
+                sink.add(new DeadLetter(System.currentTimeMillis(), project.getProjectId(),
+                        eventCollection, reason, errorName, errorDescription,
+                        new String(event, ENCODING)));
+            } catch (Exception e) {
+                KeenLogging.log("Failed to add dead letter. Exception: " + e);
+            }
+        }
+
+        private void setError(Exception e) {
+            synchronized (this) {
+                if (error == null) {
+                    KeenLogging.log("Stopping backfill: " + e);
+                    error = e;
+                }
+            }
+        }
+
+        private void awaitRequests() {
+            executor.shutdown();
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    if (executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                        break;
+                    }
+                } catch (InterruptedException e) {
+                    // Stop waiting for the rest of the input, but not for requests in flight.
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Records that a range of lines has been dealt with, advancing the checkpoint if the
+         * range, and any finished after it, follow on from it.
+         */
+        private synchronized void finishRange(long startLine, long endLine) {
+            finishedRanges.put(startLine, endLine);
+            boolean advanced = false;
+            Long next;
+            while ((next = finishedRanges.remove(checkpoint)) != null) {
+                checkpoint = next;
+                advanced = true;
+            }
+            if (!advanced) {
+                return;
+            }
+
+            writeCheckpoint(eventCollection, checkpoint);
+            long now = System.currentTimeMillis();
+            if (now - lastProgressMillis >= progressIntervalMillis) {
+                lastProgressMillis = now;
+                notifyListener(report());
+            }
+        }
+
+        private synchronized BackfillReport report() {
+            long read = linesRead.get();
+            boolean complete = (error == null && checkpoint >= read);
+            return new BackfillReport(read, linesSkipped.get(), invalidLines.get(),
+                    eventsSent.get(), eventsRejected.get(), eventsFailed.get(), requests.get(),
+                    bytesSent.get(), System.currentTimeMillis() - startMillis, checkpoint,
+                    complete, error);
+        }
+
+        private void notifyListener(BackfillReport report) {
+            if (listener != null) {
+                try {
+                    listener.onProgress(report);
+                } catch (Exception e) {
+                    // Do nothing. Issue #98
+                }
+            }
+        }
+    }
+
+    ///// PRIVATE CONSTANTS /////
+
+    private static final String ENCODING = "UTF-8";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    ///// PRIVATE FIELDS /////
+
+    private final KeenClient client;
+    private final KeenProject project;
+    private int maxBatchEvents = DEFAULT_MAX_BATCH_EVENTS;
+    private int maxBatchBytes = DEFAULT_MAX_BATCH_BYTES;
+    private int maxConcurrentRequests = DEFAULT_MAX_CONCURRENT_REQUESTS;
+    private File checkpointFile;
+    private BackfillListener listener;
+    private long progressIntervalMillis = DEFAULT_PROGRESS_INTERVAL_MILLIS;
+
+    ///// PRIVATE METHODS /////
+
+    /**
+     * Reads the line to resume from.
+     *
+     * @param eventCollection The collection being loaded.
+     * @return The first line which hasn't been dealt with, or 0 if there's no checkpoint.
+     * @throws IOException If the checkpoint can't be read or is for another collection.
+     */
+    private long readCheckpoint(String eventCollection) throws IOException {
+        if (checkpointFile == null || !checkpointFile.exists()) {
+            return 0;
+        }
+
+        String content = KeenUtils.convertFileToString(checkpointFile);
+        String[] fields = content.trim().split("\t");
+        if (fields.length != 2) {
+            throw new IOException("Malformed checkpoint file '" + checkpointFile + "'");
+        }
+        if (!fields[0].equals(eventCollection)) {
+            throw new IOException("Checkpoint file '" + checkpointFile + "' is for collection '" +
+                    fields[0] + "', not '" + eventCollection + "'");
+        }
+        try {
+            return Long.parseLong(fields[1]);
+        } catch (NumberFormatException e) {
+            throw new IOException("Malformed checkpoint file '" + checkpointFile + "'");
+        }
+    }
+
+    /**
+     * Records the line to resume from, replacing the checkpoint file as a whole so that a crash
+     * can't leave it half written. Failures are logged; they only mean more events are sent
+     * again on resuming.
+     *
+     * @param eventCollection The collection being loaded.
+     * @param checkpoint      The first line which hasn't been dealt with.
+     */
+    private void writeCheckpoint(String eventCollection, long checkpoint) {
+        if (checkpointFile == null) {
+            return;
+        }
+
+        File temp = new File(checkpointFile.getPath() + ".tmp");
+        Writer writer = null;
+        try {
+            writer = new OutputStreamWriter(new FileOutputStream(temp), ENCODING);
+            writer.write(eventCollection + "\t" + checkpoint + "\n");
+            writer.close();
+            writer = null;
+            // File.renameTo won't replace an existing file on every platform.
+            if (!temp.renameTo(checkpointFile) &&
+                    !(checkpointFile.delete() && temp.renameTo(checkpointFile))) {
+                throw new IOException("Couldn't replace '" + checkpointFile + "'");
+            }
+        } catch (IOException e) {
+            KeenLogging.log("Failed to write backfill checkpoint: " + e.getMessage());
+        } finally {
+            KeenUtils.closeQuietly(writer);
+        }
+    }
+
+}
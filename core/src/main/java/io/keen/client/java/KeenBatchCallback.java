@@ -0,0 +1,28 @@
+package io.keen.client.java;
+
+/**
+ * A callback for {@link KeenClient#sendQueuedEvents(KeenProject, KeenCallback)} which is also
+ * told the outcome of each queued event.
+ * <p>
+ * The outcomes are reported while the server's response is read, before {@link #onSuccess()}
+ * is called, so finding out which events failed doesn't require reading the event store again.
+ * If the batch can't be sent at all, only {@link #onFailure(Exception)} is called and every
+ * event stays in the store.
+ * </p>
+ */
+public interface KeenBatchCallback extends KeenCallback {
+
+    /**
+     * Invoked for each event in the batch.
+     *
+     * @param handle          The event's handle in the event store. If the event was removed
+     *                        from the store, the handle is no longer valid.
+     * @param eventCollection The name of the event's collection.
+     * @param status          What happened to the event.
+     * @param errorName       The name of the error the server gave if the event was rejected or
+     *                        failed, such as "InvalidPropertyNameError"; otherwise null.
+     */
+    void onEventResult(Object handle, String eventCollection, KeenEventStatus status,
+                       String errorName);
+
+}
@@ -0,0 +1,39 @@
+package io.keen.client.java;
+
+import java.io.IOException;
+
+/**
+ * Interface for event stores which can hold events as raw bytes, such as events encoded with
+ * {@link CompactEventCodec}, alongside JSON text.
+ * <p>
+ * Events stored with {@link #storeBytes(String, String, byte[])} are listed, removed and counted
+ * against attempts like any other event. {@link #get(Object)} must still return JSON for them, by
+ * decoding compact events with {@link CompactEventCodec#decodeToJson(byte[])}.
+ * </p>
+ */
+public interface KeenBinaryEventStore extends KeenEventStore {
+
+    /**
+     * Stores the given encoded event.
+     *
+     * @param projectId       The ID of the project in which the event should be stored.
+     * @param eventCollection The name of the collection in which the event should be stored.
+     * @param event           The encoded event to store.
+     * @return A handle which can be used to retrieve or remove the event.
+     * @throws IOException If there is an error storing the event.
+     */
+    Object storeBytes(String projectId, String eventCollection, byte[] event) throws IOException;
+
+    /**
+     * Gets the stored form of the event corresponding to the given handle: the encoded event if
+     * it was stored with {@link #storeBytes(String, String, byte[])}, otherwise its JSON as
+     * UTF-8.
+     *
+     * @param handle A handle returned from a previous call to one of the store methods or
+     *               {@link #getHandles(String)}.
+     * @return The stored event, or null if the handle is no longer present in the store.
+     * @throws IOException If there is an error retrieving the event.
+     */
+    byte[] getBytes(Object handle) throws IOException;
+
+}
@@ -1,6 +1,8 @@
 package io.keen.client.java;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.StringReader;
@@ -8,21 +10,31 @@ import java.io.StringWriter;
 import java.net.InetSocketAddress;
 import java.net.MalformedURLException;
 import java.net.Proxy;
-import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import io.keen.client.java.exceptions.CircuitOpenException;
 import io.keen.client.java.exceptions.InvalidEventCollectionException;
 import io.keen.client.java.exceptions.InvalidEventException;
 import io.keen.client.java.exceptions.NoWriteKeyException;
@@ -55,7 +67,7 @@ import io.keen.client.java.http.UrlConnectionHttpHandler;
  * @author dkador, klitwack
  * @since 1.0.0
  */
-public class KeenClient {
+public class KeenClient implements Closeable {
 
     ///// PUBLIC STATIC METHODS /////
 
@@ -162,17 +174,7 @@ public class KeenClient {
         }
         KeenProject useProject = (project == null ? defaultProject : project);
 
-        try {
-            // Build the event.
-            Map<String, Object> newEvent =
-                    validateAndBuildEvent(useProject, eventCollection, event, keenProperties);
-
-            // Publish the event.
-            publish(useProject, eventCollection, newEvent);
-            handleSuccess(callback, project, eventCollection, event, keenProperties);
-        } catch (Exception e) {
-            handleFailure(callback, project, eventCollection, event, keenProperties, e);
-        }
+        publishEvent(project, useProject, eventCollection, event, keenProperties, callback);
     }
 
     /**
@@ -237,16 +239,30 @@ public class KeenClient {
         }
         final KeenProject useProject = (project == null ? defaultProject : project);
 
+        PendingPublish pendingPublish = new PendingPublish() {
+            @Override
+            boolean publish() {
+                return publishEvent(project, useProject, eventCollection, event, keenProperties,
+                        callback);
+            }
+
+            @Override
+            boolean persist() {
+                return storeQueuedEvent(project, useProject, eventCollection, event,
+                        keenProperties, callback);
+            }
+        };
+        if (!addPendingPublish(pendingPublish)) {
+            handleClientShutDown(callback);
+            return;
+        }
+
         // Wrap the asynchronous execute in a try/catch block in case the executor throws a
         // RejectedExecutionException (or anything else).
         try {
-            publishExecutor.execute(new Runnable() {
-                @Override
-                public void run() {
-                    addEvent(useProject, eventCollection, event, keenProperties, callback);
-                }
-            });
+            publishExecutor.execute(pendingPublish);
         } catch (Exception e) {
+            removePendingPublish(pendingPublish);
             handleFailure(callback, project, eventCollection, event, keenProperties, e);
         }
     }
@@ -301,6 +317,11 @@ public class KeenClient {
             return;
         }
 
+        if (isShutDown) {
+            handleClientShutDown(callback);
+            return;
+        }
+
         if (project == null && defaultProject == null) {
             handleFailure(null,
                           project,
@@ -313,36 +334,211 @@ public class KeenClient {
         }
         KeenProject useProject = (project == null ? defaultProject : project);
 
-        try {
-            // Build the event
-            Map<String, Object> newEvent =
-                    validateAndBuildEvent(useProject, eventCollection, event, keenProperties);
+        storeQueuedEvent(project, useProject, eventCollection, event, keenProperties, callback);
+    }
 
-            // Serialize the event into JSON.
-            StringWriter writer = new StringWriter();
-            jsonHandler.writeJson(writer, newEvent);
-            String jsonEvent = writer.toString();
-            KeenUtils.closeQuietly(writer);
+    /**
+     * Adds a typed event to the default project with default Keen properties and no callbacks.
+     *
+     * @see #addEvent(KeenProject, String, Object, java.util.Map, KeenCallback)
+     * @param eventCollection The name of the collection in which to publish the event.
+     * @param event           An object whose properties make up the event.
+     * @param <T>             The event class.
+     */
+    public <T> void addEvent(String eventCollection, T event) {
+        addEvent(null, eventCollection, event, null, null);
+    }
 
-            try {
-                // Save the JSON event out to the event store.
-                Object handle = eventStore.store(useProject.getProjectId(), eventCollection, jsonEvent);
-
-                if (eventStore instanceof KeenAttemptCountingEventStore) {
-                    synchronized (attemptsLock) {
-                        Map<String, Integer> attempts = getAttemptsMap(useProject.getProjectId(), eventCollection);
-                        attempts.put("" + handle.hashCode(), maxAttempts);
-                        setAttemptsMap(useProject.getProjectId(), eventCollection, attempts);
-                    }
-                }
-            } catch(IOException ex) {
-                KeenLogging.log("Failed to set the event POST attempt count. The event was still " +
-                        "queued and will we POSTed.");
+    /**
+     * Synchronously adds a typed event to the specified collection. This method will immediately
+     * publish the event to the Keen server in the current thread.
+     * <p>
+     * The event is serialized by the {@link TypedEventCodec} for its class, which checks the
+     * class's property names and nesting once, and writes each event straight into the request
+     * body without building a Map first. Keen naming conventions apply to the property names as
+     * they do to Map keys. If the event is a Map after all, it is added as one.
+     * </p>
+     *
+     * @param project         The project in which to publish the event. If a default project has been set
+     *                        on the client, this parameter may be null, in which case the default project
+     *                        will be used.
+     * @param eventCollection The name of the collection in which to publish the event.
+     * @param event           An object whose properties make up the event: a record, or an object
+     *                        with public getters or fields.
+     * @param keenProperties  A Map that consists of key/value pairs to override default properties.
+     *                        ex: "timestamp" -&gt; Calendar.getInstance()
+     * @param callback        An optional callback to receive notification of success or failure.
+     *                        A {@link KeenDetailedCallback} is given the event converted into a Map.
+     * @param <T>             The event class.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> void addEvent(KeenProject project, String eventCollection, T event,
+                             Map<String, Object> keenProperties, KeenCallback callback) {
+        if (event instanceof Map) {
+            addEvent(project, eventCollection, (Map<String, Object>) event, keenProperties, callback);
+            return;
+        }
+
+        if (!isActive) {
+            handleLibraryInactive(callback);
+            return;
+        }
+
+        if (project == null && defaultProject == null) {
+            handleFailure(null,
+                          project,
+                          eventCollection,
+                          null,
+                          keenProperties,
+                          new IllegalStateException("No project specified, but no default project found"));
+            return;
+        }
+        KeenProject useProject = (project == null ? defaultProject : project);
+
+        publishTypedEvent(project, useProject, eventCollection, event, keenProperties, callback);
+    }
+
+    /**
+     * Adds a typed event to the default project with default Keen properties and no callbacks.
+     *
+     * @see #addEventAsync(KeenProject, String, Object, java.util.Map, KeenCallback)
+     * @param eventCollection The name of the collection in which to publish the event.
+     * @param event           An object whose properties make up the event.
+     * @param <T>             The event class.
+     */
+    public <T> void addEventAsync(String eventCollection, T event) {
+        addEventAsync(null, eventCollection, event, null, null);
+    }
+
+    /**
+     * Asynchronously adds a typed event to the specified collection. This method will request
+     * that the Keen client's {@link java.util.concurrent.Executor} executes the publish operation.
+     *
+     * @see #addEvent(KeenProject, String, Object, java.util.Map, KeenCallback)
+     * @param project         The project in which to publish the event. If a default project has been set
+     *                        on the client this parameter may be null, in which case the default project
+     *                        will be used.
+     * @param eventCollection The name of the collection in which to publish the event.
+     * @param event           An object whose properties make up the event.
+     * @param keenProperties  A Map that consists of key/value pairs to override default properties.
+     *                        ex: "timestamp" -&gt; Calendar.getInstance()
+     * @param callback        An optional callback to receive notification of success or failure.
+     * @param <T>             The event class.
+     */
+    public <T> void addEventAsync(final KeenProject project, final String eventCollection,
+                                  final T event,
+                                  final Map<String, Object> keenProperties,
+                                  final KeenCallback callback) {
+        if (!isActive) {
+            handleLibraryInactive(callback);
+            return;
+        }
+
+        if (project == null && defaultProject == null) {
+            handleFailure(null,
+                          project,
+                          eventCollection,
+                          null,
+                          keenProperties,
+                          new IllegalStateException(
+                                  "No project specified, but no default project found"));
+            return;
+        }
+        final KeenProject useProject = (project == null ? defaultProject : project);
+
+        PendingPublish pendingPublish = new PendingPublish() {
+            @Override
+            boolean publish() {
+                return publishTypedEvent(project, useProject, eventCollection, event,
+                        keenProperties, callback);
             }
-            handleSuccess(callback, project, eventCollection, event, keenProperties);
+
+            @Override
+            boolean persist() {
+                return storeQueuedTypedEvent(project, useProject, eventCollection, event,
+                        keenProperties, callback);
+            }
+        };
+        if (!addPendingPublish(pendingPublish)) {
+            handleClientShutDown(callback);
+            return;
+        }
+
+        // Wrap the asynchronous execute in a try/catch block in case the executor throws a
+        // RejectedExecutionException (or anything else).
+        try {
+            publishExecutor.execute(pendingPublish);
         } catch (Exception e) {
-            handleFailure(callback, project, eventCollection, event, keenProperties, e);
+            removePendingPublish(pendingPublish);
+            handleFailure(callback, project, eventCollection, toCallbackEvent(callback, event),
+                    keenProperties, e);
+        }
+    }
+
+    /**
+     * Queues a typed event in the default project with default Keen properties and no callbacks.
+     *
+     * @see #queueEvent(KeenProject, String, Object, java.util.Map, KeenCallback)
+     * @param eventCollection The name of the collection in which to publish the event.
+     * @param event           An object whose properties make up the event.
+     * @param <T>             The event class.
+     */
+    public <T> void queueEvent(String eventCollection, T event) {
+        queueEvent(null, eventCollection, event, null, null);
+    }
+
+    /**
+     * Synchronously queues a typed event for publishing. The event is serialized into JSON by the
+     * {@link TypedEventCodec} for its class and cached in the client's
+     * {@link io.keen.client.java.KeenEventStore} until the next call to either
+     * {@link #sendQueuedEvents()} or {@link #sendQueuedEventsAsync()}. If the client encodes
+     * queued events with a {@link CompactEventCodec}, which works on Maps, the event is converted
+     * into a Map and queued as one.
+     *
+     * @see #addEvent(KeenProject, String, Object, java.util.Map, KeenCallback)
+     * @param project         The project in which to publish the event. If a default project has been set
+     *                        on the client this parameter may be null, in which case the default project
+     *                        will be used.
+     * @param eventCollection The name of the collection in which to publish the event.
+     * @param event           An object whose properties make up the event.
+     * @param keenProperties  A Map that consists of key/value pairs to override default properties.
+     *                        ex: "timestamp" -&gt; Calendar.getInstance()
+     * @param callback        An optional callback to receive notification of success or failure.
+     * @param <T>             The event class.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> void queueEvent(KeenProject project, String eventCollection, T event,
+                               Map<String, Object> keenProperties, KeenCallback callback) {
+        if (event instanceof Map) {
+            queueEvent(project, eventCollection, (Map<String, Object>) event, keenProperties,
+                    callback);
+            return;
+        }
+
+        if (!isActive) {
+            handleLibraryInactive(callback);
+            return;
+        }
+
+        if (isShutDown) {
+            handleClientShutDown(callback);
+            return;
+        }
+
+        if (project == null && defaultProject == null) {
+            handleFailure(null,
+                          project,
+                          eventCollection,
+                          null,
+                          keenProperties,
+                          new IllegalStateException(
+                                  "No project specified, but no default project found"));
+            return;
         }
+        KeenProject useProject = (project == null ? defaultProject : project);
+
+        storeQueuedTypedEvent(project, useProject, eventCollection, event, keenProperties,
+                callback);
     }
 
     /**
@@ -375,44 +571,8 @@ public class KeenClient {
      *                 will be used.
      * @param callback An optional callback to receive notification of success or failure.
      */
-    public synchronized void sendQueuedEvents(KeenProject project, KeenCallback callback) {
-
-        if (!isActive) {
-            handleLibraryInactive(callback);
-            return;
-        }
-
-        if (project == null && defaultProject == null) {
-            handleFailure(null, new IllegalStateException("No project specified, but no default project found"));
-            return;
-        }
-
-        if (!isNetworkConnected()) {
-            KeenLogging.log("Not sending events because there is no network connection. " +
-                            "Events will be retried next time `sendQueuedEvents` is called.");
-            handleFailure(callback, new Exception("Network not connected."));
-            return;
-        }
-
-        KeenProject useProject = (project == null ? defaultProject : project);
-
-        try {
-            String projectId = useProject.getProjectId();
-            Map<String, List<Object>> eventHandles = eventStore.getHandles(projectId);
-            Map<String, List<Map<String, Object>>> events = buildEventMap(projectId, eventHandles);
-            String response = publishAll(useProject, events);
-            if (response != null) {
-                try {
-                    handleAddEventsResponse(eventHandles, response);
-                } catch (Exception e) {
-                    // Errors handling the response are non-fatal; just log them.
-                    KeenLogging.log("Error handling response to batch publish: " + e.getMessage());
-                }
-            }
-            handleSuccess(callback);
-        } catch (Exception e) {
-            handleFailure(callback, e);
-        }
+    public void sendQueuedEvents(KeenProject project, KeenCallback callback) {
+        sendQueuedEvents(project, callback, 0);
     }
 
     /**
@@ -452,6 +612,11 @@ public class KeenClient {
             return;
         }
 
+        if (isShutDown) {
+            handleClientShutDown(callback);
+            return;
+        }
+
         if (project == null && defaultProject == null) {
             handleFailure(null, new IllegalStateException("No project specified, but no default project found"));
             return;
@@ -540,6 +705,9 @@ public class KeenClient {
         } else {
             this.baseUrl = baseUrl;
         }
+
+        // Drop URLs cached for the old base URL.
+        this.requestUrlBuilder = null;
     }
 
     /**
@@ -650,6 +818,64 @@ public class KeenClient {
         this.globalProperties = globalProperties;
     }
 
+    /**
+     * Gets how long global properties are cached for. See docs for
+     * {@link #setGlobalPropertiesCacheTtl(long)}.
+     *
+     * @return The time to live in milliseconds, or 0 if global properties aren't cached.
+     */
+    public long getGlobalPropertiesCacheTtl() {
+        GlobalPropertiesCache cache = globalPropertiesCache;
+        return (cache == null ? 0 : cache.getTtlMillis());
+    }
+
+    /**
+     * Call this to cache the global properties for a while, rather than evaluating them for every
+     * event. This is off by default.
+     * <p>
+     * When caching is on, the {@link GlobalPropertiesEvaluator} is called at most once per event
+     * collection within the time to live, and its result is reused for every event added to that
+     * collection meanwhile. The global properties map and each evaluated map are split into their
+     * Keen and non-Keen properties once, rather than copied for every event.
+     * </p><p>
+     * This suits global properties which change rarely. Changes to the map passed to
+     * {@link #setGlobalProperties(java.util.Map)}, or to what the evaluator returns, can take up to
+     * the time to live to show up in events, unless {@link #invalidateGlobalProperties()} is called.
+     * Setting a new map or evaluator takes effect immediately.
+     * </p>
+     *
+     * @param ttlMillis How long cached global properties are used for, in milliseconds, or 0 to
+     *                  turn caching off.
+     */
+    public void setGlobalPropertiesCacheTtl(long ttlMillis) {
+        this.globalPropertiesCache = (ttlMillis > 0 ? new GlobalPropertiesCache(ttlMillis) : null);
+    }
+
+    /**
+     * Discards all cached global properties, so that they're evaluated again for the next event
+     * in each collection. This has no effect if caching is off.
+     */
+    public void invalidateGlobalProperties() {
+        GlobalPropertiesCache cache = globalPropertiesCache;
+        if (cache != null) {
+            cache.invalidate();
+        }
+    }
+
+    /**
+     * Discards the cached result of the {@link GlobalPropertiesEvaluator} for one event
+     * collection, so that it's evaluated again for the next event in that collection. This has no
+     * effect if caching is off.
+     *
+     * @param eventCollection The name of the event collection.
+     */
+    public void invalidateGlobalProperties(String eventCollection) {
+        GlobalPropertiesCache cache = globalPropertiesCache;
+        if (cache != null) {
+            cache.invalidate(eventCollection);
+        }
+    }
+
     /**
      * Gets whether or not the Keen client is running in debug mode.
      *
@@ -680,48 +906,327 @@ public class KeenClient {
     }
 
     /**
-      * Sets an HTTP proxy server configuration for this client.
-      *
-      * @param proxyHost The proxy hostname or IP address.
-      * @param proxyPort The proxy port number.
-      */
-     public void setProxy(String proxyHost, int proxyPort) {
-         this.proxy = new Proxy(Proxy.Type.HTTP, new InetSocketAddress(proxyHost, proxyPort));
-     }
-
-    /**
-      * Sets an HTTP proxy server configuration for this client.
-      *
-      * @param proxy The Proxy object to set.
-      */
-     public void setProxy(Proxy proxy) {
-         this.proxy = proxy;
-     }
-
-    /**
-     * Gets the client Proxy.
+     * Gets whether the client has been shut down by {@link #shutdown(long)} or {@link #close()}.
      *
-     * @return the proxy.
+     * @return {@code true} if the client has been shut down.
      */
-     public Proxy getProxy() {
-         return proxy;
-     }
-
-    ///// PROTECTED ABSTRACT BUILDER IMPLEMENTATION /////
+    public boolean isShutDown() {
+        return isShutDown;
+    }
 
     /**
-     * Builder class for instantiating Keen clients. Subclasses should override this and
-     * implement the getDefault* methods to provide new default behavior.
+     * Shuts the client down, sending or persisting its outstanding events within a deadline.
      * <p>
-     * This builder doesn't include any default implementation for handling JSON serialization and
-     * de-serialization. Subclasses must provide one.
-     * </p><p>
-     * This builder defaults to using HttpURLConnection to handle HTTP requests.
-     * </p><p>
-     * To cache events in between batch uploads, this builder defaults to a RAM-based event store.
+     * From now on asynchronous publishes, queued events and asynchronous sends are rejected, and
+     * reported to their callbacks as failures. Asynchronous publishes which are already waiting
+     * for the publish executor are given up to half of the timeout to run; those which haven't
+     * started by then are saved to the event store instead, as if they'd been queued. Then the
+     * stored events of the projects this client knows about are sent, in batches, until they're
+     * all sent or the deadline passes: the default project, every project this client has queued
+     * events for since it was built, and every project registered with its
+     * {@link KeenClientPool}. Events which aren't sent stay in the event store. Finally, the
+     * publish executor is shut down if the client created it.
+     * </p>
      * <p>
-     * This builder defaults to a fixed thread pool (constructed with
-     * {@link java.util.concurrent.Executors#newFixedThreadPool(int)}) to run asynchronous requests.
+     * The event store isn't searched for other projects, so events an earlier process stored for
+     * a project this client doesn't know about are neither sent nor counted in the report.
+     * </p>
+     * <p>
+     * This can be called from a JVM shutdown hook; see {@link #addShutdownHook(long)}. Calling
+     * it again flushes anything queued since.
+     * </p>
+     *
+     * @param timeoutMillis The maximum time to spend, in milliseconds. A send which is in
+     *                      progress at the deadline is finished, so the shutdown may overrun by
+     *                      up to the connect and read timeouts, but a failed send isn't retried
+     *                      if the {@link RetryPolicy} would wait past the deadline.
+     * @return What happened to the outstanding events.
+     */
+    public ShutdownReport shutdown(long timeoutMillis) {
+        if (timeoutMillis < 0) {
+            throw new IllegalArgumentException("timeoutMillis must not be negative");
+        }
+        long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        long deadline = System.nanoTime() + timeoutNanos;
+
+        synchronized (pendingPublishes) {
+            shutdownDeadline = deadline;
+            isShutDown = true;
+        }
+        if (scheduledFlusher != null) {
+            scheduledFlusher.cancel();
+        }
+
+        int flushed = 0;
+        int dropped = 0;
+
+        // Let asynchronous publishes run for up to half the time, then persist those which
+        // haven't started.
+        awaitPendingPublishes(deadline - timeoutNanos / 2);
+        List<PendingPublish> waiting;
+        synchronized (pendingPublishes) {
+            waiting = new ArrayList<PendingPublish>(pendingPublishes);
+        }
+        for (PendingPublish pendingPublish : waiting) {
+            if (pendingPublish.start()) {
+                boolean persisted = false;
+                try {
+                    persisted = pendingPublish.persist();
+                } catch (RuntimeException e) {
+                    KeenLogging.log("Failed to persist event during shutdown: " + e.getMessage());
+                } finally {
+                    removePendingPublish(pendingPublish);
+                }
+                if (!persisted) {
+                    dropped++;
+                }
+            }
+        }
+
+        // Flush the event store in batches, so the deadline is checked between them.
+        Map<String, KeenProject> projects = new LinkedHashMap<String, KeenProject>(queuedProjects);
+        KeenProject currentDefaultProject = defaultProject;
+        if (currentDefaultProject != null &&
+                !projects.containsKey(currentDefaultProject.getProjectId())) {
+            projects.put(currentDefaultProject.getProjectId(), currentDefaultProject);
+        }
+        KeenClientPool currentPool = pool;
+        if (currentPool != null) {
+            for (KeenProject project : currentPool.getProjects()) {
+                if (!projects.containsKey(project.getProjectId())) {
+                    projects.put(project.getProjectId(), project);
+                }
+            }
+        }
+        int persisted = 0;
+        for (KeenProject project : projects.values()) {
+            int queued = countQueuedEvents(project);
+            while (queued > 0 && System.nanoTime() - deadline < 0) {
+                final boolean[] failed = { false };
+                int unsent;
+                try {
+                    unsent = sendQueuedEvents(project, new KeenCallback() {
+                        @Override
+                        public void onSuccess() {
+                        }
+
+                        @Override
+                        public void onFailure(Exception e) {
+                            failed[0] = true;
+                        }
+                    }, SHUTDOWN_FLUSH_BATCH_SIZE);
+                } catch (RuntimeException e) {
+                    // In debug mode failures are thrown rather than reported.
+                    failed[0] = true;
+                    unsent = 0;
+                }
+
+                int remaining = countQueuedEvents(project);
+                flushed += Math.max(0, queued - remaining);
+                queued = remaining;
+                if (failed[0] || unsent == 0) {
+                    break;
+                }
+            }
+            persisted += queued;
+        }
+
+        // Publishes still running at the deadline can't be accounted for.
+        awaitPendingPublishes(deadline);
+        synchronized (pendingPublishes) {
+            dropped += pendingPublishes.size();
+            flushed += publishedDuringShutdown;
+            dropped += failedDuringShutdown;
+            publishedDuringShutdown = 0;
+            failedDuringShutdown = 0;
+        }
+
+        if (ownsPublishExecutor && publishExecutor instanceof ExecutorService) {
+            ((ExecutorService) publishExecutor).shutdown();
+        }
+
+        boolean timedOut = System.nanoTime() - deadline >= 0;
+        ShutdownReport report = new ShutdownReport(flushed, persisted, dropped, timedOut);
+        KeenLogging.log("Keen Client shut down: " + report);
+        return report;
+    }
+
+    /**
+     * Shuts the client down, allowing up to ten seconds to send or persist its outstanding
+     * events.
+     *
+     * @see #shutdown(long)
+     */
+    @Override
+    public void close() {
+        shutdown(DEFAULT_SHUTDOWN_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Registers a JVM shutdown hook which calls {@link #shutdown(long)}, so that outstanding
+     * events are sent or persisted when the process is stopped.
+     *
+     * @param timeoutMillis The maximum time the hook may spend, in milliseconds.
+     * @return The hook, which may be passed to {@link Runtime#removeShutdownHook(Thread)}.
+     */
+    public Thread addShutdownHook(final long timeoutMillis) {
+        Thread hook = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                shutdown(timeoutMillis);
+            }
+        }, "keen-client-shutdown");
+        Runtime.getRuntime().addShutdownHook(hook);
+        return hook;
+    }
+
+    /**
+     * Queues dead letters again, for example after fixing the events the server rejected. Each
+     * event keeps its original {@code keen} properties, including its timestamp, and is
+     * validated as if it were being queued for the first time.
+     * <p>
+     * Dead letters which aren't queued are only skipped, so the caller remains responsible for
+     * them. To take dead letters out of a sink and put back those which weren't queued, use
+     * {@link #replayDeadLetters(KeenProject, Iterable, DeadLetterRepair, KeenDeadLetterSink)}.
+     * </p>
+     *
+     * @param project     The project whose dead letters to queue. If a default project has been
+     *                    set on the client this parameter may be null, in which case the default
+     *                    project will be used. Dead letters of other projects are skipped.
+     * @param deadLetters The dead letters, for example from {@link FileDeadLetterSink#read()}.
+     * @param repair      An optional repair to apply to each event before it's queued.
+     * @return The number of events queued.
+     */
+    public int replayDeadLetters(KeenProject project, Iterable<DeadLetter> deadLetters,
+                                 DeadLetterRepair repair) {
+        return replayDeadLetters(project, deadLetters, repair, null);
+    }
+
+    /**
+     * Queues dead letters again, and adds those which aren't queued to a sink. Dead letters are
+     * skipped if they belong to another project, their event can't be parsed, the repair
+     * returns null for them, or their event fails validation or can't be stored; if the client
+     * can't queue events at all, every dead letter is skipped. Typically the dead letters are
+     * drained from a sink and the skipped ones put back in it, so that none are lost:
+     * <pre>
+     *     client.replayDeadLetters(project, sink.drain(), repair, sink);
+     * </pre>
+     *
+     * @param project     The project whose dead letters to queue. If a default project has been
+     *                    set on the client this parameter may be null, in which case the default
+     *                    project will be used.
+     * @param deadLetters The dead letters, for example from {@link FileDeadLetterSink#drain()}.
+     * @param repair      An optional repair to apply to each event before it's queued.
+     * @param unqueued    The sink to add dead letters which weren't queued to, or null to skip
+     *                    them.
+     * @return The number of events queued.
+     */
+    @SuppressWarnings("unchecked")
+    public int replayDeadLetters(KeenProject project, Iterable<DeadLetter> deadLetters,
+                                 DeadLetterRepair repair, KeenDeadLetterSink unqueued) {
+        KeenProject useProject = (project == null ? defaultProject : project);
+        if (!isActive) {
+            handleLibraryInactive(null);
+            useProject = null;
+        } else if (isShutDown) {
+            handleClientShutDown(null);
+            useProject = null;
+        } else if (useProject == null) {
+            handleFailure(null, new IllegalStateException("No project specified, but no default project found"));
+        }
+        if (useProject == null) {
+            for (DeadLetter deadLetter : deadLetters) {
+                keepDeadLetter(unqueued, deadLetter);
+            }
+            return 0;
+        }
+
+        int queued = 0;
+        for (DeadLetter deadLetter : deadLetters) {
+            if (!useProject.getProjectId().equals(deadLetter.getProjectId())) {
+                keepDeadLetter(unqueued, deadLetter);
+                continue;
+            }
+
+            Map<String, Object> event;
+            StringReader reader = new StringReader(deadLetter.getEvent());
+            try {
+                event = jsonHandler.readJson(reader);
+            } catch (IOException e) {
+                KeenLogging.log("Skipping unreadable dead letter: " + e.getMessage());
+                event = null;
+            } finally {
+                KeenUtils.closeQuietly(reader);
+            }
+            if (event == null) {
+                keepDeadLetter(unqueued, deadLetter);
+                continue;
+            }
+
+            Object keen = event.remove("keen");
+            Map<String, Object> keenProperties = (keen instanceof Map ?
+                    (Map<String, Object>) keen : null);
+            if (repair != null) {
+                event = repair.repair(deadLetter, event);
+                if (event == null) {
+                    keepDeadLetter(unqueued, deadLetter);
+                    continue;
+                }
+            }
+
+            if (storeQueuedEvent(project, useProject, deadLetter.getEventCollection(), event,
+                    keenProperties, null)) {
+                queued++;
+            } else {
+                keepDeadLetter(unqueued, deadLetter);
+            }
+        }
+        return queued;
+    }
+
+    /**
+      * Sets an HTTP proxy server configuration for this client.
+      *
+      * @param proxyHost The proxy hostname or IP address.
+      * @param proxyPort The proxy port number.
+      */
+     public void setProxy(String proxyHost, int proxyPort) {
+         this.proxy = new Proxy(Proxy.Type.HTTP, new InetSocketAddress(proxyHost, proxyPort));
+     }
+
+    /**
+      * Sets an HTTP proxy server configuration for this client.
+      *
+      * @param proxy The Proxy object to set.
+      */
+     public void setProxy(Proxy proxy) {
+         this.proxy = proxy;
+     }
+
+    /**
+     * Gets the client Proxy.
+     *
+     * @return the proxy.
+     */
+     public Proxy getProxy() {
+         return proxy;
+     }
+
+    ///// PROTECTED ABSTRACT BUILDER IMPLEMENTATION /////
+
+    /**
+     * Builder class for instantiating Keen clients. Subclasses should override this and
+     * implement the getDefault* methods to provide new default behavior.
+     * <p>
+     * This builder doesn't include any default implementation for handling JSON serialization and
+     * de-serialization. Subclasses must provide one.
+     * </p><p>
+     * This builder defaults to using HttpURLConnection to handle HTTP requests.
+     * </p><p>
+     * To cache events in between batch uploads, this builder defaults to a RAM-based event store.
+     * <p>
+     * This builder defaults to a fixed thread pool (constructed with
+     * {@link java.util.concurrent.Executors#newFixedThreadPool(int)}) to run asynchronous requests.
      */
     public static abstract class Builder {
 
@@ -732,6 +1237,15 @@ public class KeenClient {
         private KeenNetworkStatusHandler networkStatusHandler;
         private int connectTimeout = KeenClient.DEFAULT_CONNECT_TIMEOUT;
         private int readTimeout = KeenClient.DEFAULT_READ_TIMEOUT;
+        private int maxInFlightRequests = KeenClient.DEFAULT_MAX_IN_FLIGHT_REQUESTS;
+        private boolean useVirtualThreads;
+        private FlushScheduler flushScheduler;
+        private FlushPolicy flushPolicy;
+        private CompactEventCodec eventCodec;
+        private RetryPolicy retryPolicy;
+        private KeenDeadLetterSink deadLetterSink;
+        private int idempotencyWindow;
+        private boolean ownsPublishExecutor;
 
         /**
          * Gets the default {@link HttpHandler} to use if none is explicitly set for this builder.
@@ -876,6 +1390,15 @@ public class KeenClient {
          * @throws Exception If there is an error creating the {@link Executor}.
          */
         protected Executor getDefaultPublishExecutor() throws Exception {
+            if (useVirtualThreads) {
+                Executor virtualThreadExecutor = VirtualThreadExecutors.newVirtualThreadPerTaskExecutor();
+                if (virtualThreadExecutor != null) {
+                    return virtualThreadExecutor;
+                }
+                KeenLogging.log("Virtual threads aren't supported by this runtime; " +
+                        "using a fixed thread pool for publishing");
+            }
+
             int procCount = Runtime.getRuntime().availableProcessors();
             return Executors.newFixedThreadPool(procCount);
         }
@@ -974,6 +1497,293 @@ public class KeenClient {
             return this;
         }
 
+        /**
+         * Gets the maximum number of HTTP requests the client will have in flight at once.
+         *
+         * @return The maximum number of concurrent requests.
+         */
+        public int getMaxInFlightRequests() {
+            return maxInFlightRequests;
+        }
+
+        /**
+         * Sets the maximum number of HTTP requests the client will have in flight at once. The
+         * default of 1 sends requests one at a time. Raise it along with
+         * {@link #withVirtualThreads(boolean)} (or a larger publish executor) to publish
+         * concurrently.
+         *
+         * @param maxInFlightRequests The maximum number of concurrent requests; must be positive.
+         */
+        public void setMaxInFlightRequests(int maxInFlightRequests) {
+            if (maxInFlightRequests < 1) {
+                throw new IllegalArgumentException("maxInFlightRequests must be at least 1");
+            }
+
+            this.maxInFlightRequests = maxInFlightRequests;
+        }
+
+        /**
+         * Sets the maximum number of HTTP requests the client will have in flight at once.
+         *
+         * @param maxInFlightRequests The maximum number of concurrent requests; must be positive.
+         * @return This instance (for method chaining).
+         */
+        public Builder withMaxInFlightRequests(int maxInFlightRequests) {
+            setMaxInFlightRequests(maxInFlightRequests);
+            return this;
+        }
+
+        /**
+         * Gets whether the default publish executor should use virtual threads.
+         *
+         * @return Whether virtual threads were requested.
+         */
+        public boolean isUseVirtualThreads() {
+            return useVirtualThreads;
+        }
+
+        /**
+         * Sets whether the default publish executor should start a virtual thread per publish
+         * operation. Virtual threads require Java 21 or later; on older runtimes (including
+         * Android) the default fixed thread pool is used instead. Has no effect if a publish
+         * executor is set explicitly.
+         *
+         * @param useVirtualThreads Whether to use virtual threads.
+         */
+        public void setUseVirtualThreads(boolean useVirtualThreads) {
+            this.useVirtualThreads = useVirtualThreads;
+        }
+
+        /**
+         * Sets whether the default publish executor should start a virtual thread per publish
+         * operation.
+         *
+         * @param useVirtualThreads Whether to use virtual threads.
+         * @return This instance (for method chaining).
+         */
+        public Builder withVirtualThreads(boolean useVirtualThreads) {
+            setUseVirtualThreads(useVirtualThreads);
+            return this;
+        }
+
+        /**
+         * Gets the default {@link FlushScheduler} to use if none is explicitly set for this
+         * builder.
+         *
+         * This implementation returns null, so queued events are only sent when one of the
+         * {@code sendQueuedEvents} methods is called.
+         *
+         * Subclasses should override this to provide a platform {@link FlushScheduler}.
+         *
+         * @return The default {@link FlushScheduler}, or null for none.
+         * @throws Exception If there is an error creating the {@link FlushScheduler}.
+         */
+        protected FlushScheduler getDefaultFlushScheduler() throws Exception {
+            return null;
+        }
+
+        /**
+         * Gets the {@link FlushScheduler} that this builder is currently configured to use for
+         * flushing queued events. If null, a default will be used instead.
+         *
+         * @return The {@link FlushScheduler} to use.
+         */
+        public FlushScheduler getFlushScheduler() {
+            return flushScheduler;
+        }
+
+        /**
+         * Sets the {@link FlushScheduler} to use for flushing queued events automatically.
+         *
+         * @param flushScheduler The {@link FlushScheduler} to use.
+         */
+        public void setFlushScheduler(FlushScheduler flushScheduler) {
+            this.flushScheduler = flushScheduler;
+        }
+
+        /**
+         * Sets the {@link FlushScheduler} to use for flushing queued events automatically.
+         *
+         * @param flushScheduler The {@link FlushScheduler} to use.
+         * @return This instance (for method chaining).
+         */
+        public Builder withFlushScheduler(FlushScheduler flushScheduler) {
+            setFlushScheduler(flushScheduler);
+            return this;
+        }
+
+        /**
+         * Gets the {@link FlushPolicy} that this builder is currently configured to use. If null,
+         * a policy with default settings will be used.
+         *
+         * @return The {@link FlushPolicy} to use.
+         */
+        public FlushPolicy getFlushPolicy() {
+            return flushPolicy;
+        }
+
+        /**
+         * Sets the {@link FlushPolicy} which decides when the flush scheduler should flush
+         * queued events. Has no effect unless there is a flush scheduler.
+         *
+         * @param flushPolicy The {@link FlushPolicy} to use.
+         */
+        public void setFlushPolicy(FlushPolicy flushPolicy) {
+            this.flushPolicy = flushPolicy;
+        }
+
+        /**
+         * Sets the {@link FlushPolicy} which decides when the flush scheduler should flush
+         * queued events.
+         *
+         * @param flushPolicy The {@link FlushPolicy} to use.
+         * @return This instance (for method chaining).
+         */
+        public Builder withFlushPolicy(FlushPolicy flushPolicy) {
+            setFlushPolicy(flushPolicy);
+            return this;
+        }
+
+        /**
+         * Gets the {@link CompactEventCodec} that this builder is currently configured to use for
+         * queued events. If null, queued events are stored as JSON.
+         *
+         * @return The {@link CompactEventCodec} to use.
+         */
+        public CompactEventCodec getEventCodec() {
+            return eventCodec;
+        }
+
+        /**
+         * Sets the {@link CompactEventCodec} used to encode queued events. Encoded events are
+         * much smaller than JSON, but are only used if the event store implements
+         * {@link KeenBinaryEventStore}, as {@link FileEventStore} and {@link RamEventStore} do.
+         * Events already queued as JSON are still sent, and compact events are decoded when a
+         * batch is built, so a codec can be added or removed at any time.
+         *
+         * @param eventCodec The {@link CompactEventCodec} to use, or null to store JSON.
+         */
+        public void setEventCodec(CompactEventCodec eventCodec) {
+            this.eventCodec = eventCodec;
+        }
+
+        /**
+         * Sets the {@link CompactEventCodec} used to encode queued events.
+         *
+         * @param eventCodec The {@link CompactEventCodec} to use, or null to store JSON.
+         * @return This instance (for method chaining).
+         */
+        public Builder withEventCodec(CompactEventCodec eventCodec) {
+            setEventCodec(eventCodec);
+            return this;
+        }
+
+        /**
+         * Gets the {@link RetryPolicy} that this builder is currently configured to use. If null,
+         * failed requests aren't retried until the next flush.
+         *
+         * @return The {@link RetryPolicy} to use.
+         */
+        public RetryPolicy getRetryPolicy() {
+            return retryPolicy;
+        }
+
+        /**
+         * Sets the {@link RetryPolicy} which decides how failed publish requests are retried
+         * and when requests are paused. It applies to single events as well as to batches sent
+         * by {@code sendQueuedEvents}.
+         *
+         * @param retryPolicy The {@link RetryPolicy} to use, or null to disable retries.
+         */
+        public void setRetryPolicy(RetryPolicy retryPolicy) {
+            this.retryPolicy = retryPolicy;
+        }
+
+        /**
+         * Sets the {@link RetryPolicy} which decides how failed publish requests are retried.
+         *
+         * @param retryPolicy The {@link RetryPolicy} to use, or null to disable retries.
+         * @return This instance (for method chaining).
+         */
+        public Builder withRetryPolicy(RetryPolicy retryPolicy) {
+            setRetryPolicy(retryPolicy);
+            return this;
+        }
+
+        /**
+         * Gets the {@link KeenDeadLetterSink} that this builder is currently configured to use.
+         * If null, events which are rejected or use up their attempts are discarded.
+         *
+         * @return The {@link KeenDeadLetterSink} to use.
+         */
+        public KeenDeadLetterSink getDeadLetterSink() {
+            return deadLetterSink;
+        }
+
+        /**
+         * Sets the {@link KeenDeadLetterSink} which keeps queued events that are removed without
+         * being inserted: those the server rejects as invalid, and those which use up their
+         * attempts.
+         *
+         * @param deadLetterSink The {@link KeenDeadLetterSink} to use, or null to discard them.
+         */
+        public void setDeadLetterSink(KeenDeadLetterSink deadLetterSink) {
+            this.deadLetterSink = deadLetterSink;
+        }
+
+        /**
+         * Sets the {@link KeenDeadLetterSink} which keeps queued events that are removed without
+         * being inserted.
+         *
+         * @param deadLetterSink The {@link KeenDeadLetterSink} to use, or null to discard them.
+         * @return This instance (for method chaining).
+         */
+        public Builder withDeadLetterSink(KeenDeadLetterSink deadLetterSink) {
+            setDeadLetterSink(deadLetterSink);
+            return this;
+        }
+
+        /**
+         * Gets the idempotency window that this builder is currently configured to use. If 0,
+         * events aren't given IDs.
+         *
+         * @return The number of recently queued event IDs to remember.
+         */
+        public int getIdempotencyWindow() {
+            return idempotencyWindow;
+        }
+
+        /**
+         * Sets the idempotency window. If it's positive, every event is given a random ID under
+         * {@code keen.event_id} when it's built, unless its Keen properties already have one,
+         * which lets duplicates be recognized. An event queued with an ID of the caller's own,
+         * passed in its Keen properties, is skipped if an event with that ID was queued within
+         * the window, and events which the server has inserted are never sent again, even if
+         * they couldn't be removed from the event store.
+         *
+         * @param idempotencyWindow The number of recently queued event IDs to remember, or 0 to
+         *                          not give events IDs.
+         */
+        public void setIdempotencyWindow(int idempotencyWindow) {
+            if (idempotencyWindow < 0) {
+                throw new IllegalArgumentException("idempotencyWindow must not be negative");
+            }
+            this.idempotencyWindow = idempotencyWindow;
+        }
+
+        /**
+         * Sets the idempotency window.
+         *
+         * @param idempotencyWindow The number of recently queued event IDs to remember, or 0 to
+         *                          not give events IDs.
+         * @return This instance (for method chaining).
+         * @see #setIdempotencyWindow(int)
+         */
+        public Builder withIdempotencyWindow(int idempotencyWindow) {
+            setIdempotencyWindow(idempotencyWindow);
+            return this;
+        }
+
         /**
          * Builds a new Keen client using the interfaces which have been specified explicitly on
          * this builder instance via the set* or with* methods, or the default interfaces if none
@@ -1009,6 +1819,7 @@ public class KeenClient {
             try {
                 if (publishExecutor == null) {
                     publishExecutor = getDefaultPublishExecutor();
+                    ownsPublishExecutor = true;
                 }
             } catch (Exception e) {
                 KeenLogging.log("Exception building publish executor: " + e.getMessage());
@@ -1022,7 +1833,22 @@ public class KeenClient {
                 KeenLogging.log("Exception building network status handler: " + e.getMessage());
             }
 
-            return buildInstance();
+            try {
+                if (flushScheduler == null) {
+                    flushScheduler = getDefaultFlushScheduler();
+                }
+                if (flushScheduler != null && flushPolicy == null) {
+                    flushPolicy = new FlushPolicy();
+                }
+            } catch (Exception e) {
+                KeenLogging.log("Exception building flush scheduler: " + e.getMessage());
+            }
+
+            KeenClient client = buildInstance();
+            if (client.scheduledFlusher != null) {
+                client.scheduledFlusher.start();
+            }
+            return client;
         }
 
         /**
@@ -1064,9 +1890,19 @@ public class KeenClient {
         this.jsonHandler = builder.jsonHandler;
         this.eventStore = builder.eventStore;
         this.publishExecutor = builder.publishExecutor;
+        this.ownsPublishExecutor = builder.ownsPublishExecutor;
         this.networkStatusHandler = builder.networkStatusHandler;
         this.connectTimeout = builder.connectTimeout;
         this.readTimeout = builder.readTimeout;
+        this.maxInFlightRequests = builder.maxInFlightRequests;
+        this.inFlightRequests = new Semaphore(builder.maxInFlightRequests, true);
+        this.eventCodec = builder.eventCodec;
+        this.retryPolicy = builder.retryPolicy;
+        this.deadLetterSink = builder.deadLetterSink;
+        this.queuedEventIds = (builder.idempotencyWindow > 0 ?
+                new EventIdFilter(builder.idempotencyWindow) : null);
+        this.scheduledFlusher = (builder.flushScheduler == null ? null :
+                new ScheduledFlusher(this, builder.flushPolicy, builder.flushScheduler));
 
         // If any of the interfaces are null, mark this client as inactive.
         if (httpHandler == null || jsonHandler == null ||
@@ -1119,6 +1955,23 @@ public class KeenClient {
         validateEventCollection(eventCollection);
         validateEvent(event);
 
+        Map<String, Object> newEvent = buildEventEnvelope(eventCollection, keenProperties);
+
+        // merge any per-event non-keen properties
+        newEvent.putAll(event);
+        return newEvent;
+    }
+
+    /**
+     * Builds the part of an event which doesn't come from the caller's event properties: the
+     * merged Keen properties, under "keen", and the non-keen global properties.
+     *
+     * @param eventCollection The name of the collection in which the event will be published.
+     * @param keenProperties  A Map that consists of key/value pairs to override default properties.
+     * @return A new event Map containing Keen properties and global properties.
+     */
+    private Map<String, Object> buildEventEnvelope(String eventCollection,
+                                                   Map<String, Object> keenProperties) {
         KeenLogging.log(String.format(Locale.US, "Adding event to collection: %s", eventCollection));
 
         // Create maps to aggregate keen & non-keen properties
@@ -1126,15 +1979,25 @@ public class KeenClient {
         Map<String, Object> mergedKeenProperties = new HashMap<String, Object>();
 
         // separate keen & non-keen properties from static globals and merge them into separate maps
+        GlobalPropertiesCache cache = globalPropertiesCache;
         if (null != globalProperties) {
-            mergeGlobalProperties(getGlobalProperties(), mergedKeenProperties, newEvent);
+            if (cache != null) {
+                cache.getStatic(getGlobalProperties()).mergeInto(mergedKeenProperties, newEvent);
+            } else {
+                mergeGlobalProperties(getGlobalProperties(), mergedKeenProperties, newEvent);
+            }
         }
 
         // separate keen & non-keen properties from dynamic globals and merge them into separate maps
         GlobalPropertiesEvaluator globalPropertiesEvaluator = getGlobalPropertiesEvaluator();
         if (globalPropertiesEvaluator != null) {
-            mergeGlobalProperties(globalPropertiesEvaluator.getGlobalProperties(eventCollection), mergedKeenProperties,
-                    newEvent);
+            if (cache != null) {
+                cache.getDynamic(globalPropertiesEvaluator, eventCollection)
+                        .mergeInto(mergedKeenProperties, newEvent);
+            } else {
+                mergeGlobalProperties(globalPropertiesEvaluator.getGlobalProperties(eventCollection),
+                        mergedKeenProperties, newEvent);
+            }
         }
 
         // merge any per-event keen properties
@@ -1149,14 +2012,267 @@ public class KeenClient {
             mergedKeenProperties.put("timestamp", timestamp);
         }
 
+        // likewise the event's ID, if events are given IDs
+        if (queuedEventIds != null && !mergedKeenProperties.containsKey(KeenConstants.EVENT_ID_PARAM)) {
+            mergedKeenProperties.put(KeenConstants.EVENT_ID_PARAM, EventIds.generate());
+        }
+
         // add merged keen properties to event
         newEvent.put("keen", mergedKeenProperties);
-
-        // merge any per-event non-keen properties
-        newEvent.putAll(event);
         return newEvent;
     }
 
+    /**
+     * Validates a typed event and serializes it into JSON, along with its Keen properties and
+     * the global properties. Only the event's values are checked here; its property names were
+     * checked when the codec for its class was compiled. As with Map events, the event's
+     * properties take precedence over global properties of the same name. Failures are reported
+     * to the callback.
+     *
+     * @param project         The project given by the caller, which may be null.
+     * @param useProject      The project in which the event will be published.
+     * @param eventCollection The name of the collection in which the event will be published.
+     * @param event           The event.
+     * @param keenProperties  A Map that consists of key/value pairs to override default properties.
+     * @param callback        The callback to which failures are reported.
+     * @param asMap           Whether the event is needed as a Map rather than JSON.
+     * @return The event as JSON; or the event's properties as a Map, if that was asked for or the
+     * event has a value which can't be written directly, to be added as a Map event; or null if
+     * the event is invalid.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> Object buildTypedEvent(KeenProject project, KeenProject useProject,
+                                       String eventCollection, T event,
+                                       Map<String, Object> keenProperties, KeenCallback callback,
+                                       boolean asMap) {
+        try {
+            if (event == null) {
+                throw new InvalidEventException("You must specify a non-null, non-empty event.");
+            }
+            TypedEventCodec<T> codec = TypedEventCodec.forClass((Class<T>) event.getClass());
+            if (asMap) {
+                return codec.toMap(event);
+            }
+
+            if (useProject.getWriteKey() == null) {
+                throw new NoWriteKeyException("You can't send events to Keen if you haven't set a write key.");
+            }
+            validateEventCollection(eventCollection);
+            if (codec.hasProperty("keen")) {
+                throw new InvalidEventException("An event cannot contain a root-level property named 'keen'.");
+            }
+
+            Map<String, Object> envelope = buildEventEnvelope(eventCollection, keenProperties);
+            StringBuilder json = new StringBuilder(256);
+            try {
+                json.append('{');
+                boolean first = true;
+                for (Map.Entry<String, Object> entry : envelope.entrySet()) {
+                    if (codec.hasProperty(entry.getKey())) {
+                        continue;
+                    }
+                    if (!first) {
+                        json.append(',');
+                    }
+                    first = false;
+                    CompactEventCodec.appendString(json, entry.getKey());
+                    json.append(':');
+                    TypedEventCodec.writeValue(json, entry.getValue(), 0, false);
+                }
+                codec.writeProperties(json, event, 0, first);
+                json.append('}');
+            } catch (IllegalArgumentException e) {
+                KeenLogging.log("Adding event as a Map, it can't be serialized directly: " +
+                        e.getMessage());
+                return codec.toMap(event);
+            }
+            return json.toString();
+        } catch (Exception e) {
+            handleFailure(callback, project, eventCollection, toCallbackEvent(callback, event),
+                    keenProperties, e);
+            return null;
+        }
+    }
+
+    /**
+     * Builds and synchronously publishes an event, reporting the result to the callback.
+     *
+     * @return Whether the event was published.
+     */
+    private boolean publishEvent(KeenProject project, KeenProject useProject,
+                                 String eventCollection, Map<String, Object> event,
+                                 Map<String, Object> keenProperties, KeenCallback callback) {
+        try {
+            // Build the event.
+            Map<String, Object> newEvent =
+                    validateAndBuildEvent(useProject, eventCollection, event, keenProperties);
+
+            // Publish the event.
+            publish(useProject, eventCollection, newEvent);
+            handleSuccess(callback, project, eventCollection, event, keenProperties);
+            return true;
+        } catch (Exception e) {
+            handleFailure(callback, project, eventCollection, event, keenProperties, e);
+            return false;
+        }
+    }
+
+    /**
+     * Builds and synchronously publishes a typed event, reporting the result to the callback.
+     *
+     * @return Whether the event was published.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> boolean publishTypedEvent(KeenProject project, KeenProject useProject,
+                                          String eventCollection, T event,
+                                          Map<String, Object> keenProperties,
+                                          KeenCallback callback) {
+        Object builtEvent = buildTypedEvent(project, useProject, eventCollection, event,
+                keenProperties, callback, false);
+        if (builtEvent instanceof Map) {
+            return publishEvent(project, useProject, eventCollection,
+                    (Map<String, Object>) builtEvent, keenProperties, callback);
+        } else if (builtEvent == null) {
+            return false;
+        }
+
+        try {
+            publishJson(useProject, eventCollection, (String) builtEvent);
+            handleSuccess(callback, project, eventCollection, toCallbackEvent(callback, event),
+                    keenProperties);
+            return true;
+        } catch (Exception e) {
+            handleFailure(callback, project, eventCollection, toCallbackEvent(callback, event),
+                    keenProperties, e);
+            return false;
+        }
+    }
+
+    /**
+     * Builds an event and saves it to the event store, reporting the result to the callback.
+     *
+     * @return Whether the event was stored.
+     */
+    private boolean storeQueuedEvent(KeenProject project, KeenProject useProject,
+                                     String eventCollection, Map<String, Object> event,
+                                     Map<String, Object> keenProperties, KeenCallback callback) {
+        String eventId = getCallerEventId(keenProperties);
+        if (!reserveEventId(eventId)) {
+            handleSuccess(callback, project, eventCollection, event, keenProperties);
+            return false;
+        }
+
+        boolean stored = false;
+        try {
+            stored = storeReservedEvent(project, useProject, eventCollection, event,
+                    keenProperties, callback);
+            return stored;
+        } finally {
+            releaseEventId(eventId, stored);
+        }
+    }
+
+    /**
+     * Builds an event and saves it to the event store, reporting the result to the callback,
+     * once its ID (if it has one) has been reserved.
+     *
+     * @return Whether the event was stored.
+     */
+    private boolean storeReservedEvent(KeenProject project, KeenProject useProject,
+                                       String eventCollection, Map<String, Object> event,
+                                       Map<String, Object> keenProperties,
+                                       KeenCallback callback) {
+        try {
+            // Build the event
+            Map<String, Object> newEvent =
+                    validateAndBuildEvent(useProject, eventCollection, event, keenProperties);
+
+            // Encode the event compactly if possible, otherwise serialize it into JSON.
+            byte[] compactEvent = encodeCompactEvent(newEvent);
+            String jsonEvent = null;
+            if (compactEvent == null) {
+                StringWriter writer = new StringWriter();
+                jsonHandler.writeJson(writer, newEvent);
+                jsonEvent = writer.toString();
+                KeenUtils.closeQuietly(writer);
+            }
+
+            storeEvent(useProject, eventCollection, compactEvent, jsonEvent);
+            handleSuccess(callback, project, eventCollection, event, keenProperties);
+            return true;
+        } catch (Exception e) {
+            handleFailure(callback, project, eventCollection, event, keenProperties, e);
+            return false;
+        }
+    }
+
+    /**
+     * Builds a typed event and saves it to the event store, reporting the result to the
+     * callback.
+     *
+     * @return Whether the event was stored.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> boolean storeQueuedTypedEvent(KeenProject project, KeenProject useProject,
+                                              String eventCollection, T event,
+                                              Map<String, Object> keenProperties,
+                                              KeenCallback callback) {
+        String eventId = getCallerEventId(keenProperties);
+        if (!reserveEventId(eventId)) {
+            handleSuccess(callback, project, eventCollection, toCallbackEvent(callback, event),
+                    keenProperties);
+            return false;
+        }
+
+        boolean stored = false;
+        try {
+            boolean compact = (eventCodec != null && eventStore instanceof KeenBinaryEventStore);
+            Object builtEvent = buildTypedEvent(project, useProject, eventCollection, event,
+                    keenProperties, callback, compact);
+            if (builtEvent instanceof Map) {
+                stored = storeReservedEvent(project, useProject, eventCollection,
+                        (Map<String, Object>) builtEvent, keenProperties, callback);
+                return stored;
+            } else if (builtEvent == null) {
+                return false;
+            }
+
+            try {
+                storeEvent(useProject, eventCollection, null, (String) builtEvent);
+                stored = true;
+                handleSuccess(callback, project, eventCollection, toCallbackEvent(callback, event),
+                        keenProperties);
+                return true;
+            } catch (Exception e) {
+                handleFailure(callback, project, eventCollection, toCallbackEvent(callback, event),
+                        keenProperties, e);
+                return false;
+            }
+        } finally {
+            releaseEventId(eventId, stored);
+        }
+    }
+
+    /**
+     * Converts a typed event into a Map for a {@link KeenDetailedCallback}.
+     *
+     * @param callback The callback; may be null.
+     * @param event    The event.
+     * @return The event's properties, or null if the callback doesn't take them or they can't be
+     * read.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> Map<String, Object> toCallbackEvent(KeenCallback callback, T event) {
+        if (!(callback instanceof KeenDetailedCallback) || event == null) {
+            return null;
+        }
+        try {
+            return TypedEventCodec.forClass((Class<T>) event.getClass()).toMap(event);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
     /**
      * Removes the "keen" key from the globalProperties map and, if a map was removed, then all of its pairs are added to the keenProperties map.
      * Anything left in the globalProperties map is then added to the newEvent map.
@@ -1174,12 +2290,208 @@ public class KeenClient {
             if (keen instanceof Map) {
                 keenProperties.putAll((Map)keen);
             }
-            newEvent.putAll(globalProperties);
+            newEvent.putAll(globalProperties);
+        }
+    }
+
+    /**
+     * Synchronously sends up to a maximum number of queued events for the given project. Only
+     * one send per project runs at a time; sends for different projects may run concurrently.
+     *
+     * @param project   The project for which to send queued events, or null for the default
+     *                  project.
+     * @param callback  An optional callback to receive notification of success or failure.
+     * @param maxEvents The maximum number of events to send, or 0 to send them all.
+     * @return The number of queued events which were left unsent because of the maximum.
+     */
+    int sendQueuedEvents(KeenProject project, KeenCallback callback, int maxEvents) {
+
+        if (!isActive) {
+            handleLibraryInactive(callback);
+            return 0;
+        }
+
+        if (project == null && defaultProject == null) {
+            handleFailure(null, new IllegalStateException("No project specified, but no default project found"));
+            return 0;
+        }
+
+        if (!isNetworkConnected()) {
+            KeenLogging.log("Not sending events because there is no network connection. " +
+                            "Events will be retried next time `sendQueuedEvents` is called.");
+            handleFailure(callback, new Exception("Network not connected."));
+            return 0;
+        }
+
+        // Leave events queued, without using up their attempts, while requests are paused.
+        if (retryPolicy != null && retryPolicy.isCircuitOpen()) {
+            KeenLogging.log("Not sending events because requests are paused. Events will be " +
+                            "retried next time `sendQueuedEvents` is called.");
+            handleFailure(callback, new CircuitOpenException("Requests are paused",
+                    retryPolicy.getRetryAtMillis()));
+            return 0;
+        }
+
+        KeenProject useProject = (project == null ? defaultProject : project);
+        String projectId = useProject.getProjectId();
+
+        // Sending the same events twice at once would post them twice, so sends are serialized
+        // per project. Other projects don't wait for this project's lock, but every send still
+        // needs one of the client's in-flight requests to post.
+        synchronized (getProjectLock(sendLocks, projectId)) {
+            int unsent = 0;
+            try {
+                Map<String, List<Object>> eventHandles = eventStore.getHandles(projectId);
+                if (maxEvents > 0) {
+                    Map<String, List<Object>> limitedHandles = new HashMap<String, List<Object>>();
+                    unsent = limitHandles(eventHandles, maxEvents, limitedHandles);
+                    eventHandles = limitedHandles;
+                }
+                KeenBatchCallback batchCallback = (callback instanceof KeenBatchCallback ?
+                        (KeenBatchCallback) callback : null);
+                Map<String, List<Object>> sentHandles = new HashMap<String, List<Object>>();
+                Map<Object, String> sentEventIds = (queuedEventIds == null ? null :
+                        new HashMap<Object, String>());
+                Map<String, List<Map<String, Object>>> events = buildEventMap(projectId,
+                        eventHandles, sentHandles, sentEventIds, batchCallback);
+                String response = publishAll(useProject, events);
+                if (response != null) {
+                    try {
+                        handleAddEventsResponse(projectId, sentHandles, sentEventIds, response,
+                                batchCallback);
+                    } catch (Exception e) {
+                        // Errors handling the response are non-fatal; just log them.
+                        KeenLogging.log("Error handling response to batch publish: " + e.getMessage());
+                    }
+                }
+                handleSuccess(callback);
+            } catch (Exception e) {
+                handleFailure(callback, e);
+            }
+            return unsent;
+        }
+    }
+
+    /**
+     * Sets the pool which routes events to this client, so that it's told when events are
+     * queued.
+     *
+     * @param pool The pool.
+     */
+    void setPool(KeenClientPool pool) {
+        if (this.pool != null) {
+            throw new IllegalStateException("The client is already used by a KeenClientPool");
+        }
+        this.pool = pool;
+    }
+
+    /**
+     * Gets the maximum number of HTTP requests this client has in flight at once. Every post
+     * waits for one, so this also limits how many sends a {@link KeenClientPool} or
+     * {@link KeenBackfill} can have running.
+     *
+     * @return The maximum number of concurrent requests.
+     */
+    int getMaxInFlightRequests() {
+        return maxInFlightRequests;
+    }
+
+    /**
+     * Posts a batch of events which has already been serialized into JSON, retrying as the
+     * client's {@link RetryPolicy} allows.
+     *
+     * @param project The project in which to publish the events.
+     * @param body    The request body: a JSON object mapping collection names to event arrays.
+     * @return The response from the server.
+     * @throws IOException If there was an error communicating with the server.
+     */
+    String publishBatch(KeenProject project, final byte[] body) throws IOException {
+        URL url = getRequestUrlBuilder().getBatchEventsUrl(project.getProjectId());
+        OutputSource source = new OutputSource() {
+            @Override
+            public void writeTo(OutputStream out) throws IOException {
+                out.write(body);
+            }
+        };
+
+        if (KeenLogging.isLoggingEnabled()) {
+            KeenLogging.log(String.format(Locale.US, "Sent %d byte batch to URL '%s'",
+                    body.length, url.toString()));
+        }
+        return post(project, url, source);
+    }
+
+    /**
+     * Checks whether the server's error for an event means the event itself is invalid, so
+     * sending it again would fail the same way.
+     *
+     * @param errorName The name of the server's error.
+     * @return Whether the event should be rejected rather than retried.
+     */
+    static boolean isInvalidEventError(String errorName) {
+        return KeenConstants.INVALID_COLLECTION_NAME_ERROR.equals(errorName) ||
+                KeenConstants.INVALID_PROPERTY_NAME_ERROR.equals(errorName) ||
+                KeenConstants.INVALID_PROPERTY_VALUE_ERROR.equals(errorName);
+    }
+
+    /**
+     * @return The sink for events which are removed without being inserted, or null.
+     */
+    KeenDeadLetterSink getDeadLetterSink() {
+        return deadLetterSink;
+    }
+
+    ///// PRIVATE TYPES /////
+
+    /**
+     * An asynchronous publish which hasn't finished. It either runs on the publish executor or,
+     * if the client is shut down before it starts, is saved to the event store instead.
+     */
+    private abstract class PendingPublish implements Runnable {
+        private final AtomicBoolean started = new AtomicBoolean();
+
+        /**
+         * @return Whether the event was published.
+         */
+        abstract boolean publish();
+
+        /**
+         * @return Whether the event was stored.
+         */
+        abstract boolean persist();
+
+        /**
+         * Claims the publish, so it's either published or persisted but not both.
+         *
+         * @return Whether it hadn't already been claimed.
+         */
+        boolean start() {
+            return started.compareAndSet(false, true);
+        }
+
+        @Override
+        public void run() {
+            if (!start()) {
+                return;
+            }
+            boolean published = false;
+            try {
+                published = publish();
+            } finally {
+                synchronized (pendingPublishes) {
+                    if (isShutDown) {
+                        if (published) {
+                            publishedDuringShutdown++;
+                        } else {
+                            failedDuringShutdown++;
+                        }
+                    }
+                }
+                removePendingPublish(this);
+            }
         }
     }
 
-    ///// PRIVATE TYPES /////
-
     /**
      * The {@link io.keen.client.java.KeenClient} class's singleton enum.
      */
@@ -1200,17 +2512,55 @@ public class KeenClient {
     private final KeenEventStore eventStore;
     private final Executor publishExecutor;
     private final KeenNetworkStatusHandler networkStatusHandler;
-    private final Object attemptsLock = new Object();
+    // Locks for sending each project's queued events, and for updating its attempt counts, by
+    // project ID.
+    private final ConcurrentMap<String, Object> sendLocks = new ConcurrentHashMap<String, Object>();
+    private final ConcurrentMap<String, Object> attemptsLocks =
+            new ConcurrentHashMap<String, Object>();
     private final int connectTimeout;
     private final int readTimeout;
+    // Limits concurrent HTTP calls. Unlike a synchronized method, waiting on a semaphore doesn't
+    // pin a virtual thread to its carrier.
+    private final Semaphore inFlightRequests;
+    private final int maxInFlightRequests;
+    private final ScheduledFlusher scheduledFlusher;
+    private volatile KeenClientPool pool;
+    private final boolean ownsPublishExecutor;
+    // The projects which have had events queued, by project ID, so shutdown can flush them.
+    private final ConcurrentMap<String, KeenProject> queuedProjects =
+            new ConcurrentHashMap<String, KeenProject>();
+    // Asynchronous publishes which haven't finished. Guarded by its lock, which also guards
+    // isShutDown changing and the counts of publishes finished during shutdown.
+    private final Set<PendingPublish> pendingPublishes = new LinkedHashSet<PendingPublish>();
+    private int publishedDuringShutdown;
+    private int failedDuringShutdown;
+    private volatile boolean isShutDown;
+    // The deadline of the latest shutdown, as a System.nanoTime() value; set before isShutDown.
+    private volatile long shutdownDeadline;
+    private final CompactEventCodec eventCodec;
+    private final RetryPolicy retryPolicy;
+    private final KeenDeadLetterSink deadLetterSink;
+    // The IDs callers gave recently queued events, or null if events aren't given IDs.
+    private final EventIdFilter queuedEventIds;
+    // The IDs of events the server inserted but which couldn't be removed from the event store,
+    // so they aren't sent again. Bounded, oldest first.
+    private final Set<String> insertedEventIds = Collections.synchronizedSet(
+            Collections.newSetFromMap(new LinkedHashMap<String, Boolean>() {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                    return size() > MAX_INSERTED_EVENT_IDS;
+                }
+            }));
 
     private boolean isActive = true;
     private boolean isDebugMode;
     private int maxAttempts = KeenConstants.DEFAULT_MAX_ATTEMPTS;
     private KeenProject defaultProject;
     private String baseUrl;
+    private volatile RequestUrlBuilder requestUrlBuilder;
     private GlobalPropertiesEvaluator globalPropertiesEvaluator;
     private Map<String, Object> globalProperties;
+    private volatile GlobalPropertiesCache globalPropertiesCache;
     private Proxy proxy;
 
     ///// PRIVATE METHODS /////
@@ -1247,7 +2597,7 @@ public class KeenClient {
      *              should be 0 for the initial call and will increment on each recursive call.
      */
     @SuppressWarnings("unchecked") // cast to generic Map will always be okay in this case
-    private void validateEvent(Map<String, Object> event, int depth) {
+    static void validateEvent(Map<String, Object> event, int depth) {
         if (depth == 0) {
             if (event == null || event.size() == 0) {
                 throw new InvalidEventException("You must specify a non-null, non-empty event.");
@@ -1262,7 +2612,7 @@ public class KeenClient {
 
         for (Map.Entry<String, Object> entry : event.entrySet()) {
             String key = entry.getKey();
-            if (key.contains(".")) {
+            if (key.indexOf('.') >= 0) {
                 throw new InvalidEventException("An event cannot contain a property with the period (.) character in " +
                         "it.");
             }
@@ -1282,7 +2632,14 @@ public class KeenClient {
      * @param depth The current depth of validation.
      */
     @SuppressWarnings("unchecked") // cast to generic Map will always be okay in this case
-    private void validateEventValue(Object value, int depth) {
+    private static void validateEventValue(Object value, int depth) {
+        // Numbers and booleans need no checks. Comparing their classes first saves each of them
+        // two failed interface checks below, which are comparatively slow.
+        Class<?> type = (value == null ? null : value.getClass());
+        if (type == null || type == Integer.class || type == Long.class || type == Double.class ||
+                type == Boolean.class) {
+            return;
+        }
         if (value instanceof String) {
             String strValue = (String) value;
             if (strValue.length() >= 10000) {
@@ -1303,12 +2660,20 @@ public class KeenClient {
      * to a list of event handles. This method just uses the event store to retrieve each event by
      * its handle.
      *
-     * @param eventHandles A map from collection name to a list of event handles in the event store.
+     * @param eventHandles  A map from collection name to a list of event handles in the event store.
+     * @param sentHandles   The map to put the handles of the events to be sent into, in the same
+     *                      order as the events; events which have used up their attempts, or
+     *                      which the server has already inserted, are left out.
+     * @param sentEventIds  The map to put the IDs of the events to be sent into, by handle, or
+     *                      null if events aren't given IDs.
+     * @param batchCallback The callback to report events which have used up their attempts to,
+     *                      or null.
      * @return A map from collection name to a list of event maps.
      * @throws IOException If there is an error retrieving events from the store.
      */
     private Map<String, List<Map<String, Object>>> buildEventMap(String projectId,
-            Map<String, List<Object>> eventHandles) throws IOException {
+            Map<String, List<Object>> eventHandles, Map<String, List<Object>> sentHandles,
+            Map<Object, String> sentEventIds, KeenBatchCallback batchCallback) throws IOException {
         Map<String, List<Map<String, Object>>> result =
                 new HashMap<String, List<Map<String, Object>>>();
         for (Map.Entry<String, List<Object>> entry : eventHandles.entrySet()) {
@@ -1325,7 +2690,7 @@ public class KeenClient {
 
             Map<String, Integer> attempts;
             if (eventStore instanceof KeenAttemptCountingEventStore) {
-                synchronized (attemptsLock) {
+                synchronized (getProjectLock(attemptsLocks, projectId)) {
                     try {
                         attempts = getAttemptsMap(projectId, eventCollection);
                     } catch (IOException ex) {
@@ -1336,8 +2701,12 @@ public class KeenClient {
                                 "Exception: " + ex);
                     }
 
+                    List<Object> collectionSentHandles = new ArrayList<Object>(handles.size());
                     for (Object handle : handles) {
                         Map<String, Object> event = getEvent(handle);
+                        if (isInsertedEvent(handle, event, sentEventIds)) {
+                            continue;
+                        }
 
                         String attemptsKey = "" + handle.hashCode();
                         Integer remainingAttempts = attempts.get(attemptsKey);
@@ -1353,15 +2722,20 @@ public class KeenClient {
                         if (remainingAttempts >= 0) {
                             // if we had some remaining attempts, then try again
                             events.add(event);
-                        } else {
-                            // otherwise remove it from the store
+                            collectionSentHandles.add(handle);
+                        } else if (addDeadLetter(projectId, eventCollection, event,
+                                KeenEventStatus.DROPPED, null, null)) {
+                            // otherwise remove it from the store, once the dead letter sink has it
                             eventStore.remove(handle);
 
                             // iff eventStore.remove succeeds we can do some housekeeping and remove the
                             // key from the attempts hash.
                             attempts.remove(attemptsKey);
+                            reportEventResult(batchCallback, handle, eventCollection,
+                                    KeenEventStatus.DROPPED, null);
                         }
                     }
+                    sentHandles.put(eventCollection, collectionSentHandles);
 
                     try {
                         setAttemptsMap(projectId, eventCollection, attempts);
@@ -1371,13 +2745,21 @@ public class KeenClient {
                     }
                 }
             } else {
+                List<Object> collectionSentHandles = new ArrayList<Object>(handles.size());
                 for (Object handle : handles) {
-                    events.add(getEvent(handle));
+                    Map<String, Object> event = getEvent(handle);
+                    if (!isInsertedEvent(handle, event, sentEventIds)) {
+                        events.add(event);
+                        collectionSentHandles.add(handle);
+                    }
                 }
+                sentHandles.put(eventCollection, collectionSentHandles);
             }
 
-
-            result.put(eventCollection, events);
+            // Skip event collections whose events have all been dropped or inserted already.
+            if (!events.isEmpty()) {
+                result.put(eventCollection, events);
+            }
         }
         return result;
     }
@@ -1401,10 +2783,7 @@ public class KeenClient {
 
     private URL createURL(KeenProject project, String eventCollection) {
         try {
-            String encodedCollectionName = new URI(null, null, eventCollection, null).getRawPath();
-            String path = String.format(Locale.US, "%s/%s/projects/%s/events/%s", getBaseUrl(),
-                    KeenConstants.API_VERSION, project.getProjectId(), encodedCollectionName);
-            return new URL(path);
+            return getRequestUrlBuilder().getEventUrl(project.getProjectId(), eventCollection);
         } catch (URISyntaxException e) {
             KeenLogging.log("Event collection name has invalid character to encode", e);
         } catch (MalformedURLException e) {
@@ -1425,12 +2804,29 @@ public class KeenClient {
     private String publishAll(KeenProject project,
                               Map<String, List<Map<String, Object>>> events) throws IOException {
         // just using basic JDK HTTP library
-        String urlString = String.format(Locale.US, "%s/%s/projects/%s/events", getBaseUrl(),
-                KeenConstants.API_VERSION, project.getProjectId());
-        URL url = new URL(urlString);
+        URL url = getRequestUrlBuilder().getBatchEventsUrl(project.getProjectId());
         return publishObject(project, url, events);
     }
 
+    /**
+     * Gets the URL builder for the current base URL. URLs are cached per project, so nothing
+     * needs to be invalidated when the project changes.
+     *
+     * @return The {@link RequestUrlBuilder} to use.
+     */
+    private RequestUrlBuilder getRequestUrlBuilder() {
+        RequestUrlBuilder builder = requestUrlBuilder;
+        String currentBaseUrl = getBaseUrl();
+
+        // Subclasses may override getBaseUrl(), so check the builder still matches it.
+        if (builder == null || !builder.getBaseUrl().equals(currentBaseUrl)) {
+            builder = new RequestUrlBuilder(KeenConstants.API_VERSION, currentBaseUrl);
+            requestUrlBuilder = builder;
+        }
+
+        return builder;
+    }
+
     /**
      * Posts a request to the server in the specified project, using the given URL and request data.
      * The request data will be serialized into JSON using the client's
@@ -1444,7 +2840,7 @@ public class KeenClient {
      * @return The response from the server.
      * @throws IOException If there was an error communicating with the server.
      */
-    private synchronized String publishObject(KeenProject project, URL url,
+    private String publishObject(KeenProject project, URL url,
                                               final Map<String, ?> requestData) throws IOException {
         if (requestData == null || requestData.size() == 0) {
             KeenLogging.log("No API calls were made because there were no events to upload");
@@ -1473,23 +2869,157 @@ public class KeenClient {
             }
         }
 
-        // Send the request.
+        return post(project, url, source);
+    }
+
+    /**
+     * Publishes a single event which has already been serialized into JSON.
+     *
+     * @param project         The project in which to publish the event.
+     * @param eventCollection The name of the collection in which to publish the event.
+     * @param jsonEvent       The event as JSON.
+     * @return The response from the server.
+     * @throws IOException If there was an error communicating with the server.
+     */
+    private String publishJson(KeenProject project, String eventCollection,
+                               String jsonEvent) throws IOException {
+        URL url = createURL(project, eventCollection);
+        if (url == null) {
+            throw new IllegalStateException("URL address is empty");
+        }
+
+        final byte[] body = jsonEvent.getBytes(ENCODING);
+        OutputSource source = new OutputSource() {
+            @Override
+            public void writeTo(OutputStream out) throws IOException {
+                out.write(body);
+            }
+        };
+
+        if (KeenLogging.isLoggingEnabled()) {
+            KeenLogging.log(String.format(Locale.US, "Sent request '%s' to URL '%s'",
+                    jsonEvent, url.toString()));
+        }
+        return post(project, url, source);
+    }
+
+    /**
+     * Posts a request body to the server, retrying as the client's {@link RetryPolicy} allows.
+     *
+     * @param project The project whose write key authenticates the request.
+     * @param url     The URL to which the POST should be sent.
+     * @param source  The request body.
+     * @return The response from the server.
+     * @throws IOException If there was an error communicating with the server.
+     */
+    private String post(KeenProject project, URL url, OutputSource source) throws IOException {
         String writeKey = project.getWriteKey();
         Request request = new Request(url, HttpMethods.POST, writeKey, source, proxy, connectTimeout, readTimeout);
-        Response response = httpHandler.execute(request);
+        if (retryPolicy == null) {
+            return execute(request);
+        }
+
+        // Retry as the policy allows; it throws if requests are paused.
+        for (int attempt = 1; ; attempt++) {
+            retryPolicy.beforeAttempt(attempt);
+
+            long delay;
+            boolean recorded = false;
+            try {
+                String body = execute(request);
+                recorded = true;
+                retryPolicy.onAttemptSucceeded();
+                return body;
+            } catch (ServerException e) {
+                recorded = true;
+                delay = retryPolicy.onAttemptFailed(attempt, e.getStatusCode(),
+                        e.getRetryAfter(), e);
+                if (delay < 0 || isPastShutdownDeadline(url, delay)) {
+                    throw e;
+                }
+            } catch (IOException e) {
+                // A timeout is a failure like any other, but an interrupt says nothing about the
+                // API and isn't retried.
+                if (e instanceof InterruptedIOException && Thread.currentThread().isInterrupted()) {
+                    throw e;
+                }
+                recorded = true;
+                delay = retryPolicy.onAttemptFailed(attempt, -1, null, e);
+                if (delay < 0 || isPastShutdownDeadline(url, delay)) {
+                    throw e;
+                }
+            } finally {
+                // Release the trial request, if this was it, whatever went wrong.
+                if (!recorded) {
+                    retryPolicy.onAttemptAbandoned();
+                }
+            }
+
+            KeenLogging.log(String.format(Locale.US, "Retrying request to '%s' in %d ms",
+                    url.toString(), delay));
+            try {
+                retryPolicy.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting to retry request");
+            }
+        }
+    }
+
+    /**
+     * Checks whether waiting to retry a request would pass the deadline of a shutdown in
+     * progress, in which case the request should give up instead.
+     *
+     * @param url     The URL of the request, for logging.
+     * @param delay   The time to wait before retrying, in milliseconds.
+     * @return Whether the retry would happen after the shutdown deadline.
+     */
+    private boolean isPastShutdownDeadline(URL url, long delay) {
+        if (!isShutDown ||
+                System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay) - shutdownDeadline <= 0) {
+            return false;
+        }
+        KeenLogging.log(String.format(Locale.US, "Not retrying request to '%s', the shutdown " +
+                "deadline would pass first", url.toString()));
+        return true;
+    }
+
+    /**
+     * Sends a request once, subject to the limit on concurrent requests.
+     *
+     * @param request The request to send.
+     * @return The body of the response.
+     * @throws IOException If there was an error communicating with the server.
+     * @throws ServerException If the server responded with an error.
+     */
+    private String execute(Request request) throws IOException {
+        Response response;
+        try {
+            inFlightRequests.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting to send request");
+        }
+        try {
+            response = httpHandler.execute(request);
+        } finally {
+            inFlightRequests.release();
+        }
 
         // If logging is enabled, log the response.
+        String body = response.getBodyString();
         if (KeenLogging.isLoggingEnabled()) {
             KeenLogging.log(String.format(Locale.US,
-                    "Received response: '%s' (%d)", response.body,
+                    "Received response: '%s' (%d)", body,
                     response.statusCode));
         }
 
         // If the request succeeded, return the response body. Otherwise throw an exception.
         if (response.isSuccess()) {
-            return response.body;
+            return body;
         } else {
-            throw new ServerException(response.body);
+            throw new ServerException(body, response.statusCode,
+                    response.getHeader("Retry-After"));
         }
     }
 
@@ -1506,76 +3036,245 @@ public class KeenClient {
     private static final String ENCODING = "UTF-8";
     private static final int DEFAULT_CONNECT_TIMEOUT = 30000;
     private static final int DEFAULT_READ_TIMEOUT = 30000;
+    private static final int DEFAULT_MAX_IN_FLIGHT_REQUESTS = 1;
+    private static final long DEFAULT_SHUTDOWN_TIMEOUT_MILLIS = 10000;
+    private static final int SHUTDOWN_FLUSH_BATCH_SIZE = 500;
+    private static final int MAX_INSERTED_EVENT_IDS = 10000;
 
     /**
      * Handles a response from the Keen service to a batch post events operation. In particular,
      * this method will iterate through the responses and remove any successfully processed events
      * (or events which failed for known fatal reasons) from the event store so they won't be sent
-     * in subsequent posts.
+     * in subsequent posts. The response is read in a single pass, and each event's result is
+     * reported to the batch callback as it's read.
      *
-     * @param handles  A map from collection names to lists of handles in the event store. This is
-     *                 referenced against the response from the server to determine which events to
-     *                 remove from the store.
-     * @param response The response from the server.
-     * @throws IOException If there is an error removing events from the store.
+     * @param projectId     The ID of the project the events were sent to.
+     * @param handles       A map from collection names to lists of handles in the event store, in
+     *                      the order the events were sent. This is referenced against the response
+     *                      from the server to determine which events to remove from the store.
+     * @param eventIds      The IDs of the events, by handle, or null if events aren't given IDs.
+     * @param response      The response from the server.
+     * @param batchCallback The callback to report each event's result to, or null.
+     * @throws IOException If the response can't be parsed.
      */
-    @SuppressWarnings("unchecked")
-    private void handleAddEventsResponse(Map<String, List<Object>> handles, String response) throws IOException {
-        // Parse the response into a map.
-        StringReader reader = new StringReader(response);
-        Map<String, Object> responseMap;
-        responseMap = jsonHandler.readJson(reader);
-
-        // It's not obvious what the best way is to try and recover from them, but just hoping it
-        // doesn't happen is probably the wrong answer.
-
-        // Loop through all the event collections.
-        for (Map.Entry<String, Object> entry : responseMap.entrySet()) {
-            String collectionName = entry.getKey();
-
-            // Get the list of handles in this collection.
-            List<Object> collectionHandles = handles.get(collectionName);
-
-            // Iterate through the elements in the collection
-            List<Map<String, Object>> eventResults = (List<Map<String, Object>>) entry.getValue();
-            int index = 0;
-            for (Map<String, Object> eventResult : eventResults) {
-                // now loop through each event collection's individual results
-                boolean removeCacheEntry = true;
-                boolean success = (Boolean) eventResult.get(KeenConstants.SUCCESS_PARAM);
-                if (!success) {
-                    // grab error code and description
-                    Map errorDict = (Map) eventResult.get(KeenConstants.ERROR_PARAM);
-                    String errorCode = (String) errorDict.get(KeenConstants.NAME_PARAM);
-                    if (errorCode.equals(KeenConstants.INVALID_COLLECTION_NAME_ERROR) ||
-                            errorCode.equals(KeenConstants.INVALID_PROPERTY_NAME_ERROR) ||
-                            errorCode.equals(KeenConstants.INVALID_PROPERTY_VALUE_ERROR)) {
-                        removeCacheEntry = true;
-                        KeenLogging.log("An invalid event was found. Deleting it. Error: " +
-                                errorDict.get(KeenConstants.DESCRIPTION_PARAM));
-                    } else {
-                        String description = (String) errorDict.get(KeenConstants.DESCRIPTION_PARAM);
-                        removeCacheEntry = false;
-                        KeenLogging.log(String.format(Locale.US,
-                                "The event could not be inserted for some reason. " +
-                                "Error name and description: %s %s", errorCode,
-                                description));
+    private void handleAddEventsResponse(final String projectId,
+                                         final Map<String, List<Object>> handles,
+                                         final Map<Object, String> eventIds, String response,
+                                         final KeenBatchCallback batchCallback) throws IOException {
+        BatchResponseParser.parse(response, new BatchResponseParser.Listener() {
+            // Results are grouped by collection, so its handles only need looking up once.
+            private String collectionName;
+            private List<Object> collectionHandles;
+
+            @Override
+            public void onEventResult(String eventCollection, int index, boolean success,
+                                      String errorName, String errorDescription) {
+                if (!eventCollection.equals(collectionName)) {
+                    collectionName = eventCollection;
+                    collectionHandles = handles.get(eventCollection);
+                }
+                if (collectionHandles == null || index >= collectionHandles.size()) {
+                    KeenLogging.log("Ignoring a result for an event which wasn't sent, in " +
+                            "collection '" + eventCollection + "'");
+                    return;
+                }
+                Object handle = collectionHandles.get(index);
+
+                KeenEventStatus status;
+                if (success) {
+                    status = KeenEventStatus.SUCCEEDED;
+                } else if (isInvalidEventError(errorName)) {
+                    status = KeenEventStatus.REJECTED;
+                    KeenLogging.log("An invalid event was found. Deleting it. Error: " +
+                            errorDescription);
+                    if (!addDeadLetter(projectId, eventCollection, readEvent(handle), status,
+                            errorName, errorDescription)) {
+                        // Keep the event until the dead letter sink accepts it.
+                        status = KeenEventStatus.FAILED;
                     }
+                } else {
+                    status = KeenEventStatus.FAILED;
+                    KeenLogging.log(String.format(Locale.US,
+                            "The event could not be inserted for some reason. " +
+                            "Error name and description: %s %s", errorName,
+                            errorDescription));
                 }
 
-                // If the cache entry should be removed, get the handle at the appropriate index
-                // and ask the event store to remove it.
-                if (removeCacheEntry) {
-                    Object handle = collectionHandles.get(index);
-                    // Try to remove the object from the cache. Catch and log exceptions to prevent
-                    // a single failure from derailing the rest of the cleanup.
+                // If the cache entry should be removed, ask the event store to remove it. Catch
+                // and log exceptions to prevent a single failure from derailing the rest of the
+                // cleanup.
+                if (status != KeenEventStatus.FAILED) {
                     try {
                         eventStore.remove(handle);
                     } catch (IOException e) {
                         KeenLogging.log("Failed to remove object '" + handle + "' from cache");
+                        // Remember the event's ID, so it isn't sent again before it's removed.
+                        String eventId = (eventIds == null ? null : eventIds.get(handle));
+                        if (eventId != null) {
+                            insertedEventIds.add(eventId);
+                        }
                     }
                 }
-                index++;
+                reportEventResult(batchCallback, handle, eventCollection, status, errorName);
+            }
+        });
+    }
+
+    /**
+     * Gets the ID a caller gave an event in its Keen properties, if events are given IDs.
+     *
+     * @param keenProperties The event's Keen properties; may be null.
+     * @return The event's ID, or null.
+     */
+    private String getCallerEventId(Map<String, Object> keenProperties) {
+        if (queuedEventIds == null || keenProperties == null) {
+            return null;
+        }
+        Object eventId = keenProperties.get(KeenConstants.EVENT_ID_PARAM);
+        return (eventId instanceof String ? (String) eventId : null);
+    }
+
+    /**
+     * Reserves an event's ID while the event is stored, unless an event with the same ID was
+     * queued within the idempotency window or is being queued, in which case it shouldn't be
+     * queued again.
+     *
+     * @param eventId The event's ID; may be null.
+     * @return Whether the event should be queued: false if it's probably a duplicate.
+     */
+    private boolean reserveEventId(String eventId) {
+        if (eventId == null || queuedEventIds.reserve(eventId)) {
+            return true;
+        }
+        KeenLogging.log("Not queueing event '" + eventId + "', which was queued recently");
+        return false;
+    }
+
+    /**
+     * Releases the ID reserved by {@link #reserveEventId(String)}, remembering it if the event
+     * was stored so that it can be queued again otherwise.
+     *
+     * @param eventId The event's ID; may be null.
+     * @param stored  Whether the event was stored.
+     */
+    private void releaseEventId(String eventId, boolean stored) {
+        if (eventId == null) {
+            return;
+        }
+        if (stored) {
+            queuedEventIds.confirm(eventId);
+        } else {
+            queuedEventIds.cancel(eventId);
+        }
+    }
+
+    /**
+     * Checks whether the server has already inserted a queued event which couldn't be removed
+     * from the event store, and tries to remove it again if so. Otherwise records the event's
+     * ID, so the response to sending it can be matched to it.
+     *
+     * @param handle       The event's handle.
+     * @param event        The event.
+     * @param sentEventIds The IDs of the events being sent, by handle, or null if events aren't
+     *                     given IDs.
+     * @return Whether the event has been inserted, and so shouldn't be sent.
+     */
+    private boolean isInsertedEvent(Object handle, Map<String, Object> event,
+                                    Map<Object, String> sentEventIds) {
+        if (sentEventIds == null) {
+            return false;
+        }
+        String eventId = EventIds.get(event);
+        if (eventId == null) {
+            return false;
+        }
+        if (!insertedEventIds.contains(eventId)) {
+            sentEventIds.put(handle, eventId);
+            return false;
+        }
+
+        try {
+            eventStore.remove(handle);
+            insertedEventIds.remove(eventId);
+        } catch (IOException e) {
+            KeenLogging.log("Failed to remove object '" + handle + "' from cache");
+        }
+        return true;
+    }
+
+    /**
+     * Reads an event from the event store for a dead letter.
+     *
+     * @param handle The event's handle.
+     * @return The event, or null if it can't be read.
+     */
+    private Map<String, Object> readEvent(Object handle) {
+        if (deadLetterSink == null) {
+            return null;
+        }
+        try {
+            return getEvent(handle);
+        } catch (IOException e) {
+            KeenLogging.log("Failed to read event for dead letter: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Passes an event which is about to be removed without being inserted to the dead letter
+     * sink, if there is one.
+     *
+     * @param projectId        The ID of the event's project.
+     * @param eventCollection  The event's collection.
+     * @param event            The event, or null if it couldn't be read.
+     * @param reason           Why the event is being removed.
+     * @param errorName        The name of the server's error, or null.
+     * @param errorDescription The description of the server's error, or null.
+     * @return Whether the event may be removed: true if there's no sink or it accepted the event.
+     */
+    private boolean addDeadLetter(String projectId, String eventCollection,
+                                  Map<String, Object> event, KeenEventStatus reason,
+                                  String errorName, String errorDescription) {
+        if (deadLetterSink == null) {
+            return true;
+        }
+        if (event == null) {
+            return false;
+        }
+
+        StringWriter writer = new StringWriter();
+        try {
+            jsonHandler.writeJson(writer, event);
+            deadLetterSink.add(new DeadLetter(System.currentTimeMillis(), projectId,
+                    eventCollection, reason, errorName, errorDescription, writer.toString()));
+            return true;
+        } catch (Exception e) {
+            KeenLogging.log("Failed to add dead letter. The event will stay queued. " +
+                    "Exception: " + e);
+            return false;
+        } finally {
+            KeenUtils.closeQuietly(writer);
+        }
+    }
+
+    /**
+     * Reports the outcome for one event of sending a batch. If the callback is null, this is a
+     * no-op. Any exceptions thrown by the callback are silently ignored.
+     *
+     * @param batchCallback   A callback; may be null.
+     * @param handle          The event's handle.
+     * @param eventCollection The event's collection.
+     * @param status          What happened to the event.
+     * @param errorName       The name of the server's error, or null.
+     */
+    private static void reportEventResult(KeenBatchCallback batchCallback, Object handle,
+                                          String eventCollection, KeenEventStatus status,
+                                          String errorName) {
+        if (batchCallback != null) {
+            try {
+                batchCallback.onEventResult(handle, eventCollection, status, errorName);
+            } catch (Exception userException) {
+                // Do nothing. Issue #98
             }
         }
     }
@@ -1718,6 +3417,191 @@ public class KeenClient {
                 "properly and is inactive"));
     }
 
+    /**
+     * Reports that an operation was rejected because the client has been shut down.
+     *
+     * @param callback A callback; may be null.
+     */
+    private void handleClientShutDown(KeenCallback callback) {
+        handleFailure(callback, new IllegalStateException("The Keen client has been shut down"));
+    }
+
+    /**
+     * Tracks an asynchronous publish until it finishes.
+     *
+     * @param pendingPublish The publish.
+     * @return False if the client has been shut down, in which case the publish isn't tracked.
+     */
+    private boolean addPendingPublish(PendingPublish pendingPublish) {
+        synchronized (pendingPublishes) {
+            if (isShutDown) {
+                return false;
+            }
+            pendingPublishes.add(pendingPublish);
+            return true;
+        }
+    }
+
+    /**
+     * Stops tracking an asynchronous publish, waking up a shutdown waiting for it.
+     *
+     * @param pendingPublish The publish.
+     */
+    private void removePendingPublish(PendingPublish pendingPublish) {
+        synchronized (pendingPublishes) {
+            pendingPublishes.remove(pendingPublish);
+            pendingPublishes.notifyAll();
+        }
+    }
+
+    /**
+     * Waits until there are no unfinished asynchronous publishes, or until a deadline.
+     *
+     * @param deadline The deadline, as a {@link System#nanoTime()} value.
+     */
+    private void awaitPendingPublishes(long deadline) {
+        synchronized (pendingPublishes) {
+            long remaining;
+            while (!pendingPublishes.isEmpty() && (remaining = deadline - System.nanoTime()) > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(pendingPublishes, remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Counts a project's queued events.
+     *
+     * @param project The project.
+     * @return The number of events in the event store, or 0 if they can't be counted.
+     */
+    private int countQueuedEvents(KeenProject project) {
+        try {
+            int count = 0;
+            for (List<Object> handles : eventStore.getHandles(project.getProjectId()).values()) {
+                count += handles.size();
+            }
+            return count;
+        } catch (Exception e) {
+            KeenLogging.log("Failed to count queued events: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * Saves an event to the event store, and records its attempt count if the store keeps them.
+     *
+     * @param project         The project in which to publish the event.
+     * @param eventCollection The name of the collection in which to publish the event.
+     * @param compactEvent    The compactly encoded event, or null to store the JSON instead.
+     * @param jsonEvent       The event as JSON, if it isn't encoded compactly.
+     * @throws IOException If the event couldn't be stored.
+     */
+    private void storeEvent(KeenProject project, String eventCollection, byte[] compactEvent,
+                            String jsonEvent) throws IOException {
+        // Save the event out to the event store.
+        Object handle = (compactEvent != null ?
+                ((KeenBinaryEventStore) eventStore).storeBytes(project.getProjectId(),
+                        eventCollection, compactEvent) :
+                eventStore.store(project.getProjectId(), eventCollection, jsonEvent));
+        if (scheduledFlusher != null) {
+            scheduledFlusher.eventQueued(project);
+        }
+        if (!queuedProjects.containsKey(project.getProjectId())) {
+            queuedProjects.put(project.getProjectId(), project);
+        }
+        KeenClientPool pool = this.pool;
+        if (pool != null) {
+            pool.eventQueued(project);
+        }
+
+        try {
+            if (eventStore instanceof KeenAttemptCountingEventStore) {
+                synchronized (getProjectLock(attemptsLocks, project.getProjectId())) {
+                    Map<String, Integer> attempts = getAttemptsMap(project.getProjectId(), eventCollection);
+                    attempts.put("" + handle.hashCode(), maxAttempts);
+                    setAttemptsMap(project.getProjectId(), eventCollection, attempts);
+                }
+            }
+        } catch(IOException ex) {
+            KeenLogging.log("Failed to set the event POST attempt count. The event was still " +
+                    "queued and will we POSTed.");
+        }
+    }
+
+    /**
+     * Adds a dead letter which wasn't replayed to a sink, logging rather than throwing if the
+     * sink fails.
+     *
+     * @param sink       The sink, or null to drop the dead letter.
+     * @param deadLetter The dead letter.
+     */
+    private static void keepDeadLetter(KeenDeadLetterSink sink, DeadLetter deadLetter) {
+        if (sink == null) {
+            return;
+        }
+        try {
+            sink.add(deadLetter);
+        } catch (Exception e) {
+            KeenLogging.log("Failed to keep dead letter which wasn't replayed. Exception: " + e);
+        }
+    }
+
+    /**
+     * Gets the lock for a project from a map of locks, creating it if necessary.
+     *
+     * @param locks     The locks, by project ID.
+     * @param projectId The project ID.
+     * @return The lock.
+     */
+    private static Object getProjectLock(ConcurrentMap<String, Object> locks, String projectId) {
+        Object lock = locks.get(projectId);
+        if (lock == null) {
+            Object newLock = new Object();
+            lock = locks.putIfAbsent(projectId, newLock);
+            if (lock == null) {
+                lock = newLock;
+            }
+        }
+        return lock;
+    }
+
+    /**
+     * Copies event handles, up to a maximum number of them.
+     *
+     * @param handles        The handles, by event collection.
+     * @param maxEvents      The maximum number of handles to copy.
+     * @param limitedHandles The map to copy the handles to.
+     * @return The number of handles which weren't copied.
+     */
+    private static int limitHandles(Map<String, List<Object>> handles, int maxEvents,
+                                    Map<String, List<Object>> limitedHandles) {
+        int remaining = maxEvents;
+        int skipped = 0;
+        for (Map.Entry<String, List<Object>> entry : handles.entrySet()) {
+            List<Object> collectionHandles = entry.getValue();
+            if (collectionHandles == null || collectionHandles.isEmpty()) {
+                continue;
+            }
+            if (remaining == 0) {
+                skipped += collectionHandles.size();
+            } else if (collectionHandles.size() > remaining) {
+                limitedHandles.put(entry.getKey(),
+                        new ArrayList<Object>(collectionHandles.subList(0, remaining)));
+                skipped += collectionHandles.size() - remaining;
+                remaining = 0;
+            } else {
+                limitedHandles.put(entry.getKey(), collectionHandles);
+                remaining -= collectionHandles.size();
+            }
+        }
+        return skipped;
+    }
+
     /**
      * Get an event object from the eventStore.
      *
@@ -1726,8 +3610,18 @@ public class KeenClient {
      * @throws IOException
      */
     private Map<String, Object> getEvent(Object handle) throws IOException {
-        // Get the event from the store.
-        String jsonEvent = eventStore.get(handle);
+        // Get the event from the store. Compact events are decoded directly, without going
+        // through JSON, and JSON events read as bytes aren't read again.
+        String jsonEvent;
+        if (eventCodec != null && eventStore instanceof KeenBinaryEventStore) {
+            byte[] storedEvent = ((KeenBinaryEventStore) eventStore).getBytes(handle);
+            if (CompactEventCodec.isCompact(storedEvent)) {
+                return CompactEventCodec.decode(storedEvent);
+            }
+            jsonEvent = (storedEvent == null ? null : new String(storedEvent, "UTF-8"));
+        } else {
+            jsonEvent = eventStore.get(handle);
+        }
 
         // De-serialize the event from its JSON.
         StringReader reader = new StringReader(jsonEvent);
@@ -1736,6 +3630,27 @@ public class KeenClient {
         return event;
     }
 
+    /**
+     * Encodes an event with the configured {@link CompactEventCodec}, if there is one and the
+     * event store can hold encoded events.
+     *
+     * @param event The event to encode.
+     * @return The encoded event, or null if the event should be stored as JSON instead.
+     */
+    private byte[] encodeCompactEvent(Map<String, Object> event) {
+        if (eventCodec == null || !(eventStore instanceof KeenBinaryEventStore)) {
+            return null;
+        }
+
+        try {
+            return eventCodec.encode(event);
+        } catch (IllegalArgumentException e) {
+            KeenLogging.log("Storing event as JSON, it can't be encoded compactly: " +
+                    e.getMessage());
+            return null;
+        }
+    }
+
     /**
      * Gets the map of attempt counts from the eventStore
      *
@@ -0,0 +1,577 @@
+package io.keen.client.java;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Routes the events of many projects through a single {@link KeenClient}, so that they share its
+ * HTTP handler, JSON handler, event store and publish executor, while each project keeps its own
+ * queue and flush schedule.
+ * <p>
+ * Each registered project's queued events are flushed once the project has queued the maximum
+ * batch size since its last flush, once its first queued event has waited for the maximum
+ * delay (if the pool was given a timer), or when {@link #flush(String)} is called. Projects
+ * which are ready to flush wait in a round-robin queue, and each turn sends at most the maximum
+ * number of events per turn before the project goes to the back of the queue, so a busy project
+ * can't starve the others. Turns run on the client's publish executor, up to the maximum number
+ * of concurrent flushes, and never more than one at a time for the same project.
+ * </p>
+ * <p>
+ * Every flush posts through the client, which has at most
+ * {@link KeenClient.Builder#withMaxInFlightRequests(int) its maximum number of requests} in
+ * flight. That defaults to one, so projects flush one at a time unless the client is built with
+ * a higher limit; the pool never runs more flushes at once than the client can post.
+ * </p>
+ * <p>
+ * The pool is thread-safe. A client may only be used by one pool, and shouldn't also be built
+ * with a {@link FlushScheduler}.
+ * </p>
+ * <pre>
+ *     KeenClient client = new JavaKeenClientBuilder().build();
+ *     KeenClientPool pool = new KeenClientPool(client, Executors.newSingleThreadScheduledExecutor());
+ *     pool.addProject(new KeenProject(projectId, writeKey, readKey));
+ *     pool.queueEvent(projectId, "purchases", event);
+ * </pre>
+ */
+public class KeenClientPool {
+
+    /**
+     * The default number of events a project queues before it's flushed.
+     */
+    public static final int DEFAULT_MAX_BATCH_SIZE = 100;
+
+    /**
+     * The default maximum number of events sent in one project's turn.
+     */
+    public static final int DEFAULT_MAX_EVENTS_PER_TURN = 500;
+
+    /**
+     * The default maximum time a project's queued events wait before they're flushed.
+     */
+    public static final long DEFAULT_MAX_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    /**
+     * The default maximum number of projects flushed at once.
+     */
+    public static final int DEFAULT_MAX_CONCURRENT_FLUSHES = 2;
+
+    /**
+     * Creates a pool which flushes projects when their batch is full or when asked to.
+     *
+     * @param client The client to route events through.
+     */
+    public KeenClientPool(KeenClient client) {
+        this(client, null);
+    }
+
+    /**
+     * Creates a pool.
+     *
+     * @param client The client to route events through.
+     * @param timer  The timer used to flush each project's events after the maximum delay, or
+     *               null to only flush when a batch is full or when asked to.
+     */
+    public KeenClientPool(KeenClient client, ScheduledExecutorService timer) {
+        if (client == null) {
+            throw new IllegalArgumentException("client must not be null");
+        }
+        this.client = client;
+        this.timer = timer;
+        client.setPool(this);
+    }
+
+    ///// CONFIGURATION /////
+
+    /**
+     * @return The client events are routed through.
+     */
+    public KeenClient getClient() {
+        return client;
+    }
+
+    /**
+     * @return The number of events a project queues before it's flushed.
+     */
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /**
+     * Sets the number of events a project queues before it's flushed.
+     *
+     * @param maxBatchSize The maximum batch size; must be positive.
+     * @return This instance (for method chaining).
+     */
+    public KeenClientPool withMaxBatchSize(int maxBatchSize) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize must be at least 1");
+        }
+        this.maxBatchSize = maxBatchSize;
+        return this;
+    }
+
+    /**
+     * @return The maximum number of events sent in one project's turn.
+     */
+    public int getMaxEventsPerTurn() {
+        return maxEventsPerTurn;
+    }
+
+    /**
+     * Sets the maximum number of events sent in one project's turn. A project with more queued
+     * events than this goes to the back of the queue for the rest.
+     *
+     * @param maxEventsPerTurn The maximum number of events; must be positive.
+     * @return This instance (for method chaining).
+     */
+    public KeenClientPool withMaxEventsPerTurn(int maxEventsPerTurn) {
+        if (maxEventsPerTurn < 1) {
+            throw new IllegalArgumentException("maxEventsPerTurn must be at least 1");
+        }
+        this.maxEventsPerTurn = maxEventsPerTurn;
+        return this;
+    }
+
+    /**
+     * @return The maximum time a project's queued events wait before they're flushed, in
+     * milliseconds.
+     */
+    public long getMaxDelayMillis() {
+        return maxDelayMillis;
+    }
+
+    /**
+     * Sets the maximum time a project's first queued event waits before the project is flushed.
+     * This is only used if the pool has a timer.
+     *
+     * @param maxDelayMillis The maximum delay in milliseconds; must not be negative.
+     * @return This instance (for method chaining).
+     */
+    public KeenClientPool withMaxDelayMillis(long maxDelayMillis) {
+        if (maxDelayMillis < 0) {
+            throw new IllegalArgumentException("maxDelayMillis must not be negative");
+        }
+        this.maxDelayMillis = maxDelayMillis;
+        return this;
+    }
+
+    /**
+     * @return The maximum number of projects flushed at once.
+     */
+    public int getMaxConcurrentFlushes() {
+        return maxConcurrentFlushes;
+    }
+
+    /**
+     * Sets the maximum number of projects flushed at once, each using one of the client's
+     * publish executor threads. Fewer run at once if the client's maximum number of in-flight
+     * requests is lower; build the client with
+     * {@link KeenClient.Builder#withMaxInFlightRequests(int)} to match.
+     *
+     * @param maxConcurrentFlushes The maximum number of flushes; must be positive.
+     * @return This instance (for method chaining).
+     */
+    public KeenClientPool withMaxConcurrentFlushes(int maxConcurrentFlushes) {
+        if (maxConcurrentFlushes < 1) {
+            throw new IllegalArgumentException("maxConcurrentFlushes must be at least 1");
+        }
+        this.maxConcurrentFlushes = maxConcurrentFlushes;
+        return this;
+    }
+
+    ///// PROJECTS /////
+
+    /**
+     * Registers a project, replacing any project with the same ID.
+     *
+     * @param project The project.
+     */
+    public void addProject(KeenProject project) {
+        ProjectQueue existing = queues.put(project.getProjectId(), new ProjectQueue(project));
+        if (existing != null) {
+            KeenLogging.log("Replaced project " + project.getProjectId() + " in the pool");
+        }
+    }
+
+    /**
+     * Unregisters a project. Its queued events stay in the event store, and are sent if the
+     * project is registered again.
+     *
+     * @param projectId The project ID.
+     * @return The project, or null if it wasn't registered.
+     */
+    public KeenProject removeProject(String projectId) {
+        ProjectQueue queue = queues.remove(projectId);
+        return (queue == null ? null : queue.project);
+    }
+
+    /**
+     * @param projectId The project ID.
+     * @return The registered project, or null if there isn't one with the ID.
+     */
+    public KeenProject getProject(String projectId) {
+        ProjectQueue queue = queues.get(projectId);
+        return (queue == null ? null : queue.project);
+    }
+
+    /**
+     * @return The registered projects.
+     */
+    public Collection<KeenProject> getProjects() {
+        Collection<KeenProject> projects = new ArrayList<KeenProject>(queues.size());
+        for (ProjectQueue queue : queues.values()) {
+            projects.add(queue.project);
+        }
+        return projects;
+    }
+
+    ///// EVENTS /////
+
+    /**
+     * Synchronously adds an event to a project.
+     *
+     * @param projectId       The ID of a registered project.
+     * @param eventCollection The name of the collection in which to publish the event.
+     * @param event           A Map that consists of key/value pairs.
+     * @see KeenClient#addEvent(KeenProject, String, Map, Map, KeenCallback)
+     */
+    public void addEvent(String projectId, String eventCollection, Map<String, Object> event) {
+        addEvent(projectId, eventCollection, event, null, null);
+    }
+
+    /**
+     * Synchronously adds an event to a project.
+     *
+     * @param projectId       The ID of a registered project.
+     * @param eventCollection The name of the collection in which to publish the event.
+     * @param event           A Map that consists of key/value pairs.
+     * @param keenProperties  A Map that consists of key/value pairs to override default
+     *                        properties. ex: "timestamp" -&gt; Calendar.getInstance()
+     * @param callback        An optional callback to receive notification of success or failure.
+     * @see KeenClient#addEvent(KeenProject, String, Map, Map, KeenCallback)
+     */
+    public void addEvent(String projectId, String eventCollection, Map<String, Object> event,
+                         Map<String, Object> keenProperties, KeenCallback callback) {
+        client.addEvent(requireProject(projectId), eventCollection, event, keenProperties,
+                callback);
+    }
+
+    /**
+     * Asynchronously adds an event to a project, using the client's publish executor.
+     *
+     * @param projectId       The ID of a registered project.
+     * @param eventCollection The name of the collection in which to publish the event.
+     * @param event           A Map that consists of key/value pairs.
+     * @see KeenClient#addEventAsync(KeenProject, String, Map, Map, KeenCallback)
+     */
+    public void addEventAsync(String projectId, String eventCollection,
+                              Map<String, Object> event) {
+        addEventAsync(projectId, eventCollection, event, null, null);
+    }
+
+    /**
+     * Asynchronously adds an event to a project, using the client's publish executor.
+     *
+     * @param projectId       The ID of a registered project.
+     * @param eventCollection The name of the collection in which to publish the event.
+     * @param event           A Map that consists of key/value pairs.
+     * @param keenProperties  A Map that consists of key/value pairs to override default
+     *                        properties. ex: "timestamp" -&gt; Calendar.getInstance()
+     * @param callback        An optional callback to receive notification of success or failure.
+     * @see KeenClient#addEventAsync(KeenProject, String, Map, Map, KeenCallback)
+     */
+    public void addEventAsync(String projectId, String eventCollection, Map<String, Object> event,
+                              Map<String, Object> keenProperties, KeenCallback callback) {
+        client.addEventAsync(requireProject(projectId), eventCollection, event, keenProperties,
+                callback);
+    }
+
+    /**
+     * Queues an event for a project, to be sent when the project is next flushed.
+     *
+     * @param projectId       The ID of a registered project.
+     * @param eventCollection The name of the collection in which to publish the event.
+     * @param event           A Map that consists of key/value pairs.
+     * @see KeenClient#queueEvent(KeenProject, String, Map, Map, KeenCallback)
+     */
+    public void queueEvent(String projectId, String eventCollection, Map<String, Object> event) {
+        queueEvent(projectId, eventCollection, event, null, null);
+    }
+
+    /**
+     * Queues an event for a project, to be sent when the project is next flushed.
+     *
+     * @param projectId       The ID of a registered project.
+     * @param eventCollection The name of the collection in which to publish the event.
+     * @param event           A Map that consists of key/value pairs.
+     * @param keenProperties  A Map that consists of key/value pairs to override default
+     *                        properties. ex: "timestamp" -&gt; Calendar.getInstance()
+     * @param callback        An optional callback to receive notification of success or failure.
+     * @see KeenClient#queueEvent(KeenProject, String, Map, Map, KeenCallback)
+     */
+    public void queueEvent(String projectId, String eventCollection, Map<String, Object> event,
+                           Map<String, Object> keenProperties, KeenCallback callback) {
+        client.queueEvent(requireProject(projectId), eventCollection, event, keenProperties,
+                callback);
+    }
+
+    /**
+     * Asynchronously flushes a project's queued events.
+     *
+     * @param projectId The ID of a registered project.
+     */
+    public void flush(String projectId) {
+        ProjectQueue queue = queues.get(projectId);
+        if (queue == null) {
+            throw new IllegalArgumentException("No project with ID " + projectId +
+                    " has been added to the pool");
+        }
+        makeReady(queue);
+    }
+
+    /**
+     * Asynchronously flushes the queued events of every registered project, including events
+     * left in a persistent event store by an earlier run.
+     */
+    public void flushAll() {
+        for (ProjectQueue queue : queues.values()) {
+            makeReady(queue);
+        }
+    }
+
+    ///// PACKAGE METHODS /////
+
+    /**
+     * Records that the client queued an event for a project. Called by the client.
+     *
+     * @param project The project the event was queued for.
+     */
+    void eventQueued(KeenProject project) {
+        ProjectQueue queue = queues.get(project.getProjectId());
+        if (queue == null) {
+            // The event was queued through the client directly, for a project outside the pool.
+            return;
+        }
+
+        boolean ready = false;
+        boolean scheduleTimer = false;
+        synchronized (queue) {
+            queue.queuedEvents++;
+            if (!queue.ready) {
+                if (queue.queuedEvents >= maxBatchSize) {
+                    queue.ready = ready = true;
+                } else if (timer != null && !queue.timerScheduled) {
+                    queue.timerScheduled = scheduleTimer = true;
+                }
+            }
+        }
+
+        if (ready) {
+            enqueue(queue);
+        } else if (scheduleTimer) {
+            scheduleTimer(queue);
+        }
+    }
+
+    ///// PRIVATE TYPES /////
+
+    /**
+     * A registered project and its flush state, which is guarded by the object's lock.
+     */
+    private static final class ProjectQueue {
+        final KeenProject project;
+
+        // The number of events queued since the project's last turn started.
+        int queuedEvents;
+        // Whether the project is waiting in the ready queue or having its turn.
+        boolean ready;
+        // Whether a timer is scheduled to make the project ready.
+        boolean timerScheduled;
+
+        ProjectQueue(KeenProject project) {
+            this.project = project;
+        }
+    }
+
+    /**
+     * Records whether a flush failed, so that the project isn't retried straight away.
+     */
+    private static final class TurnCallback implements KeenCallback {
+        boolean failed;
+
+        @Override
+        public void onSuccess() {
+        }
+
+        @Override
+        public void onFailure(Exception e) {
+            failed = true;
+        }
+    }
+
+    ///// PRIVATE FIELDS /////
+
+    private final KeenClient client;
+    private final ScheduledExecutorService timer;
+    private final ConcurrentMap<String, ProjectQueue> queues =
+            new ConcurrentHashMap<String, ProjectQueue>();
+
+    // The projects which are ready to flush, in the order of their turns. Guarded by its lock,
+    // which also guards activeFlushes.
+    private final Queue<ProjectQueue> readyQueue = new ArrayDeque<ProjectQueue>();
+    private int activeFlushes;
+
+    private volatile int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+    private volatile int maxEventsPerTurn = DEFAULT_MAX_EVENTS_PER_TURN;
+    private volatile long maxDelayMillis = DEFAULT_MAX_DELAY_MILLIS;
+    private volatile int maxConcurrentFlushes = DEFAULT_MAX_CONCURRENT_FLUSHES;
+
+    ///// PRIVATE METHODS /////
+
+    private KeenProject requireProject(String projectId) {
+        ProjectQueue queue = queues.get(projectId);
+        if (queue == null) {
+            throw new IllegalArgumentException("No project with ID " + projectId +
+                    " has been added to the pool");
+        }
+        return queue.project;
+    }
+
+    private void makeReady(ProjectQueue queue) {
+        synchronized (queue) {
+            if (queue.ready) {
+                return;
+            }
+            queue.ready = true;
+        }
+        enqueue(queue);
+    }
+
+    private void scheduleTimer(final ProjectQueue queue) {
+        try {
+            timer.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (queue) {
+                        queue.timerScheduled = false;
+                        if (queue.ready || queue.queuedEvents == 0) {
+                            return;
+                        }
+                        queue.ready = true;
+                    }
+                    enqueue(queue);
+                }
+            }, maxDelayMillis, TimeUnit.MILLISECONDS);
+        } catch (RuntimeException e) {
+            synchronized (queue) {
+                queue.timerScheduled = false;
+            }
+            KeenLogging.log("Failed to schedule flush: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Puts a ready project at the back of the queue, and starts another flush if fewer than the
+     * maximum are running.
+     */
+    private void enqueue(ProjectQueue queue) {
+        synchronized (readyQueue) {
+            readyQueue.add(queue);
+            // A flush beyond the client's request limit would only block a publish thread.
+            if (activeFlushes >= Math.min(maxConcurrentFlushes, client.getMaxInFlightRequests())) {
+                return;
+            }
+            activeFlushes++;
+        }
+
+        try {
+            client.getPublishExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    runTurns();
+                }
+            });
+        } catch (RuntimeException e) {
+            synchronized (readyQueue) {
+                activeFlushes--;
+            }
+            // The project stays queued, and has its turn when another flush starts.
+            KeenLogging.log("Failed to start flush: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Gives ready projects their turns until there are none left.
+     */
+    private void runTurns() {
+        while (true) {
+            ProjectQueue queue;
+            synchronized (readyQueue) {
+                queue = readyQueue.poll();
+                if (queue == null) {
+                    activeFlushes--;
+                    return;
+                }
+            }
+
+            try {
+                runTurn(queue);
+            } catch (RuntimeException e) {
+                synchronized (queue) {
+                    queue.ready = false;
+                }
+                KeenLogging.log("Failed to flush project " + queue.project.getProjectId() + ": " +
+                        e.getMessage());
+            }
+        }
+    }
+
+    private void runTurn(ProjectQueue queue) {
+        if (queues.get(queue.project.getProjectId()) != queue) {
+            // The project was removed or replaced while it waited.
+            return;
+        }
+
+        synchronized (queue) {
+            queue.queuedEvents = 0;
+        }
+        TurnCallback callback = new TurnCallback();
+        int unsent = client.sendQueuedEvents(queue.project, callback, maxEventsPerTurn);
+
+        boolean requeue = false;
+        boolean scheduleTimer = false;
+        synchronized (queue) {
+            if (!callback.failed && unsent > 0) {
+                // Send the rest after every other ready project has had a turn.
+                queue.queuedEvents += unsent;
+                requeue = true;
+            } else if (!callback.failed && queue.queuedEvents >= maxBatchSize) {
+                requeue = true;
+            } else {
+                // Events left by a failed flush are retried after the maximum delay, so a
+                // persistent failure doesn't turn into a busy loop.
+                queue.ready = false;
+                if (callback.failed) {
+                    queue.queuedEvents = Math.max(queue.queuedEvents, 1);
+                }
+                if (queue.queuedEvents > 0 && timer != null && !queue.timerScheduled) {
+                    queue.timerScheduled = scheduleTimer = true;
+                }
+            }
+        }
+
+        if (requeue) {
+            enqueue(queue);
+        } else if (scheduleTimer) {
+            scheduleTimer(queue);
+        }
+    }
+
+}
@@ -23,6 +23,7 @@ public final class KeenConstants {
     static final String INVALID_COLLECTION_NAME_ERROR = "InvalidCollectionNameError";
     static final String INVALID_PROPERTY_NAME_ERROR = "InvalidPropertyNameError";
     static final String INVALID_PROPERTY_VALUE_ERROR = "InvalidPropertyValueError";
+    static final String EVENT_ID_PARAM = "event_id";
 
     // Exported constants
 
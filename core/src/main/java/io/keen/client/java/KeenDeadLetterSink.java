@@ -0,0 +1,26 @@
+package io.keen.client.java;
+
+import java.io.IOException;
+
+/**
+ * Interface for keeping the queued events which a {@link KeenClient} removes without their
+ * being inserted, so they aren't lost: events the server rejects as invalid, and events which
+ * use up their attempts.
+ * <p>
+ * An event is only removed from the event store once the sink has accepted it. If
+ * {@link #add(DeadLetter)} throws, the event stays queued and is offered to the sink again the
+ * next time it's sent. Sinks are called from the thread sending queued events, so they should
+ * be quick; see {@link FileDeadLetterSink} for the default implementation.
+ * </p>
+ */
+public interface KeenDeadLetterSink {
+
+    /**
+     * Keeps a dead letter.
+     *
+     * @param deadLetter The dead letter.
+     * @throws IOException If the dead letter couldn't be kept.
+     */
+    void add(DeadLetter deadLetter) throws IOException;
+
+}
@@ -0,0 +1,31 @@
+package io.keen.client.java;
+
+/**
+ * The outcome for one queued event of sending a batch, as reported to a
+ * {@link KeenBatchCallback}.
+ */
+public enum KeenEventStatus {
+
+    /**
+     * The event was inserted, and removed from the event store.
+     */
+    SUCCEEDED,
+
+    /**
+     * The event was rejected as invalid, and removed from the event store since it would never
+     * succeed.
+     */
+    REJECTED,
+
+    /**
+     * The event wasn't inserted, and stays in the event store to be sent again.
+     */
+    FAILED,
+
+    /**
+     * The event had used up its attempts, so it was removed from the event store without being
+     * sent.
+     */
+    DROPPED
+
+}
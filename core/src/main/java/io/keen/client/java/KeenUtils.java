@@ -1,7 +1,9 @@
 package io.keen.client.java;
 
+import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.util.Scanner;
@@ -34,6 +36,23 @@ public class KeenUtils {
         return result;
     }
 
+    /**
+     * Reads the rest of a stream into a byte array with a buffered copy. The stream isn't closed.
+     *
+     * @param in The stream to read.
+     * @return The bytes read.
+     * @throws IOException If the stream can't be read.
+     */
+    public static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+        }
+        return out.toByteArray();
+    }
+
     public static String convertStreamToString(java.io.InputStream is) {
         Scanner s = new Scanner(is).useDelimiter("\\A");
         return s.hasNext() ? s.next() : "";
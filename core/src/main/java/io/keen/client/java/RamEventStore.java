@@ -19,7 +19,7 @@ import java.util.Map;
  * @author Kevin Litwack (kevin@kevinlitwack.com)
  * @since 2.0.0
  */
-public class RamEventStore implements KeenAttemptCountingEventStore {
+public class RamEventStore implements KeenAttemptCountingEventStore, KeenBinaryEventStore {
 
     ///// PUBLIC CONSTRUCTORS /////
 
@@ -28,7 +28,7 @@ public class RamEventStore implements KeenAttemptCountingEventStore {
      */
     public RamEventStore() {
         collectionIds = new HashMap<String, List<Long>>();
-        events = new HashMap<Long, String>();
+        events = new HashMap<Long, Object>();
     }
 
     ///// KeenEventStore METHODS /////
@@ -39,37 +39,45 @@ public class RamEventStore implements KeenAttemptCountingEventStore {
     @Override
     public synchronized Object store(String projectId, String eventCollection,
                                      String event) throws IOException {
+        return storeEvent(projectId, eventCollection, event,
+                EventStoreQuota.getUtf8Length(event));
+    }
 
-        // Create a key from the project ID and event collection.
-        String key = String.format(Locale.US, "%s$%s", projectId, eventCollection);
-
-        // Get the list of events for the specified key. If no list exists yet, create one.
-        List<Long> collectionEvents = collectionIds.get(key);
-        if (collectionEvents == null) {
-            collectionEvents = new ArrayList<Long>();
-            collectionIds.put(key, collectionEvents);
-        }
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized Object storeBytes(String projectId, String eventCollection,
+                                          byte[] event) throws IOException {
+        return storeEvent(projectId, eventCollection, event, event.length);
+    }
 
-        // Remove the oldest events until there is room for at least one more event.
-        while (collectionEvents.size() >= maxEventsPerCollection) {
-            long idToRemove = collectionEvents.remove(0);
-            events.remove(idToRemove);
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized String get(Object handle) throws IOException {
+        Long id = handleToId(handle);
+        Object event = events.get(id);
+        if (event instanceof byte[]) {
+            byte[] bytes = (byte[]) event;
+            return (CompactEventCodec.isCompact(bytes) ?
+                    CompactEventCodec.decodeToJson(bytes) : new String(bytes, "UTF-8"));
         }
-
-        // Add the event to the event store, add its ID to the collection's list, and return the ID.
-        long id = getNextId();
-        events.put(id, event);
-        collectionEvents.add(id);
-        return id;
+        return (String) event;
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public synchronized String get(Object handle) throws IOException {
+    public synchronized byte[] getBytes(Object handle) throws IOException {
         Long id = handleToId(handle);
-        return events.get(id);
+        Object event = events.get(id);
+        if (event instanceof String) {
+            return ((String) event).getBytes("UTF-8");
+        }
+        return (byte[]) event;
     }
 
     /**
@@ -79,6 +87,9 @@ public class RamEventStore implements KeenAttemptCountingEventStore {
     public synchronized void remove(Object handle) throws IOException {
         Long id = handleToId(handle);
         events.remove(id);
+        if (quota != null) {
+            quota.remove(id);
+        }
         // Be lazy about removing handles from the collectionIds map - this can happen during the
         // getHandles call.
     }
@@ -164,6 +175,17 @@ public class RamEventStore implements KeenAttemptCountingEventStore {
         this.maxEventsPerCollection = maxEventsPerCollection;
     }
 
+    /**
+     * Sets a quota on the total size of the store, shared by all projects and collections. Set
+     * the quota before storing any events; events already in the store aren't counted against
+     * it.
+     *
+     * @param quota The quota, or null for none.
+     */
+    public synchronized void setQuota(EventStoreQuota quota) {
+        this.quota = quota;
+    }
+
     ///// TEST HOOKS /////
 
     /**
@@ -174,19 +196,67 @@ public class RamEventStore implements KeenAttemptCountingEventStore {
     void clear() {
         nextId = 0;
         collectionIds = new HashMap<String, List<Long>>();
-        events = new HashMap<Long, String>();
+        events = new HashMap<Long, Object>();
+        if (quota != null) {
+            quota.clear();
+        }
     }
 
     ///// PRIVATE FIELDS /////
 
     private long nextId = 0;
     private Map<String, List<Long>> collectionIds;
-    private Map<Long, String> events;
+    private Map<Long, Object> events;
     private int maxEventsPerCollection = 10000;
     private Map<String, Map<String, String>> attempts;
+    private EventStoreQuota quota;
 
     ///// PRIVATE METHODS /////
 
+    /**
+     * Stores an event, either as a JSON string or as encoded bytes.
+     *
+     * @param projectId       The ID of the project in which the event should be stored.
+     * @param eventCollection The name of the collection in which the event should be stored.
+     * @param event           The event, as a String or byte array.
+     * @param bytes           The size of the event in bytes, for the quota.
+     * @return The handle of the stored event.
+     */
+    private Object storeEvent(String projectId, String eventCollection, Object event,
+                              long bytes) {
+        // Create a key from the project ID and event collection.
+        String key = String.format(Locale.US, "%s$%s", projectId, eventCollection);
+
+        // Get the list of events for the specified key. If no list exists yet, create one.
+        List<Long> collectionEvents = collectionIds.get(key);
+        if (collectionEvents == null) {
+            collectionEvents = new ArrayList<Long>();
+            collectionIds.put(key, collectionEvents);
+        }
+
+        // Remove the oldest events until there is room for at least one more event.
+        while (collectionEvents.size() >= maxEventsPerCollection) {
+            long idToRemove = collectionEvents.remove(0);
+            events.remove(idToRemove);
+            if (quota != null) {
+                quota.remove(idToRemove);
+            }
+        }
+
+        // Add the event to the event store, add its ID to the collection's list, and return the ID.
+        long id = getNextId();
+        events.put(id, event);
+        collectionEvents.add(id);
+
+        // Evict events to stay within the quota, if there is one.
+        if (quota != null) {
+            for (Object evicted : quota.add(projectId, eventCollection, id, bytes)) {
+                events.remove(evicted);
+            }
+        }
+        return id;
+    }
+
     /**
      * Gets the next ID to use as a handle for a stored event. This implementation just checks for
      * the next unused ID based on an incrementing counter.
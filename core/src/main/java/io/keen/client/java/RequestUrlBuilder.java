@@ -5,25 +5,44 @@ import io.keen.client.java.exceptions.KeenQueryClientException;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLEncoder;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- * Class which handles formatting of request URLs.
+ * Class which handles formatting of request URLs. Used by both {@link KeenClient} and the query
+ * client.
+ * <p>
+ * URLs which don't depend on request parameters are cached per project, and per collection or
+ * analysis type, so that the hot publish and query paths don't re-encode and re-parse the same
+ * URL for every request. The caches are tied to the base URL and API version, so a client whose
+ * base URL changes should create a new instance.
  *
  * @author baumatron
  */
 class RequestUrlBuilder {
+    // Guards against unbounded growth if callers use a very large number of distinct collections.
+    private static final int MAX_CACHED_URLS = 1000;
+
+    private static final String DATASETS = "datasets";
+
     // The API version string
     private final String apiVersion;
 
     // The base URL, including the scheme and domain
     private final String baseUrl;
 
+    // Keyed by project ID, or by project ID and collection/analysis type.
+    private final Map<String, URL> eventUrls = new ConcurrentHashMap<String, URL>();
+    private final Map<String, URL> batchEventUrls = new ConcurrentHashMap<String, URL>();
+    private final Map<String, URL> analysisUrls = new ConcurrentHashMap<String, URL>();
+
     RequestUrlBuilder(String apiVersion, String baseUrl) {
         if (null == apiVersion || apiVersion.trim().isEmpty()) {
             throw new IllegalArgumentException("'apiVersion' is a required argument.");
@@ -46,14 +65,22 @@ class RequestUrlBuilder {
      * @throws KeenQueryClientException
      */
     URL getAnalysisUrl(String projectId, String analysisPath) throws KeenQueryClientException {
+        String key = projectId + '\0' + analysisPath;
+        URL cached = analysisUrls.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
         try {
-            return new URL(String.format(Locale.US,
+            URL url = new URL(String.format(Locale.US,
                     "%s/%s/projects/%s/queries/%s",
                     this.baseUrl,
                     this.apiVersion,
                     projectId,
                     analysisPath
             ));
+            cache(analysisUrls, key, url);
+            return url;
         } catch (MalformedURLException ex) {
             Logger.getLogger(RequestUrlBuilder.class.getName())
                     .log(Level.SEVERE, "Failed to format query URL.", ex);
@@ -85,13 +112,75 @@ class RequestUrlBuilder {
         }
     }
 
+    /**
+     * Gets the URL for publishing events to a single collection.
+     *
+     * @param projectId       The project id
+     * @param eventCollection The (unencoded) event collection name
+     * @return The complete URL.
+     * @throws URISyntaxException    If the collection name can't be encoded.
+     * @throws MalformedURLException If the resulting URL is malformed.
+     */
+    URL getEventUrl(String projectId, String eventCollection)
+            throws URISyntaxException, MalformedURLException {
+        String key = projectId + '\0' + eventCollection;
+        URL cached = eventUrls.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        String encodedCollectionName = new URI(null, null, eventCollection, null).getRawPath();
+        URL url = new URL(String.format(Locale.US, "%s/%s/projects/%s/events/%s",
+                this.baseUrl,
+                this.apiVersion,
+                projectId,
+                encodedCollectionName));
+        cache(eventUrls, key, url);
+        return url;
+    }
+
+    /**
+     * Gets the URL for publishing a batch of events to multiple collections.
+     *
+     * @param projectId The project id
+     * @return The complete URL.
+     * @throws MalformedURLException If the resulting URL is malformed.
+     */
+    URL getBatchEventsUrl(String projectId) throws MalformedURLException {
+        URL cached = batchEventUrls.get(projectId);
+        if (cached != null) {
+            return cached;
+        }
+
+        URL url = new URL(String.format(Locale.US, "%s/%s/projects/%s/events",
+                this.baseUrl,
+                this.apiVersion,
+                projectId));
+        cache(batchEventUrls, projectId, url);
+        return url;
+    }
+
+    /**
+     * @return The base URL used by this builder.
+     */
+    String getBaseUrl() {
+        return baseUrl;
+    }
+
+    private static void cache(Map<String, URL> cache, String key, URL url) {
+        if (cache.size() >= MAX_CACHED_URLS) {
+            cache.clear();
+        }
+        cache.put(key, url);
+    }
+
     private StringBuilder createBaseDatasetsUrl(String projectId) {
         return new StringBuilder(String.format(Locale.US,
                 "%s/%s/projects/%s/%s",
                 this.baseUrl,
                 this.apiVersion,
                 projectId,
-                KeenQueryConstants.DATASETS
+                DATASETS
         ));
     }
 
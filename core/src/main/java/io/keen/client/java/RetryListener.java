@@ -0,0 +1,43 @@
+package io.keen.client.java;
+
+/**
+ * Receives notifications from a {@link RetryPolicy} as it retries failed requests and pauses or
+ * resumes requests. Notifications are delivered on the thread making the request, so listeners
+ * should return quickly.
+ */
+public interface RetryListener {
+
+    /**
+     * Called when a failed request will be retried.
+     *
+     * @param attempt     The number of the attempt which failed, starting at 1.
+     * @param delayMillis How long the client will wait before the next attempt.
+     * @param cause       The reason the attempt failed.
+     */
+    void onRetryScheduled(int attempt, long delayMillis, Exception cause);
+
+    /**
+     * Called when a failed request won't be retried, because the failure isn't retryable, the
+     * maximum number of attempts was reached, the retry budget is exhausted or the required delay
+     * is too long.
+     *
+     * @param attempts The number of attempts made.
+     * @param cause    The reason the last attempt failed.
+     */
+    void onGaveUp(int attempts, Exception cause);
+
+    /**
+     * Called when requests are paused, either because too many consecutive requests failed or
+     * because the server asked the client to back off.
+     *
+     * @param retryAtMillis The time at which a request will be tried again, in milliseconds since
+     *                      the epoch.
+     */
+    void onCircuitOpened(long retryAtMillis);
+
+    /**
+     * Called when a request succeeds after requests were paused.
+     */
+    void onCircuitClosed();
+
+}
@@ -0,0 +1,488 @@
+package io.keen.client.java;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import io.keen.client.java.exceptions.CircuitOpenException;
+
+/**
+ * Decides whether and when a {@link KeenClient} retries requests to publish events, and pauses
+ * requests altogether when the API is struggling.
+ * <p>
+ * A request which fails with a network error or a 408, 429 or 5xx response is retried after an
+ * exponentially growing delay with full jitter: a random delay between zero and
+ * {@code baseDelay * 2^(attempt - 1)}, capped at the maximum backoff. This spreads retries out so
+ * that many clients which failed at the same moment don't retry in lockstep. If the response has
+ * a {@code Retry-After} header, all requests are paused until the time it gives.
+ * </p>
+ * <p>
+ * Retries are limited in three ways: each request is tried at most the maximum number of
+ * attempts; a retry budget allows retries in proportion to the number of requests made, plus a
+ * small burst, so that retries can't multiply the load during an outage; and a request gives up
+ * rather than wait longer than the maximum retry delay.
+ * </p>
+ * <p>
+ * After a number of consecutive failures the circuit breaker opens: requests, including
+ * {@code sendQueuedEvents} flushes, fail immediately with a {@link CircuitOpenException} and
+ * queued events stay queued. Once the pause has elapsed, a single trial request is let through;
+ * if it succeeds the circuit closes again, otherwise another pause starts.
+ * </p>
+ * <p>
+ * A policy holds state and must only be used by one client. It's thread-safe.
+ * </p>
+ */
+public class RetryPolicy {
+
+    /**
+     * The default maximum number of attempts per request, including the first.
+     */
+    public static final int DEFAULT_MAX_ATTEMPTS = 4;
+
+    /**
+     * The default delay before the first retry, before jitter.
+     */
+    public static final long DEFAULT_BASE_DELAY_MILLIS = 500;
+
+    /**
+     * The default maximum backoff delay, before jitter.
+     */
+    public static final long DEFAULT_MAX_BACKOFF_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    /**
+     * The default maximum time a request waits before retrying, including waiting for a pause to
+     * end. Requests which would have to wait longer give up, leaving queued events queued.
+     */
+    public static final long DEFAULT_MAX_RETRY_DELAY_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    /**
+     * The default number of consecutive failed attempts which opens the circuit.
+     */
+    public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+
+    /**
+     * The default time for which the circuit stays open after consecutive failures.
+     */
+    public static final long DEFAULT_CIRCUIT_OPEN_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    /**
+     * The default number of retries which can be made in a burst.
+     */
+    public static final int DEFAULT_RETRY_BUDGET_CAPACITY = 20;
+
+    /**
+     * The default number of retries earned by each request.
+     */
+    public static final double DEFAULT_RETRY_BUDGET_RATIO = 0.2;
+
+    private static final int NOT_HTTP = -1;
+
+    private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+    private long baseDelayMillis = DEFAULT_BASE_DELAY_MILLIS;
+    private long maxBackoffMillis = DEFAULT_MAX_BACKOFF_MILLIS;
+    private long maxRetryDelayMillis = DEFAULT_MAX_RETRY_DELAY_MILLIS;
+    private int failureThreshold = DEFAULT_FAILURE_THRESHOLD;
+    private long circuitOpenMillis = DEFAULT_CIRCUIT_OPEN_MILLIS;
+    private int retryBudgetCapacity = DEFAULT_RETRY_BUDGET_CAPACITY;
+    private double retryBudgetRatio = DEFAULT_RETRY_BUDGET_RATIO;
+    private volatile RetryListener listener;
+
+    private final Random random = new Random();
+    private double retryTokens = DEFAULT_RETRY_BUDGET_CAPACITY;
+    private int consecutiveFailures;
+    private long openUntilMillis;
+    private boolean open;
+    private boolean trialInFlight;
+
+    ///// CONFIGURATION /////
+
+    /**
+     * @return The maximum number of attempts per request, including the first.
+     */
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * Sets the maximum number of attempts per request, including the first.
+     *
+     * @param maxAttempts The maximum number of attempts; must be positive. 1 disables retries,
+     *                    while keeping the circuit breaker.
+     * @return This instance (for method chaining).
+     */
+    public RetryPolicy withMaxAttempts(int maxAttempts) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts must be at least 1");
+        }
+        this.maxAttempts = maxAttempts;
+        return this;
+    }
+
+    /**
+     * @return The delay before the first retry, before jitter, in milliseconds.
+     */
+    public long getBaseDelayMillis() {
+        return baseDelayMillis;
+    }
+
+    /**
+     * @return The maximum backoff delay, before jitter, in milliseconds.
+     */
+    public long getMaxBackoffMillis() {
+        return maxBackoffMillis;
+    }
+
+    /**
+     * Sets the exponential backoff delays. The delay before retry {@code n} is a random value
+     * between zero and {@code min(maxBackoffMillis, baseDelayMillis * 2^(n - 1))}.
+     *
+     * @param baseDelayMillis  The delay before the first retry; must be positive.
+     * @param maxBackoffMillis The maximum delay; must be at least the base delay.
+     * @return This instance (for method chaining).
+     */
+    public RetryPolicy withBackoff(long baseDelayMillis, long maxBackoffMillis) {
+        if (baseDelayMillis < 1 || maxBackoffMillis < baseDelayMillis) {
+            throw new IllegalArgumentException("Delays must be positive, and the maximum must " +
+                    "be at least the base delay");
+        }
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        return this;
+    }
+
+    /**
+     * @return The maximum time a request waits before retrying, in milliseconds.
+     */
+    public long getMaxRetryDelayMillis() {
+        return maxRetryDelayMillis;
+    }
+
+    /**
+     * Sets the maximum time a request waits before retrying, including waiting for a
+     * {@code Retry-After} time or for the circuit to close. Requests which would have to wait
+     * longer give up instead.
+     *
+     * @param maxRetryDelayMillis The maximum delay; must not be negative.
+     * @return This instance (for method chaining).
+     */
+    public RetryPolicy withMaxRetryDelayMillis(long maxRetryDelayMillis) {
+        if (maxRetryDelayMillis < 0) {
+            throw new IllegalArgumentException("maxRetryDelayMillis must not be negative");
+        }
+        this.maxRetryDelayMillis = maxRetryDelayMillis;
+        return this;
+    }
+
+    /**
+     * @return The number of consecutive failed attempts which opens the circuit.
+     */
+    public int getFailureThreshold() {
+        return failureThreshold;
+    }
+
+    /**
+     * @return The time for which the circuit stays open after consecutive failures, in
+     * milliseconds.
+     */
+    public long getCircuitOpenMillis() {
+        return circuitOpenMillis;
+    }
+
+    /**
+     * Configures the circuit breaker.
+     *
+     * @param failureThreshold  The number of consecutive failed attempts, across all requests,
+     *                          which opens the circuit; must be positive.
+     * @param circuitOpenMillis How long the circuit stays open before a trial request; must not
+     *                          be negative.
+     * @return This instance (for method chaining).
+     */
+    public RetryPolicy withCircuitBreaker(int failureThreshold, long circuitOpenMillis) {
+        if (failureThreshold < 1 || circuitOpenMillis < 0) {
+            throw new IllegalArgumentException("failureThreshold must be at least 1 and " +
+                    "circuitOpenMillis must not be negative");
+        }
+        this.failureThreshold = failureThreshold;
+        this.circuitOpenMillis = circuitOpenMillis;
+        return this;
+    }
+
+    /**
+     * @return The number of retries which can be made in a burst.
+     */
+    public int getRetryBudgetCapacity() {
+        return retryBudgetCapacity;
+    }
+
+    /**
+     * @return The number of retries earned by each request.
+     */
+    public double getRetryBudgetRatio() {
+        return retryBudgetRatio;
+    }
+
+    /**
+     * Configures the retry budget. Every request adds {@code ratio} to the budget, up to
+     * {@code capacity}, and every retry takes one from it; a request which fails while the budget
+     * is below one gives up. The budget starts full.
+     *
+     * @param capacity The maximum budget, which is the number of retries possible in a burst;
+     *                 must not be negative.
+     * @param ratio    The budget earned by each request; must not be negative.
+     * @return This instance (for method chaining).
+     */
+    public synchronized RetryPolicy withRetryBudget(int capacity, double ratio) {
+        if (capacity < 0 || ratio < 0) {
+            throw new IllegalArgumentException("Retry budget must not be negative");
+        }
+        this.retryBudgetCapacity = capacity;
+        this.retryBudgetRatio = ratio;
+        this.retryTokens = capacity;
+        return this;
+    }
+
+    /**
+     * @return The listener notified of retries and pauses, or null.
+     */
+    public RetryListener getListener() {
+        return listener;
+    }
+
+    /**
+     * Sets a listener to be notified of retries and pauses.
+     *
+     * @param listener The listener, or null for none.
+     * @return This instance (for method chaining).
+     */
+    public RetryPolicy withListener(RetryListener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    ///// STATE /////
+
+    /**
+     * @return Whether requests are currently paused.
+     */
+    public synchronized boolean isCircuitOpen() {
+        return open && (currentTimeMillis() < openUntilMillis || trialInFlight);
+    }
+
+    /**
+     * @return The time at which paused requests will be tried again, in milliseconds since the
+     * epoch, or 0 if requests aren't paused.
+     */
+    public synchronized long getRetryAtMillis() {
+        return (open ? openUntilMillis : 0);
+    }
+
+    /**
+     * @return The number of retries the budget currently allows.
+     */
+    public synchronized int getRemainingRetryBudget() {
+        return (int) retryTokens;
+    }
+
+    ///// DECISIONS /////
+
+    /**
+     * Checks that a request may be sent now. While the circuit is open this throws; once the
+     * pause has elapsed, the first caller is let through as the trial request.
+     *
+     * @param attempt The number of the attempt about to be made, starting at 1.
+     * @throws CircuitOpenException If requests are paused.
+     */
+    synchronized void beforeAttempt(int attempt) {
+        if (attempt == 1) {
+            retryTokens = Math.min(retryBudgetCapacity, retryTokens + retryBudgetRatio);
+        }
+        if (!open) {
+            return;
+        }
+        if (trialInFlight || currentTimeMillis() < openUntilMillis) {
+            throw new CircuitOpenException("Requests are paused after repeated failures or a " +
+                    "server request to back off", openUntilMillis);
+        }
+        trialInFlight = true;
+    }
+
+    /**
+     * Records a successful attempt, or a response which shows the API is healthy even though the
+     * request failed.
+     */
+    void onAttemptSucceeded() {
+        boolean closed;
+        synchronized (this) {
+            consecutiveFailures = 0;
+            closed = open;
+            open = false;
+            trialInFlight = false;
+        }
+
+        RetryListener listener = this.listener;
+        if (closed && listener != null) {
+            listener.onCircuitClosed();
+        }
+    }
+
+    /**
+     * Records that an attempt ended without an outcome to judge the API by, for example because
+     * the thread was interrupted. If it was the trial request, the next caller may try instead.
+     */
+    synchronized void onAttemptAbandoned() {
+        trialInFlight = false;
+    }
+
+    /**
+     * Records a failed attempt and decides whether to retry it.
+     *
+     * @param attempt    The number of the attempt which failed, starting at 1.
+     * @param statusCode The HTTP status of the response, or -1 if there was no response.
+     * @param retryAfter The value of the response's {@code Retry-After} header, or null.
+     * @param cause      The failure.
+     * @return How long to wait before retrying, in milliseconds, or -1 to give up.
+     */
+    long onAttemptFailed(int attempt, int statusCode, String retryAfter, Exception cause) {
+        if (statusCode != NOT_HTTP && !isRetryableStatus(statusCode)) {
+            // The API answered, so it's healthy; the request itself is at fault.
+            onAttemptSucceeded();
+            notifyGaveUp(attempt, cause);
+            return -1;
+        }
+
+        long delay;
+        long openedUntil = 0;
+        synchronized (this) {
+            long now = currentTimeMillis();
+            long hint = parseRetryAfter(retryAfter, now);
+            boolean wasOpen = open;
+            consecutiveFailures++;
+            trialInFlight = false;
+
+            if (hint >= 0) {
+                openUntil(Math.max(now + hint, openUntilMillis));
+            } else if (wasOpen || consecutiveFailures >= failureThreshold) {
+                // A failed trial request, or too many failures in a row.
+                openUntil(now + circuitOpenMillis);
+            }
+            if (open && (!wasOpen || hint >= 0)) {
+                openedUntil = openUntilMillis;
+            }
+
+            delay = backoff(attempt);
+            if (open) {
+                delay = Math.max(delay, openUntilMillis - now);
+            }
+            if (attempt >= maxAttempts || delay > maxRetryDelayMillis || retryTokens < 1) {
+                delay = -1;
+            } else {
+                retryTokens--;
+            }
+        }
+
+        RetryListener listener = this.listener;
+        if (listener != null) {
+            if (openedUntil > 0) {
+                listener.onCircuitOpened(openedUntil);
+            }
+            if (delay >= 0) {
+                listener.onRetryScheduled(attempt, delay, cause);
+            } else {
+                listener.onGaveUp(attempt, cause);
+            }
+        }
+        return delay;
+    }
+
+    /**
+     * Checks whether a failed request with the given HTTP status may succeed if retried.
+     *
+     * @param statusCode The HTTP status code.
+     * @return Whether the status is retryable.
+     */
+    public static boolean isRetryableStatus(int statusCode) {
+        return statusCode == 408 || statusCode == 429 || statusCode == 500 ||
+                statusCode == 502 || statusCode == 503 || statusCode == 504;
+    }
+
+    ///// TEST HOOKS /////
+
+    /**
+     * @return The current time in milliseconds.
+     */
+    long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * @return A random number in [0, 1), used for jitter.
+     */
+    synchronized double nextRandom() {
+        return random.nextDouble();
+    }
+
+    /**
+     * Waits before a retry.
+     *
+     * @param millis The time to wait.
+     * @throws InterruptedException If the thread is interrupted while waiting.
+     */
+    void sleep(long millis) throws InterruptedException {
+        Thread.sleep(millis);
+    }
+
+    ///// PRIVATE METHODS /////
+
+    private void openUntil(long untilMillis) {
+        open = true;
+        openUntilMillis = untilMillis;
+        consecutiveFailures = 0;
+    }
+
+    private long backoff(int attempt) {
+        long ceiling = baseDelayMillis;
+        for (int i = 1; i < attempt && ceiling < maxBackoffMillis; i++) {
+            ceiling *= 2;
+        }
+        ceiling = Math.min(ceiling, maxBackoffMillis);
+        return (long) (nextRandom() * ceiling);
+    }
+
+    private void notifyGaveUp(int attempts, Exception cause) {
+        RetryListener listener = this.listener;
+        if (listener != null) {
+            listener.onGaveUp(attempts, cause);
+        }
+    }
+
+    /**
+     * Parses a {@code Retry-After} header, which is either a number of seconds or an HTTP date.
+     *
+     * @return The delay it asks for in milliseconds, or -1 if there is no valid header.
+     */
+    static long parseRetryAfter(String retryAfter, long now) {
+        if (retryAfter == null) {
+            return -1;
+        }
+        String value = retryAfter.trim();
+        try {
+            long seconds = Long.parseLong(value);
+            return (seconds < 0 ? -1 : TimeUnit.SECONDS.toMillis(seconds));
+        } catch (NumberFormatException e) {
+            // Not a number of seconds; try a date.
+        }
+
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        try {
+            Date date = format.parse(value);
+            return Math.max(0, date.getTime() - now);
+        } catch (ParseException e) {
+            return -1;
+        }
+    }
+}
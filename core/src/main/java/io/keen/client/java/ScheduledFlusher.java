@@ -0,0 +1,140 @@
+package io.keen.client.java;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Connects a {@link KeenClient} to its {@link FlushPolicy} and {@link FlushScheduler}: it reports
+ * queued events to the policy, passes the resulting jobs to the scheduler, and flushes every
+ * project with queued events when a job fires.
+ * <p>
+ * The pending projects and the policy's counts only live in memory, so a job which fires in a
+ * new process (for example after Android restarted the application to run it) would find
+ * nothing to do. To keep the policy's maximum latency, every job also flushes the client's
+ * default project, and the retry is scheduled from the number of events actually left in the
+ * store.
+ * </p>
+ */
+final class ScheduledFlusher implements Runnable {
+
+    private final KeenClient client;
+    private final FlushPolicy policy;
+    private final FlushScheduler scheduler;
+
+    // The projects which have had events queued since the last flush, by project ID.
+    private final Map<String, KeenProject> pendingProjects = new LinkedHashMap<String, KeenProject>();
+
+    private boolean started;
+
+    ScheduledFlusher(KeenClient client, FlushPolicy policy, FlushScheduler scheduler) {
+        this.client = client;
+        this.policy = policy;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Registers this flusher as the scheduler's flush task, if it isn't already. This is kept out
+     * of the constructor so that the scheduler can't run a flush before the client is fully
+     * constructed.
+     */
+    synchronized void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+        try {
+            scheduler.setFlushTask(this);
+        } catch (RuntimeException e) {
+            KeenLogging.log("Failed to set flush task: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Records that an event was queued for the given project, scheduling a flush if necessary.
+     *
+     * @param project The project the event was queued for.
+     */
+    void eventQueued(KeenProject project) {
+        start();
+        synchronized (pendingProjects) {
+            pendingProjects.put(project.getProjectId(), project);
+        }
+        schedule(policy.onEventQueued(System.currentTimeMillis()));
+    }
+
+    /**
+     * Flushes the queued events of every pending project and of the client's default project.
+     * Called by the scheduler when a job fires.
+     */
+    @Override
+    public void run() {
+        policy.onFlushStarted();
+        Map<String, KeenProject> projectsById;
+        synchronized (pendingProjects) {
+            projectsById = new LinkedHashMap<String, KeenProject>(pendingProjects);
+            pendingProjects.clear();
+        }
+
+        // Events stored by an earlier process aren't pending in this one, so always look at the
+        // default project's store too.
+        KeenProject defaultProject = client.getDefaultProject();
+        if (defaultProject != null && !projectsById.containsKey(defaultProject.getProjectId())) {
+            projectsById.put(defaultProject.getProjectId(), defaultProject);
+        }
+        List<KeenProject> projects = new ArrayList<KeenProject>(projectsById.values());
+
+        int remainingEvents = 0;
+        for (KeenProject project : projects) {
+            client.sendQueuedEvents(project);
+
+            int remaining = countQueuedEvents(project);
+            if (remaining > 0) {
+                remainingEvents += remaining;
+                synchronized (pendingProjects) {
+                    pendingProjects.put(project.getProjectId(), project);
+                }
+            }
+        }
+
+        schedule(policy.onFlushFinished(System.currentTimeMillis(), remainingEvents));
+    }
+
+    /**
+     * Cancels the scheduled flush, if there is one. Called when the client is shut down.
+     */
+    void cancel() {
+        try {
+            scheduler.cancel();
+        } catch (RuntimeException e) {
+            KeenLogging.log("Failed to cancel flush: " + e.getMessage());
+        }
+    }
+
+    private void schedule(FlushJob job) {
+        if (job == null) {
+            return;
+        }
+
+        try {
+            scheduler.schedule(job);
+        } catch (RuntimeException e) {
+            KeenLogging.log("Failed to schedule flush: " + e.getMessage());
+        }
+    }
+
+    private int countQueuedEvents(KeenProject project) {
+        try {
+            int count = 0;
+            for (List<Object> handles : client.getEventStore().getHandles(project.getProjectId()).values()) {
+                count += handles.size();
+            }
+            return count;
+        } catch (Exception e) {
+            KeenLogging.log("Failed to count queued events: " + e.getMessage());
+            return 0;
+        }
+    }
+
+}
@@ -0,0 +1,277 @@
+package io.keen.client.java;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import io.keen.client.java.exceptions.ScopedKeyException;
+
+/**
+ * A reusable engine for encrypting and decrypting Keen Scoped Keys, intended for applications
+ * which mint or validate Scoped Keys at a high rate (for example an API gateway issuing a key per
+ * tenant request).
+ * <p>
+ * Unlike the static methods on {@link ScopedKeys}, an engine doesn't depend on the
+ * {@link KeenClient#client()} singleton; it uses the JSON handler it was constructed with. It
+ * also avoids most of the per-call setup cost:
+ * </p>
+ * <ul>
+ *     <li>Each thread reuses a single AES cipher instead of calling {@code Cipher.getInstance}
+ *     for every key.</li>
+ *     <li>The AES key material derived from each master key is computed once and reused.</li>
+ *     <li>Recently issued Scoped Keys are cached by master key and options, so minting a key with
+ *     options that were seen recently returns the previously issued key.</li>
+ *     <li>Recently decrypted Scoped Keys are cached, so validating the same incoming key
+ *     repeatedly doesn't decrypt and parse it each time.</li>
+ * </ul>
+ * <p>
+ * Engines are thread-safe. Options maps returned by {@link #decrypt(String, String)} may be
+ * shared between callers and are unmodifiable.
+ * </p>
+ * <p>
+ * Example usage:
+ * </p>
+ * <pre>
+ *     {@code
+ *     ScopedKeyEngine engine = new ScopedKeyEngine(new JacksonJsonHandler());
+ *     String scopedKey = engine.encrypt(masterKey, options);
+ *     Map<String, Object> decrypted = engine.decrypt(masterKey, scopedKey);
+ *     }
+ * </pre>
+ */
+public class ScopedKeyEngine {
+
+    /**
+     * The default maximum number of issued and decrypted keys to cache.
+     */
+    public static final int DEFAULT_MAX_CACHED_KEYS = 1000;
+
+    // The maximum number of master keys to keep derived key material for.
+    private static final int MAX_CACHED_SECRETS = 64;
+
+    private static final String TRANSFORMATION = "AES/CBC/PKCS5Padding";
+    private static final int IV_LENGTH = 16;
+
+    private final KeenJsonHandler jsonHandler;
+    private final SecureRandom random = new SecureRandom();
+
+    private final ThreadLocal<Cipher> ciphers = new ThreadLocal<Cipher>() {
+        @Override
+        protected Cipher initialValue() {
+            try {
+                return Cipher.getInstance(TRANSFORMATION);
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("Unable to create " + TRANSFORMATION + " cipher", e);
+            }
+        }
+    };
+
+    private final LruCache<String, SecretKeySpec> secrets;
+    private final LruCache<String, String> issuedKeys;
+    private final LruCache<String, Map<String, Object>> decryptedKeys;
+
+    /**
+     * Creates an engine which caches up to {@link #DEFAULT_MAX_CACHED_KEYS} issued and decrypted
+     * keys.
+     *
+     * @param jsonHandler The JSON handler used to serialize and parse Scoped Key options.
+     */
+    public ScopedKeyEngine(KeenJsonHandler jsonHandler) {
+        this(jsonHandler, DEFAULT_MAX_CACHED_KEYS);
+    }
+
+    /**
+     * Creates an engine.
+     *
+     * @param jsonHandler    The JSON handler used to serialize and parse Scoped Key options.
+     * @param maxCachedKeys  The maximum number of issued keys, and of decrypted keys, to cache. 0
+     *                       disables caching of results; ciphers and key material are still reused.
+     */
+    public ScopedKeyEngine(KeenJsonHandler jsonHandler, int maxCachedKeys) {
+        if (null == jsonHandler) {
+            throw new IllegalArgumentException("A JSON handler is required.");
+        }
+        if (maxCachedKeys < 0) {
+            throw new IllegalArgumentException("maxCachedKeys must not be negative.");
+        }
+
+        this.jsonHandler = jsonHandler;
+        this.secrets = new LruCache<String, SecretKeySpec>(MAX_CACHED_SECRETS);
+        this.issuedKeys = new LruCache<String, String>(maxCachedKeys);
+        this.decryptedKeys = new LruCache<String, Map<String, Object>>(maxCachedKeys);
+    }
+
+    /**
+     * Encrypts the given options with a Keen API Key and creates a Scoped Key. If a key was
+     * recently issued for the same API Key and options, that key is returned.
+     *
+     * @param apiKey  Your Keen API Key. Both 64-character and legacy 32-character keys are
+     *                supported.
+     * @param options The options you want to encrypt.
+     * @return A Keen Scoped Key.
+     * @throws ScopedKeyException an error occurred while attempting to encrypt a Scoped Key.
+     */
+    public String encrypt(String apiKey, Map<String, Object> options) throws ScopedKeyException {
+        try {
+            // if the user doesn't give an options, just use an empty one
+            if (options == null) {
+                options = new HashMap<String, Object>();
+            }
+
+            // json encode the options; the encoded form also identifies the options in the cache
+            StringWriter writer = new StringWriter();
+            jsonHandler.writeJson(writer, options);
+            final String jsonOptions = writer.toString();
+
+            final String cacheKey = cacheKey(apiKey, jsonOptions);
+            String scopedKey = issuedKeys.get(cacheKey);
+            if (scopedKey != null) {
+                return scopedKey;
+            }
+
+            // get a random IV for each encryption
+            final byte[] iv = new byte[IV_LENGTH];
+            random.nextBytes(iv);
+
+            final Cipher cipher = ciphers.get();
+            cipher.init(Cipher.ENCRYPT_MODE, getSecret(apiKey), new IvParameterSpec(iv));
+            // do the actual encryption (this also pads jsonOptions)
+            final byte[] cipherText = cipher.doFinal(jsonOptions.getBytes("UTF-8"));
+
+            // the hexed iv + the hexed cipher text
+            scopedKey = KeenUtils.byteArrayToHexString(iv) + KeenUtils.byteArrayToHexString(cipherText);
+            issuedKeys.put(cacheKey, scopedKey);
+            return scopedKey;
+        } catch (Exception e) {
+            throw new ScopedKeyException("An error occurred while attempting to encrypt a Scoped Key", e);
+        }
+    }
+
+    /**
+     * Decrypts the given Keen Scoped Key with an API Key and returns the decrypted Scoped Key
+     * Options. Results are cached, so the returned map, and every map and list nested in it, may
+     * be shared and can't be modified.
+     *
+     * @param apiKey    Your Keen API Key. Both 64-character and legacy 32-character keys are
+     *                  supported.
+     * @param scopedKey The Scoped Key you want to decrypt.
+     * @return The decrypted Scoped Key Options.
+     * @throws ScopedKeyException an error occurred while attempting to decrypt a Scoped Key.
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> decrypt(String apiKey, String scopedKey) throws ScopedKeyException {
+        try {
+            final String cacheKey = cacheKey(apiKey, scopedKey);
+            Map<String, Object> options = decryptedKeys.get(cacheKey);
+            if (options != null) {
+                return options;
+            }
+
+            // the first 16 bytes (aka 32 characters of hex) are the IV, everything else is the
+            // ciphertext (aka encrypted message)
+            byte[] iv = KeenUtils.hexStringToByteArray(scopedKey.substring(0, IV_LENGTH * 2));
+            byte[] cipherText = KeenUtils.hexStringToByteArray(scopedKey.substring(IV_LENGTH * 2));
+
+            final Cipher cipher = ciphers.get();
+            cipher.init(Cipher.DECRYPT_MODE, getSecret(apiKey), new IvParameterSpec(iv));
+            String plainText = new String(cipher.doFinal(cipherText), "UTF-8");
+
+            options = (Map<String, Object>) freeze(jsonHandler.readJson(new StringReader(plainText)));
+            decryptedKeys.put(cacheKey, options);
+            return options;
+        } catch (Exception e) {
+            throw new ScopedKeyException("An error occurred while attempting to decrypt a Scoped Key", e);
+        }
+    }
+
+    /**
+     * Removes all cached issued and decrypted keys, and all derived key material.
+     */
+    public void clearCaches() {
+        secrets.clear();
+        issuedKeys.clear();
+        decryptedKeys.clear();
+    }
+
+    private SecretKeySpec getSecret(String apiKey) throws Exception {
+        SecretKeySpec secret = secrets.get(apiKey);
+        if (secret == null) {
+            // 64-character keys are hex, older 32-character keys are padded and used as-is
+            byte[] keyBytes = apiKey.length() == 64
+                    ? KeenUtils.hexStringToByteArray(apiKey)
+                    : ScopedKeys.padApiKey(apiKey).getBytes("UTF-8");
+            secret = new SecretKeySpec(keyBytes, "AES");
+            secrets.put(apiKey, secret);
+        }
+        return secret;
+    }
+
+    /**
+     * Makes a parsed JSON value unmodifiable, including every map and list nested in it.
+     */
+    private static Object freeze(Object value) {
+        if (value instanceof Map) {
+            Map<String, Object> frozen = new LinkedHashMap<String, Object>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                frozen.put(String.valueOf(entry.getKey()), freeze(entry.getValue()));
+            }
+            return Collections.unmodifiableMap(frozen);
+        } else if (value instanceof List) {
+            List<Object> frozen = new ArrayList<Object>(((List<?>) value).size());
+            for (Object element : (List<?>) value) {
+                frozen.add(freeze(element));
+            }
+            return Collections.unmodifiableList(frozen);
+        }
+        return value;
+    }
+
+    private static String cacheKey(String apiKey, String value) {
+        return apiKey + '\0' + value;
+    }
+
+    /**
+     * A small thread-safe LRU cache. A maximum size of 0 disables caching.
+     */
+    private static class LruCache<K, V> {
+        private final int maxSize;
+        private final LinkedHashMap<K, V> map;
+
+        LruCache(final int maxSize) {
+            this.maxSize = maxSize;
+            this.map = new LinkedHashMap<K, V>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                    return size() > maxSize;
+                }
+            };
+        }
+
+        synchronized V get(K key) {
+            return map.get(key);
+        }
+
+        synchronized void put(K key, V value) {
+            if (maxSize > 0) {
+                map.put(key, value);
+            }
+        }
+
+        synchronized void clear() {
+            map.clear();
+        }
+    }
+}
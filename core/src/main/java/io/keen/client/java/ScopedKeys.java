@@ -43,6 +43,10 @@ import io.keen.client.java.exceptions.ScopedKeyException;
  *     String scopedKey = ScopedKeys.encrypt(apiKey, options);
  *     }
  * </pre>
+ * <p>
+ * Applications which mint or validate many Scoped Keys should use a {@link ScopedKeyEngine}
+ * instead, which reuses ciphers and key material and caches recent results.
+ * </p>
  *
  * @author dkador
  * @since 1.0.3
@@ -267,7 +271,7 @@ public class ScopedKeys {
         }
     }
 
-    private static String padApiKey(String apiKey) {
+    static String padApiKey(String apiKey) {
         if (apiKey.length() % BLOCK_SIZE == 0) {
             return apiKey; // don't have to do anything if we're already at the block size
         } else {
@@ -0,0 +1,80 @@
+package io.keen.client.java;
+
+/**
+ * Reports what happened to a client's outstanding events when it was shut down by
+ * {@link KeenClient#shutdown(long)}.
+ * <p>
+ * Events which were persisted are still in the client's event store. They're sent by the next
+ * client which uses the same store, if the store keeps them across restarts, as
+ * {@link FileEventStore} does; a {@link RamEventStore} loses them when the process exits.
+ * </p>
+ * <p>
+ * Only the projects the client knows about are flushed and counted: its default project, the
+ * projects it queued events for since it was built, and those registered with its
+ * {@link KeenClientPool}. Events stored by an earlier process for any other project aren't
+ * included in these counts.
+ * </p>
+ */
+public final class ShutdownReport {
+
+    private final int flushedEvents;
+    private final int persistedEvents;
+    private final int droppedEvents;
+    private final boolean timedOut;
+
+    /**
+     * Creates a report.
+     *
+     * @param flushedEvents   The number of events sent to the server.
+     * @param persistedEvents The number of events left in the event store.
+     * @param droppedEvents   The number of events which were neither sent nor persisted.
+     * @param timedOut        Whether the shutdown ran out of time.
+     */
+    public ShutdownReport(int flushedEvents, int persistedEvents, int droppedEvents,
+                          boolean timedOut) {
+        this.flushedEvents = flushedEvents;
+        this.persistedEvents = persistedEvents;
+        this.droppedEvents = droppedEvents;
+        this.timedOut = timedOut;
+    }
+
+    /**
+     * @return The number of events sent to the server during the shutdown, by asynchronous
+     * publishes which ran or by flushing the event store.
+     */
+    public int getFlushedEvents() {
+        return flushedEvents;
+    }
+
+    /**
+     * @return The number of events left in the event store for the projects the client knows
+     * about, including asynchronous publishes which hadn't started and were queued instead.
+     */
+    public int getPersistedEvents() {
+        return persistedEvents;
+    }
+
+    /**
+     * @return The number of events which were neither sent nor persisted: asynchronous publishes
+     * which failed or were still running when time ran out, and events which couldn't be stored.
+     */
+    public int getDroppedEvents() {
+        return droppedEvents;
+    }
+
+    /**
+     * @return Whether the shutdown ran out of time before every event was sent or persisted.
+     */
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+    @Override
+    public String toString() {
+        return "ShutdownReport{flushedEvents=" + flushedEvents +
+                ", persistedEvents=" + persistedEvents +
+                ", droppedEvents=" + droppedEvents +
+                ", timedOut=" + timedOut + "}";
+    }
+
+}
@@ -0,0 +1,582 @@
+package io.keen.client.java;
+
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import io.keen.client.java.exceptions.InvalidEventException;
+
+/**
+ * Serializes events of one class straight to JSON, for the typed {@code addEvent} and
+ * {@code queueEvent} methods of {@link KeenClient}.
+ * <p>
+ * A codec is compiled once per class, by {@link #forClass(Class)}, and cached. Compiling finds
+ * the class's properties (the components of a record, or else its public getters and public
+ * fields), checks their names against Keen's naming rules and works out how deeply the class's
+ * nested property classes go, so none of that is repeated per event. Each property's kind is
+ * also fixed then: numbers, booleans, enums and dates are written without any checks, strings
+ * are only checked for length, properties whose type is another concrete class use that class's
+ * codec, and only properties declared as maps, collections, arrays or {@code Object} are
+ * validated value by value, as map events are.
+ * </p>
+ * <p>
+ * Properties are written in the order of a record's components, or else alphabetically, and
+ * null values are written as {@code null}. Dates and calendars are written as ISO-8601 strings
+ * in UTC, as Jackson writes them, and enums by name. Values with no obvious JSON form, such as byte arrays, make
+ * {@link #writeJson(StringBuilder, Object)} throw an {@link IllegalArgumentException}; the
+ * client then converts the event with {@link #toMap(Object)} and sends it through its
+ * {@link KeenJsonHandler} instead.
+ * </p>
+ * <p>
+ * Codecs are immutable and thread-safe.
+ * </p>
+ *
+ * @param <T> The event class.
+ */
+public final class TypedEventCodec<T> {
+
+    /**
+     * Gets the codec for a class, compiling it the first time.
+     *
+     * @param type The event class.
+     * @param <T>  The event class.
+     * @return The codec.
+     * @throws InvalidEventException If the class has no properties, a property name breaks Keen's
+     *                               naming rules, or its properties nest too deeply.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> TypedEventCodec<T> forClass(Class<T> type) {
+        TypedEventCodec<?> codec = CODECS.get(type);
+        if (codec == null) {
+            if (!isCompilable(type)) {
+                throw new InvalidEventException("Events of type " + type.getName() +
+                        " can't be serialized as typed events; use a Map instead.");
+            }
+            codec = compile(type, new HashSet<Class<?>>());
+        }
+        return (TypedEventCodec<T>) codec;
+    }
+
+    /**
+     * @return The event class.
+     */
+    public Class<T> getType() {
+        return type;
+    }
+
+    /**
+     * @return The names of the properties written for each event, in order.
+     */
+    public List<String> getPropertyNames() {
+        List<String> names = new ArrayList<String>(properties.length);
+        for (Property property : properties) {
+            names.add(property.name);
+        }
+        return Collections.unmodifiableList(names);
+    }
+
+    /**
+     * Validates an event and appends it to a buffer as a JSON object.
+     *
+     * @param json  The buffer.
+     * @param event The event.
+     * @throws InvalidEventException    If a value breaks Keen's rules, or a getter throws.
+     * @throws IllegalArgumentException If a value has no JSON form this codec can write.
+     */
+    public void writeJson(StringBuilder json, T event) {
+        json.append('{');
+        writeProperties(json, event, 0, true);
+        json.append('}');
+    }
+
+    /**
+     * Converts an event into a map, for clients whose JSON handler or event store needs one.
+     * Nested objects are converted as well; other values are copied as they are.
+     *
+     * @param event The event.
+     * @return A new map of the event's properties.
+     */
+    public Map<String, Object> toMap(T event) {
+        return toMapUnchecked(event);
+    }
+
+    ///// PACKAGE METHODS /////
+
+    /**
+     * @param name A property name.
+     * @return Whether events of this class have a property with that name.
+     */
+    boolean hasProperty(String name) {
+        return propertyNames.contains(name);
+    }
+
+    /**
+     * Validates an event's properties and appends them to a buffer, without the surrounding
+     * braces.
+     *
+     * @param json  The buffer.
+     * @param event The event.
+     * @param depth The depth of the event's properties, which is 0 for a root event.
+     * @param first Whether no property has been written to the object yet.
+     * @return Whether still no property has been written to the object.
+     */
+    boolean writeProperties(StringBuilder json, Object event, int depth, boolean first) {
+        for (Property property : properties) {
+            if (!first) {
+                json.append(',');
+            }
+            first = false;
+            json.append(property.prefix);
+
+            Object value = property.get(event);
+            switch (property.kind) {
+                case SCALAR:
+                    writeScalar(json, value);
+                    break;
+                case STRING:
+                    if (value == null) {
+                        json.append("null");
+                    } else {
+                        String string = value.toString();
+                        checkStringLength(string);
+                        CompactEventCodec.appendString(json, string);
+                    }
+                    break;
+                case NESTED:
+                    if (value == null) {
+                        json.append("null");
+                    } else if (value.getClass() == property.type) {
+                        // The depth of the declared class was checked when this one was compiled.
+                        json.append('{');
+                        property.codec.writeProperties(json, value, depth + 1, true);
+                        json.append('}');
+                    } else {
+                        writeValue(json, value, depth, true);
+                    }
+                    break;
+                default:
+                    writeValue(json, value, depth, true);
+            }
+        }
+        return first;
+    }
+
+    /**
+     * Appends a value of any type to a buffer as JSON.
+     *
+     * @param json     The buffer.
+     * @param value    The value.
+     * @param depth    The depth of the object which holds the value.
+     * @param validate Whether the value still needs validating; maps are validated as a whole, so
+     *                 their contents are not validated again.
+     * @throws IllegalArgumentException If the value has no JSON form this codec can write.
+     */
+    @SuppressWarnings("unchecked")
+    static void writeValue(StringBuilder json, Object value, int depth, boolean validate) {
+        if (value == null || value instanceof Number || value instanceof Boolean ||
+                value instanceof Character || value instanceof Enum || value instanceof UUID ||
+                value instanceof Date || value instanceof Calendar) {
+            writeScalar(json, value);
+        } else if (value instanceof CharSequence) {
+            String string = value.toString();
+            if (validate) {
+                checkStringLength(string);
+            }
+            CompactEventCodec.appendString(json, string);
+        } else if (value instanceof Map) {
+            Map<String, Object> map = (Map<String, Object>) value;
+            if (validate) {
+                KeenClient.validateEvent(map, depth + 1);
+            }
+            json.append('{');
+            boolean first = true;
+            for (Map.Entry<String, Object> entry : map.entrySet()) {
+                if (!first) {
+                    json.append(',');
+                }
+                first = false;
+                CompactEventCodec.appendString(json, String.valueOf(entry.getKey()));
+                json.append(':');
+                writeValue(json, entry.getValue(), depth + 1, false);
+            }
+            json.append('}');
+        } else if (value instanceof Iterable) {
+            json.append('[');
+            boolean first = true;
+            for (Object element : (Iterable<Object>) value) {
+                if (!first) {
+                    json.append(',');
+                }
+                first = false;
+                writeValue(json, element, depth, validate);
+            }
+            json.append(']');
+        } else if (value.getClass().isArray() && !(value instanceof byte[])) {
+            json.append('[');
+            int length = Array.getLength(value);
+            for (int i = 0; i < length; i++) {
+                if (i > 0) {
+                    json.append(',');
+                }
+                writeValue(json, Array.get(value, i), depth, validate);
+            }
+            json.append(']');
+        } else if (isCompilable(value.getClass())) {
+            TypedEventCodec<?> codec = forClass(value.getClass());
+            if (validate) {
+                checkDepth(depth + 1 + codec.height);
+            }
+            json.append('{');
+            codec.writeProperties(json, value, depth + 1, true);
+            json.append('}');
+        } else {
+            throw new IllegalArgumentException("Can't write a value of type " +
+                    value.getClass().getName() + " as JSON");
+        }
+    }
+
+    ///// PRIVATE TYPES /////
+
+    /**
+     * How a property's values are written, decided from its declared type.
+     */
+    private enum Kind {
+        // Numbers, booleans, characters, enums, UUIDs and dates: written without checks.
+        SCALAR,
+        // Strings: checked for length.
+        STRING,
+        // Concrete classes with a codec of their own.
+        NESTED,
+        // Anything else: validated and written according to its value.
+        DYNAMIC
+    }
+
+    /**
+     * One property of an event class, with its pre-encoded name.
+     */
+    private static final class Property {
+        final String name;
+        final String prefix;
+        final Class<?> type;
+        final Kind kind;
+        final AccessibleObject accessor;
+        TypedEventCodec<?> codec;
+
+        Property(String name, Class<?> type, Kind kind, AccessibleObject accessor) {
+            StringBuilder prefix = new StringBuilder(name.length() + 3);
+            CompactEventCodec.appendString(prefix, name);
+            prefix.append(':');
+            this.name = name;
+            this.prefix = prefix.toString();
+            this.type = type;
+            this.kind = kind;
+            this.accessor = accessor;
+        }
+
+        Object get(Object target) {
+            try {
+                if (accessor instanceof Method) {
+                    return ((Method) accessor).invoke(target);
+                }
+                return ((Field) accessor).get(target);
+            } catch (InvocationTargetException e) {
+                throw new InvalidEventException("Couldn't read property '" + name + "'",
+                        e.getCause());
+            } catch (IllegalAccessException e) {
+                throw new InvalidEventException("Couldn't read property '" + name + "'", e);
+            }
+        }
+    }
+
+    ///// PRIVATE CONSTANTS /////
+
+    private static final int MAX_PROPERTY_NAME_LENGTH = 256;
+    private static final int MAX_STRING_LENGTH = 10000;
+
+    private static final ConcurrentMap<Class<?>, TypedEventCodec<?>> CODECS =
+            new ConcurrentHashMap<Class<?>, TypedEventCodec<?>>();
+
+    // The format Jackson writes dates in by default: always UTC, with the offset spelled out.
+    private static final ThreadLocal<DateFormat> ISO_8601_FORMAT = new ThreadLocal<DateFormat>() {
+        @Override
+        protected DateFormat initialValue() {
+            DateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'+00:00'",
+                    Locale.US);
+            format.setTimeZone(TimeZone.getTimeZone("UTC"));
+            return format;
+        }
+    };
+
+    ///// PRIVATE FIELDS /////
+
+    private final Class<T> type;
+    private final Property[] properties;
+    private final Set<String> propertyNames;
+    // The number of levels of nested classes below this one.
+    private int height;
+
+    ///// PRIVATE CONSTRUCTORS /////
+
+    private TypedEventCodec(Class<T> type, Property[] properties) {
+        this.type = type;
+        this.properties = properties;
+        Set<String> names = new HashSet<String>();
+        for (Property property : properties) {
+            names.add(property.name);
+        }
+        this.propertyNames = names;
+    }
+
+    ///// PRIVATE METHODS /////
+
+    /**
+     * Compiles the codec for a class and the classes of its nested properties. A class which
+     * contains itself, directly or not, is treated as dynamic at the point it recurs, so its
+     * depth is checked per event.
+     *
+     * @param type      The class.
+     * @param compiling The classes being compiled further up.
+     * @return The codec.
+     */
+    private static <T> TypedEventCodec<T> compile(Class<T> type, Set<Class<?>> compiling) {
+        compiling.add(type);
+        try {
+            List<Property> properties = findProperties(type, compiling);
+            if (properties.isEmpty()) {
+                throw new InvalidEventException("Events of type " + type.getName() +
+                        " have no public fields, getters or record components.");
+            }
+
+            TypedEventCodec<T> codec = new TypedEventCodec<T>(type,
+                    properties.toArray(new Property[properties.size()]));
+            int height = 0;
+            for (Property property : properties) {
+                if (property.kind == Kind.NESTED) {
+                    property.codec = existingOrCompile(property.type, compiling);
+                    height = Math.max(height, property.codec.height + 1);
+                }
+            }
+            codec.height = height;
+            checkDepth(height);
+
+            @SuppressWarnings("unchecked")
+            TypedEventCodec<T> existing = (TypedEventCodec<T>) CODECS.putIfAbsent(type, codec);
+            return (existing != null ? existing : codec);
+        } finally {
+            compiling.remove(type);
+        }
+    }
+
+    private static TypedEventCodec<?> existingOrCompile(Class<?> type, Set<Class<?>> compiling) {
+        TypedEventCodec<?> codec = CODECS.get(type);
+        return (codec != null ? codec : compile(type, compiling));
+    }
+
+    private static List<Property> findProperties(Class<?> type, Set<Class<?>> compiling) {
+        List<Property> recordProperties = findRecordProperties(type, compiling);
+        if (recordProperties != null) {
+            return recordProperties;
+        }
+
+        Map<String, Property> properties = new TreeMap<String, Property>();
+        for (Field field : type.getFields()) {
+            int modifiers = field.getModifiers();
+            if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers)) {
+                properties.put(field.getName(),
+                        newProperty(field.getName(), field.getType(), field, compiling));
+            }
+        }
+
+        // Getters take precedence over fields of the same name.
+        for (Method method : type.getMethods()) {
+            String name = getterPropertyName(method);
+            if (name != null) {
+                properties.put(name, newProperty(name, method.getReturnType(), method, compiling));
+            }
+        }
+        return new ArrayList<Property>(properties.values());
+    }
+
+    /**
+     * Finds the components of a record through reflection, since records are newer than the
+     * language level this library is built for.
+     *
+     * @return The properties, or null if the class isn't a record.
+     */
+    private static List<Property> findRecordProperties(Class<?> type, Set<Class<?>> compiling) {
+        Object[] components;
+        try {
+            Method isRecord = Class.class.getMethod("isRecord");
+            if (!Boolean.TRUE.equals(isRecord.invoke(type))) {
+                return null;
+            }
+            components = (Object[]) Class.class.getMethod("getRecordComponents").invoke(type);
+        } catch (NoSuchMethodException e) {
+            return null;
+        } catch (Exception e) {
+            throw new InvalidEventException("Couldn't inspect record " + type.getName(), e);
+        }
+
+        List<Property> properties = new ArrayList<Property>(components.length);
+        try {
+            for (Object component : components) {
+                Class<?> componentClass = component.getClass();
+                String name = (String) componentClass.getMethod("getName").invoke(component);
+                Method accessor = (Method) componentClass.getMethod("getAccessor").invoke(component);
+                properties.add(newProperty(name, accessor.getReturnType(), accessor, compiling));
+            }
+        } catch (InvalidEventException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new InvalidEventException("Couldn't inspect record " + type.getName(), e);
+        }
+        return properties;
+    }
+
+    private static Property newProperty(String name, Class<?> type, AccessibleObject accessor,
+                                        Set<Class<?>> compiling) {
+        if (name.contains(".")) {
+            throw new InvalidEventException("An event cannot contain a property with the period " +
+                    "(.) character in it: " + name);
+        }
+        if (name.length() > MAX_PROPERTY_NAME_LENGTH) {
+            throw new InvalidEventException("An event cannot contain a property name longer " +
+                    "than 256 characters.");
+        }
+
+        // Public members of non-public classes can only be called once made accessible.
+        try {
+            accessor.setAccessible(true);
+        } catch (RuntimeException e) {
+            // Use it as it is; reading will report the problem if there is one.
+        }
+        return new Property(name, type, kindOf(type, compiling), accessor);
+    }
+
+    private static String getterPropertyName(Method method) {
+        if (Modifier.isStatic(method.getModifiers()) || method.getParameterTypes().length > 0 ||
+                method.getDeclaringClass() == Object.class || method.getReturnType() == void.class) {
+            return null;
+        }
+
+        String name = method.getName();
+        String suffix;
+        if (name.startsWith("get") && name.length() > 3) {
+            suffix = name.substring(3);
+        } else if (name.startsWith("is") && name.length() > 2 &&
+                (method.getReturnType() == boolean.class || method.getReturnType() == Boolean.class)) {
+            suffix = name.substring(2);
+        } else {
+            return null;
+        }
+        if (!Character.isUpperCase(suffix.charAt(0))) {
+            return null;
+        }
+
+        // As java.beans.Introspector.decapitalize, which isn't available on Android.
+        if (suffix.length() > 1 && Character.isUpperCase(suffix.charAt(1))) {
+            return suffix;
+        }
+        return Character.toLowerCase(suffix.charAt(0)) + suffix.substring(1);
+    }
+
+    private static Kind kindOf(Class<?> type, Set<Class<?>> compiling) {
+        if (type.isPrimitive() || Number.class.isAssignableFrom(type) || type == Boolean.class ||
+                type == Character.class || type.isEnum() || type == UUID.class ||
+                Date.class.isAssignableFrom(type) || Calendar.class.isAssignableFrom(type)) {
+            return Kind.SCALAR;
+        } else if (type == String.class) {
+            return Kind.STRING;
+        } else if (isCompilable(type) && !compiling.contains(type)) {
+            return Kind.NESTED;
+        }
+        return Kind.DYNAMIC;
+    }
+
+    /**
+     * Decides whether a class is an application class whose properties can be compiled, rather
+     * than a value type, a container or a class whose runtime type is unknown.
+     */
+    private static boolean isCompilable(Class<?> type) {
+        if (type.isPrimitive() || type.isArray() || type.isInterface() || type.isEnum() ||
+                Modifier.isAbstract(type.getModifiers()) ||
+                Map.class.isAssignableFrom(type) || Iterable.class.isAssignableFrom(type)) {
+            return false;
+        }
+        String name = type.getName();
+        return !(name.startsWith("java.") || name.startsWith("javax.") ||
+                name.startsWith("android."));
+    }
+
+    private static void writeScalar(StringBuilder json, Object value) {
+        if (value == null) {
+            json.append("null");
+        } else if (value instanceof Double || value instanceof Float) {
+            double number = ((Number) value).doubleValue();
+            if (Double.isNaN(number) || Double.isInfinite(number)) {
+                // Not valid JSON numbers; quoted as Jackson does by default.
+                json.append('"').append(value).append('"');
+            } else {
+                json.append(value);
+            }
+        } else if (value instanceof Number || value instanceof Boolean) {
+            json.append(value);
+        } else if (value instanceof Enum) {
+            CompactEventCodec.appendString(json, ((Enum<?>) value).name());
+        } else if (value instanceof Date) {
+            json.append('"').append(ISO_8601_FORMAT.get().format((Date) value)).append('"');
+        } else if (value instanceof Calendar) {
+            json.append('"').append(ISO_8601_FORMAT.get().format(((Calendar) value).getTime()))
+                    .append('"');
+        } else {
+            // Characters and UUIDs.
+            CompactEventCodec.appendString(json, value.toString());
+        }
+    }
+
+    private static void checkStringLength(String value) {
+        if (value.length() >= MAX_STRING_LENGTH) {
+            throw new InvalidEventException("An event cannot contain a string property value " +
+                    "longer than 10,000 characters.");
+        }
+    }
+
+    private static void checkDepth(int depth) {
+        if (depth > KeenConstants.MAX_EVENT_DEPTH) {
+            throw new InvalidEventException("An event's depth (i.e. layers of nesting) cannot " +
+                    "exceed " + KeenConstants.MAX_EVENT_DEPTH);
+        }
+    }
+
+    private Map<String, Object> toMapUnchecked(Object event) {
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        for (Property property : properties) {
+            Object value = property.get(event);
+            if (value != null && property.kind == Kind.NESTED) {
+                value = forClass(value.getClass()).toMapUnchecked(value);
+            }
+            map.put(property.name, value);
+        }
+        return map;
+    }
+}
@@ -0,0 +1,52 @@
+package io.keen.client.java;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Access to the virtual-thread-per-task executor added in Java 21.
+ * <p>
+ * The library targets Java 7 (and Android), so the executor is looked up reflectively rather
+ * than referenced directly. On older runtimes {@link #newVirtualThreadPerTaskExecutor()} returns
+ * null and callers fall back to platform threads.
+ */
+final class VirtualThreadExecutors {
+    private VirtualThreadExecutors() {}
+
+    private static final Method NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = findFactoryMethod();
+
+    /**
+     * @return Whether the current runtime supports virtual threads.
+     */
+    static boolean isSupported() {
+        return NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null;
+    }
+
+    /**
+     * Creates an executor which starts a new virtual thread for each task.
+     *
+     * @return The executor, or null if virtual threads aren't supported by this runtime.
+     */
+    static ExecutorService newVirtualThreadPerTaskExecutor() {
+        if (NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR == null) {
+            return null;
+        }
+
+        try {
+            return (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invoke(null);
+        } catch (Exception e) {
+            KeenLogging.log("Failed to create virtual thread executor", e);
+            return null;
+        }
+    }
+
+    private static Method findFactoryMethod() {
+        try {
+            return java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        } catch (SecurityException e) {
+            return null;
+        }
+    }
+}
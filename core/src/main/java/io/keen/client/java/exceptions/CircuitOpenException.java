@@ -0,0 +1,23 @@
+package io.keen.client.java.exceptions;
+
+/**
+ * Thrown instead of sending a request while the client's {@link io.keen.client.java.RetryPolicy}
+ * has paused requests, because of repeated failures or a server's {@code Retry-After} hint.
+ */
+public class CircuitOpenException extends KeenException {
+    private static final long serialVersionUID = 7141927374810223091L;
+
+    private final long retryAtMillis;
+
+    public CircuitOpenException(String message, long retryAtMillis) {
+        super(message);
+        this.retryAtMillis = retryAtMillis;
+    }
+
+    /**
+     * @return The time at which requests may be attempted again, in milliseconds since the epoch.
+     */
+    public long getRetryAtMillis() {
+        return retryAtMillis;
+    }
+}
@@ -0,0 +1,24 @@
+package io.keen.client.java.exceptions;
+
+/**
+ * Thrown by a {@code KeenQueryClient} instead of sending a query when its
+ * {@code QueryRateLimiter} can't grant a permit in time, or at once in
+ * fail-fast mode.
+ */
+public class RateLimitExceededException extends KeenQueryClientException {
+    private static final long serialVersionUID = -3350716927316290117L;
+
+    private final long waitedMillis;
+
+    public RateLimitExceededException(String message, long waitedMillis) {
+        super(message);
+        this.waitedMillis = waitedMillis;
+    }
+
+    /**
+     * @return How long the query waited for a permit before giving up, in milliseconds.
+     */
+    public long getWaitedMillis() {
+        return waitedMillis;
+    }
+}
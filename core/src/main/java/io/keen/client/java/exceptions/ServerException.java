@@ -9,19 +9,53 @@ package io.keen.client.java.exceptions;
 public class ServerException extends KeenException {
     private static final long serialVersionUID = 3913819084183357142L;
 
+    private final int statusCode;
+    private final String retryAfter;
+
     public ServerException() {
-        super();
+        this(null, -1, null);
     }
 
     public ServerException(Throwable cause) {
         super(cause);
+        this.statusCode = -1;
+        this.retryAfter = null;
     }
 
     public ServerException(String message) {
-        super(message);
+        this(message, -1, null);
     }
 
     public ServerException(String message, Throwable cause) {
         super(message, cause);
+        this.statusCode = -1;
+        this.retryAfter = null;
+    }
+
+    /**
+     * Constructs an exception for an error response.
+     *
+     * @param message    The response body.
+     * @param statusCode The HTTP status code of the response.
+     * @param retryAfter The value of the response's {@code Retry-After} header, or null.
+     */
+    public ServerException(String message, int statusCode, String retryAfter) {
+        super(message);
+        this.statusCode = statusCode;
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * @return The HTTP status code of the error response, or -1 if it isn't known.
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * @return The value of the response's {@code Retry-After} header, or null if there was none.
+     */
+    public String getRetryAfter() {
+        return retryAfter;
     }
 }
@@ -1,7 +1,25 @@
 package io.keen.client.java.http;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
 /**
  * Encapsulates an HTTP response.
+ * <p>
+ * The body is available as a String through {@link #getBodyString()}, and as the raw bytes
+ * through {@link #getBodyBytes()} or {@link #getBodyStream()}. Responses built from bytes only
+ * decode the body when {@link #getBodyString()} is first called, with the charset named in the
+ * {@code Content-Type} header, or UTF-8 if there is none; a caller which parses the bytes never
+ * pays for the String.
+ * </p>
  *
  * @author Kevin Litwack (kevin@kevinlitwack.com)
  * @since 2.0.0
@@ -11,13 +29,45 @@ public final class Response {
     ///// PROPERTIES /////
 
     public final int statusCode;
+
+    /**
+     * The body of a response constructed from a String. It is null for responses constructed
+     * from bytes, which decode the body on demand; {@link #getBodyString()} works for both.
+     */
     public final String body;
 
+    /**
+     * The response headers. Names are case-insensitive; the map is empty if the handler that
+     * created the response didn't provide headers.
+     */
+    public final Map<String, List<String>> headers;
+
     ///// PUBLIC CONSTRUCTORS /////
 
     public Response(int statusCode, String body) {
+        this(statusCode, body, null);
+    }
+
+    public Response(int statusCode, String body, Map<String, List<String>> headers) {
         this.statusCode = statusCode;
         this.body = body;
+        this.headers = copyHeaders(headers);
+        this.fromBytes = false;
+    }
+
+    /**
+     * Constructs a response from the raw body.
+     *
+     * @param statusCode The HTTP status code.
+     * @param bodyBytes  The body, which the response takes ownership of.
+     * @param headers    The response headers, or null.
+     */
+    public Response(int statusCode, byte[] bodyBytes, Map<String, List<String>> headers) {
+        this.statusCode = statusCode;
+        this.headers = copyHeaders(headers);
+        this.bodyBytes = (bodyBytes == null ? new byte[0] : bodyBytes);
+        this.body = null;
+        this.fromBytes = true;
     }
 
     ///// PUBLIC METHODS /////
@@ -26,6 +76,109 @@ public final class Response {
         return isSuccessCode(statusCode);
     }
 
+    /**
+     * Gets the first value of a response header.
+     *
+     * @param name The header name, in any case.
+     * @return The first value of the header, or null if it isn't present.
+     */
+    public String getHeader(String name) {
+        List<String> values = headers.get(name);
+        return (values == null || values.isEmpty() ? null : values.get(0));
+    }
+
+    /**
+     * Gets all values of a response header.
+     *
+     * @param name The header name, in any case.
+     * @return The values of the header, which is empty if it isn't present.
+     */
+    public List<String> getHeaders(String name) {
+        List<String> values = headers.get(name);
+        return (values == null ? Collections.<String>emptyList() : values);
+    }
+
+    /**
+     * Gets the charset of the body, from the {@code charset} parameter of the
+     * {@code Content-Type} header.
+     *
+     * @return The charset name, or UTF-8 if the header doesn't name one.
+     */
+    public String getCharset() {
+        String contentType = getHeader("Content-Type");
+        if (contentType != null) {
+            for (String parameter : contentType.split(";")) {
+                String trimmed = parameter.trim();
+                if (trimmed.toLowerCase(Locale.US).startsWith("charset=")) {
+                    String charset = trimmed.substring("charset=".length()).replace("\"", "");
+                    if (!charset.isEmpty()) {
+                        return charset;
+                    }
+                }
+            }
+        }
+        return DEFAULT_CHARSET;
+    }
+
+    /**
+     * Gets the body as a String. For responses constructed from bytes, the body is decoded with
+     * {@link #getCharset()} the first time this is called.
+     *
+     * @return The body.
+     */
+    public String getBodyString() {
+        if (!fromBytes) {
+            return body;
+        }
+        String decoded = decodedBody;
+        if (decoded == null) {
+            decoded = decode(bodyBytes, getCharset());
+            decodedBody = decoded;
+        }
+        return decoded;
+    }
+
+    /**
+     * Gets the raw body. For responses constructed from a String, this is the String encoded
+     * with {@link #getCharset()}.
+     *
+     * @return The body. The array is shared and must not be modified.
+     */
+    public byte[] getBodyBytes() {
+        byte[] bytes = bodyBytes;
+        if (bytes == null) {
+            bytes = encode(body, getCharset());
+            bodyBytes = bytes;
+        }
+        return bytes;
+    }
+
+    /**
+     * Gets a stream over the raw body. The body has already been read into memory by the time
+     * the response exists, so this is a convenience view of {@link #getBodyBytes()}, not a
+     * stream from the connection.
+     *
+     * @return A new stream which reads the raw body.
+     */
+    public InputStream getBodyStream() {
+        return new ByteArrayInputStream(getBodyBytes());
+    }
+
+    ///// PRIVATE CONSTANTS /////
+
+    private static final String DEFAULT_CHARSET = "UTF-8";
+
+    ///// PRIVATE FIELDS /////
+
+    // Whether the response was constructed from bytes, so that body is decoded on demand.
+    private final boolean fromBytes;
+
+    // Set by the byte constructor, or encoded from the body when first needed.
+    private volatile byte[] bodyBytes;
+
+    // The body of a response constructed from bytes, decoded when first needed.
+    private volatile String decodedBody;
+
     ///// PRIVATE STATIC METHODS /////
 
     /**
@@ -38,4 +191,48 @@ public final class Response {
         return (statusCode / 100 == 2);
     }
 
-}
\ No newline at end of file
+    private static Map<String, List<String>> copyHeaders(Map<String, List<String>> headers) {
+        Map<String, List<String>> headerMap =
+                new TreeMap<String, List<String>>(String.CASE_INSENSITIVE_ORDER);
+        if (headers != null) {
+            for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+                // HttpURLConnection reports the status line as a header with a null name.
+                if (header.getKey() != null && header.getValue() != null) {
+                    headerMap.put(header.getKey(), header.getValue());
+                }
+            }
+        }
+        return Collections.unmodifiableMap(headerMap);
+    }
+
+    private static Charset toCharset(String charset) {
+        try {
+            if (Charset.isSupported(charset)) {
+                return Charset.forName(charset);
+            }
+        } catch (IllegalCharsetNameException e) {
+            // Fall back to the default.
+        }
+        return Charset.forName(DEFAULT_CHARSET);
+    }
+
+    private static String decode(byte[] bytes, String charset) {
+        try {
+            return new String(bytes, toCharset(charset).name());
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] encode(String body, String charset) {
+        if (body == null) {
+            return new byte[0];
+        }
+        try {
+            return body.getBytes(toCharset(charset).name());
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
@@ -3,6 +3,7 @@ package io.keen.client.java.http;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
+import java.util.zip.GZIPInputStream;
 
 import io.keen.client.java.KeenUtils;
 import io.keen.client.java.KeenVersion;
@@ -17,6 +18,9 @@ import io.keen.client.java.KeenVersion;
  */
 public class UrlConnectionHttpHandler implements HttpHandler {
 
+    // The SDK version never changes at runtime, so the header value is built once.
+    private static final String SDK_HEADER_VALUE = "java-" + KeenVersion.getSdkVersion();
+
     /**
      * Sends an HTTP request.
      *
@@ -71,7 +75,7 @@ public class UrlConnectionHttpHandler implements HttpHandler {
         // If a different HttpHandler is used, we won't get this header. We would need to refactor
         // to a delegation pattern to give the client code's HttpHandler a chance to process the
         // Request first, then attach our custom headers, which would likely be a breaking change.
-        connection.setRequestProperty("Keen-Sdk", "java-" + KeenVersion.getSdkVersion());
+        connection.setRequestProperty("Keen-Sdk", SDK_HEADER_VALUE);
 
         // If the request has a body, send it. Otherwise just connect.
         if (request.body != null) {
@@ -106,17 +110,21 @@ public class UrlConnectionHttpHandler implements HttpHandler {
             in = connection.getErrorStream();
         }
 
-        // If either stream is present, try to read the response body.
-        String body = "";
+        // If either stream is present, read the response body, decompressing it if the server
+        // compressed it.
+        byte[] body = null;
         if (in != null) {
             try {
-                body = KeenUtils.convertStreamToString(in);
+                if ("gzip".equalsIgnoreCase(connection.getContentEncoding())) {
+                    in = new GZIPInputStream(in);
+                }
+                body = KeenUtils.readFully(in);
             } finally {
                 KeenUtils.closeQuietly(in);
             }
         }
 
         // Build and return the HTTP response object.
-        return new Response(connection.getResponseCode(), body);
+        return new Response(connection.getResponseCode(), body, connection.getHeaderFields());
     }
 }
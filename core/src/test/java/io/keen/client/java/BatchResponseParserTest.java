@@ -0,0 +1,76 @@
+package io.keen.client.java;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the {@link BatchResponseParser} class.
+ */
+public class BatchResponseParserTest {
+
+    @Test
+    public void resultsAreReportedInOrder() throws IOException {
+        List<String> results = parse("{\"clicks\": [{\"success\": true}, " +
+                "{\"success\": false, \"error\": {\"name\": \"InvalidPropertyNameError\", " +
+                "\"description\": \"bad name\"}}], \"views\": [{\"success\": true}]}");
+
+        assertEquals(Arrays.asList(
+                "clicks/0/true/null/null",
+                "clicks/1/false/InvalidPropertyNameError/bad name",
+                "views/0/true/null/null"), results);
+    }
+
+    @Test
+    public void emptyResponsesHaveNoResults() throws IOException {
+        assertEquals(Collections.<String>emptyList(), parse("{}"));
+        assertEquals(Collections.<String>emptyList(), parse(" { \"clicks\" : [ ] } "));
+    }
+
+    @Test
+    public void unknownPropertiesAreSkipped() throws IOException {
+        List<String> results = parse("{\"clicks\": [{\"id\": \"a\\\"b\", \"extra\": " +
+                "{\"nested\": [1, 2.5e3, null, {\"x\": false}]}, \"success\": true, " +
+                "\"error\": null}]}");
+
+        assertEquals(Collections.singletonList("clicks/0/true/null/null"), results);
+    }
+
+    @Test
+    public void escapesAreDecoded() throws IOException {
+        List<String> results = parse("{\"caf\\u00e9\": [{\"succ\\u0065ss\": false, " +
+                "\"error\": {\"name\": \"Err\", \"description\": \"line\\nbreak \\\"quoted\\\"\"}}]}");
+
+        assertEquals(Collections.singletonList("café/0/false/Err/line\nbreak \"quoted\""),
+                results);
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedResponseIsRejected() throws IOException {
+        parse("{\"clicks\": [{\"success\": true}");
+    }
+
+    @Test(expected = IOException.class)
+    public void wrongShapeIsRejected() throws IOException {
+        parse("{\"clicks\": {\"success\": true}}");
+    }
+
+    private static List<String> parse(String response) throws IOException {
+        final List<String> results = new ArrayList<String>();
+        BatchResponseParser.parse(response, new BatchResponseParser.Listener() {
+            @Override
+            public void onEventResult(String eventCollection, int index, boolean success,
+                                      String errorName, String errorDescription) {
+                results.add(eventCollection + "/" + index + "/" + success + "/" + errorName +
+                        "/" + errorDescription);
+            }
+        });
+        return results;
+    }
+}
@@ -0,0 +1,202 @@
+package io.keen.client.java;
+
+import io.keen.client.java.http.HttpHandler;
+import io.keen.client.java.http.Request;
+import io.keen.client.java.http.Response;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the {@link CompactEventCodec} class, and queueing compact events through a client.
+ */
+public class CompactEventCodecTest {
+
+    private final CompactEventCodec codec = new CompactEventCodec();
+    private final TestJsonHandler jsonHandler = new TestJsonHandler();
+
+    @Test
+    public void valuesSurviveRoundTrip() throws Exception {
+        Map<String, Object> nested = new HashMap<String, Object>();
+        nested.put("unicode", "caf\u00e9 \u2603");
+        nested.put("escapes", "quote \" backslash \\ newline \n");
+        nested.put("null", null);
+
+        Map<String, Object> event = new HashMap<String, Object>();
+        event.put("small", 7);
+        event.put("negative", -300);
+        event.put("long", 12345678901L);
+        event.put("double", 1.25);
+        event.put("decimal", new BigDecimal("3.14159265358979323846"));
+        event.put("flags", Arrays.asList(true, false));
+        event.put("array", new int[] { 1, 2, 3 });
+        event.put("nested", nested);
+
+        Map<String, Object> decoded = CompactEventCodec.decode(codec.encode(event));
+
+        assertEquals(7, decoded.get("small"));
+        assertEquals(-300, decoded.get("negative"));
+        assertEquals(12345678901L, decoded.get("long"));
+        assertEquals(1.25, decoded.get("double"));
+        assertEquals(new BigDecimal("3.14159265358979323846"), decoded.get("decimal"));
+        assertEquals(Arrays.asList(true, false), decoded.get("flags"));
+        assertEquals(Arrays.asList(1, 2, 3), decoded.get("array"));
+        assertEquals(nested, decoded.get("nested"));
+    }
+
+    @Test
+    public void jsonMatchesDecodedEvent() throws Exception {
+        Map<String, Object> event = buildLargeEvent();
+        byte[] encoded = codec.encode(event);
+
+        Map<String, Object> fromJson = jsonHandler.readJson(
+                new StringReader(CompactEventCodec.decodeToJson(encoded)));
+        assertEquals(CompactEventCodec.decode(encoded), fromJson);
+    }
+
+    @Test
+    public void repetitiveEventsAreMuchSmallerThanJson() throws Exception {
+        Map<String, Object> event = buildLargeEvent();
+        StringWriter writer = new StringWriter();
+        jsonHandler.writeJson(writer, event);
+        int jsonLength = writer.toString().getBytes("UTF-8").length;
+
+        int compactLength = codec.encode(event).length;
+        int uncompressedLength = new CompactEventCodec(-1).encode(event).length;
+
+        assertTrue("compact " + compactLength + " vs JSON " + jsonLength,
+                compactLength * 10 < jsonLength);
+        assertTrue(uncompressedLength < jsonLength / 2);
+    }
+
+    @Test
+    public void jsonIsNotCompact() throws Exception {
+        assertFalse(CompactEventCodec.isCompact("{\"a\":\"b\"}".getBytes("UTF-8")));
+        assertFalse(CompactEventCodec.isCompact(new byte[0]));
+        assertTrue(CompactEventCodec.isCompact(codec.encode(TestUtils.getSimpleEvent())));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unsupportedValuesAreRejected() {
+        Map<String, Object> event = new HashMap<String, Object>();
+        event.put("when", Calendar.getInstance());
+        codec.encode(event);
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedEventIsRejected() throws Exception {
+        byte[] encoded = codec.encode(buildLargeEvent());
+        CompactEventCodec.decode(Arrays.copyOf(encoded, encoded.length / 2));
+    }
+
+    @Test
+    public void ramStoreReturnsJsonForCompactEvents() throws Exception {
+        RamEventStore store = new RamEventStore();
+        Object handle = store.storeBytes("project1", "collection1",
+                codec.encode(TestUtils.getSimpleEvent()));
+
+        assertEquals("{\"a\":\"b\"}", store.get(handle));
+        assertTrue(CompactEventCodec.isCompact(store.getBytes(handle)));
+    }
+
+    @Test
+    public void clientSendsDecodedCompactEvents() throws Exception {
+        CapturingHttpHandler httpHandler = new CapturingHttpHandler();
+        RamEventStore store = new RamEventStore();
+        KeenClient client = new TestKeenClientBuilder()
+                .withHttpHandler(httpHandler)
+                .withEventStore(store)
+                .withEventCodec(codec)
+                .build();
+        KeenProject project = new KeenProject("<project ID>", "<write key>", "<read key>");
+
+        client.queueEvent(project, "clicks", TestUtils.getSimpleEvent(), null, null);
+        Object handle = store.getHandles("<project ID>").get("clicks").get(0);
+        assertTrue(CompactEventCodec.isCompact(store.getBytes(handle)));
+
+        client.sendQueuedEvents(project);
+
+        Map<String, Object> batch = jsonHandler.readJson(new StringReader(httpHandler.body));
+        List<?> events = (List<?>) batch.get("clicks");
+        assertEquals(1, events.size());
+        assertEquals("b", ((Map<?, ?>) events.get(0)).get("a"));
+        assertTrue(store.getHandles("<project ID>").isEmpty());
+    }
+
+    @Test
+    public void clientReadsJsonEventsOnce() throws Exception {
+        CapturingHttpHandler httpHandler = new CapturingHttpHandler();
+        final int[] reads = { 0 };
+        RamEventStore store = new RamEventStore() {
+            @Override
+            public synchronized String get(Object handle) throws IOException {
+                reads[0]++;
+                return super.get(handle);
+            }
+
+            @Override
+            public synchronized byte[] getBytes(Object handle) throws IOException {
+                reads[0]++;
+                return super.getBytes(handle);
+            }
+        };
+        KeenProject project = new KeenProject("<project ID>", "<write key>", "<read key>");
+        store.store("<project ID>", "clicks", "{\"a\":\"b\"}");
+        KeenClient client = new TestKeenClientBuilder()
+                .withHttpHandler(httpHandler)
+                .withEventStore(store)
+                .withEventCodec(codec)
+                .build();
+
+        client.sendQueuedEvents(project);
+
+        assertEquals(1, reads[0]);
+        Map<String, Object> batch = jsonHandler.readJson(new StringReader(httpHandler.body));
+        assertEquals("b", ((Map<?, ?>) ((List<?>) batch.get("clicks")).get(0)).get("a"));
+    }
+
+    private static Map<String, Object> buildLargeEvent() {
+        List<Object> items = new ArrayList<Object>();
+        for (int i = 0; i < 200; i++) {
+            Map<String, Object> item = new LinkedHashMap<String, Object>();
+            item.put("product_name", "widget");
+            item.put("product_category", "hardware");
+            item.put("quantity", i % 5);
+            item.put("unit_price", 9.99);
+            item.put("in_stock", true);
+            items.add(item);
+        }
+
+        Map<String, Object> event = new LinkedHashMap<String, Object>();
+        event.put("user_id", "user-1234");
+        event.put("items", items);
+        return event;
+    }
+
+    private static class CapturingHttpHandler implements HttpHandler {
+        String body;
+
+        @Override
+        public Response execute(Request request) throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            request.body.writeTo(out);
+            body = out.toString("UTF-8");
+            return new Response(200, "{\"clicks\": [{\"success\": true}]}");
+        }
+    }
+}
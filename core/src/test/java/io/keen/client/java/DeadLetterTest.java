@@ -0,0 +1,264 @@
+package io.keen.client.java;
+
+import io.keen.client.java.http.HttpHandler;
+import io.keen.client.java.http.Request;
+import io.keen.client.java.http.Response;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests passing removed events to a {@link KeenDeadLetterSink} and replaying them.
+ */
+public class DeadLetterTest {
+
+    private static final KeenProject PROJECT =
+            new KeenProject("<project ID>", "<write key>", "<read key>");
+
+    private File file;
+    private FileDeadLetterSink sink;
+    private RamEventStore store;
+    private String response;
+    private KeenClient client;
+
+    @Before
+    public void setup() throws IOException {
+        file = File.createTempFile("keen_dead_letters", ".tsv");
+        assertTrue(file.delete());
+        sink = new FileDeadLetterSink(file);
+        store = new RamEventStore();
+        client = new TestKeenClientBuilder()
+                .withEventStore(store)
+                .withDeadLetterSink(sink)
+                .withHttpHandler(new HttpHandler() {
+                    @Override
+                    public Response execute(Request request) throws IOException {
+                        return new Response(200, response);
+                    }
+                })
+                .build();
+        client.setDefaultProject(PROJECT);
+    }
+
+    @After
+    public void cleanUp() {
+        sink.close();
+        TestUtils.deleteRecursively(file);
+    }
+
+    @Test
+    public void fileSinkRoundTripsEscapedFields() throws IOException {
+        DeadLetter deadLetter = new DeadLetter(1234L, "<project ID>", "tabs\tand\nlines",
+                KeenEventStatus.REJECTED, "InvalidPropertyValueError", null,
+                "{\"a\":\"back\\\\slash\"}");
+        sink.add(deadLetter);
+        sink.add(deadLetter);
+
+        List<DeadLetter> deadLetters = sink.read();
+        assertEquals(2, deadLetters.size());
+        DeadLetter read = deadLetters.get(1);
+        assertEquals(1234L, read.getTimestampMillis());
+        assertEquals("<project ID>", read.getProjectId());
+        assertEquals("tabs\tand\nlines", read.getEventCollection());
+        assertEquals(KeenEventStatus.REJECTED, read.getReason());
+        assertEquals("InvalidPropertyValueError", read.getErrorName());
+        assertNull(read.getErrorDescription());
+        assertEquals("{\"a\":\"back\\\\slash\"}", read.getEvent());
+
+        sink.clear();
+        assertTrue(sink.read().isEmpty());
+    }
+
+    @Test
+    public void incompleteLineDoesNotSwallowTheNextDeadLetter() throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        out.write("1234\t<project ID>\tcli".getBytes("UTF-8"));
+        out.close();
+
+        sink.add(new DeadLetter(5678L, "<project ID>", "clicks", KeenEventStatus.DROPPED,
+                null, null, "{}"));
+
+        List<DeadLetter> deadLetters = sink.read();
+        assertEquals(1, deadLetters.size());
+        assertEquals(5678L, deadLetters.get(0).getTimestampMillis());
+    }
+
+    @Test
+    public void drainKeepsDeadLettersAddedConcurrently() throws Exception {
+        final int count = 2000;
+        Thread adder = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; i < count; i++) {
+                        sink.add(new DeadLetter(i, "<project ID>", "clicks",
+                                KeenEventStatus.DROPPED, null, null, "{}"));
+                    }
+                } catch (IOException e) {
+                    throw new AssertionError(e);
+                }
+            }
+        };
+        adder.start();
+
+        Set<Long> drained = new HashSet<Long>();
+        while (adder.isAlive()) {
+            for (DeadLetter deadLetter : sink.drain()) {
+                assertTrue(drained.add(deadLetter.getTimestampMillis()));
+            }
+        }
+        adder.join();
+        for (DeadLetter deadLetter : sink.drain()) {
+            assertTrue(drained.add(deadLetter.getTimestampMillis()));
+        }
+
+        assertEquals(count, drained.size());
+        assertTrue(sink.read().isEmpty());
+    }
+
+    @Test
+    public void rejectedEventsAreMovedToTheSink() throws IOException {
+        client.queueEvent("clicks", TestUtils.getSimpleEvent());
+        client.queueEvent("clicks", TestUtils.getSimpleEvent());
+        response = "{\"clicks\": [{\"success\": true}, {\"success\": false, \"error\": " +
+                "{\"name\": \"InvalidPropertyValueError\", \"description\": \"bad value\"}}]}";
+
+        client.sendQueuedEvents();
+
+        assertEquals(0, countQueuedEvents());
+        List<DeadLetter> deadLetters = sink.read();
+        assertEquals(1, deadLetters.size());
+        DeadLetter deadLetter = deadLetters.get(0);
+        assertEquals("clicks", deadLetter.getEventCollection());
+        assertEquals(KeenEventStatus.REJECTED, deadLetter.getReason());
+        assertEquals("InvalidPropertyValueError", deadLetter.getErrorName());
+        assertEquals("bad value", deadLetter.getErrorDescription());
+        assertTrue(deadLetter.getEvent().contains("\"a\":\"b\""));
+    }
+
+    @Test
+    public void eventsOutOfAttemptsAreMovedToTheSink() throws IOException {
+        client.setMaxAttempts(1);
+        client.queueEvent("clicks", TestUtils.getSimpleEvent());
+        response = "{\"clicks\": [{\"success\": false, " +
+                "\"error\": {\"name\": \"InternalServerError\"}}]}";
+        client.sendQueuedEvents();
+        assertTrue(sink.read().isEmpty());
+
+        response = "{}";
+        client.sendQueuedEvents();
+
+        assertEquals(0, countQueuedEvents());
+        List<DeadLetter> deadLetters = sink.read();
+        assertEquals(1, deadLetters.size());
+        assertEquals(KeenEventStatus.DROPPED, deadLetters.get(0).getReason());
+    }
+
+    @Test
+    public void eventsStayQueuedWhenTheSinkFails() throws IOException {
+        client = new TestKeenClientBuilder()
+                .withEventStore(store)
+                .withDeadLetterSink(new KeenDeadLetterSink() {
+                    @Override
+                    public void add(DeadLetter deadLetter) throws IOException {
+                        throw new IOException("Disk full");
+                    }
+                })
+                .withHttpHandler(new HttpHandler() {
+                    @Override
+                    public Response execute(Request request) throws IOException {
+                        return new Response(200, response);
+                    }
+                })
+                .build();
+        client.setDefaultProject(PROJECT);
+        client.queueEvent("clicks", TestUtils.getSimpleEvent());
+        response = "{\"clicks\": [{\"success\": false, " +
+                "\"error\": {\"name\": \"InvalidPropertyValueError\"}}]}";
+
+        client.sendQueuedEvents();
+
+        assertEquals(1, countQueuedEvents());
+    }
+
+    @Test
+    public void deadLettersAreReplayedWithRepairs() throws IOException {
+        String event = "{\"a\":\"b\",\"keen\":{\"timestamp\":\"2015-01-01T00:00:00.000Z\"}}";
+        List<DeadLetter> deadLetters = Arrays.asList(
+                new DeadLetter(1L, "<project ID>", "clicks", KeenEventStatus.REJECTED,
+                        "InvalidPropertyValueError", null, event),
+                new DeadLetter(2L, "<project ID>", "views", KeenEventStatus.REJECTED,
+                        "InvalidPropertyValueError", null, event),
+                new DeadLetter(3L, "<other project>", "clicks", KeenEventStatus.DROPPED,
+                        null, null, event));
+
+        int queued = client.replayDeadLetters(null, deadLetters, new DeadLetterRepair() {
+            @Override
+            public Map<String, Object> repair(DeadLetter deadLetter, Map<String, Object> event) {
+                if (!"clicks".equals(deadLetter.getEventCollection())) {
+                    return null;
+                }
+                event.put("a", "fixed");
+                return event;
+            }
+        });
+
+        assertEquals(1, queued);
+        Map<String, List<Object>> handles = store.getHandles(PROJECT.getProjectId());
+        assertEquals(Collections.singleton("clicks"), handles.keySet());
+        String stored = store.get(handles.get("clicks").get(0));
+        assertTrue(stored.contains("\"a\":\"fixed\""));
+        assertTrue(stored.contains("2015-01-01T00:00:00.000Z"));
+    }
+
+    @Test
+    public void deadLettersWhichArentQueuedArePutBack() throws IOException {
+        String event = "{\"a\":\"b\",\"keen\":{\"timestamp\":\"2015-01-01T00:00:00.000Z\"}}";
+        sink.add(new DeadLetter(1L, "<project ID>", "clicks", KeenEventStatus.REJECTED,
+                null, null, event));
+        sink.add(new DeadLetter(2L, "<project ID>", "views", KeenEventStatus.REJECTED,
+                null, null, event));
+        sink.add(new DeadLetter(3L, "<other project>", "clicks", KeenEventStatus.DROPPED,
+                null, null, event));
+        sink.add(new DeadLetter(4L, "<project ID>", "clicks", KeenEventStatus.DROPPED,
+                null, null, "not json"));
+        sink.add(new DeadLetter(5L, "<project ID>", "clicks", KeenEventStatus.REJECTED,
+                null, null, "{\"in.valid\":1}"));
+
+        int queued = client.replayDeadLetters(null, sink.drain(), new DeadLetterRepair() {
+            @Override
+            public Map<String, Object> repair(DeadLetter deadLetter, Map<String, Object> event) {
+                return ("views".equals(deadLetter.getEventCollection()) ? null : event);
+            }
+        }, sink);
+
+        assertEquals(1, queued);
+        Set<Long> kept = new HashSet<Long>();
+        for (DeadLetter deadLetter : sink.read()) {
+            kept.add(deadLetter.getTimestampMillis());
+        }
+        assertEquals(new HashSet<Long>(Arrays.asList(2L, 3L, 4L, 5L)), kept);
+    }
+
+    private int countQueuedEvents() throws IOException {
+        int count = 0;
+        for (List<Object> handles : store.getHandles(PROJECT.getProjectId()).values()) {
+            count += handles.size();
+        }
+        return count;
+    }
+}
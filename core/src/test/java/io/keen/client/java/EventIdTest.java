@@ -0,0 +1,253 @@
+package io.keen.client.java;
+
+import io.keen.client.java.http.HttpHandler;
+import io.keen.client.java.http.Request;
+import io.keen.client.java.http.Response;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests giving events IDs and using them to avoid queueing or sending events twice.
+ */
+public class EventIdTest {
+
+    private static final KeenProject PROJECT =
+            new KeenProject("<project ID>", "<write key>", "<read key>");
+
+    private int failedRemoves;
+    private int failedStores;
+    private RamEventStore store;
+    private int requests;
+    private KeenClient client;
+
+    @Before
+    public void setup() {
+        store = new RamEventStore() {
+            @Override
+            public synchronized Object store(String projectId, String eventCollection,
+                                             String event) throws IOException {
+                if (failedStores > 0) {
+                    failedStores--;
+                    throw new IOException("Disk full");
+                }
+                return super.store(projectId, eventCollection, event);
+            }
+
+            @Override
+            public synchronized void remove(Object handle) throws IOException {
+                if (failedRemoves > 0) {
+                    failedRemoves--;
+                    throw new IOException("Disk error");
+                }
+                super.remove(handle);
+            }
+        };
+        client = buildClient(100);
+    }
+
+    @Test
+    public void eventsAreGivenCompactUniqueIds() throws IOException {
+        client.queueEvent("clicks", TestUtils.getSimpleEvent());
+        client.queueEvent("clicks", TestUtils.getSimpleEvent());
+
+        List<String> ids = getQueuedEventIds();
+        assertEquals(2, ids.size());
+        assertEquals(22, ids.get(0).length());
+        assertTrue(ids.get(0).matches("[A-Za-z0-9_-]+"));
+        assertNotEquals(ids.get(0), ids.get(1));
+    }
+
+    @Test
+    public void eventsHaveNoIdsByDefault() throws IOException {
+        client = buildClient(0);
+        client.queueEvent("clicks", TestUtils.getSimpleEvent());
+
+        assertEquals(Collections.singletonList((String) null), getQueuedEventIds());
+    }
+
+    @Test
+    public void eventsQueuedTwiceWithTheSameIdAreSkipped() throws IOException {
+        Map<String, Object> keenProperties = new HashMap<String, Object>();
+        keenProperties.put("event_id", "order-1234");
+        final int[] successes = { 0 };
+        KeenCallback callback = new KeenCallback() {
+            @Override
+            public void onSuccess() {
+                successes[0]++;
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                throw new AssertionError(e);
+            }
+        };
+
+        client.queueEvent(null, "clicks", TestUtils.getSimpleEvent(), keenProperties, callback);
+        client.queueEvent(null, "clicks", TestUtils.getSimpleEvent(), keenProperties, callback);
+        keenProperties.put("event_id", "order-1235");
+        client.queueEvent(null, "clicks", TestUtils.getSimpleEvent(), keenProperties, callback);
+
+        // The duplicate is reported as queued, since it already is.
+        assertEquals(3, successes[0]);
+        List<String> ids = getQueuedEventIds();
+        Collections.sort(ids);
+        assertEquals(Arrays.asList("order-1234", "order-1235"), ids);
+    }
+
+    @Test
+    public void eventsQueuedConcurrentlyWithTheSameIdAreStoredOnce() throws Exception {
+        final Map<String, Object> keenProperties = new HashMap<String, Object>();
+        keenProperties.put("event_id", "order-1234");
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        start.await();
+                        client.queueEvent(null, "clicks", TestUtils.getSimpleEvent(),
+                                keenProperties, null);
+                        return null;
+                    }
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(Collections.singletonList("order-1234"), getQueuedEventIds());
+    }
+
+    @Test
+    public void eventWhichFailedToQueueCanBeQueuedAgain() throws IOException {
+        Map<String, Object> keenProperties = new HashMap<String, Object>();
+        keenProperties.put("event_id", "order-1234");
+        failedStores = 1;
+
+        client.queueEvent(null, "clicks", TestUtils.getSimpleEvent(), keenProperties, null);
+        assertTrue(getQueuedEventIds().isEmpty());
+
+        client.queueEvent(null, "clicks", TestUtils.getSimpleEvent(), keenProperties, null);
+        assertEquals(Collections.singletonList("order-1234"), getQueuedEventIds());
+    }
+
+    @Test
+    public void insertedEventsAreNotSentAgain() throws IOException {
+        client.queueEvent("clicks", TestUtils.getSimpleEvent());
+        failedRemoves = 1;
+
+        client.sendQueuedEvents();
+        assertEquals(1, requests);
+        assertEquals(1, getQueuedEventIds().size());
+
+        client.sendQueuedEvents();
+        assertEquals(1, requests);
+        assertTrue(getQueuedEventIds().isEmpty());
+    }
+
+    @Test
+    public void filterRemembersEveryIdInTheWindow() {
+        EventIdFilter filter = new EventIdFilter(10000);
+        List<String> ids = new ArrayList<String>();
+        for (int i = 0; i < 10000; i++) {
+            String id = EventIds.generate();
+            ids.add(id);
+            filter.add(id);
+        }
+        for (String id : ids) {
+            assertTrue(filter.mightContain(id));
+        }
+
+        int falsePositives = 0;
+        for (int i = 0; i < 10000; i++) {
+            if (filter.mightContain(EventIds.generate())) {
+                falsePositives++;
+            }
+        }
+        assertTrue("False positives: " + falsePositives, falsePositives < 10);
+    }
+
+    @Test
+    public void filterForgetsIdsAfterTwoWindows() {
+        EventIdFilter filter = new EventIdFilter(10);
+        filter.add("old");
+        for (int i = 0; i < 9; i++) {
+            filter.add("first-" + i);
+        }
+        for (int i = 0; i < 10; i++) {
+            filter.add("second-" + i);
+        }
+        assertTrue(filter.mightContain("old"));
+
+        filter.add("third");
+        assertFalse(filter.mightContain("old"));
+        assertTrue(filter.mightContain("second-0"));
+    }
+
+    @Test
+    public void idsAreReadFromEvents() {
+        Map<String, Object> keen = new HashMap<String, Object>();
+        keen.put("event_id", "abc");
+        Map<String, Object> event = new HashMap<String, Object>();
+        assertNull(EventIds.get(event));
+        event.put("keen", keen);
+        assertEquals("abc", EventIds.get(event));
+    }
+
+    private KeenClient buildClient(int idempotencyWindow) {
+        KeenClient client = new TestKeenClientBuilder()
+                .withEventStore(store)
+                .withIdempotencyWindow(idempotencyWindow)
+                .withHttpHandler(new HttpHandler() {
+                    @Override
+                    public Response execute(Request request) throws IOException {
+                        requests++;
+                        return new Response(200, "{\"clicks\": [{\"success\": true}]}");
+                    }
+                })
+                .build();
+        client.setDefaultProject(PROJECT);
+        return client;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<String> getQueuedEventIds() throws IOException {
+        List<String> ids = new ArrayList<String>();
+        TestJsonHandler jsonHandler = new TestJsonHandler();
+        for (List<Object> handles : store.getHandles(PROJECT.getProjectId()).values()) {
+            for (Object handle : handles) {
+                Map<String, Object> event = jsonHandler.readJson(
+                        new StringReader(store.get(handle)));
+                ids.add(EventIds.get(event));
+            }
+        }
+        return ids;
+    }
+}
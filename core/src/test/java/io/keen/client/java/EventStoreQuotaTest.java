@@ -0,0 +1,193 @@
+package io.keen.client.java;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link EventStoreQuota}, on its own and with the RAM and file event stores.
+ */
+public class EventStoreQuotaTest {
+
+    private File storeRoot;
+
+    @Before
+    public void createStoreRoot() throws IOException {
+        storeRoot = File.createTempFile("keen_quota", "");
+        assertTrue(storeRoot.delete() && storeRoot.mkdir());
+    }
+
+    @After
+    public void deleteStoreRoot() {
+        delete(storeRoot);
+    }
+
+    @Test
+    public void evictsOldestEventsOfLargestCollection() {
+        EventStoreQuota quota = new EventStoreQuota(100, 100);
+
+        assertTrue(quota.add("p", "small", "s1", 10).isEmpty());
+        assertTrue(quota.add("p", "large", "l1", 40).isEmpty());
+        assertTrue(quota.add("p", "large", "l2", 40).isEmpty());
+
+        // 10 + 40 + 40 + 20 > 100, and "large" uses the most bytes.
+        List<Object> evicted = quota.add("p", "small", "s2", 20);
+        assertEquals(1, evicted.size());
+        assertEquals("l1", evicted.get(0));
+
+        assertEquals(70, quota.getTotalBytes());
+        assertEquals(3, quota.getTotalEvents());
+        assertEquals(1, quota.getEvictedEvents());
+        assertEquals(40, quota.getEvictedBytes());
+        assertEquals(1, quota.getEvictedEvents("p", "large"));
+        assertEquals(0, quota.getEvictedEvents("p", "small"));
+    }
+
+    @Test
+    public void evictsLowerPriorityTiersFirst() {
+        EventStoreQuota quota = new EventStoreQuota(1000, 3)
+                .withCollectionPriority("purchases", 10)
+                .withCollectionPriority("other", "debug", 10);
+
+        quota.add("p", "purchases", "purchase1", 100);
+        quota.add("p", "purchases", "purchase2", 100);
+        quota.add("p", "debug", "debug1", 1);
+
+        // The priority of "debug" only applies in project "other".
+        assertEquals("debug1", quota.add("p", "purchases", "purchase3", 100).get(0));
+        assertEquals("purchase1", quota.add("p", "purchases", "purchase4", 100).get(0));
+    }
+
+    @Test
+    public void limitsEventsPerCollection() {
+        EventStoreQuota quota = new EventStoreQuota(1000, 1000).withMaxEventsPerCollection(2);
+
+        quota.add("p", "a", "a1", 1);
+        quota.add("p", "a", "a2", 1);
+        quota.add("p", "b", "b1", 1);
+
+        assertEquals("a1", quota.add("p", "a", "a3", 1).get(0));
+        assertEquals(3, quota.getTotalEvents());
+    }
+
+    @Test
+    public void removedEventsAreNotEvicted() {
+        EventStoreQuota quota = new EventStoreQuota(1000, 2);
+
+        quota.add("p", "a", "a1", 1);
+        quota.add("p", "a", "a2", 1);
+        quota.remove("a1");
+        assertTrue(quota.add("p", "a", "a3", 1).isEmpty());
+
+        assertEquals("a2", quota.add("p", "a", "a4", 1).get(0));
+        assertEquals(2, quota.getTotalEvents());
+    }
+
+    @Test
+    public void oversizedEventEvictsItself() {
+        EventStoreQuota quota = new EventStoreQuota(10, 10);
+
+        quota.add("p", "a", "a1", 5);
+        List<Object> evicted = quota.add("p", "a", "huge", 50);
+
+        assertEquals(2, evicted.size());
+        assertEquals("huge", evicted.get(1));
+        assertEquals(0, quota.getTotalBytes());
+    }
+
+    @Test
+    public void ramEventStoreEnforcesQuota() throws IOException {
+        RamEventStore store = new RamEventStore();
+        EventStoreQuota quota = new EventStoreQuota(20, 100);
+        store.setQuota(quota);
+
+        Object first = store.store("p", "a", "{\"a\":\"1234\"}");
+        store.store("p", "a", "{\"a\":\"5678\"}");
+
+        assertNull(store.get(first));
+        assertEquals(1, store.getHandles("p").get("a").size());
+        assertEquals(12, quota.getTotalBytes());
+    }
+
+    @Test
+    public void ramEventStoreTrimmedEventsLeaveQuota() throws IOException {
+        RamEventStore store = new RamEventStore();
+        store.setMaxEventsPerCollection(2);
+        EventStoreQuota quota = new EventStoreQuota(1000, 100);
+        store.setQuota(quota);
+
+        store.store("p", "a", "{\"a\":1}");
+        store.store("p", "a", "{\"a\":2}");
+        store.store("p", "a", "{\"a\":3}");
+
+        assertEquals(2, store.getHandles("p").get("a").size());
+        assertEquals(2, quota.getTotalEvents());
+        assertEquals(14, quota.getTotalBytes());
+    }
+
+    @Test
+    public void fileEventStoreEnforcesQuota() throws IOException {
+        EventStoreQuota quota = new EventStoreQuota(1000, 3);
+        FileEventStore store = new FileEventStore(storeRoot, quota);
+
+        Object first = store.store("p", "a", "{\"a\":1}");
+        store.store("p", "b", "{\"b\":1}");
+        store.store("p", "a", "{\"a\":2}");
+        store.store("p", "b", "{\"b\":2}");
+
+        assertNull(store.get(first));
+        Map<String, List<Object>> handles = store.getHandles("p");
+        assertEquals(1, handles.get("a").size());
+        assertEquals(2, handles.get("b").size());
+        assertEquals(1, quota.getEvictedEvents());
+
+        store.remove(handles.get("b").get(0));
+        assertEquals(2, quota.getTotalEvents());
+    }
+
+    @Test
+    public void fileEventStoreCountsExistingEvents() throws IOException {
+        FileEventStore unlimited = new FileEventStore(storeRoot);
+        Object oldest = unlimited.store("p", "a", "{\"a\":1}");
+        sleepPastMillisecond();
+        unlimited.store("p", "a", "{\"a\":2}");
+        sleepPastMillisecond();
+        unlimited.store("p", "a", "{\"a\":3}");
+
+        EventStoreQuota quota = new EventStoreQuota(1000, 2);
+        FileEventStore store = new FileEventStore(storeRoot, quota);
+
+        assertNull(store.get(oldest));
+        assertEquals(2, quota.getTotalEvents());
+        assertEquals(14, quota.getTotalBytes());
+        assertNotNull(store.getHandles("p").get("a"));
+    }
+
+    private static void sleepPastMillisecond() {
+        try {
+            Thread.sleep(2);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
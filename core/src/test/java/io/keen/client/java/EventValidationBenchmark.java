@@ -0,0 +1,135 @@
+package io.keen.client.java;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Measures the per-event cost of {@link KeenClient#validateEvent(Map, int)}, against a copy of
+ * the validation as it was before numbers and booleans were given a fast path.
+ * <p>
+ * This isn't run as part of the test suite. Run it with:
+ * <pre>
+ *     java -cp &lt;test classpath&gt; io.keen.client.java.EventValidationBenchmark [events] [rounds]
+ * </pre>
+ * Events have a dozen properties, three nested objects and a list of five items, with a mix of
+ * strings, numbers and booleans.
+ */
+public class EventValidationBenchmark {
+
+    public static void main(String[] args) {
+        int numEvents = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        List<Map<String, Object>> events = buildEvents(numEvents);
+
+        // Interleave the two, and report the best of several trials of each, to reduce the
+        // effect of warm-up and of other work on the machine.
+        double before = Double.MAX_VALUE;
+        double after = Double.MAX_VALUE;
+        for (int trial = 0; trial < 10; trial++) {
+            before = Math.min(before, measure(events, rounds, true));
+            after = Math.min(after, measure(events, rounds, false));
+        }
+        print("before", before);
+        print("after", after);
+    }
+
+    private static double measure(List<Map<String, Object>> events, int rounds, boolean before) {
+        long start = System.nanoTime();
+        for (int round = 0; round < rounds; round++) {
+            for (Map<String, Object> event : events) {
+                if (before) {
+                    validateEventBefore(event, 0);
+                } else {
+                    KeenClient.validateEvent(event, 0);
+                }
+            }
+        }
+        return (System.nanoTime() - start) / (double) (rounds * events.size());
+    }
+
+    private static void print(String name, double nanosPerEvent) {
+        System.out.println(String.format(Locale.US, "%-28s %8.1f ns/event", name, nanosPerEvent));
+    }
+
+    private static List<Map<String, Object>> buildEvents(int numEvents) {
+        List<Map<String, Object>> events = new ArrayList<Map<String, Object>>(numEvents);
+        for (int i = 0; i < numEvents; i++) {
+            Map<String, Object> user = new HashMap<String, Object>();
+            user.put("id", "user-" + i);
+            user.put("email", "user" + i + "@example.com");
+            user.put("signup_source", "organic");
+
+            Map<String, Object> device = new HashMap<String, Object>();
+            device.put("platform", "android");
+            device.put("os_version", "14");
+            device.put("screen_width_pixels", 1080);
+
+            Map<String, Object> location = new HashMap<String, Object>();
+            location.put("country_code", "US");
+            location.put("latitude", 37.77);
+            location.put("longitude", -122.42);
+
+            List<Object> items = new ArrayList<Object>();
+            for (int j = 0; j < 5; j++) {
+                Map<String, Object> item = new HashMap<String, Object>();
+                item.put("product_name", "widget-" + j);
+                item.put("product_category", "hardware");
+                item.put("quantity", j + 1);
+                item.put("unit_price", 9.99);
+                items.add(item);
+            }
+
+            Map<String, Object> event = new HashMap<String, Object>();
+            event.put("user", user);
+            event.put("device", device);
+            event.put("location", location);
+            event.put("items", items);
+            event.put("order_id", "order-" + i);
+            event.put("order_total", 49.95);
+            event.put("currency", "USD");
+            event.put("coupon_applied", i % 2 == 0);
+            event.put("checkout_step", 3);
+            event.put("referrer_url", "https://example.com/landing");
+            event.put("session_id", "session-" + (i / 10));
+            event.put("experiment_group", "control");
+            events.add(event);
+        }
+        return events;
+    }
+
+    // The validation before the change, without its error handling.
+
+    @SuppressWarnings("unchecked")
+    private static void validateEventBefore(Map<String, Object> event, int depth) {
+        if (depth == 0 && event.containsKey("keen")) {
+            throw new IllegalArgumentException();
+        } else if (depth > KeenConstants.MAX_EVENT_DEPTH) {
+            throw new IllegalArgumentException();
+        }
+        for (Map.Entry<String, Object> entry : event.entrySet()) {
+            String key = entry.getKey();
+            if (key.contains(".") || key.length() > 256) {
+                throw new IllegalArgumentException();
+            }
+            validateEventValueBefore(entry.getValue(), depth);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void validateEventValueBefore(Object value, int depth) {
+        if (value instanceof String) {
+            if (((String) value).length() >= 10000) {
+                throw new IllegalArgumentException();
+            }
+        } else if (value instanceof Map) {
+            validateEventBefore((Map<String, Object>) value, depth + 1);
+        } else if (value instanceof Iterable) {
+            for (Object listElement : (Iterable<Object>) value) {
+                validateEventValueBefore(listElement, depth);
+            }
+        }
+    }
+}
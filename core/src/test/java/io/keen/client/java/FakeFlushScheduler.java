@@ -0,0 +1,53 @@
+package io.keen.client.java;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link FlushScheduler} which records the jobs it is asked to schedule, and runs the flush task
+ * only when {@link #fire()} is called.
+ */
+public class FakeFlushScheduler implements FlushScheduler {
+    private final List<FlushJob> scheduledJobs = new ArrayList<FlushJob>();
+    private Runnable flushTask;
+    private FlushJob pendingJob;
+
+    @Override
+    public void setFlushTask(Runnable flushTask) {
+        this.flushTask = flushTask;
+    }
+
+    @Override
+    public void schedule(FlushJob job) {
+        scheduledJobs.add(job);
+        pendingJob = job;
+    }
+
+    @Override
+    public void cancel() {
+        pendingJob = null;
+    }
+
+    public List<FlushJob> getScheduledJobs() {
+        return scheduledJobs;
+    }
+
+    public Runnable getFlushTask() {
+        return flushTask;
+    }
+
+    public FlushJob getPendingJob() {
+        return pendingJob;
+    }
+
+    /**
+     * Runs the pending job, as a platform scheduler would once its constraints are met.
+     */
+    public void fire() {
+        if (pendingJob == null) {
+            throw new IllegalStateException("No job is scheduled");
+        }
+        pendingJob = null;
+        flushTask.run();
+    }
+}
@@ -0,0 +1,119 @@
+package io.keen.client.java;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the FileEventStore tests with the persisted index enabled, and tests loading, validating
+ * and rebuilding the index.
+ */
+public class FileEventStoreIndexTest extends FileEventStoreTest {
+
+    private static final File MANIFEST_FILE =
+            new File(TEST_STORE_ROOT, "keen/" + FileEventStoreIndex.MANIFEST_FILE_NAME);
+
+    @Override
+    protected KeenEventStore buildStore() throws IOException {
+        return buildIndexedStore();
+    }
+
+    @Test
+    public void manifestIsWrittenAndReloaded() throws Exception {
+        store.store("project1", "collection1", TEST_EVENT_1);
+        store.store("project1", "collection1", TEST_EVENT_2);
+        store.store("project1", "collection2", TEST_EVENT_3);
+        store.getHandles("project1");
+        assertTrue(MANIFEST_FILE.isFile());
+
+        Map<String, List<Object>> handleMap = buildIndexedStore().getHandles("project1");
+        assertEquals(2, handleMap.size());
+        assertEquals(2, handleMap.get("collection1").size());
+        assertEquals(1, handleMap.get("collection2").size());
+    }
+
+    @Test
+    public void corruptManifestIsRebuilt() throws Exception {
+        store.store("project1", "collection1", TEST_EVENT_1);
+        store.getHandles("project1");
+        FileUtils.write(MANIFEST_FILE, "not a manifest", "UTF-8");
+
+        Map<String, List<Object>> handleMap = buildIndexedStore().getHandles("project1");
+        assertEquals(1, handleMap.get("collection1").size());
+        assertEquals(TEST_EVENT_1, store.get(handleMap.get("collection1").get(0)));
+    }
+
+    @Test
+    public void changedCollectionIsListedAgain() throws Exception {
+        store.store("project1", "collection1", TEST_EVENT_1);
+        store.getHandles("project1");
+        writeEventFile("keen/project1/collection1/1393564454103.0", TEST_EVENT_2);
+        writeEventFile("keen/project1/collection3/1393564454104.0", TEST_EVENT_3);
+
+        Map<String, List<Object>> handleMap = buildIndexedStore().getHandles("project1");
+        assertEquals(2, handleMap.size());
+        assertEquals(2, handleMap.get("collection1").size());
+        assertEquals(1, handleMap.get("collection3").size());
+    }
+
+    @Test
+    public void unchangedCollectionIsNotListed() throws Exception {
+        File collectionDir = new File(TEST_STORE_ROOT, "keen/project1/collection1");
+        Object handle = store.store("project1", "collection1", TEST_EVENT_1);
+        long modified = (System.currentTimeMillis() - 60000) / 1000 * 1000;
+        assertTrue(collectionDir.setLastModified(modified));
+        store.getHandles("project1");
+
+        // Delete the event behind the index's back, leaving the directory's time unchanged, to
+        // show that the manifest is trusted.
+        assertTrue(((File) handle).delete());
+        assertTrue(collectionDir.setLastModified(modified));
+
+        KeenEventStore reopened = buildIndexedStore();
+        List<Object> handles = reopened.getHandles("project1").get("collection1");
+        assertEquals(1, handles.size());
+        assertNull(reopened.get(handles.get(0)));
+    }
+
+    @Test
+    public void removedEventsLeaveTheIndex() throws Exception {
+        Object handle = store.store("project1", "collection1", TEST_EVENT_1);
+        store.store("project1", "collection1", TEST_EVENT_2);
+        store.remove(handle);
+
+        assertEquals(1, store.getHandles("project1").get("collection1").size());
+        assertEquals(1, buildIndexedStore().getHandles("project1").get("collection1").size());
+    }
+
+    @Test
+    public void manifestIsNotRewrittenOnEveryFlush() throws Exception {
+        store.store("project1", "collection1", TEST_EVENT_1);
+        store.getHandles("project1");
+        long written = MANIFEST_FILE.length();
+
+        // A second flush shortly afterwards leaves the manifest alone.
+        store.store("project1", "collection1", TEST_EVENT_2);
+        store.getHandles("project1");
+        assertEquals(written, MANIFEST_FILE.length());
+
+        // Saving explicitly still writes it.
+        ((FileEventStore) store).saveIndex();
+        assertTrue(MANIFEST_FILE.length() > written);
+        assertEquals(2, buildIndexedStore().getHandles("project1").get("collection1").size());
+    }
+
+    private static FileEventStore buildIndexedStore() throws IOException {
+        FileEventStore fileStore = new FileEventStore(TEST_STORE_ROOT);
+        fileStore.setIndexEnabled(true);
+        return fileStore;
+    }
+
+}
@@ -24,7 +24,7 @@ import static org.junit.Assert.assertTrue;
  */
 public class FileEventStoreTest extends AttemptCountingEventStoreTestBase {
 
-    private static final File TEST_STORE_ROOT = new File("test_store_root");
+    protected static final File TEST_STORE_ROOT = new File("test_store_root");
 
     @BeforeClass
     public static void createStoreRoot() throws Exception {
@@ -64,7 +64,7 @@ public class FileEventStoreTest extends AttemptCountingEventStoreTestBase {
         assertTrue(events.contains(TEST_EVENT_2));
     }
 
-    private void writeEventFile(String path, String data) throws IOException {
+    protected void writeEventFile(String path, String data) throws IOException {
         File eventFile = new File(TEST_STORE_ROOT, path);
         FileUtils.write(eventFile, data, "UTF-8");
     }
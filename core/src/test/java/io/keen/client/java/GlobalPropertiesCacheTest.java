@@ -0,0 +1,128 @@
+package io.keen.client.java;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Tests the {@link GlobalPropertiesCache} class, and caching global properties in a client.
+ */
+public class GlobalPropertiesCacheTest {
+
+    private final AtomicInteger evaluations = new AtomicInteger();
+    private final GlobalPropertiesEvaluator evaluator = new GlobalPropertiesEvaluator() {
+        @Override
+        public Map<String, Object> getGlobalProperties(String eventCollection) {
+            Map<String, Object> keen = new HashMap<String, Object>();
+            keen.put("timestamp", "2016-01-01T00:00:00.000Z");
+
+            Map<String, Object> properties = new HashMap<String, Object>();
+            properties.put("keen", keen);
+            properties.put("collection", eventCollection);
+            properties.put("evaluation", evaluations.incrementAndGet());
+            return properties;
+        }
+    };
+
+    private KeenClient client;
+
+    @Before
+    public void setup() {
+        client = new TestKeenClientBuilder().build();
+        client.setDefaultProject(new KeenProject("<project ID>", "<write key>", "<read key>"));
+        client.setGlobalPropertiesEvaluator(evaluator);
+    }
+
+    @Test
+    public void evaluatorIsCalledOncePerCollection() {
+        client.setGlobalPropertiesCacheTtl(60000);
+
+        assertEquals(1, buildEvent("clicks").get("evaluation"));
+        assertEquals(1, buildEvent("clicks").get("evaluation"));
+        assertEquals(2, buildEvent("views").get("evaluation"));
+        assertEquals("views", buildEvent("views").get("collection"));
+        assertEquals(2, evaluations.get());
+    }
+
+    @Test
+    public void invalidationForcesEvaluation() {
+        client.setGlobalPropertiesCacheTtl(60000);
+        buildEvent("clicks");
+        buildEvent("views");
+
+        client.invalidateGlobalProperties("clicks");
+        assertEquals(3, buildEvent("clicks").get("evaluation"));
+        assertEquals(2, buildEvent("views").get("evaluation"));
+
+        client.invalidateGlobalProperties();
+        assertEquals(4, buildEvent("views").get("evaluation"));
+    }
+
+    @Test
+    public void cachedSplitExpires() {
+        final long[] now = { 0 };
+        GlobalPropertiesCache cache = new GlobalPropertiesCache(1000) {
+            @Override
+            long nanoTime() {
+                return now[0];
+            }
+        };
+
+        assertEquals(1, cache.getDynamic(evaluator, "clicks").properties.get("evaluation"));
+        now[0] = TimeUnit.MILLISECONDS.toNanos(999);
+        assertEquals(1, cache.getDynamic(evaluator, "clicks").properties.get("evaluation"));
+        now[0] = TimeUnit.MILLISECONDS.toNanos(1000);
+        assertEquals(2, cache.getDynamic(evaluator, "clicks").properties.get("evaluation"));
+    }
+
+    @Test
+    public void cachedEventsMatchUncachedEvents() {
+        Map<String, Object> keen = new HashMap<String, Object>();
+        keen.put("location", "static");
+        keen.put("timestamp", "2015-01-01T00:00:00.000Z");
+        Map<String, Object> globals = new HashMap<String, Object>();
+        globals.put("keen", keen);
+        globals.put("static", true);
+        globals.put("collection", "overridden by the evaluator");
+        client.setGlobalProperties(globals);
+
+        Map<String, Object> uncached = buildEvent("clicks");
+        client.setGlobalPropertiesCacheTtl(60000);
+        evaluations.set(0);
+        Map<String, Object> cached = buildEvent("clicks");
+
+        assertEquals(uncached, cached);
+        assertEquals("2016-01-01T00:00:00.000Z", ((Map<?, ?>) cached.get("keen")).get("timestamp"));
+        assertEquals("static", ((Map<?, ?>) cached.get("keen")).get("location"));
+        assertFalse(globals.isEmpty());
+        assertEquals(3, globals.size());
+    }
+
+    @Test
+    public void newGlobalPropertiesTakeEffectImmediately() {
+        client.setGlobalPropertiesCacheTtl(60000);
+        Map<String, Object> globals = new HashMap<String, Object>();
+        globals.put("version", 1);
+        client.setGlobalProperties(globals);
+        assertEquals(1, buildEvent("clicks").get("version"));
+
+        Map<String, Object> newGlobals = new HashMap<String, Object>();
+        newGlobals.put("version", 2);
+        client.setGlobalProperties(newGlobals);
+        assertEquals(2, buildEvent("clicks").get("version"));
+    }
+
+    private Map<String, Object> buildEvent(String eventCollection) {
+        Map<String, Object> event = new HashMap<String, Object>();
+        event.put("a", "b");
+        return client.validateAndBuildEvent(client.getDefaultProject(), eventCollection, event,
+                null);
+    }
+}
@@ -0,0 +1,266 @@
+package io.keen.client.java;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.keen.client.java.http.HttpHandler;
+import io.keen.client.java.http.Request;
+import io.keen.client.java.http.Response;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests loading events in bulk with a {@link KeenBackfill}.
+ */
+public class KeenBackfillTest {
+
+    private static final KeenProject PROJECT =
+            new KeenProject("<project ID>", "<write key>", "<read key>");
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<Integer>());
+    private final List<DeadLetter> deadLetters =
+            Collections.synchronizedList(new ArrayList<DeadLetter>());
+    private volatile int failFromRequest = Integer.MAX_VALUE;
+    private File checkpointFile;
+    private KeenClient client;
+
+    @Before
+    public void setup() throws IOException {
+        checkpointFile = File.createTempFile("keen_backfill", ".checkpoint");
+        assertTrue(checkpointFile.delete());
+        client = new TestKeenClientBuilder()
+                .withHttpHandler(new HttpHandler() {
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public Response execute(Request request) throws IOException {
+                        if (batchSizes.size() >= failFromRequest) {
+                            throw new IOException("Connection refused");
+                        }
+                        ByteArrayOutputStream body = new ByteArrayOutputStream();
+                        request.body.writeTo(body);
+                        Map<String, List<Map<String, Object>>> events =
+                                mapper.readValue(body.toByteArray(), Map.class);
+                        List<Map<String, Object>> clicks = events.get("clicks");
+                        batchSizes.add(clicks.size());
+
+                        StringBuilder response = new StringBuilder("{\"clicks\":[");
+                        for (int i = 0; i < clicks.size(); i++) {
+                            response.append(i > 0 ? "," : "");
+                            if (clicks.get(i).containsKey("reject")) {
+                                response.append("{\"success\":false,\"error\":" +
+                                        "{\"name\":\"InvalidPropertyValueError\"}}");
+                            } else {
+                                response.append("{\"success\":true}");
+                            }
+                        }
+                        return new Response(200, response.append("]}").toString());
+                    }
+                })
+                .withDeadLetterSink(new KeenDeadLetterSink() {
+                    @Override
+                    public void add(DeadLetter deadLetter) {
+                        deadLetters.add(deadLetter);
+                    }
+                })
+                .build();
+    }
+
+    @After
+    public void cleanUp() {
+        TestUtils.deleteRecursively(checkpointFile);
+    }
+
+    @Test
+    public void eventsAreBatchedAndCounted() throws IOException {
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 25; i++) {
+            input.append(event(i)).append('\n');
+        }
+        input.append("not json\n");
+        input.append("{\"a\": 1}\n");
+        input.append("\n");
+
+        BackfillReport report = new KeenBackfill(client, PROJECT)
+                .withMaxBatchEvents(10)
+                .run("clicks", new ByteArrayInputStream(input.toString().getBytes("UTF-8")));
+
+        assertTrue(report.isComplete());
+        assertEquals(28, report.getLinesRead());
+        assertEquals(2, report.getInvalidLines());
+        assertEquals(25, report.getEventsSent());
+        assertEquals(3, report.getRequests());
+        assertEquals(28, report.getCheckpoint());
+        assertEquals(25, sum(batchSizes));
+        assertTrue(Collections.max(batchSizes) <= 10);
+    }
+
+    @Test
+    public void batchesAreLimitedByBytes() throws IOException {
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 10; i++) {
+            input.append(event(i)).append('\n');
+        }
+
+        BackfillReport report = new KeenBackfill(client, PROJECT)
+                .withMaxBatchBytes(200)
+                .withMaxConcurrentRequests(1)
+                .run("clicks", new ByteArrayInputStream(input.toString().getBytes("UTF-8")));
+
+        assertEquals(10, report.getEventsSent());
+        assertTrue(batchSizes.size() > 1);
+        assertTrue(report.getBytesSent() <= 200 * batchSizes.size());
+    }
+
+    @Test
+    public void gzipInputIsDetected() throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+        for (int i = 0; i < 5; i++) {
+            gzip.write((event(i) + "\n").getBytes("UTF-8"));
+        }
+        gzip.close();
+
+        BackfillReport report = new KeenBackfill(client, PROJECT)
+                .run("clicks", new ByteArrayInputStream(compressed.toByteArray()));
+
+        assertTrue(report.isComplete());
+        assertEquals(5, report.getEventsSent());
+    }
+
+    @Test
+    public void failedRunResumesFromCheckpoint() throws IOException {
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 30; i++) {
+            input.append(event(i)).append('\n');
+        }
+        byte[] bytes = input.toString().getBytes("UTF-8");
+        KeenBackfill backfill = new KeenBackfill(client, PROJECT)
+                .withMaxBatchEvents(10)
+                .withMaxConcurrentRequests(1)
+                .withCheckpointFile(checkpointFile);
+
+        failFromRequest = 1;
+        BackfillReport failed = backfill.run("clicks", new ByteArrayInputStream(bytes));
+        assertFalse(failed.isComplete());
+        assertNotNull(failed.getError());
+        assertEquals(10, failed.getCheckpoint());
+        assertEquals(10, failed.getEventsSent());
+
+        failFromRequest = Integer.MAX_VALUE;
+        BackfillReport resumed = backfill.run("clicks", new ByteArrayInputStream(bytes));
+        assertTrue(resumed.isComplete());
+        assertEquals(10, resumed.getLinesSkipped());
+        assertEquals(20, resumed.getEventsSent());
+        assertEquals(30, resumed.getCheckpoint());
+        assertEquals(30, sum(batchSizes));
+    }
+
+    @Test
+    public void concurrentRequestsAreLimitedByTheClient() throws IOException {
+        assertEquals(1, peakConcurrentRequests(1));
+        assertTrue(peakConcurrentRequests(4) > 1);
+    }
+
+    @Test(expected = IOException.class)
+    public void checkpointForAnotherCollectionIsRefused() throws IOException {
+        KeenBackfill backfill = new KeenBackfill(client, PROJECT)
+                .withCheckpointFile(checkpointFile);
+        backfill.run("clicks", new ByteArrayInputStream(event(0).getBytes("UTF-8")));
+
+        backfill.run("views", new ByteArrayInputStream(event(0).getBytes("UTF-8")));
+    }
+
+    @Test
+    public void rejectedEventsAreDeadLettered() throws IOException {
+        String input = event(0) + "\n" +
+                "{\"reject\": true, \"keen\": {\"timestamp\": \"2015-01-01T00:00:00.000Z\"}}\n";
+
+        final List<BackfillReport> progress = new ArrayList<BackfillReport>();
+        BackfillReport report = new KeenBackfill(client, PROJECT)
+                .withListener(new BackfillListener() {
+                    @Override
+                    public void onProgress(BackfillReport report) {
+                        progress.add(report);
+                    }
+                })
+                .run("clicks", new ByteArrayInputStream(input.getBytes("UTF-8")));
+
+        assertTrue(report.isComplete());
+        assertEquals(1, report.getEventsSent());
+        assertEquals(1, report.getEventsRejected());
+        assertEquals(1, deadLetters.size());
+        assertEquals(KeenEventStatus.REJECTED, deadLetters.get(0).getReason());
+        assertTrue(deadLetters.get(0).getEvent().contains("\"reject\":true"));
+        assertEquals(report.getEventsSent(), progress.get(progress.size() - 1).getEventsSent());
+    }
+
+    /**
+     * Backfills single-event batches with four concurrent requests through a client with the
+     * given request limit, and returns the most requests which were ever in flight at once.
+     */
+    private int peakConcurrentRequests(int maxInFlightRequests) throws IOException {
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger peak = new AtomicInteger();
+        KeenClient limitedClient = new TestKeenClientBuilder()
+                .withHttpHandler(new HttpHandler() {
+                    @Override
+                    public Response execute(Request request) throws IOException {
+                        int current = inFlight.incrementAndGet();
+                        while (peak.get() < current && !peak.compareAndSet(peak.get(), current)) {
+                            // Retry until the peak is at least this high.
+                        }
+                        try {
+                            Thread.sleep(50);
+                        } catch (InterruptedException e) {
+                            throw new IOException(e);
+                        } finally {
+                            inFlight.decrementAndGet();
+                        }
+                        return new Response(200, "{\"clicks\":[{\"success\":true}]}");
+                    }
+                })
+                .withMaxInFlightRequests(maxInFlightRequests)
+                .build();
+
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 8; i++) {
+            input.append(event(i)).append('\n');
+        }
+        BackfillReport report = new KeenBackfill(limitedClient, PROJECT)
+                .withMaxBatchEvents(1)
+                .withMaxConcurrentRequests(4)
+                .run("clicks", new ByteArrayInputStream(input.toString().getBytes("UTF-8")));
+        assertEquals(8, report.getEventsSent());
+        return peak.get();
+    }
+
+    private static String event(int i) {
+        return "{\"n\": " + i + ", \"keen\": {\"timestamp\": \"2015-01-01T00:00:00.000Z\"}}";
+    }
+
+    private static int sum(List<Integer> values) {
+        int sum = 0;
+        synchronized (values) {
+            for (int value : values) {
+                sum += value;
+            }
+        }
+        return sum;
+    }
+}
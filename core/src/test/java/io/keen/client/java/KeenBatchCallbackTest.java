@@ -0,0 +1,132 @@
+package io.keen.client.java;
+
+import io.keen.client.java.http.HttpHandler;
+import io.keen.client.java.http.Request;
+import io.keen.client.java.http.Response;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests reporting the outcome of each event in a batch to a {@link KeenBatchCallback}.
+ */
+public class KeenBatchCallbackTest {
+
+    private static final KeenProject PROJECT =
+            new KeenProject("<project ID>", "<write key>", "<read key>");
+
+    private RamEventStore store;
+    private String response;
+    private KeenClient client;
+    private final List<String> results = new ArrayList<String>();
+    private int successes;
+
+    private final KeenBatchCallback callback = new KeenBatchCallback() {
+        @Override
+        public void onEventResult(Object handle, String eventCollection, KeenEventStatus status,
+                                  String errorName) {
+            results.add(eventCollection + "/" + status + "/" + errorName);
+        }
+
+        @Override
+        public void onSuccess() {
+            successes++;
+        }
+
+        @Override
+        public void onFailure(Exception e) {
+            throw new AssertionError(e);
+        }
+    };
+
+    @Before
+    public void setup() {
+        store = new RamEventStore();
+        client = new TestKeenClientBuilder()
+                .withEventStore(store)
+                .withHttpHandler(new HttpHandler() {
+                    @Override
+                    public Response execute(Request request) throws IOException {
+                        return new Response(200, response);
+                    }
+                })
+                .build();
+        client.setDefaultProject(PROJECT);
+    }
+
+    @Test
+    public void eachEventIsReported() throws IOException {
+        for (int i = 0; i < 3; i++) {
+            client.queueEvent("clicks", TestUtils.getSimpleEvent());
+        }
+        response = "{\"clicks\": [{\"success\": true}, " +
+                "{\"success\": false, \"error\": {\"name\": \"InvalidPropertyValueError\"}}, " +
+                "{\"success\": false, \"error\": {\"name\": \"InternalServerError\"}}]}";
+
+        client.sendQueuedEvents(null, callback);
+
+        assertEquals(Arrays.asList(
+                "clicks/SUCCEEDED/null",
+                "clicks/REJECTED/InvalidPropertyValueError",
+                "clicks/FAILED/InternalServerError"), results);
+        assertEquals(1, successes);
+        assertEquals(1, countQueuedEvents());
+    }
+
+    @Test
+    public void eventsOutOfAttemptsAreDroppedWithoutShiftingResults() throws IOException {
+        client.setMaxAttempts(1);
+        client.queueEvent("clicks", TestUtils.getSimpleEvent());
+        response = "{\"clicks\": [{\"success\": false, " +
+                "\"error\": {\"name\": \"InternalServerError\"}}]}";
+        client.sendQueuedEvents(null, callback);
+
+        // The first event has no attempts left, so only the second is sent, and the result
+        // applies to it.
+        client.queueEvent("clicks", TestUtils.getSimpleEvent());
+        results.clear();
+        response = "{\"clicks\": [{\"success\": true}]}";
+        client.sendQueuedEvents(null, callback);
+
+        assertEquals(Arrays.asList("clicks/DROPPED/null", "clicks/SUCCEEDED/null"), results);
+        assertEquals(0, countQueuedEvents());
+    }
+
+    @Test
+    public void plainCallbacksStillWork() throws IOException {
+        client.queueEvent("clicks", TestUtils.getSimpleEvent());
+        response = "{\"clicks\": [{\"success\": true}]}";
+        final boolean[] succeeded = { false };
+
+        client.sendQueuedEvents(null, new KeenCallback() {
+            @Override
+            public void onSuccess() {
+                succeeded[0] = true;
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+            }
+        });
+
+        assertTrue(succeeded[0]);
+        assertTrue(results.isEmpty());
+        assertEquals(0, countQueuedEvents());
+    }
+
+    private int countQueuedEvents() throws IOException {
+        int count = 0;
+        for (List<Object> handles : store.getHandles(PROJECT.getProjectId()).values()) {
+            count += handles.size();
+        }
+        return count;
+    }
+}
@@ -0,0 +1,190 @@
+package io.keen.client.java;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the {@link KeenClientPool} class.
+ */
+public class KeenClientPoolTest {
+
+    private ExecutorService executor;
+    private RecordingHttpHandler httpHandler;
+    private KeenClient client;
+    private KeenClientPool pool;
+
+    @Before
+    public void setup() {
+        executor = Executors.newSingleThreadExecutor();
+        httpHandler = new RecordingHttpHandler();
+        client = new TestKeenClientBuilder()
+                .withHttpHandler(httpHandler)
+                .withPublishExecutor(executor)
+                .build();
+        pool = new KeenClientPool(client)
+                .withMaxBatchSize(1000)
+                .withMaxConcurrentFlushes(1);
+        pool.addProject(new KeenProject("busy", "<write key>", "<read key>"));
+        pool.addProject(new KeenProject("quiet", "<write key>", "<read key>"));
+    }
+
+    @After
+    public void cleanUp() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void eventsAreRoutedToTheirProjects() throws Exception {
+        pool.queueEvent("busy", "clicks", TestUtils.getSimpleEvent());
+        pool.queueEvent("quiet", "views", TestUtils.getSimpleEvent());
+        pool.flushAll();
+        waitForFlushes();
+
+        assertEquals(2, httpHandler.requests.size());
+        assertTrue(httpHandler.requests.contains("busy:1"));
+        assertTrue(httpHandler.requests.contains("quiet:1"));
+        assertEquals(0, countQueuedEvents("busy") + countQueuedEvents("quiet"));
+    }
+
+    @Test
+    public void fullBatchIsFlushed() throws Exception {
+        pool.withMaxBatchSize(3);
+        for (int i = 0; i < 3; i++) {
+            pool.queueEvent("busy", "clicks", TestUtils.getSimpleEvent());
+        }
+        waitForFlushes();
+
+        assertEquals(Collections.singletonList("busy:3"), httpHandler.requests);
+    }
+
+    @Test
+    public void busyProjectDoesNotStarveOthers() throws Exception {
+        pool.withMaxEventsPerTurn(5);
+        for (int i = 0; i < 20; i++) {
+            pool.queueEvent("busy", "clicks", TestUtils.getSimpleEvent());
+        }
+        pool.queueEvent("quiet", "views", TestUtils.getSimpleEvent());
+        pool.queueEvent("quiet", "views", TestUtils.getSimpleEvent());
+
+        // Hold the executor so both projects are waiting before the first turn starts.
+        final CountDownLatch release = new CountDownLatch(1);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        pool.flush("busy");
+        pool.flush("quiet");
+        release.countDown();
+        waitForFlushes();
+
+        assertEquals(Arrays.asList("busy:5", "quiet:2", "busy:5", "busy:5", "busy:5"),
+                httpHandler.requests);
+    }
+
+    @Test
+    public void eventsAreFlushedAfterTheMaximumDelay() throws Exception {
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+        try {
+            KeenClient timedClient = new TestKeenClientBuilder()
+                    .withHttpHandler(httpHandler)
+                    .withPublishExecutor(executor)
+                    .build();
+            KeenClientPool timedPool = new KeenClientPool(timedClient, timer)
+                    .withMaxDelayMillis(10);
+            timedPool.addProject(new KeenProject("quiet", "<write key>", "<read key>"));
+            timedPool.queueEvent("quiet", "views", TestUtils.getSimpleEvent());
+
+            timer.schedule(new Runnable() {
+                @Override
+                public void run() {
+                }
+            }, 20, TimeUnit.MILLISECONDS).get(10, TimeUnit.SECONDS);
+            waitForFlushes();
+
+            assertEquals(Collections.singletonList("quiet:1"), httpHandler.requests);
+        } finally {
+            timer.shutdownNow();
+        }
+    }
+
+    @Test
+    public void concurrentFlushesAreLimitedByTheClientsRequests() {
+        assertEquals(1, countStartedFlushes(1));
+        assertEquals(2, countStartedFlushes(2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownProjectIsRejected() {
+        pool.queueEvent("unknown", "clicks", TestUtils.getSimpleEvent());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void clientCanOnlyBeUsedByOnePool() {
+        new KeenClientPool(client);
+    }
+
+    /**
+     * Makes two projects ready at once in a pool allowing two concurrent flushes, and counts the
+     * flushes it starts on a client with the given request limit.
+     */
+    private static int countStartedFlushes(int maxInFlightRequests) {
+        final List<Runnable> started = new ArrayList<Runnable>();
+        KeenClient limitedClient = new TestKeenClientBuilder()
+                .withHttpHandler(new RecordingHttpHandler())
+                .withPublishExecutor(new Executor() {
+                    @Override
+                    public void execute(Runnable command) {
+                        started.add(command);
+                    }
+                })
+                .withMaxInFlightRequests(maxInFlightRequests)
+                .build();
+        KeenClientPool limitedPool = new KeenClientPool(limitedClient)
+                .withMaxConcurrentFlushes(2);
+        limitedPool.addProject(new KeenProject("busy", "<write key>", "<read key>"));
+        limitedPool.addProject(new KeenProject("quiet", "<write key>", "<read key>"));
+
+        limitedPool.flush("busy");
+        limitedPool.flush("quiet");
+        return started.size();
+    }
+
+    private void waitForFlushes() throws Exception {
+        // The executor has a single thread, so once this has run every started flush is done.
+        executor.submit(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }).get(10, TimeUnit.SECONDS);
+    }
+
+    private int countQueuedEvents(String projectId) throws IOException {
+        int count = 0;
+        for (List<Object> handles : client.getEventStore().getHandles(projectId).values()) {
+            count += handles.size();
+        }
+        return count;
+    }
+}
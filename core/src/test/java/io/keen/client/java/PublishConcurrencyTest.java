@@ -0,0 +1,138 @@
+package io.keen.client.java;
+
+import io.keen.client.java.http.HttpHandler;
+import io.keen.client.java.http.Request;
+import io.keen.client.java.http.Response;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the limit on concurrent in-flight HTTP requests made by {@link KeenClient}.
+ */
+public class PublishConcurrencyTest {
+
+    private static final int NUM_EVENTS = 24;
+
+    private KeenProject project;
+    private ExecutorService executor;
+    private SlowHttpHandler httpHandler;
+
+    @Before
+    public void setUp() {
+        project = new KeenProject("<project ID>", "<write key>", "<read key>");
+        executor = Executors.newFixedThreadPool(8);
+        httpHandler = new SlowHttpHandler();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void requestsAreSentOneAtATimeByDefault() throws Exception {
+        KeenClient client = new TestKeenClientBuilder()
+                .withHttpHandler(httpHandler)
+                .withPublishExecutor(executor)
+                .build();
+
+        publishAll(client);
+
+        assertEquals(1, httpHandler.maxInFlight.get());
+    }
+
+    @Test
+    public void inFlightRequestsAreLimited() throws Exception {
+        KeenClient client = new TestKeenClientBuilder()
+                .withHttpHandler(httpHandler)
+                .withPublishExecutor(executor)
+                .withMaxInFlightRequests(3)
+                .build();
+
+        publishAll(client);
+
+        assertTrue(httpHandler.maxInFlight.get() > 1);
+        assertTrue(httpHandler.maxInFlight.get() <= 3);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void maxInFlightRequestsMustBePositive() {
+        new TestKeenClientBuilder().withMaxInFlightRequests(0);
+    }
+
+    @Test
+    public void virtualThreadsFallBackOnOlderRuntimes() throws Exception {
+        KeenClient client = new TestKeenClientBuilder()
+                .withHttpHandler(httpHandler)
+                .withVirtualThreads(true)
+                .withMaxInFlightRequests(4)
+                .build();
+
+        // Either way the client must be usable.
+        assertTrue(client.isActive());
+        publishAll(client);
+        assertEquals(VirtualThreadExecutors.isSupported(),
+                     !(client.getPublishExecutor() instanceof java.util.concurrent.ThreadPoolExecutor));
+        ((ExecutorService) client.getPublishExecutor()).shutdown();
+    }
+
+    private void publishAll(KeenClient client) throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(NUM_EVENTS);
+        final AtomicInteger failures = new AtomicInteger();
+        KeenCallback callback = new KeenCallback() {
+            @Override
+            public void onSuccess() {
+                done.countDown();
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                failures.incrementAndGet();
+                done.countDown();
+            }
+        };
+
+        for (int i = 0; i < NUM_EVENTS; i++) {
+            client.addEventAsync(project, "clicks", TestUtils.getSimpleEvent(), null, callback);
+        }
+
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        assertEquals(0, failures.get());
+    }
+
+    private static class SlowHttpHandler implements HttpHandler {
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+
+        @Override
+        public Response execute(Request request) throws IOException {
+            int current = inFlight.incrementAndGet();
+            while (true) {
+                int max = maxInFlight.get();
+                if (current <= max || maxInFlight.compareAndSet(max, current)) {
+                    break;
+                }
+            }
+
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            } finally {
+                inFlight.decrementAndGet();
+            }
+            return new Response(201, "{\"created\": true}");
+        }
+    }
+}
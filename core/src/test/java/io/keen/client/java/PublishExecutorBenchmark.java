@@ -0,0 +1,114 @@
+package io.keen.client.java;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares publish throughput of the default fixed thread pool against virtual threads, using a
+ * local stub server which delays every response to simulate network latency.
+ * <p>
+ * This isn't run as part of the test suite. Run it with:
+ * <pre>
+ *     java -cp &lt;test classpath&gt; io.keen.client.java.PublishExecutorBenchmark [events] [delayMillis]
+ * </pre>
+ * On runtimes without virtual threads the second configuration falls back to a fixed thread
+ * pool, and only the effect of the in-flight request limit is measured.
+ */
+public class PublishExecutorBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int numEvents = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        final int delayMillis = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                drain(exchange.getRequestBody());
+                try {
+                    Thread.sleep(delayMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                byte[] body = "{\"created\": true}".getBytes("UTF-8");
+                exchange.sendResponseHeaders(201, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        server.start();
+
+        String baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+        int procs = Runtime.getRuntime().availableProcessors();
+        System.out.println(String.format(Locale.US,
+                "%d events, %dms server delay, %d processors, virtual threads supported: %b",
+                numEvents, delayMillis, procs, VirtualThreadExecutors.isSupported()));
+
+        try {
+            run("fixed pool, 1 in flight (default)", baseUrl, numEvents,
+                    new TestKeenClientBuilder());
+            run("fixed pool, " + procs + " in flight", baseUrl, numEvents,
+                    new TestKeenClientBuilder().withMaxInFlightRequests(procs));
+            run("virtual threads, 256 in flight", baseUrl, numEvents,
+                    new TestKeenClientBuilder().withVirtualThreads(true).withMaxInFlightRequests(256));
+        } finally {
+            server.stop(0);
+            ((ExecutorService) server.getExecutor()).shutdownNow();
+        }
+    }
+
+    private static void run(String name, String baseUrl, int numEvents, KeenClient.Builder builder)
+            throws InterruptedException {
+        KeenClient client = builder.build();
+        client.setBaseUrl(baseUrl);
+        KeenProject project = new KeenProject("benchmark", "<write key>", "<read key>");
+
+        final CountDownLatch done = new CountDownLatch(numEvents);
+        KeenCallback callback = new KeenCallback() {
+            @Override
+            public void onSuccess() {
+                done.countDown();
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                done.countDown();
+            }
+        };
+
+        long start = System.nanoTime();
+        for (int i = 0; i < numEvents; i++) {
+            client.addEventAsync(project, "benchmark", TestUtils.getSimpleEvent(), null, callback);
+        }
+        done.await(10, TimeUnit.MINUTES);
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        System.out.println(String.format(Locale.US, "%-40s %6d ms  %8.1f events/s",
+                name, elapsedMillis, numEvents * 1000.0 / Math.max(1, elapsedMillis)));
+
+        if (client.getPublishExecutor() instanceof ExecutorService) {
+            ((ExecutorService) client.getPublishExecutor()).shutdown();
+        }
+    }
+
+    private static void drain(InputStream in) throws IOException {
+        byte[] buffer = new byte[4096];
+        while (in.read(buffer) != -1) {
+            // Discard the request body.
+        }
+        in.close();
+    }
+}
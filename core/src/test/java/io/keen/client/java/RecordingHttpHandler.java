@@ -0,0 +1,57 @@
+package io.keen.client.java;
+
+import io.keen.client.java.http.HttpHandler;
+import io.keen.client.java.http.Request;
+import io.keen.client.java.http.Response;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Test HTTP handler which reports every event as inserted, and records each request as
+ * "projectId:eventCount" in the order they were made.
+ */
+public class RecordingHttpHandler implements HttpHandler {
+
+    public final List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Response execute(Request request) throws IOException {
+        // The URL path is /3.0/projects/<project ID>/events[/<collection>].
+        String[] path = request.url.getPath().split("/");
+        String projectId = path[3];
+        if (path.length > 5) {
+            requests.add(projectId + ":1");
+            return new Response(201, "{\"created\": true}");
+        }
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        request.body.writeTo(body);
+        Map<String, Object> events = new TestJsonHandler().readJson(
+                new StringReader(body.toString("UTF-8")));
+
+        Map<String, Object> results = new HashMap<String, Object>();
+        int count = 0;
+        for (Map.Entry<String, Object> entry : events.entrySet()) {
+            List<Object> collectionResults = new ArrayList<Object>();
+            for (Object ignored : (List<Object>) entry.getValue()) {
+                collectionResults.add(Collections.singletonMap("success", true));
+                count++;
+            }
+            results.put(entry.getKey(), collectionResults);
+        }
+        requests.add(projectId + ":" + count);
+
+        StringWriter json = new StringWriter();
+        new TestJsonHandler().writeJson(json, results);
+        return new Response(200, json.toString());
+    }
+}
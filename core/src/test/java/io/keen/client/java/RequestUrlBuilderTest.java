@@ -8,6 +8,7 @@ import java.util.HashMap;
 import java.util.Map;
 
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.sameInstance;
 import static org.hamcrest.core.StringContains.containsString;
 import static org.junit.Assert.assertThat;
 
@@ -60,4 +61,30 @@ public class RequestUrlBuilderTest {
         assertThat(result.getQuery(), containsString(encodedEntry3));
     }
 
+    @Test
+    public void shouldCreateEncodedEventUrl() throws Exception {
+        URL result = builder.getEventUrl(PROJECT_ID, "button clicks");
+
+        assertThat(result.toString(), equalTo("https://api.keen.io/v1/projects/0123456789abcdef/events/button%20clicks"));
+    }
+
+    @Test
+    public void shouldCreateBatchEventsUrl() throws Exception {
+        URL result = builder.getBatchEventsUrl(PROJECT_ID);
+
+        assertThat(result.toString(), equalTo("https://api.keen.io/v1/projects/0123456789abcdef/events"));
+    }
+
+    @Test
+    public void shouldReuseUrlsPerProjectAndCollection() throws Exception {
+        URL first = builder.getEventUrl(PROJECT_ID, "clicks");
+
+        assertThat(builder.getEventUrl(PROJECT_ID, "clicks"), sameInstance(first));
+        assertThat(builder.getBatchEventsUrl(PROJECT_ID), sameInstance(builder.getBatchEventsUrl(PROJECT_ID)));
+        assertThat(builder.getAnalysisUrl(PROJECT_ID, "count"), sameInstance(builder.getAnalysisUrl(PROJECT_ID, "count")));
+
+        URL otherProject = builder.getEventUrl("fedcba9876543210", "clicks");
+        assertThat(otherProject.toString(), equalTo("https://api.keen.io/v1/projects/fedcba9876543210/events/clicks"));
+    }
+
 }
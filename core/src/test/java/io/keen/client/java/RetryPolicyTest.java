@@ -0,0 +1,328 @@
+package io.keen.client.java;
+
+import io.keen.client.java.exceptions.CircuitOpenException;
+import io.keen.client.java.http.HttpHandler;
+import io.keen.client.java.http.Request;
+import io.keen.client.java.http.Response;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests {@link RetryPolicy} decisions, and a {@link KeenClient} retrying through a policy.
+ */
+public class RetryPolicyTest {
+
+    private FakeClockRetryPolicy policy;
+    private RecordingListener listener;
+
+    @Before
+    public void setUp() {
+        listener = new RecordingListener();
+        policy = new FakeClockRetryPolicy();
+        policy.withBackoff(500, 4000).withListener(listener);
+    }
+
+    @Test
+    public void backoffGrowsExponentiallyWithJitter() {
+        assertEquals(250, policy.onAttemptFailed(1, 503, null, new Exception()));
+        assertEquals(500, policy.onAttemptFailed(2, 503, null, new Exception()));
+        assertEquals(1000, policy.onAttemptFailed(3, 503, null, new Exception()));
+
+        // The fourth attempt is the last.
+        assertEquals(-1, policy.onAttemptFailed(4, 503, null, new Exception()));
+        assertEquals(Arrays.asList("retry 1 250", "retry 2 500", "retry 3 1000", "gave up 4"),
+                listener.events);
+    }
+
+    @Test
+    public void backoffIsCapped() {
+        policy.withMaxAttempts(10).withCircuitBreaker(100, 0);
+        policy.random = 1.0;
+
+        assertEquals(4000, policy.onAttemptFailed(8, 500, null, new Exception()));
+    }
+
+    @Test
+    public void clientErrorsAreNotRetried() {
+        assertEquals(-1, policy.onAttemptFailed(1, 400, null, new Exception()));
+        assertEquals(Collections.singletonList("gave up 1"), listener.events);
+        assertFalse(policy.isCircuitOpen());
+    }
+
+    @Test
+    public void retryAfterPausesAllRequests() {
+        long delay = policy.onAttemptFailed(1, 429, "10", new Exception());
+
+        assertEquals(10000, delay);
+        assertTrue(policy.isCircuitOpen());
+        assertEquals(policy.now + 10000, policy.getRetryAtMillis());
+        assertBlocked(1);
+
+        // Once the pause is over, one trial request goes through.
+        policy.now += 10000;
+        policy.beforeAttempt(2);
+        assertBlocked(1);
+
+        policy.onAttemptSucceeded();
+        assertFalse(policy.isCircuitOpen());
+        policy.beforeAttempt(1);
+        assertEquals("circuit closed", listener.events.get(listener.events.size() - 1));
+    }
+
+    @Test
+    public void retryAfterDateIsSupported() {
+        policy.now = 784111777000L - 5000; // 5 seconds before Sun, 06 Nov 1994 08:49:37 GMT
+
+        assertEquals(5000, policy.onAttemptFailed(1, 503, "Sun, 06 Nov 1994 08:49:37 GMT",
+                new Exception()));
+    }
+
+    @Test
+    public void longRetryAfterGivesUpButKeepsThePause() {
+        assertEquals(-1, policy.onAttemptFailed(1, 503, "3600", new Exception()));
+        assertTrue(policy.isCircuitOpen());
+    }
+
+    @Test
+    public void consecutiveFailuresOpenTheCircuit() {
+        policy.withMaxAttempts(1).withCircuitBreaker(3, 30000);
+
+        for (int i = 0; i < 2; i++) {
+            policy.beforeAttempt(1);
+            policy.onAttemptFailed(1, -1, null, new IOException());
+            assertFalse(policy.isCircuitOpen());
+        }
+        policy.beforeAttempt(1);
+        policy.onAttemptFailed(1, -1, null, new IOException());
+
+        assertTrue(policy.isCircuitOpen());
+        assertTrue(listener.events.contains("circuit opened " + (policy.now + 30000)));
+
+        // A failed trial request opens the circuit again.
+        policy.now += 30000;
+        policy.beforeAttempt(1);
+        policy.onAttemptFailed(1, -1, null, new IOException());
+        assertTrue(policy.isCircuitOpen());
+        assertEquals(policy.now + 30000, policy.getRetryAtMillis());
+    }
+
+    @Test
+    public void retryBudgetLimitsRetries() {
+        policy.withMaxAttempts(10).withCircuitBreaker(100, 0).withRetryBudget(2, 0.5);
+
+        assertTrue(policy.onAttemptFailed(1, 503, null, new Exception()) >= 0);
+        assertTrue(policy.onAttemptFailed(2, 503, null, new Exception()) >= 0);
+        assertEquals(-1, policy.onAttemptFailed(3, 503, null, new Exception()));
+
+        // New requests earn more retries.
+        policy.beforeAttempt(1);
+        policy.beforeAttempt(1);
+        assertEquals(1, policy.getRemainingRetryBudget());
+        assertTrue(policy.onAttemptFailed(1, 503, null, new Exception()) >= 0);
+    }
+
+    @Test
+    public void clientRetriesUntilSuccess() throws Exception {
+        ScriptedHttpHandler httpHandler = new ScriptedHttpHandler(
+                new Response(503, "{}"), new Response(500, "{}"), new Response(201, "{}"));
+        KeenClient client = new TestKeenClientBuilder()
+                .withHttpHandler(httpHandler)
+                .withRetryPolicy(policy)
+                .build();
+        KeenProject project = new KeenProject("<project ID>", "<write key>", "<read key>");
+
+        client.addEvent(project, "clicks", TestUtils.getSimpleEvent(), null, null);
+
+        assertEquals(3, httpHandler.requests);
+        assertEquals(Arrays.asList(250L, 500L), policy.sleeps);
+    }
+
+    @Test
+    public void flushesArePausedWhileCircuitIsOpen() throws Exception {
+        Map<String, List<String>> headers = new HashMap<String, List<String>>();
+        headers.put("retry-after", Collections.singletonList("600"));
+        ScriptedHttpHandler httpHandler = new ScriptedHttpHandler(
+                new Response(503, "{}", headers));
+        KeenClient client = new TestKeenClientBuilder()
+                .withHttpHandler(httpHandler)
+                .withRetryPolicy(policy)
+                .build();
+        KeenProject project = new KeenProject("<project ID>", "<write key>", "<read key>");
+
+        client.queueEvent(project, "clicks", TestUtils.getSimpleEvent(), null, null);
+        client.sendQueuedEvents(project);
+        assertEquals(1, httpHandler.requests);
+        assertTrue(policy.isCircuitOpen());
+
+        // Later flushes don't send anything, and the event stays queued.
+        client.sendQueuedEvents(project);
+        client.sendQueuedEvents(project);
+        assertEquals(1, httpHandler.requests);
+        assertEquals(1, client.getEventStore().getHandles("<project ID>").get("clicks").size());
+    }
+
+    @Test
+    public void timedOutTrialIsRetried() throws Exception {
+        policy.withCircuitBreaker(5, 1000);
+        policy.onAttemptFailed(1, 429, "10", new Exception());
+        policy.now += 10000;
+        ScriptedHttpHandler httpHandler = new ScriptedHttpHandler(
+                new SocketTimeoutException("Read timed out"), new Response(201, "{}"));
+        KeenClient client = new TestKeenClientBuilder()
+                .withHttpHandler(httpHandler)
+                .withRetryPolicy(policy)
+                .build();
+        KeenProject project = new KeenProject("<project ID>", "<write key>", "<read key>");
+
+        client.addEvent(project, "clicks", TestUtils.getSimpleEvent(), null, null);
+
+        // The timed out trial opens the circuit again, and the retry waits for it.
+        assertEquals(2, httpHandler.requests);
+        assertEquals(Collections.singletonList(1000L), policy.sleeps);
+        assertFalse(policy.isCircuitOpen());
+    }
+
+    @Test
+    public void interruptedTrialLetsTheNextRequestTry() throws Exception {
+        policy.onAttemptFailed(1, 429, "10", new Exception());
+        policy.now += 10000;
+        KeenClient client = new TestKeenClientBuilder()
+                .withHttpHandler(new HttpHandler() {
+                    @Override
+                    public Response execute(Request request) throws IOException {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted");
+                    }
+                })
+                .withRetryPolicy(policy)
+                .build();
+        KeenProject project = new KeenProject("<project ID>", "<write key>", "<read key>");
+
+        try {
+            client.addEvent(project, "clicks", TestUtils.getSimpleEvent(), null, null);
+        } finally {
+            assertTrue(Thread.interrupted());
+        }
+
+        // The interrupt was neither retried nor counted against the API.
+        assertTrue(policy.sleeps.isEmpty());
+        assertFalse(policy.isCircuitOpen());
+        policy.beforeAttempt(1);
+    }
+
+    @Test
+    public void failingHandlerLetsTheNextRequestTry() throws Exception {
+        policy.onAttemptFailed(1, 429, "10", new Exception());
+        policy.now += 10000;
+        KeenClient client = new TestKeenClientBuilder()
+                .withHttpHandler(new HttpHandler() {
+                    @Override
+                    public Response execute(Request request) {
+                        throw new IllegalStateException("Broken handler");
+                    }
+                })
+                .withRetryPolicy(policy)
+                .build();
+        KeenProject project = new KeenProject("<project ID>", "<write key>", "<read key>");
+
+        client.addEvent(project, "clicks", TestUtils.getSimpleEvent(), null, null);
+
+        policy.beforeAttempt(1);
+    }
+
+    private void assertBlocked(int attempt) {
+        try {
+            policy.beforeAttempt(attempt);
+            fail("Expected requests to be paused");
+        } catch (CircuitOpenException e) {
+            assertEquals(policy.getRetryAtMillis(), e.getRetryAtMillis());
+        }
+    }
+
+    /**
+     * A policy with a fake clock, fixed jitter and recorded sleeps.
+     */
+    private static class FakeClockRetryPolicy extends RetryPolicy {
+        long now = 1000000;
+        double random = 0.5;
+        final List<Long> sleeps = new ArrayList<Long>();
+
+        @Override
+        long currentTimeMillis() {
+            return now;
+        }
+
+        @Override
+        synchronized double nextRandom() {
+            return random;
+        }
+
+        @Override
+        void sleep(long millis) {
+            sleeps.add(millis);
+            now += millis;
+        }
+    }
+
+    private static class RecordingListener implements RetryListener {
+        final List<String> events = new ArrayList<String>();
+
+        @Override
+        public void onRetryScheduled(int attempt, long delayMillis, Exception cause) {
+            events.add("retry " + attempt + " " + delayMillis);
+        }
+
+        @Override
+        public void onGaveUp(int attempts, Exception cause) {
+            events.add("gave up " + attempts);
+        }
+
+        @Override
+        public void onCircuitOpened(long retryAtMillis) {
+            events.add("circuit opened " + retryAtMillis);
+        }
+
+        @Override
+        public void onCircuitClosed() {
+            events.add("circuit closed");
+        }
+    }
+
+    /**
+     * Returns the given responses in turn, repeating the last; an IOException is thrown instead.
+     */
+    private static class ScriptedHttpHandler implements HttpHandler {
+        final LinkedList<Object> responses;
+        int requests;
+
+        ScriptedHttpHandler(Object... responses) {
+            this.responses = new LinkedList<Object>(Arrays.asList(responses));
+        }
+
+        @Override
+        public Response execute(Request request) throws IOException {
+            requests++;
+            Object response = (responses.size() > 1 ? responses.removeFirst() : responses.getFirst());
+            if (response instanceof IOException) {
+                throw (IOException) response;
+            }
+            return (Response) response;
+        }
+    }
+}
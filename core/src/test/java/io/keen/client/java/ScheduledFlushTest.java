@@ -0,0 +1,222 @@
+package io.keen.client.java;
+
+import io.keen.client.java.http.HttpHandler;
+import io.keen.client.java.http.Request;
+import io.keen.client.java.http.Response;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link FlushPolicy} decisions, and a {@link KeenClient} flushing through a
+ * {@link FakeFlushScheduler}.
+ */
+public class ScheduledFlushTest {
+
+    private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+
+    private FlushPolicy policy;
+
+    @Before
+    public void setUp() {
+        policy = new FlushPolicy()
+                .withMaxBatchSize(5)
+                .withBatchWindowMillis(15 * MINUTE)
+                .withMaxLatencyMillis(60 * MINUTE);
+    }
+
+    @Test
+    public void firstEventSchedulesDeferredJob() {
+        assertEquals(new FlushJob(15 * MINUTE, 60 * MINUTE, true, true), policy.onEventQueued(0));
+    }
+
+    @Test
+    public void laterEventsJoinTheScheduledJob() {
+        policy.onEventQueued(0);
+
+        assertNull(policy.onEventQueued(MINUTE));
+        assertNull(policy.onEventQueued(2 * MINUTE));
+    }
+
+    @Test
+    public void fullBatchSchedulesImmediateJobOnAnyNetwork() {
+        for (int i = 0; i < 4; i++) {
+            policy.onEventQueued(i);
+        }
+
+        assertEquals(new FlushJob(0, 0, false, false), policy.onEventQueued(4));
+        assertNull(policy.onEventQueued(5));
+    }
+
+    @Test
+    public void constraintsCanBeRelaxed() {
+        policy.withUnmeteredNetworkRequired(false).withChargingRequired(false);
+
+        assertEquals(new FlushJob(15 * MINUTE, 60 * MINUTE, false, false), policy.onEventQueued(0));
+    }
+
+    @Test
+    public void failedFlushIsRetriedWithinMaxLatency() {
+        policy.onEventQueued(0);
+        policy.onFlushStarted();
+
+        // Nothing left means nothing to schedule.
+        assertNull(policy.onFlushFinished(MINUTE, 0));
+
+        policy.onEventQueued(2 * MINUTE);
+        policy.onFlushStarted();
+        assertEquals(new FlushJob(15 * MINUTE, 60 * MINUTE, true, true),
+                     policy.onFlushFinished(50 * MINUTE, 3));
+    }
+
+    @Test
+    public void fullBatchWaitsForRetryAfterFailedFlush() {
+        policy.onEventQueued(0);
+        policy.onFlushStarted();
+        policy.onFlushFinished(MINUTE, 1);
+
+        // The batch fills up before the retry is due, which must not bypass the backoff.
+        for (int i = 0; i < 4; i++) {
+            assertNull(policy.onEventQueued(2 * MINUTE));
+        }
+
+        // Once the retry runs and succeeds, a full batch is flushed immediately again.
+        policy.onFlushStarted();
+        assertNull(policy.onFlushFinished(16 * MINUTE, 0));
+        for (int i = 0; i < 4; i++) {
+            policy.onEventQueued(17 * MINUTE);
+        }
+        assertEquals(new FlushJob(0, 0, false, false), policy.onEventQueued(17 * MINUTE));
+    }
+
+    @Test
+    public void deferredJobNeverExceedsRemainingLatency() {
+        policy.withMaxLatencyMillis(10 * MINUTE);
+
+        assertEquals(new FlushJob(10 * MINUTE, 10 * MINUTE, true, true), policy.onEventQueued(0));
+    }
+
+    @Test
+    public void clientFlushesQueuedEventsWhenJobFires() throws Exception {
+        FakeFlushScheduler scheduler = new FakeFlushScheduler();
+        CountingHttpHandler httpHandler = new CountingHttpHandler();
+        KeenClient client = new TestKeenClientBuilder()
+                .withHttpHandler(httpHandler)
+                .withFlushScheduler(scheduler)
+                .withFlushPolicy(policy)
+                .build();
+        KeenProject project = new KeenProject("<project ID>", "<write key>", "<read key>");
+
+        client.queueEvent(project, "clicks", TestUtils.getSimpleEvent(), null, null);
+        client.queueEvent(project, "clicks", TestUtils.getSimpleEvent(), null, null);
+
+        // Only the first event schedules a job, and nothing is sent until it fires.
+        assertEquals(1, scheduler.getScheduledJobs().size());
+        assertEquals(0, httpHandler.requests);
+
+        scheduler.fire();
+
+        assertEquals(1, httpHandler.requests);
+        assertTrue(client.getEventStore().getHandles("<project ID>").isEmpty());
+        assertNull(scheduler.getPendingJob());
+    }
+
+    @Test
+    public void flushTaskIsSetWhenClientIsBuilt() {
+        FakeFlushScheduler scheduler = new FakeFlushScheduler();
+        new TestKeenClientBuilder()
+                .withFlushScheduler(scheduler)
+                .withFlushPolicy(policy)
+                .build();
+
+        assertNotNull(scheduler.getFlushTask());
+    }
+
+    @Test
+    public void clientReschedulesWhenFlushLeavesEventsQueued() throws Exception {
+        FakeFlushScheduler scheduler = new FakeFlushScheduler();
+        TestNetworkStatusHandler networkStatusHandler = new TestNetworkStatusHandler(false);
+        KeenClient client = new TestKeenClientBuilder()
+                .withHttpHandler(new CountingHttpHandler())
+                .withNetworkStatusHandler(networkStatusHandler)
+                .withFlushScheduler(scheduler)
+                .withFlushPolicy(policy)
+                .build();
+        KeenProject project = new KeenProject("<project ID>", "<write key>", "<read key>");
+
+        client.queueEvent(project, "clicks", TestUtils.getSimpleEvent(), null, null);
+        scheduler.fire();
+
+        List<FlushJob> jobs = scheduler.getScheduledJobs();
+        assertEquals(2, jobs.size());
+        assertEquals(15 * MINUTE, scheduler.getPendingJob().getDelayMillis());
+
+        networkStatusHandler.setNetworkConnected(true);
+        scheduler.fire();
+        assertTrue(client.getEventStore().getHandles("<project ID>").isEmpty());
+    }
+
+    @Test
+    public void jobInNewProcessFlushesEventsStoredForDefaultProject() throws Exception {
+        // Events stored by an earlier process, which this client never queued itself.
+        RamEventStore store = new RamEventStore();
+        store.store("<project ID>", "clicks", "{\"a\":1}");
+        store.store("<project ID>", "clicks", "{\"a\":2}");
+
+        FakeFlushScheduler scheduler = new FakeFlushScheduler();
+        TestNetworkStatusHandler networkStatusHandler = new TestNetworkStatusHandler(false);
+        CountingHttpHandler httpHandler = new CountingHttpHandler();
+        KeenClient client = new TestKeenClientBuilder()
+                .withEventStore(store)
+                .withHttpHandler(httpHandler)
+                .withNetworkStatusHandler(networkStatusHandler)
+                .withFlushScheduler(scheduler)
+                .withFlushPolicy(policy)
+                .build();
+        client.setDefaultProject(new KeenProject("<project ID>", "<write key>", "<read key>"));
+
+        // A persisted job fires, though nothing was scheduled in this process. The stored events
+        // must be retried even though the policy never counted them.
+        scheduler.getFlushTask().run();
+        assertEquals(15 * MINUTE, scheduler.getPendingJob().getDelayMillis());
+
+        networkStatusHandler.setNetworkConnected(true);
+        scheduler.fire();
+        assertEquals(1, httpHandler.requests);
+        assertTrue(store.getHandles("<project ID>").isEmpty());
+        assertNull(scheduler.getPendingJob());
+    }
+
+    @Test
+    public void clientWithoutSchedulerSchedulesNothing() {
+        FlushPolicy unused = new FlushPolicy();
+        KeenClient client = new TestKeenClientBuilder().withFlushPolicy(unused).build();
+        KeenProject project = new KeenProject("<project ID>", "<write key>", "<read key>");
+
+        client.queueEvent(project, "clicks", TestUtils.getSimpleEvent(), null, null);
+
+        // Without a scheduler the policy is never consulted, so it still treats this as the first
+        // event.
+        assertEquals(new FlushJob(FlushPolicy.DEFAULT_BATCH_WINDOW_MILLIS,
+                                  FlushPolicy.DEFAULT_MAX_LATENCY_MILLIS, true, true),
+                     unused.onEventQueued(0));
+    }
+
+    private static class CountingHttpHandler implements HttpHandler {
+        int requests;
+
+        @Override
+        public Response execute(Request request) throws IOException {
+            requests++;
+            return new Response(200, "{\"clicks\": [{\"success\": true}, {\"success\": true}]}");
+        }
+    }
+}
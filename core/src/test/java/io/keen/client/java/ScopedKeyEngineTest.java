@@ -0,0 +1,119 @@
+package io.keen.client.java;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.keen.client.java.exceptions.ScopedKeyException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests {@link ScopedKeyEngine}, and its compatibility with the static {@link ScopedKeys} methods.
+ */
+public class ScopedKeyEngineTest {
+
+    private static final String API_KEY = "24077ACBCB198BAAA2110EDDB673282F8E34909FD823A15C55A6253A664BE368";
+    private static final String OLD_API_KEY = "80ce00d60d6443118017340c42d1cfaf";
+
+    private KeenClient client;
+    private ScopedKeyEngine engine;
+
+    @Before
+    public void setUp() {
+        client = new TestKeenClientBuilder().build();
+        engine = new ScopedKeyEngine(new TestJsonHandler());
+    }
+
+    @Test
+    public void keysAreCompatibleWithScopedKeys() throws ScopedKeyException {
+        Map<String, Object> options = getOptions("read");
+
+        assertEquals(options, ScopedKeys.decrypt(client, API_KEY, engine.encrypt(API_KEY, options)));
+        assertEquals(options, engine.decrypt(API_KEY, ScopedKeys.encrypt(client, API_KEY, options)));
+
+        assertEquals(options, ScopedKeys.decrypt32CharacterKey(client, OLD_API_KEY,
+                engine.encrypt(OLD_API_KEY, options)));
+        assertEquals(options, engine.decrypt(OLD_API_KEY,
+                ScopedKeys.encrypt32CharacterKey(client, OLD_API_KEY, options)));
+    }
+
+    @Test
+    public void issuedKeysAreCachedByOptions() throws ScopedKeyException {
+        String first = engine.encrypt(API_KEY, getOptions("read"));
+
+        assertSame(first, engine.encrypt(API_KEY, getOptions("read")));
+        assertFalse(first.equals(engine.encrypt(API_KEY, getOptions("write"))));
+        assertFalse(first.equals(engine.encrypt(OLD_API_KEY, getOptions("read"))));
+    }
+
+    @Test
+    public void issuedKeysAreEvictedWhenFull() throws ScopedKeyException {
+        engine = new ScopedKeyEngine(new TestJsonHandler(), 1);
+
+        String first = engine.encrypt(API_KEY, getOptions("read"));
+        engine.encrypt(API_KEY, getOptions("write"));
+
+        assertFalse(first.equals(engine.encrypt(API_KEY, getOptions("read"))));
+    }
+
+    @Test
+    public void decryptedKeysAreCached() throws ScopedKeyException {
+        String scopedKey = engine.encrypt(API_KEY, getOptions("read"));
+
+        Map<String, Object> decrypted = engine.decrypt(API_KEY, scopedKey);
+        assertEquals(getOptions("read"), decrypted);
+        assertSame(decrypted, engine.decrypt(API_KEY, scopedKey));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void decryptedOptionsAreUnmodifiable() throws ScopedKeyException {
+        engine.decrypt(API_KEY, engine.encrypt(API_KEY, getOptions("read"))).clear();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void nestedDecryptedOptionsAreUnmodifiable() throws ScopedKeyException {
+        Map<String, Object> decrypted =
+                engine.decrypt(API_KEY, engine.encrypt(API_KEY, getOptions("read")));
+        List<Object> filters = (List<Object>) decrypted.get("filters");
+
+        try {
+            filters.clear();
+            fail("Expected the filters to be unmodifiable");
+        } catch (UnsupportedOperationException e) {
+            // Expected.
+        }
+        try {
+            ((Map<String, Object>) filters.get(0)).put("operator", "ne");
+            fail("Expected a filter to be unmodifiable");
+        } catch (UnsupportedOperationException e) {
+            // Expected.
+        }
+    }
+
+    @Test(expected = ScopedKeyException.class)
+    public void decryptingWithTheWrongKeyFails() throws ScopedKeyException {
+        String scopedKey = engine.encrypt(API_KEY, getOptions("read"));
+        engine.decrypt(API_KEY.replace('2', '3'), scopedKey);
+    }
+
+    private static Map<String, Object> getOptions(String operation) {
+        Map<String, Object> filter = new HashMap<String, Object>();
+        filter.put("property_name", "purchase.amount");
+        filter.put("operator", "eq");
+        filter.put("property_value", 56);
+
+        Map<String, Object> options = new HashMap<String, Object>();
+        options.put("allowed_operations", Arrays.asList(operation));
+        options.put("filters", Arrays.asList(filter));
+        return options;
+    }
+}
@@ -0,0 +1,222 @@
+package io.keen.client.java;
+
+import io.keen.client.java.http.HttpHandler;
+import io.keen.client.java.http.Request;
+import io.keen.client.java.http.Response;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests shutting down a {@link KeenClient} with {@link KeenClient#shutdown(long)}.
+ */
+public class ShutdownTest {
+
+    private KeenProject project;
+    private ExecutorService executor;
+    private RecordingHttpHandler httpHandler;
+    private TestNetworkStatusHandler networkStatusHandler;
+    private KeenClient client;
+
+    @Before
+    public void setup() {
+        project = new KeenProject("<project ID>", "<write key>", "<read key>");
+        executor = Executors.newSingleThreadExecutor();
+        httpHandler = new RecordingHttpHandler();
+        networkStatusHandler = new TestNetworkStatusHandler(true);
+        client = new TestKeenClientBuilder()
+                .withHttpHandler(httpHandler)
+                .withPublishExecutor(executor)
+                .withNetworkStatusHandler(networkStatusHandler)
+                .build();
+        client.setDefaultProject(project);
+    }
+
+    @After
+    public void cleanUp() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void queuedEventsAreFlushed() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            client.queueEvent("clicks", TestUtils.getSimpleEvent());
+        }
+
+        ShutdownReport report = client.shutdown(5000);
+
+        assertEquals(5, report.getFlushedEvents());
+        assertEquals(0, report.getPersistedEvents());
+        assertEquals(0, report.getDroppedEvents());
+        assertFalse(report.isTimedOut());
+        assertEquals(Collections.singletonList("<project ID>:5"), httpHandler.requests);
+        assertEquals(0, countQueuedEvents());
+    }
+
+    @Test
+    public void onlyKnownProjectsAreFlushed() throws Exception {
+        // Events stored by an earlier process, for a pooled project and an unknown one.
+        RamEventStore store = new RamEventStore();
+        store.store("pooled", "clicks", "{\"a\":1}");
+        store.store("unknown", "clicks", "{\"a\":2}");
+        KeenClient pooledClient = new TestKeenClientBuilder()
+                .withHttpHandler(httpHandler)
+                .withPublishExecutor(executor)
+                .withEventStore(store)
+                .build();
+        KeenClientPool pool = new KeenClientPool(pooledClient);
+        pool.addProject(new KeenProject("pooled", "<write key>", "<read key>"));
+
+        ShutdownReport report = pooledClient.shutdown(5000);
+
+        assertEquals(1, report.getFlushedEvents());
+        assertEquals(0, report.getPersistedEvents());
+        assertEquals(Collections.singletonList("pooled:1"), httpHandler.requests);
+        assertEquals(1, store.getHandles("unknown").get("clicks").size());
+    }
+
+    @Test
+    public void pendingPublishesAreDrained() throws Exception {
+        // Hold the executor until the shutdown has started, so the publishes run during it.
+        final CountDownLatch release = new CountDownLatch(1);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        client.addEventAsync("clicks", TestUtils.getSimpleEvent());
+        client.addEventAsync("clicks", TestUtils.getSimpleEvent());
+
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (!client.isShutDown()) {
+                    Thread.yield();
+                }
+                release.countDown();
+            }
+        }).start();
+        ShutdownReport report = client.shutdown(5000);
+
+        assertEquals(2, report.getFlushedEvents());
+        assertEquals(0, report.getPersistedEvents());
+        assertEquals(Arrays.asList("<project ID>:1", "<project ID>:1"), httpHandler.requests);
+    }
+
+    @Test
+    public void unstartedPublishesArePersisted() throws Exception {
+        // Hold the executor, so the publishes can't start, and leave no network to flush on.
+        final CountDownLatch release = new CountDownLatch(1);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        networkStatusHandler.setNetworkConnected(false);
+        for (int i = 0; i < 3; i++) {
+            client.addEventAsync("clicks", TestUtils.getSimpleEvent());
+        }
+
+        ShutdownReport report = client.shutdown(100);
+        release.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(0, report.getFlushedEvents());
+        assertEquals(3, report.getPersistedEvents());
+        assertEquals(0, report.getDroppedEvents());
+        assertEquals(3, countQueuedEvents());
+        assertTrue(httpHandler.requests.isEmpty());
+    }
+
+    @Test
+    public void newEventsAreRejected() throws Exception {
+        client.shutdown(0);
+        assertTrue(client.isShutDown());
+
+        final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+        KeenCallback callback = new KeenCallback() {
+            @Override
+            public void onSuccess() {
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                failure.set(e);
+            }
+        };
+        client.queueEvent(null, "clicks", TestUtils.getSimpleEvent(), null, callback);
+        assertTrue(failure.getAndSet(null) instanceof IllegalStateException);
+        client.addEventAsync(null, "clicks", TestUtils.getSimpleEvent(), null, callback);
+        assertTrue(failure.getAndSet(null) instanceof IllegalStateException);
+
+        assertEquals(0, countQueuedEvents());
+        assertTrue(httpHandler.requests.isEmpty());
+    }
+
+    @Test
+    public void retriesDoNotWaitPastTheDeadline() throws Exception {
+        final AtomicInteger requests = new AtomicInteger();
+        RetryPolicy retryPolicy = new RetryPolicy() {
+            @Override
+            synchronized double nextRandom() {
+                return 0.5;
+            }
+        }.withBackoff(20000, 20000);
+        client = new TestKeenClientBuilder()
+                .withHttpHandler(new HttpHandler() {
+                    @Override
+                    public Response execute(Request request) {
+                        requests.incrementAndGet();
+                        return new Response(503, "{}");
+                    }
+                })
+                .withRetryPolicy(retryPolicy)
+                .build();
+        client.setDefaultProject(project);
+        client.queueEvent("clicks", TestUtils.getSimpleEvent());
+
+        // The first retry would wait ten seconds, far past the deadline.
+        long start = System.nanoTime();
+        ShutdownReport report = client.shutdown(500);
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue("Shutdown took " + elapsedMillis + " ms", elapsedMillis < 5000);
+        assertEquals(1, requests.get());
+        assertEquals(1, report.getPersistedEvents());
+        assertEquals(1, countQueuedEvents());
+    }
+
+    private int countQueuedEvents() throws IOException {
+        int count = 0;
+        for (List<Object> handles : client.getEventStore().getHandles(project.getProjectId()).values()) {
+            count += handles.size();
+        }
+        return count;
+    }
+}
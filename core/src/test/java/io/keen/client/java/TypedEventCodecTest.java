@@ -0,0 +1,255 @@
+package io.keen.client.java;
+
+import io.keen.client.java.exceptions.InvalidEventException;
+import io.keen.client.java.http.HttpHandler;
+import io.keen.client.java.http.Request;
+import io.keen.client.java.http.Response;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the {@link TypedEventCodec} class, and adding typed events through a client.
+ */
+public class TypedEventCodecTest {
+
+    private final TestJsonHandler jsonHandler = new TestJsonHandler();
+    private CapturingHttpHandler httpHandler;
+    private RamEventStore store;
+    private KeenClient client;
+    private KeenProject project;
+
+    @Before
+    public void setup() {
+        httpHandler = new CapturingHttpHandler();
+        store = new RamEventStore();
+        client = new TestKeenClientBuilder()
+                .withHttpHandler(httpHandler)
+                .withEventStore(store)
+                .build();
+        client.setDebugMode(true);
+        project = new KeenProject("<project ID>", "<write key>", "<read key>");
+        client.setDefaultProject(project);
+    }
+
+    @Test
+    public void typedEventIsWrittenWithGlobalProperties() throws Exception {
+        Map<String, Object> globals = new HashMap<String, Object>();
+        globals.put("app_version", "1.0");
+        globals.put("user_id", "overridden");
+        client.setGlobalProperties(globals);
+
+        client.addEvent("purchases", new Purchase("user-1", 3, Status.PAID));
+
+        Map<String, Object> sent = jsonHandler.readJson(new StringReader(httpHandler.body));
+        assertEquals("user-1", sent.get("user_id"));
+        assertEquals(3, sent.get("quantity"));
+        assertEquals("PAID", sent.get("status"));
+        assertEquals(Arrays.asList("a", "b"), sent.get("tags"));
+        assertEquals(true, sent.get("paid"));
+        assertEquals("1.0", sent.get("app_version"));
+        assertNull(sent.get("note"));
+        assertTrue(sent.containsKey("note"));
+
+        Map<?, ?> item = (Map<?, ?>) sent.get("item");
+        assertEquals("widget", item.get("name"));
+        assertEquals(9.99, item.get("price"));
+        assertNotNull(((Map<?, ?>) sent.get("keen")).get("timestamp"));
+    }
+
+    @Test
+    public void codecIsCompiledOncePerClass() {
+        TypedEventCodec<Purchase> codec = TypedEventCodec.forClass(Purchase.class);
+        assertSame(codec, TypedEventCodec.forClass(Purchase.class));
+        assertEquals(Arrays.asList("item", "note", "paid", "quantity", "status", "tags",
+                "user_id"), codec.getPropertyNames());
+    }
+
+    @Test
+    public void rootKeenPropertyIsRejected() {
+        try {
+            client.addEvent("purchases", new KeenEvent());
+            fail("Expected an InvalidEventException");
+        } catch (InvalidEventException e) {
+            assertTrue(e.getMessage().contains("'keen'"));
+        }
+        assertNull(httpHandler.body);
+    }
+
+    @Test(expected = InvalidEventException.class)
+    public void longStringIsRejected() {
+        char[] chars = new char[10000];
+        Arrays.fill(chars, 'x');
+        client.addEvent("purchases", new Purchase(new String(chars), 1, Status.PAID));
+    }
+
+    @Test
+    public void recursiveClassDepthIsCheckedPerEvent() throws Exception {
+        client.addEvent("trees", chain(3));
+        Map<?, ?> sent = jsonHandler.readJson(new StringReader(httpHandler.body));
+        assertEquals("node", ((Map<?, ?>) ((Map<?, ?>) sent.get("child")).get("child")).get("name"));
+
+        try {
+            client.addEvent("trees", chain(KeenConstants.MAX_EVENT_DEPTH + 2));
+            fail("Expected an InvalidEventException");
+        } catch (InvalidEventException e) {
+            assertTrue(e.getMessage().contains("depth"));
+        }
+    }
+
+    @Test
+    public void unsupportedValueFallsBackToJsonHandler() throws Exception {
+        Attachment attachment = new Attachment();
+        attachment.data = new byte[] { 1, 2, 3 };
+        client.addEvent("attachments", attachment);
+
+        Map<String, Object> sent = jsonHandler.readJson(new StringReader(httpHandler.body));
+        assertEquals("AQID", sent.get("data"));
+    }
+
+    @Test
+    public void queuedTypedEventIsSent() throws Exception {
+        client.queueEvent("purchases", new Purchase("user-2", 1, Status.PENDING));
+        assertEquals(1, store.getHandles("<project ID>").get("purchases").size());
+
+        client.sendQueuedEvents();
+        Map<String, Object> batch = jsonHandler.readJson(new StringReader(httpHandler.body));
+        List<?> events = (List<?>) batch.get("purchases");
+        assertEquals("user-2", ((Map<?, ?>) events.get(0)).get("user_id"));
+        assertTrue(store.getHandles("<project ID>").isEmpty());
+    }
+
+    @Test
+    public void datesAreWrittenAsForMapEvents() throws Exception {
+        // A zone away from UTC, to show that neither path depends on it.
+        TimeZone defaultZone = TimeZone.getDefault();
+        TimeZone.setDefault(TimeZone.getTimeZone("America/Los_Angeles"));
+        try {
+            Visit visit = new Visit();
+            visit.at = new Date(1234567890123L);
+            visit.seen = Calendar.getInstance();
+            visit.seen.setTimeInMillis(1234567890123L);
+            client.addEvent("visits", visit);
+            Map<String, Object> typed = jsonHandler.readJson(new StringReader(httpHandler.body));
+
+            Map<String, Object> event = new HashMap<String, Object>();
+            event.put("at", visit.at);
+            event.put("seen", visit.seen);
+            client.addEvent("visits", event);
+            Map<String, Object> map = jsonHandler.readJson(new StringReader(httpHandler.body));
+
+            assertEquals(map.get("at"), typed.get("at"));
+            assertEquals(map.get("seen"), typed.get("seen"));
+            assertTrue(((String) typed.get("at")).startsWith("2009-02-13T23:31:30.123"));
+        } finally {
+            TimeZone.setDefault(defaultZone);
+        }
+    }
+
+    @Test
+    public void mapIsAddedAsMapEvent() throws Exception {
+        Map<String, String> event = new HashMap<String, String>();
+        event.put("a", "b");
+        client.addEvent("maps", event);
+
+        Map<String, Object> sent = jsonHandler.readJson(new StringReader(httpHandler.body));
+        assertEquals("b", sent.get("a"));
+    }
+
+    private static Node chain(int length) {
+        Node root = null;
+        for (int i = 0; i < length; i++) {
+            Node node = new Node();
+            node.name = "node";
+            node.child = root;
+            root = node;
+        }
+        return root;
+    }
+
+    public enum Status { PENDING, PAID }
+
+    public static class Visit {
+        public Date at;
+        public Calendar seen;
+    }
+
+    public static class Item {
+        public String name = "widget";
+        public double price = 9.99;
+    }
+
+    public static class Purchase {
+        private final String userId;
+        private final int quantity;
+        private final Status status;
+        public Item item = new Item();
+        public List<String> tags = Arrays.asList("a", "b");
+        public String note;
+
+        Purchase(String userId, int quantity, Status status) {
+            this.userId = userId;
+            this.quantity = quantity;
+            this.status = status;
+        }
+
+        public String getUser_id() {
+            return userId;
+        }
+
+        public int getQuantity() {
+            return quantity;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public boolean isPaid() {
+            return status == Status.PAID;
+        }
+    }
+
+    public static class KeenEvent {
+        public String keen = "not allowed";
+    }
+
+    public static class Node {
+        public String name;
+        public Node child;
+    }
+
+    public static class Attachment {
+        public Object data;
+        public Date created = new Date();
+    }
+
+    private static class CapturingHttpHandler implements HttpHandler {
+        String body;
+
+        @Override
+        public Response execute(Request request) throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            request.body.writeTo(out);
+            body = out.toString("UTF-8");
+            return new Response(200, "{\"purchases\": [{\"success\": true}]}");
+        }
+    }
+}
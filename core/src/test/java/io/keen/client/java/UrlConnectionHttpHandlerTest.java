@@ -10,15 +10,22 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
 
 import io.keen.client.java.http.OutputSource;
 import io.keen.client.java.http.Request;
 import io.keen.client.java.http.Response;
 import io.keen.client.java.http.UrlConnectionHttpHandler;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -59,7 +66,7 @@ public class UrlConnectionHttpHandlerTest {
         Response response = runResponseTest(200, "request-body", "200 OK", null);
         assertNotNull(response);
         assertTrue(response.isSuccess());
-        assertEquals("200 OK", response.body);
+        assertEquals("200 OK", response.getBodyString());
     }
 
     @Test
@@ -67,7 +74,7 @@ public class UrlConnectionHttpHandlerTest {
         Response response = runResponseTest(201, "request-body", "201 Created", null);
         assertNotNull(response);
         assertTrue(response.isSuccess());
-        assertEquals("201 Created", response.body);
+        assertEquals("201 Created", response.getBodyString());
     }
 
     @Test
@@ -75,7 +82,7 @@ public class UrlConnectionHttpHandlerTest {
         Response response = runResponseTest(400, "request-body", null, "400 Bad Request");
         assertNotNull(response);
         assertFalse(response.isSuccess());
-        assertEquals("400 Bad Request", response.body);
+        assertEquals("400 Bad Request", response.getBodyString());
     }
 
     @Test
@@ -83,7 +90,56 @@ public class UrlConnectionHttpHandlerTest {
         Response response = runResponseTest(500, "request-body", null, "500 Internal Server Error");
         assertNotNull(response);
         assertFalse(response.isSuccess());
-        assertEquals("500 Internal Server Error", response.body);
+        assertEquals("500 Internal Server Error", response.getBodyString());
+    }
+
+    @Test
+    public void headersAreExposed() throws Exception {
+        Map<String, List<String>> headers = new HashMap<String, List<String>>();
+        headers.put(null, Collections.singletonList("HTTP/1.1 429 Too Many Requests"));
+        headers.put("Retry-After", Collections.singletonList("30"));
+        when(mockConnection.getHeaderFields()).thenReturn(headers);
+
+        Response response = runResponseTest(429, "request-body", null, "429 Too Many Requests");
+        assertEquals("30", response.getHeader("retry-after"));
+        assertEquals(Collections.singletonList("30"), response.getHeaders("RETRY-AFTER"));
+        assertEquals(1, response.headers.size());
+    }
+
+    @Test
+    public void bodyIsAvailableAsBytesAndStream() throws Exception {
+        Response response = runResponseTest(200, "request-body", "{\"ok\":true}", null);
+        assertArrayEquals("{\"ok\":true}".getBytes("UTF-8"), response.getBodyBytes());
+        assertArrayEquals(response.getBodyBytes(), KeenUtils.readFully(response.getBodyStream()));
+        assertEquals("{\"ok\":true}", response.getBodyString());
+    }
+
+    @Test
+    public void bodyIsDecodedWithContentTypeCharset() throws Exception {
+        Map<String, List<String>> headers = new HashMap<String, List<String>>();
+        headers.put("Content-Type", Collections.singletonList("text/plain; charset=ISO-8859-1"));
+
+        Response response = new Response(200, "caf\u00e9".getBytes("ISO-8859-1"), headers);
+        assertEquals("ISO-8859-1", response.getCharset());
+        // The body is only decoded on request.
+        assertNull(response.body);
+        assertEquals("caf\u00e9", response.getBodyString());
+    }
+
+    @Test
+    public void gzipBodyIsDecompressed() throws Exception {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+        gzip.write("200 OK".getBytes("UTF-8"));
+        gzip.close();
+
+        configureMockConnection(new ByteArrayOutputStream(), 200, "unused", null);
+        when(mockConnection.getInputStream())
+                .thenReturn(new ByteArrayInputStream(compressed.toByteArray()));
+        when(mockConnection.getContentEncoding()).thenReturn("gzip");
+
+        Request request = new Request(new URL(TEST_URL), "GET", TEST_AUTHORIZATION, null);
+        assertEquals("200 OK", handler.execute(request).getBodyString());
     }
 
     private Response runResponseTest(int statusCode, final String requestBody,
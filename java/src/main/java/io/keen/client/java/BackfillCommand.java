@@ -0,0 +1,174 @@
+package io.keen.client.java;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Locale;
+
+/**
+ * Command line entry point for {@link KeenBackfill}, which loads a newline-delimited JSON file,
+ * optionally gzipped, into a collection:
+ * <pre>
+ *     java -cp ... io.keen.client.java.BackfillCommand --project-id &lt;id&gt; \
+ *         --collection purchases --checkpoint purchases.checkpoint purchases.ndjson.gz
+ * </pre>
+ * <p>
+ * The write key is read from the {@code KEEN_WRITE_KEY} environment variable, so that it doesn't
+ * show up in the process list, unless it's given with {@code --write-key}. Pass {@code -} as the
+ * file to read standard input. Progress is printed to standard error. The exit status is 0 if
+ * the whole input was loaded, 1 if the backfill stopped early and can be resumed, and 2 if the
+ * arguments were invalid.
+ * </p>
+ */
+public final class BackfillCommand {
+
+    /**
+     * Runs a backfill.
+     *
+     * @param args The command line arguments.
+     */
+    public static void main(String[] args) {
+        System.exit(run(args, System.err));
+    }
+
+    ///// PRIVATE CONSTANTS /////
+
+    private static final String USAGE = "Usage: BackfillCommand --project-id <id> " +
+            "--collection <name> [--write-key <key>] [--base-url <url>] " +
+            "[--batch-events <n>] [--batch-bytes <n>] [--concurrency <n>] " +
+            "[--checkpoint <file>] [--dead-letters <file>] <file>|-";
+
+    ///// PRIVATE METHODS /////
+
+    private BackfillCommand() {
+    }
+
+    /**
+     * Runs a backfill, without exiting.
+     *
+     * @param args The command line arguments.
+     * @param out  Where to print progress and errors.
+     * @return The exit status.
+     */
+    private static int run(String[] args, PrintStream out) {
+        String projectId = null;
+        String writeKey = System.getenv("KEEN_WRITE_KEY");
+        String baseUrl = null;
+        String collection = null;
+        String input = null;
+        File checkpointFile = null;
+        File deadLetterFile = null;
+        int maxBatchEvents = KeenBackfill.DEFAULT_MAX_BATCH_EVENTS;
+        int maxBatchBytes = KeenBackfill.DEFAULT_MAX_BATCH_BYTES;
+        int maxConcurrentRequests = KeenBackfill.DEFAULT_MAX_CONCURRENT_REQUESTS;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (!arg.startsWith("--")) {
+                    if (input != null) {
+                        throw new IllegalArgumentException("Only one input file may be given");
+                    }
+                    input = arg;
+                    continue;
+                }
+                if (i + 1 == args.length) {
+                    throw new IllegalArgumentException("Missing value for " + arg);
+                }
+                String value = args[++i];
+                if (arg.equals("--project-id")) {
+                    projectId = value;
+                } else if (arg.equals("--write-key")) {
+                    writeKey = value;
+                } else if (arg.equals("--base-url")) {
+                    baseUrl = value;
+                } else if (arg.equals("--collection")) {
+                    collection = value;
+                } else if (arg.equals("--checkpoint")) {
+                    checkpointFile = new File(value);
+                } else if (arg.equals("--dead-letters")) {
+                    deadLetterFile = new File(value);
+                } else if (arg.equals("--batch-events")) {
+                    maxBatchEvents = Integer.parseInt(value);
+                } else if (arg.equals("--batch-bytes")) {
+                    maxBatchBytes = Integer.parseInt(value);
+                } else if (arg.equals("--concurrency")) {
+                    maxConcurrentRequests = Integer.parseInt(value);
+                } else {
+                    throw new IllegalArgumentException("Unknown option " + arg);
+                }
+            }
+            if (projectId == null || collection == null || input == null) {
+                throw new IllegalArgumentException("--project-id, --collection and a file are required");
+            }
+            if (writeKey == null) {
+                throw new IllegalArgumentException("Set KEEN_WRITE_KEY or pass --write-key");
+            }
+        } catch (IllegalArgumentException e) {
+            out.println(e.getMessage());
+            out.println(USAGE);
+            return 2;
+        }
+
+        FileDeadLetterSink deadLetterSink = null;
+        KeenClient client = null;
+        try {
+            // Each of the backfill's concurrent requests needs one of the client's.
+            JavaKeenClientBuilder builder = new JavaKeenClientBuilder();
+            builder.withMaxInFlightRequests(maxConcurrentRequests);
+            if (deadLetterFile != null) {
+                deadLetterSink = new FileDeadLetterSink(deadLetterFile);
+                builder.withDeadLetterSink(deadLetterSink);
+            }
+            client = builder.build();
+            if (baseUrl != null) {
+                client.setBaseUrl(baseUrl);
+            }
+
+            final PrintStream progressOut = out;
+            KeenBackfill backfill = new KeenBackfill(client, new KeenProject(projectId, writeKey, null))
+                    .withMaxBatchEvents(maxBatchEvents)
+                    .withMaxBatchBytes(maxBatchBytes)
+                    .withMaxConcurrentRequests(maxConcurrentRequests)
+                    .withCheckpointFile(checkpointFile)
+                    .withListener(new BackfillListener() {
+                        @Override
+                        public void onProgress(BackfillReport progress) {
+                            progressOut.println(formatProgress(progress));
+                        }
+                    });
+
+            BackfillReport report = (input.equals("-") ?
+                    backfill.run(collection, System.in) : backfill.run(collection, new File(input)));
+            if (!report.isComplete()) {
+                out.println("Backfill stopped at line " + report.getCheckpoint() + ": " +
+                        report.getError());
+                return 1;
+            }
+            return 0;
+        } catch (IOException e) {
+            out.println(e.getMessage());
+            return 1;
+        } catch (RuntimeException e) {
+            out.println(e.getMessage());
+            return 2;
+        } finally {
+            if (client != null) {
+                client.shutdown(0);
+            }
+            if (deadLetterSink != null) {
+                deadLetterSink.close();
+            }
+        }
+    }
+
+    private static String formatProgress(BackfillReport progress) {
+        return String.format(Locale.US, "%d lines, %d sent, %d rejected, %d failed, " +
+                        "%d invalid, %.0f events/s, %.1f MB sent, checkpoint %d",
+                progress.getLinesRead(), progress.getEventsSent(), progress.getEventsRejected(),
+                progress.getEventsFailed(), progress.getInvalidLines(),
+                progress.getEventsPerSecond(), progress.getBytesSent() / (1024.0 * 1024.0),
+                progress.getCheckpoint());
+    }
+
+}
@@ -29,6 +29,10 @@ public class JacksonJsonHandler implements KeenJsonHandler {
      */
     @Override
     public Map<String, Object> readJson(Reader reader) throws IOException {
+        if (isStreamingEnabled) {
+            return streamingCodec.readJson(reader);
+        }
+
         // Issue #99 : Take a look at better dealing with root Map<> vs root List<> in the response.
 
         // We are expecting this isn't called on nested nodes in a recursive manner.
@@ -54,9 +58,39 @@ public class JacksonJsonHandler implements KeenJsonHandler {
      */
     @Override
     public void writeJson(Writer writer, Map<String, ?> value) throws IOException {
+        if (isStreamingEnabled) {
+            streamingCodec.writeJson(writer, value);
+            return;
+        }
+
         mapper.writeValue(writer, value);
     }
 
+    /**
+     * Sets whether or not this handler should read and write JSON directly with Jackson's
+     * streaming API instead of data binding.
+     *
+     * Streaming writes common values (maps, collections, strings, numbers, booleans and dates)
+     * without looking up serializers, and parses documents in a single pass instead of building a
+     * tree and converting it, which cuts the time and garbage spent reading responses and stored
+     * events. The output and parsed values are the same as without streaming. It is disabled by
+     * default.
+     *
+     * @param value {@code true} to enable streaming, {@code false} to disable it.
+     */
+    public void setStreamingEnabled(boolean value) {
+        this.isStreamingEnabled = value;
+    }
+
+    /**
+     * Gets whether or not streaming has been enabled via {@link #setStreamingEnabled(boolean)}.
+     *
+     * @return {@code true} if streaming is enabled, otherwise {@code false}.
+     */
+    public boolean isStreamingEnabled() {
+        return isStreamingEnabled;
+    }
+
     ///// DEFAULT ACCESS CONSTRUCTORS /////
 
     /**
@@ -65,6 +99,7 @@ public class JacksonJsonHandler implements KeenJsonHandler {
     public JacksonJsonHandler() {
         mapper = new ObjectMapper();
         mapper.configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false);
+        streamingCodec = new JacksonStreamingCodec(mapper);
     }
 
     ///// PRIVATE CONSTANTS /////
@@ -79,4 +114,11 @@ public class JacksonJsonHandler implements KeenJsonHandler {
 
     private final ObjectMapper mapper;
 
+    private final JacksonStreamingCodec streamingCodec;
+
+    /**
+     * Boolean indicating whether or not to use the streaming API instead of data binding.
+     */
+    private volatile boolean isStreamingEnabled = false;
+
 }
@@ -0,0 +1,222 @@
+package io.keen.client.java;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.text.DateFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads and writes JSON with Jackson's streaming API, for {@link JacksonJsonHandler} when
+ * streaming is enabled.
+ * <p>
+ * Maps with String keys, collections, arrays, strings, numbers, booleans and dates are written
+ * directly to a {@link JsonGenerator} without looking up serializers; any other value is handed
+ * to a pre-built {@link ObjectWriter}, so the output is the same as the mapper's. Documents are read
+ * straight into {@link LinkedHashMap}s and {@link ArrayList}s in a single pass with a
+ * {@link JsonParser}, with the same number types as the mapper's untyped binding. Generators and
+ * parsers come from the mapper's {@link JsonFactory}, which recycles their buffers per thread.
+ * </p>
+ */
+final class JacksonStreamingCodec {
+
+    private final JsonFactory factory;
+    private final ObjectWriter fallbackWriter;
+    private final ThreadLocal<DateFormat> dateFormat;
+
+    /**
+     * @param mapper The mapper whose configuration to follow. It must not be reconfigured
+     *               afterwards.
+     */
+    JacksonStreamingCodec(final ObjectMapper mapper) {
+        this.factory = mapper.getFactory();
+        this.fallbackWriter = mapper.writer();
+        this.dateFormat = new ThreadLocal<DateFormat>() {
+            @Override
+            protected DateFormat initialValue() {
+                // The mapper hands out its shared format; each thread needs its own copy.
+                return (DateFormat) mapper.getDateFormat().clone();
+            }
+        };
+    }
+
+    /**
+     * Parses a JSON document. A root array is wrapped in a map under
+     * {@link KeenConstants#KEEN_FAKE_JSON_ROOT}.
+     *
+     * @param reader The reader, which is closed afterwards.
+     * @return The root object, or null if the root is a scalar.
+     * @throws IOException If the JSON is malformed or can't be read.
+     */
+    Map<String, Object> readJson(Reader reader) throws IOException {
+        JsonParser parser = factory.createParser(reader);
+        try {
+            JsonToken token = parser.nextToken();
+            if (token == null) {
+                throw new IllegalArgumentException("Empty reader or ill-formatted JSON encountered.");
+            }
+
+            if (token == JsonToken.START_ARRAY) {
+                Map<String, Object> rootMap = new LinkedHashMap<String, Object>();
+                rootMap.put(KeenConstants.KEEN_FAKE_JSON_ROOT, readList(parser));
+                return rootMap;
+            } else if (token == JsonToken.START_OBJECT) {
+                return readMap(parser);
+            }
+            return null;
+        } finally {
+            parser.close();
+        }
+    }
+
+    /**
+     * Writes a map as a JSON object.
+     *
+     * @param writer The writer, which is closed afterwards.
+     * @param value  The map.
+     * @throws IOException If the value can't be serialized or written.
+     */
+    void writeJson(Writer writer, Map<String, ?> value) throws IOException {
+        JsonGenerator generator = factory.createGenerator(writer);
+        try {
+            writeValue(generator, value);
+        } finally {
+            generator.close();
+        }
+    }
+
+    ///// PRIVATE METHODS /////
+
+    private Map<String, Object> readMap(JsonParser parser) throws IOException {
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            map.put(name, readValue(parser, parser.nextToken()));
+        }
+        return map;
+    }
+
+    private List<Object> readList(JsonParser parser) throws IOException {
+        List<Object> list = new ArrayList<Object>();
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            list.add(readValue(parser, token));
+        }
+        return list;
+    }
+
+    private Object readValue(JsonParser parser, JsonToken token) throws IOException {
+        if (token == null) {
+            throw new IOException("Unexpected end of JSON input");
+        }
+        switch (token) {
+            case START_OBJECT:
+                return readMap(parser);
+            case START_ARRAY:
+                return readList(parser);
+            case VALUE_STRING:
+                return parser.getText();
+            case VALUE_NUMBER_INT:
+                // Integer, Long or BigInteger, whichever is smallest.
+                return parser.getNumberValue();
+            case VALUE_NUMBER_FLOAT:
+                return parser.getDoubleValue();
+            case VALUE_TRUE:
+                return Boolean.TRUE;
+            case VALUE_FALSE:
+                return Boolean.FALSE;
+            case VALUE_NULL:
+                return null;
+            case VALUE_EMBEDDED_OBJECT:
+                return parser.getEmbeddedObject();
+            default:
+                throw new IOException("Unexpected JSON token " + token);
+        }
+    }
+
+    /**
+     * Checks that a map only has String keys; other keys, including null, are left to the
+     * mapper's key serializers.
+     */
+    private static boolean hasStringKeys(Map<?, ?> map) {
+        for (Object key : map.keySet()) {
+            if (!(key instanceof String)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void writeValue(JsonGenerator generator, Object value) throws IOException {
+        // Compare classes first: the common leaf types are final, so this avoids a chain of
+        // interface checks for every scalar.
+        Class<?> type = (value == null ? null : value.getClass());
+        if (type == null) {
+            generator.writeNull();
+        } else if (type == String.class) {
+            generator.writeString((String) value);
+        } else if (type == Integer.class) {
+            generator.writeNumber((Integer) value);
+        } else if (type == Long.class) {
+            generator.writeNumber((Long) value);
+        } else if (type == Double.class) {
+            generator.writeNumber((Double) value);
+        } else if (type == Boolean.class) {
+            generator.writeBoolean((Boolean) value);
+        } else if (value instanceof Map) {
+            writeMap(generator, (Map<?, ?>) value);
+        } else if (value instanceof Collection) {
+            generator.writeStartArray();
+            for (Object element : (Collection<?>) value) {
+                writeValue(generator, element);
+            }
+            generator.writeEndArray();
+        } else if (value instanceof Object[]) {
+            generator.writeStartArray();
+            for (Object element : (Object[]) value) {
+                writeValue(generator, element);
+            }
+            generator.writeEndArray();
+        } else if (type == Float.class) {
+            generator.writeNumber((Float) value);
+        } else if (type == Short.class || type == Byte.class) {
+            generator.writeNumber(((Number) value).intValue());
+        } else if (type == BigDecimal.class) {
+            generator.writeNumber((BigDecimal) value);
+        } else if (type == BigInteger.class) {
+            generator.writeNumber((BigInteger) value);
+        } else if (type == Date.class) {
+            // Subclasses such as java.sql.Date have serializers of their own.
+            generator.writeString(dateFormat.get().format((Date) value));
+        } else {
+            fallbackWriter.writeValue(generator, value);
+        }
+    }
+
+    private void writeMap(JsonGenerator generator, Map<?, ?> map) throws IOException {
+        if (!hasStringKeys(map)) {
+            fallbackWriter.writeValue(generator, map);
+            return;
+        }
+        generator.writeStartObject();
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            generator.writeFieldName((String) entry.getKey());
+            writeValue(generator, entry.getValue());
+        }
+        generator.writeEndObject();
+    }
+}
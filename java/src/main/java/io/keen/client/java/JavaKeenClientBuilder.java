@@ -15,6 +15,9 @@ import java.util.Enumeration;
  * use a different JSON library, configure the builder to use an appropriate {@link KeenJsonHandler}
  * via the {@link #withJsonHandler(KeenJsonHandler)} method.
  * </p><p>
+ * To reduce the CPU time spent encoding events, the default JSON handler can use Jackson's
+ * streaming API instead of data binding; enable this with {@link #withStreamingJson(boolean)}.
+ * </p><p>
  * Other defaults are those provided by the parent {@link KeenClient.Builder} implementation.
  * </p>
  *
@@ -23,9 +26,46 @@ import java.util.Enumeration;
  */
 public class JavaKeenClientBuilder extends KeenClient.Builder {
 
+    private boolean streamingJson = false;
+
+    /**
+     * Gets whether the default JSON handler will use Jackson's streaming API.
+     *
+     * @return Whether the default JSON handler will stream JSON.
+     */
+    public boolean isStreamingJson() {
+        return streamingJson;
+    }
+
+    /**
+     * Sets whether the default JSON handler should use Jackson's streaming API. This has no
+     * effect if a JSON handler is set explicitly.
+     *
+     * @param streamingJson Whether the default JSON handler should stream JSON.
+     * @see JacksonJsonHandler#setStreamingEnabled(boolean)
+     */
+    public void setStreamingJson(boolean streamingJson) {
+        this.streamingJson = streamingJson;
+    }
+
+    /**
+     * Sets whether the default JSON handler should use Jackson's streaming API. This has no
+     * effect if a JSON handler is set explicitly.
+     *
+     * @param streamingJson Whether the default JSON handler should stream JSON.
+     * @return This instance (for method chaining).
+     * @see JacksonJsonHandler#setStreamingEnabled(boolean)
+     */
+    public JavaKeenClientBuilder withStreamingJson(boolean streamingJson) {
+        setStreamingJson(streamingJson);
+        return this;
+    }
+
     @Override
     protected KeenJsonHandler getDefaultJsonHandler() {
-        return new JacksonJsonHandler();
+        JacksonJsonHandler jsonHandler = new JacksonJsonHandler();
+        jsonHandler.setStreamingEnabled(streamingJson);
+        return jsonHandler;
     }
 
 }
@@ -0,0 +1,188 @@
+package io.keen.client.java;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests that {@link JacksonStreamingCodec} writes and parses JSON the same way as the
+ * {@link ObjectMapper} it's built from.
+ */
+public class JacksonStreamingCodecTest {
+
+    private ObjectMapper mapper;
+    private JacksonStreamingCodec codec;
+    private JacksonJsonHandler mapperHandler;
+
+    @Before
+    public void setUp() {
+        // Configured as JacksonJsonHandler configures its mapper.
+        mapper = new ObjectMapper();
+        mapper.configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false);
+        codec = new JacksonStreamingCodec(mapper);
+        mapperHandler = new JacksonJsonHandler();
+    }
+
+    @Test
+    public void nestedValuesAreWrittenLikeTheMapper() throws IOException {
+        Map<String, Object> inner = new LinkedHashMap<String, Object>();
+        inner.put("name", "widget");
+        inner.put("tags", Arrays.asList("a", "b", null));
+        inner.put("sizes", new Object[] { 1, 2L, 3.5, (short) 4, (byte) 5, 6.5f });
+
+        Map<String, Object> event = new LinkedHashMap<String, Object>();
+        event.put("string", "quote \" and é");
+        event.put("int", Integer.MIN_VALUE);
+        event.put("long", Long.MAX_VALUE);
+        event.put("double", 0.1);
+        event.put("boolean", true);
+        event.put("null", null);
+        event.put("map", inner);
+        event.put("list", Arrays.<Object>asList(inner, new ArrayList<Object>(), 7));
+        event.put("empty", new HashMap<String, Object>());
+
+        assertWrittenLikeMapper(event);
+    }
+
+    @Test
+    public void datesAreWrittenLikeTheMapper() throws IOException {
+        Map<String, Object> event = new LinkedHashMap<String, Object>();
+        event.put("epoch", new Date(0));
+        event.put("now", new Date());
+        event.put("sql", new java.sql.Date(86400000L));
+
+        assertWrittenLikeMapper(event);
+    }
+
+    @Test
+    public void bigNumbersAreWrittenLikeTheMapper() throws IOException {
+        Map<String, Object> event = new LinkedHashMap<String, Object>();
+        event.put("decimal", new BigDecimal("12345678901234567890.123456789"));
+        event.put("scaled", new BigDecimal("1E+3"));
+        event.put("integer", new BigInteger("123456789012345678901234567890"));
+
+        assertWrittenLikeMapper(event);
+    }
+
+    @Test
+    public void nonFiniteNumbersAreWrittenLikeTheMapper() throws IOException {
+        Map<String, Object> event = new LinkedHashMap<String, Object>();
+        event.put("nan", Double.NaN);
+        event.put("infinity", Double.POSITIVE_INFINITY);
+        event.put("negativeInfinity", Float.NEGATIVE_INFINITY);
+
+        assertWrittenLikeMapper(event);
+    }
+
+    @Test
+    public void nonStringKeysAreWrittenLikeTheMapper() throws IOException {
+        Map<Object, Object> numbered = new LinkedHashMap<Object, Object>();
+        numbered.put(1, "one");
+        numbered.put(2L, Arrays.asList(new Date(0)));
+
+        Map<String, Object> event = new LinkedHashMap<String, Object>();
+        event.put("numbered", numbered);
+
+        assertWrittenLikeMapper(event);
+    }
+
+    @Test
+    public void nestedValuesAreParsedLikeTheMapper() throws IOException {
+        assertParsedLikeMapper("{\"a\": {\"b\": [1, 2147483648, 12345678901234567890, 1.5, " +
+                "-0.0, 1e400, true, false, null, \"s\"]}, \"c\": [], \"d\": {}}");
+    }
+
+    @Test
+    public void rootArraysAreWrapped() throws IOException {
+        assertParsedLikeMapper("[{\"a\": 1}, [2], \"three\"]");
+        List<?> root = (List<?>) codec.readJson(new StringReader("[1]"))
+                .get(KeenConstants.KEEN_FAKE_JSON_ROOT);
+        assertEquals(Arrays.asList(1), root);
+    }
+
+    @Test
+    public void rootScalarsAreParsedAsNull() throws IOException {
+        for (String json : Arrays.asList("1", "\"string\"", "true", "null")) {
+            assertNull(json, codec.readJson(new StringReader(json)));
+            assertNull(json, mapperHandler.readJson(new StringReader(json)));
+        }
+    }
+
+    @Test
+    public void malformedInputIsRejected() throws IOException {
+        for (String json : Arrays.asList("{\"a\": ", "{\"a\" 1}", "[1, 2", "{\"a\": tru}")) {
+            assertRejected(json, false);
+            assertRejected(json, true);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void emptyInputIsRejected() throws IOException {
+        codec.readJson(new StringReader(""));
+    }
+
+    private void assertWrittenLikeMapper(Map<String, ?> value) throws IOException {
+        StringWriter streamed = new StringWriter();
+        codec.writeJson(streamed, value);
+        assertEquals(mapper.writeValueAsString(value), streamed.toString());
+    }
+
+    private void assertParsedLikeMapper(String json) throws IOException {
+        Map<String, Object> expected = mapperHandler.readJson(new StringReader(json));
+        Map<String, Object> actual = codec.readJson(new StringReader(json));
+        assertEquals(expected, actual);
+        assertEquals(typesOf(expected), typesOf(actual));
+    }
+
+    private void assertRejected(String json, boolean streaming) {
+        JacksonJsonHandler handler = new JacksonJsonHandler();
+        handler.setStreamingEnabled(streaming);
+        try {
+            handler.readJson(new StringReader(json));
+            fail("Expected an exception parsing " + json + (streaming ? " with streaming" : ""));
+        } catch (IOException e) {
+            // Expected.
+        }
+    }
+
+    /**
+     * Lists the classes of every value in a parsed document, depth first, so that parsing to
+     * equal values of different types is caught.
+     */
+    private static List<String> typesOf(Object value) {
+        List<String> types = new ArrayList<String>();
+        addTypes(value, types);
+        return types;
+    }
+
+    private static void addTypes(Object value, List<String> types) {
+        types.add(value == null ? "null" : value.getClass().getName());
+        if (value instanceof Map) {
+            for (Object element : ((Map<?, ?>) value).values()) {
+                addTypes(element, types);
+            }
+        } else if (value instanceof List) {
+            for (Object element : (List<?>) value) {
+                addTypes(element, types);
+            }
+        }
+    }
+}
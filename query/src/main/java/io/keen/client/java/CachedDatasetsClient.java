@@ -1,5 +1,6 @@
 package io.keen.client.java;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.keen.client.java.result.IntervalResultValue;
 import org.apache.commons.lang3.Validate;
 
@@ -8,10 +9,18 @@ import java.util.*;
 
 class CachedDatasetsClient implements CachedDatasets {
 
+    private static final ObjectMapper INDEX_KEY_MAPPER = new ObjectMapper();
+
     private KeenQueryClient keenQueryClient;
+    private DatasetResultsCache resultsCache;
 
     CachedDatasetsClient(KeenQueryClient keenQueryClient) {
+        this(keenQueryClient, null);
+    }
+
+    CachedDatasetsClient(KeenQueryClient keenQueryClient, DatasetResultsCache resultsCache) {
         this.keenQueryClient = keenQueryClient;
+        this.resultsCache = resultsCache;
     }
 
     @Override
@@ -46,8 +55,11 @@ class CachedDatasetsClient implements CachedDatasets {
             throw new IllegalArgumentException("Values for the following index_by properties must be present: " + sortedDefinitionIndexProperties + ". Found for: " + sortedQueryIndexProperties);
         }
 
-        KeenQueryRequest request = CachedDatasetRequest.resultsRequest(datasetDefinition, indexByValues, timeframe);
-        return keenQueryClient.execute(request).getIntervalResults();
+        if (resultsCache != null && timeframe instanceof AbsoluteTimeframe) {
+            return getResultsThroughCache(datasetDefinition, indexByValues, (AbsoluteTimeframe) timeframe);
+        }
+
+        return fetchResults(datasetDefinition, indexByValues, timeframe);
     }
 
     @Override
@@ -69,4 +81,89 @@ class CachedDatasetsClient implements CachedDatasets {
         return keenQueryClient.getMapResponse(request).isEmpty();
     }
 
+    private List<IntervalResultValue> fetchResults(DatasetDefinition datasetDefinition, Map<String, ?> indexByValues, Timeframe timeframe) throws IOException {
+        KeenQueryRequest request = CachedDatasetRequest.resultsRequest(datasetDefinition, indexByValues, timeframe);
+        return keenQueryClient.execute(request).getIntervalResults();
+    }
+
+    /**
+     * Serves the leading run of closed intervals from the cache and only asks the server for the
+     * remainder of the timeframe. Intervals in the response which can no longer change are added
+     * to the cache for next time.
+     */
+    private List<IntervalResultValue> getResultsThroughCache(DatasetDefinition datasetDefinition, Map<String, ?> indexByValues, AbsoluteTimeframe timeframe) throws IOException {
+        long start = TimestampUtils.parse(timeframe.getStart());
+        long end = TimestampUtils.parse(timeframe.getEnd());
+        if (start == TimestampUtils.UNPARSEABLE || end == TimestampUtils.UNPARSEABLE) {
+            return fetchResults(datasetDefinition, indexByValues, timeframe);
+        }
+
+        String projectId = keenQueryClient.getProject().getProjectId();
+        String datasetName = datasetDefinition.getDatasetName();
+        // Sorting the index values gives the same key regardless of the caller's map ordering.
+        String indexKey = INDEX_KEY_MAPPER.writeValueAsString(new TreeMap<String, Object>(indexByValues));
+
+        List<IntervalResultValue> results = new ArrayList<IntervalResultValue>();
+        String cursor = timeframe.getStart();
+        long cursorMillis = start;
+        for (IntervalResultValue cached : getCachedIntervals(projectId, datasetName, indexKey)) {
+            long intervalStart = TimestampUtils.parse(cached.getTimeframe().getStart());
+            long intervalEnd = TimestampUtils.parse(cached.getTimeframe().getEnd());
+            if (intervalStart < cursorMillis) {
+                continue;
+            }
+            if (intervalStart > cursorMillis || intervalEnd > end) {
+                break;
+            }
+
+            results.add(cached);
+            cursor = cached.getTimeframe().getEnd();
+            cursorMillis = intervalEnd;
+        }
+
+        if (cursorMillis >= end) {
+            return results;
+        }
+
+        List<IntervalResultValue> fetched = fetchResults(datasetDefinition, indexByValues, new AbsoluteTimeframe(cursor, timeframe.getEnd()));
+        results.addAll(fetched);
+
+        List<IntervalResultValue> closed = closedIntervals(fetched, datasetDefinition.getLatestSubtimeframeAvailable());
+        if (!closed.isEmpty()) {
+            try {
+                resultsCache.put(projectId, datasetName, indexKey, closed);
+            } catch (IOException e) {
+                KeenLogging.log("Failed to cache dataset results for " + datasetName, e);
+            }
+        }
+
+        return results;
+    }
+
+    private List<IntervalResultValue> getCachedIntervals(String projectId, String datasetName, String indexKey) {
+        try {
+            return resultsCache.get(projectId, datasetName, indexKey);
+        } catch (IOException e) {
+            KeenLogging.log("Failed to read cached dataset results for " + datasetName, e);
+            return Collections.emptyList();
+        }
+    }
+
+    private static List<IntervalResultValue> closedIntervals(List<IntervalResultValue> intervals, String latestSubtimeframeAvailable) {
+        long closedBefore = System.currentTimeMillis();
+        long latestAvailable = TimestampUtils.parse(latestSubtimeframeAvailable);
+        if (latestAvailable != TimestampUtils.UNPARSEABLE) {
+            closedBefore = Math.min(closedBefore, latestAvailable);
+        }
+
+        List<IntervalResultValue> closed = new ArrayList<IntervalResultValue>();
+        for (IntervalResultValue interval : intervals) {
+            long intervalEnd = TimestampUtils.parse(interval.getTimeframe().getEnd());
+            if (intervalEnd != TimestampUtils.UNPARSEABLE && intervalEnd <= closedBefore) {
+                closed.add(interval);
+            }
+        }
+        return closed;
+    }
+
 }
@@ -0,0 +1,42 @@
+package io.keen.client.java;
+
+import io.keen.client.java.result.IntervalResultValue;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Persistent cache tier for Cached Dataset results.
+ * <p>
+ * Only closed intervals (intervals which end before both the current time and the dataset's
+ * latest available subtimeframe) are handed to a cache, since their results can never change. The
+ * {@link CachedDatasets} client consults the cache for absolute timeframes and only fetches the
+ * intervals which are missing or still open.
+ *
+ * @see FileDatasetResultsCache
+ */
+public interface DatasetResultsCache {
+
+    /**
+     * Gets all cached intervals for a dataset and a set of index values.
+     *
+     * @param projectId   The ID of the project which owns the dataset.
+     * @param datasetName The name of the dataset.
+     * @param indexKey    A canonical representation of the index_by values.
+     * @return The cached intervals, ordered by start time. Never null.
+     * @throws IOException If there was an error reading the cache.
+     */
+    List<IntervalResultValue> get(String projectId, String datasetName, String indexKey) throws IOException;
+
+    /**
+     * Adds closed intervals to the cache. Intervals which are already cached are replaced.
+     *
+     * @param projectId   The ID of the project which owns the dataset.
+     * @param datasetName The name of the dataset.
+     * @param indexKey    A canonical representation of the index_by values.
+     * @param intervals   The closed intervals to add.
+     * @throws IOException If there was an error writing the cache.
+     */
+    void put(String projectId, String datasetName, String indexKey, List<IntervalResultValue> intervals) throws IOException;
+
+}
@@ -0,0 +1,79 @@
+package io.keen.client.java;
+
+import java.net.SocketTimeoutException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The time by which a query must complete, measured on the monotonic clock.
+ */
+final class Deadline {
+
+    /**
+     * A deadline which never expires.
+     */
+    static final Deadline NONE = new Deadline(0, false);
+
+    private final long deadlineNanos;
+    private final boolean bounded;
+
+    private Deadline(long deadlineNanos, boolean bounded) {
+        this.deadlineNanos = deadlineNanos;
+        this.bounded = bounded;
+    }
+
+    /**
+     * @param timeoutMillis The time allowed from now, in milliseconds.
+     * @return A deadline that time from now.
+     */
+    static Deadline after(long timeoutMillis) {
+        return new Deadline(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis),
+                true);
+    }
+
+    boolean isBounded() {
+        return bounded;
+    }
+
+    /**
+     * @return The time left in nanoseconds, which is {@link Long#MAX_VALUE} for {@link #NONE} and
+     * zero or less once the deadline has passed.
+     */
+    long remainingNanos() {
+        return (bounded ? deadlineNanos - System.nanoTime() : Long.MAX_VALUE);
+    }
+
+    /**
+     * Limits a connect or read timeout to the time left. Zero, meaning no timeout, is treated as
+     * infinite.
+     *
+     * @param timeoutMillis The configured timeout in milliseconds.
+     * @return The timeout to use, at least 1ms.
+     * @throws SocketTimeoutException If the deadline has already passed.
+     */
+    int limit(int timeoutMillis) throws SocketTimeoutException {
+        if (!bounded) {
+            return timeoutMillis;
+        }
+        long remainingMillis = checkRemainingMillis();
+        if (timeoutMillis > 0) {
+            remainingMillis = Math.min(remainingMillis, timeoutMillis);
+        }
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(1, remainingMillis));
+    }
+
+    /**
+     * @return The time left in milliseconds rounded up, or {@link Long#MAX_VALUE} for
+     * {@link #NONE}.
+     * @throws SocketTimeoutException If the deadline has already passed.
+     */
+    long checkRemainingMillis() throws SocketTimeoutException {
+        if (!bounded) {
+            return Long.MAX_VALUE;
+        }
+        long remaining = remainingNanos();
+        if (remaining <= 0) {
+            throw new SocketTimeoutException("Query deadline exceeded");
+        }
+        return TimeUnit.NANOSECONDS.toMillis(remaining + TimeUnit.MILLISECONDS.toNanos(1) - 1);
+    }
+}
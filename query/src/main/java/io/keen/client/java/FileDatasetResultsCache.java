@@ -0,0 +1,345 @@
+package io.keen.client.java;
+
+import io.keen.client.java.result.DoubleResult;
+import io.keen.client.java.result.Group;
+import io.keen.client.java.result.GroupByResult;
+import io.keen.client.java.result.IntervalResultValue;
+import io.keen.client.java.result.ListResult;
+import io.keen.client.java.result.LongResult;
+import io.keen.client.java.result.MultiAnalysisResult;
+import io.keen.client.java.result.QueryResult;
+import io.keen.client.java.result.StringResult;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * {@link DatasetResultsCache} which keeps one compact binary file per dataset and set of index
+ * values. Each file is loaded with a single sequential read and rewritten atomically (write to a
+ * temporary file, then rename) when new closed intervals are added.
+ * <p>
+ * Files which can't be read, for example because they were truncated or written by an
+ * incompatible version, are discarded and the affected intervals are simply fetched again.
+ */
+public class FileDatasetResultsCache implements DatasetResultsCache {
+
+    private static final int MAGIC = 0x4B445243; // "KDRC"
+    private static final byte VERSION = 1;
+    private static final String FILE_EXTENSION = ".kdr";
+    private static final String TEMP_EXTENSION = ".tmp";
+    private static final String ENCODING = "UTF-8";
+
+    // Result tags
+    private static final byte RESULT_NULL = 0;
+    private static final byte RESULT_LONG = 1;
+    private static final byte RESULT_DOUBLE = 2;
+    private static final byte RESULT_STRING = 3;
+    private static final byte RESULT_LIST = 4;
+    private static final byte RESULT_GROUP_BY = 5;
+    private static final byte RESULT_MULTI_ANALYSIS = 6;
+
+    // Group property value tags
+    private static final byte VALUE_NULL = 0;
+    private static final byte VALUE_STRING = 1;
+    private static final byte VALUE_INTEGER = 2;
+    private static final byte VALUE_LONG = 3;
+    private static final byte VALUE_DOUBLE = 4;
+    private static final byte VALUE_BOOLEAN = 5;
+
+    private final File root;
+    private final Object lock = new Object();
+
+    /**
+     * Constructs a new file-based dataset results cache.
+     *
+     * @param root The directory in which to keep cache files.
+     * @throws IOException If the provided {@code root} isn't an existing directory.
+     */
+    public FileDatasetResultsCache(File root) throws IOException {
+        if (!root.exists() || !root.isDirectory()) {
+            throw new IOException("Dataset cache root '" + root + "' must exist and be a directory");
+        }
+
+        this.root = root;
+    }
+
+    @Override
+    public List<IntervalResultValue> get(String projectId, String datasetName, String indexKey) throws IOException {
+        String key = cacheKey(projectId, datasetName, indexKey);
+        synchronized (lock) {
+            return new ArrayList<IntervalResultValue>(read(key).values());
+        }
+    }
+
+    @Override
+    public void put(String projectId, String datasetName, String indexKey, List<IntervalResultValue> intervals) throws IOException {
+        if (intervals == null || intervals.isEmpty()) {
+            return;
+        }
+
+        String key = cacheKey(projectId, datasetName, indexKey);
+        synchronized (lock) {
+            TreeMap<Long, IntervalResultValue> entries = read(key);
+            for (IntervalResultValue interval : intervals) {
+                long start = TimestampUtils.parse(interval.getTimeframe().getStart());
+                if (start == TimestampUtils.UNPARSEABLE) {
+                    KeenLogging.log("Not caching interval with unparseable start: " + interval.getTimeframe());
+                    continue;
+                }
+                entries.put(start, interval);
+            }
+            write(key, entries);
+        }
+    }
+
+    ///// PRIVATE METHODS /////
+
+    private static String cacheKey(String projectId, String datasetName, String indexKey) {
+        return projectId + '\n' + datasetName + '\n' + indexKey;
+    }
+
+    private File getFile(String key) throws IOException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(key.getBytes(ENCODING));
+            return new File(root, KeenUtils.byteArrayToHexString(hash) + FILE_EXTENSION);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private TreeMap<Long, IntervalResultValue> read(String key) throws IOException {
+        TreeMap<Long, IntervalResultValue> entries = new TreeMap<Long, IntervalResultValue>();
+        File file = getFile(key);
+        if (!file.isFile()) {
+            return entries;
+        }
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+                throw new IOException("Unrecognized dataset cache file format");
+            }
+
+            // The full key is stored in the file to guard against hash collisions.
+            if (!key.equals(readString(in))) {
+                return entries;
+            }
+
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                long start = in.readLong();
+                AbsoluteTimeframe timeframe = new AbsoluteTimeframe(readString(in), readString(in));
+                entries.put(start, new IntervalResultValue(timeframe, readResult(in)));
+            }
+            return entries;
+        } catch (IOException e) {
+            KeenLogging.log("Discarding unreadable dataset cache file " + file.getAbsolutePath(), e);
+            KeenUtils.closeQuietly(in);
+            in = null;
+            if (!file.delete()) {
+                KeenLogging.log("Could not delete dataset cache file " + file.getAbsolutePath());
+            }
+            return new TreeMap<Long, IntervalResultValue>();
+        } finally {
+            KeenUtils.closeQuietly(in);
+        }
+    }
+
+    private void write(String key, TreeMap<Long, IntervalResultValue> entries) throws IOException {
+        File file = getFile(key);
+        File tempFile = new File(root, file.getName() + TEMP_EXTENSION);
+
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            writeString(out, key);
+            out.writeInt(entries.size());
+            for (Map.Entry<Long, IntervalResultValue> entry : entries.entrySet()) {
+                AbsoluteTimeframe timeframe = entry.getValue().getTimeframe();
+                out.writeLong(entry.getKey());
+                writeString(out, timeframe.getStart());
+                writeString(out, timeframe.getEnd());
+                writeResult(out, entry.getValue().getResult());
+            }
+        } finally {
+            KeenUtils.closeQuietly(out);
+        }
+
+        // File.renameTo won't replace an existing file on every platform.
+        if (!tempFile.renameTo(file) && !(file.delete() && tempFile.renameTo(file))) {
+            throw new IOException("Could not replace dataset cache file " + file.getAbsolutePath());
+        }
+    }
+
+    private static void writeResult(DataOutputStream out, QueryResult result) throws IOException {
+        if (result == null) {
+            out.writeByte(RESULT_NULL);
+        } else if (result.isLong()) {
+            out.writeByte(RESULT_LONG);
+            out.writeLong(result.longValue());
+        } else if (result.isDouble()) {
+            out.writeByte(RESULT_DOUBLE);
+            out.writeDouble(result.doubleValue());
+        } else if (result.isString()) {
+            out.writeByte(RESULT_STRING);
+            writeString(out, result.stringValue());
+        } else if (result.isListResult()) {
+            List<QueryResult> list = result.getListResults();
+            out.writeByte(RESULT_LIST);
+            out.writeInt(list.size());
+            for (QueryResult item : list) {
+                writeResult(out, item);
+            }
+        } else if (result.isGroupResult()) {
+            Map<Group, QueryResult> groups = result.getGroupResults();
+            out.writeByte(RESULT_GROUP_BY);
+            out.writeInt(groups.size());
+            for (Map.Entry<Group, QueryResult> entry : groups.entrySet()) {
+                Map<String, Object> properties = entry.getKey().getProperties();
+                out.writeInt(properties.size());
+                for (Map.Entry<String, Object> property : properties.entrySet()) {
+                    writeString(out, property.getKey());
+                    writeValue(out, property.getValue());
+                }
+                writeResult(out, entry.getValue());
+            }
+        } else if (result instanceof MultiAnalysisResult) {
+            Map<String, QueryResult> results = ((MultiAnalysisResult) result).getAllResults();
+            out.writeByte(RESULT_MULTI_ANALYSIS);
+            out.writeInt(results.size());
+            for (Map.Entry<String, QueryResult> entry : results.entrySet()) {
+                writeString(out, entry.getKey());
+                writeResult(out, entry.getValue());
+            }
+        } else {
+            throw new IOException("Unsupported result type for dataset cache: " + result.getClass().getName());
+        }
+    }
+
+    private static QueryResult readResult(DataInputStream in) throws IOException {
+        byte tag = in.readByte();
+        switch (tag) {
+            case RESULT_NULL:
+                return null;
+            case RESULT_LONG:
+                return new LongResult(in.readLong());
+            case RESULT_DOUBLE:
+                return new DoubleResult(in.readDouble());
+            case RESULT_STRING:
+                return new StringResult(readString(in));
+            case RESULT_LIST: {
+                int size = in.readInt();
+                List<QueryResult> list = new ArrayList<QueryResult>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(readResult(in));
+                }
+                return new ListResult(list);
+            }
+            case RESULT_GROUP_BY: {
+                int size = in.readInt();
+                Map<Group, QueryResult> groups = new LinkedHashMap<Group, QueryResult>(size * 2);
+                for (int i = 0; i < size; i++) {
+                    int propertyCount = in.readInt();
+                    Map<String, Object> properties = new LinkedHashMap<String, Object>(propertyCount * 2);
+                    for (int j = 0; j < propertyCount; j++) {
+                        properties.put(readString(in), readValue(in));
+                    }
+                    groups.put(new Group(properties), readResult(in));
+                }
+                return new GroupByResult(groups);
+            }
+            case RESULT_MULTI_ANALYSIS: {
+                int size = in.readInt();
+                Map<String, QueryResult> results = new LinkedHashMap<String, QueryResult>(size * 2);
+                for (int i = 0; i < size; i++) {
+                    results.put(readString(in), readResult(in));
+                }
+                return new MultiAnalysisResult(Collections.unmodifiableMap(results));
+            }
+            default:
+                throw new IOException("Unknown result tag " + tag);
+        }
+    }
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(VALUE_NULL);
+        } else if (value instanceof String) {
+            out.writeByte(VALUE_STRING);
+            writeString(out, (String) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(VALUE_INTEGER);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(VALUE_LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Double) {
+            out.writeByte(VALUE_DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte(VALUE_BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else {
+            throw new IOException("Unsupported group value type for dataset cache: " + value.getClass().getName());
+        }
+    }
+
+    private static Object readValue(DataInputStream in) throws IOException {
+        byte tag = in.readByte();
+        switch (tag) {
+            case VALUE_NULL:
+                return null;
+            case VALUE_STRING:
+                return readString(in);
+            case VALUE_INTEGER:
+                return in.readInt();
+            case VALUE_LONG:
+                return in.readLong();
+            case VALUE_DOUBLE:
+                return in.readDouble();
+            case VALUE_BOOLEAN:
+                return in.readBoolean();
+            default:
+                throw new IOException("Unknown value tag " + tag);
+        }
+    }
+
+    // DataOutput.writeUTF is limited to 64KB, which select_unique results can exceed.
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(ENCODING);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, ENCODING);
+    }
+}
@@ -108,6 +108,11 @@ public class Funnel extends KeenQueryRequest {
     @Override
     boolean groupedResponseExpected() { return false; }
 
+    @Override
+    boolean funnelResponseExpected() {
+        return true;
+    }
+
     @Override
     boolean intervalResponseExpected() { return false; }
 
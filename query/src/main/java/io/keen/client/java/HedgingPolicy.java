@@ -0,0 +1,368 @@
+package io.keen.client.java;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.keen.client.java.http.HttpHandler;
+import io.keen.client.java.http.Request;
+import io.keen.client.java.http.Response;
+
+/**
+ * Sends a duplicate of a query which is taking unusually long, and uses whichever response
+ * arrives first, to cut the tail latency of queries.
+ * <p>
+ * The policy keeps a {@link LatencyHistogram} of recent query latencies. Once it has enough
+ * samples, a query which hasn't completed within the configured percentile of that histogram
+ * (the 95th by default, so about one query in twenty) is sent a second time. The first response
+ * wins, and only its latency is recorded. The other attempt is cancelled by interrupting it, and
+ * its response is discarded if it arrives anyway. If one attempt fails, the other is still
+ * waited for.
+ * </p>
+ * <p>
+ * Only read-only requests are hedged; requests which create, update or delete Saved/Cached
+ * Queries or Cached Datasets are sent once. If the client has a {@link QueryRateLimiter}, a
+ * duplicate is only sent if a permit is available immediately, so hedging never makes the client
+ * exceed its rate limit. Since {@link java.net.HttpURLConnection} doesn't respond to interrupts,
+ * a cancelled attempt may keep its connection busy until the server responds; each attempt's
+ * permit is only released once its request has actually completed.
+ * </p>
+ * <p>
+ * Attempts run on an executor, by default a shared pool of daemon threads. A policy holds the
+ * latency history for the queries it's used for, so use one policy per client. It's
+ * thread-safe.
+ * </p>
+ */
+public class HedgingPolicy {
+
+    /**
+     * The default latency percentile after which a duplicate query is sent.
+     */
+    public static final double DEFAULT_PERCENTILE = 95;
+
+    /**
+     * The default minimum delay before a duplicate query is sent, in milliseconds.
+     */
+    public static final long DEFAULT_MIN_DELAY_MILLIS = 50;
+
+    /**
+     * The default number of latency samples needed before queries are hedged.
+     */
+    public static final int DEFAULT_MIN_SAMPLES = 20;
+
+    /**
+     * The default number of samples after which older latencies are given half the weight.
+     */
+    public static final int DEFAULT_WINDOW = 1000;
+
+    /**
+     * Decides whether a duplicate attempt may be sent, and is told when each attempt finishes.
+     * An attempt finishes when its request completes, which for a cancelled attempt may be after
+     * {@link #execute} has returned, or when it's abandoned before it started.
+     */
+    interface HedgeGate {
+        boolean tryStartHedge();
+
+        void hedgeFinished();
+
+        void primaryFinished();
+    }
+
+    /**
+     * Constructs a policy with the default settings.
+     */
+    public HedgingPolicy() {
+    }
+
+    ///// CONFIGURATION /////
+
+    /**
+     * Sets the percentile of recent latencies after which a duplicate query is sent.
+     *
+     * @param percentile The percentile, between 0 and 100.
+     * @return This instance (for method chaining).
+     */
+    public HedgingPolicy withPercentile(double percentile) {
+        this.percentile = Math.min(100, Math.max(0, percentile));
+        return this;
+    }
+
+    /**
+     * Sets the minimum delay before a duplicate query is sent, however fast recent queries were.
+     *
+     * @param minDelayMillis The minimum delay in milliseconds.
+     * @return This instance (for method chaining).
+     */
+    public HedgingPolicy withMinDelay(long minDelayMillis) {
+        this.minDelayMillis = Math.max(0, minDelayMillis);
+        return this;
+    }
+
+    /**
+     * Sets the number of latency samples needed before queries are hedged. Until then, each
+     * query is sent once.
+     *
+     * @param minSamples The number of samples.
+     * @return This instance (for method chaining).
+     */
+    public HedgingPolicy withMinSamples(int minSamples) {
+        this.minSamples = Math.max(0, minSamples);
+        return this;
+    }
+
+    /**
+     * Sets the executor which runs query attempts. The caller remains responsible for shutting
+     * it down.
+     *
+     * @param executor The executor.
+     * @return This instance (for method chaining).
+     */
+    public HedgingPolicy withExecutor(ExecutorService executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    ///// PUBLIC METHODS /////
+
+    /**
+     * @return How long a query currently waits before being hedged in milliseconds, or -1 if
+     * there aren't enough samples yet.
+     */
+    public long getHedgeDelayMillis() {
+        if (histogram.getCount() < Math.max(1, minSamples)) {
+            return -1;
+        }
+        return Math.max(minDelayMillis, histogram.getPercentileMillis(percentile));
+    }
+
+    /**
+     * Estimates a percentile of recent query latencies.
+     *
+     * @param percentile The percentile, between 0 and 100.
+     * @return The latency in milliseconds, or -1 if no queries have completed.
+     */
+    public long getLatencyPercentileMillis(double percentile) {
+        return histogram.getPercentileMillis(percentile);
+    }
+
+    /**
+     * @return The number of duplicate queries sent.
+     */
+    public long getHedgedCount() {
+        return hedged.get();
+    }
+
+    /**
+     * @return The number of queries whose duplicate responded first.
+     */
+    public long getHedgeWinCount() {
+        return hedgeWins.get();
+    }
+
+    ///// PACKAGE METHODS /////
+
+    /**
+     * Sends a request, and a duplicate if it's slow, and returns the first response. The gate is
+     * told when each attempt finishes, exactly once per attempt.
+     *
+     * @param handler  The handler which sends each attempt.
+     * @param request  The request.
+     * @param deadline The time by which a response is needed.
+     * @param gate     Decides whether a duplicate may be sent.
+     * @return The first response.
+     * @throws IOException If every attempt failed, or the deadline passed.
+     */
+    Response execute(final HttpHandler handler, final Request request, Deadline deadline,
+                     HedgeGate gate) throws IOException {
+        CompletionService<Response> completion =
+                new ExecutorCompletionService<Response>(getExecutor());
+        Map<Future<Response>, Attempt> running = new LinkedHashMap<Future<Response>, Attempt>(4);
+        long start = System.nanoTime();
+        long hedgeDelayNanos = TimeUnit.MILLISECONDS.toNanos(getHedgeDelayMillis());
+        boolean hedgeDue = (hedgeDelayNanos >= 0);
+        IOException failure = null;
+
+        try {
+            Future<Response> primary = submit(completion, running,
+                    new Attempt(handler, request, gate, false));
+            while (true) {
+                long remaining = deadline.remainingNanos();
+                if (remaining <= 0) {
+                    throw new SocketTimeoutException("Query deadline exceeded");
+                }
+                long wait = remaining;
+                if (hedgeDue) {
+                    wait = Math.min(wait, Math.max(0, start + hedgeDelayNanos - System.nanoTime()));
+                }
+
+                Future<Response> done = completion.poll(wait, TimeUnit.NANOSECONDS);
+                if (done == null) {
+                    if (hedgeDue && System.nanoTime() - start >= hedgeDelayNanos) {
+                        hedgeDue = false;
+                        if (gate.tryStartHedge()) {
+                            hedged.incrementAndGet();
+                            submit(completion, running, new Attempt(handler, request, gate, true));
+                        }
+                    }
+                    continue;
+                }
+
+                Attempt attempt = running.remove(done);
+                try {
+                    Response response = done.get();
+                    histogram.record(attempt.elapsedNanos);
+                    if (done != primary) {
+                        hedgeWins.incrementAndGet();
+                    }
+                    return response;
+                } catch (ExecutionException e) {
+                    failure = toIOException(e.getCause());
+                }
+
+                // Wait for the other attempt, unless there's none.
+                hedgeDue = false;
+                if (running.isEmpty()) {
+                    throw failure;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a query response");
+        } finally {
+            // The losers tell the gate themselves once their requests complete; attempts which
+            // never started are abandoned here instead.
+            for (Map.Entry<Future<Response>, Attempt> loser : running.entrySet()) {
+                loser.getKey().cancel(true);
+                loser.getValue().abandon();
+            }
+        }
+    }
+
+    ///// PRIVATE FIELDS /////
+
+    private final LatencyHistogram histogram = new LatencyHistogram(DEFAULT_WINDOW);
+    private final AtomicLong hedged = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+    private volatile double percentile = DEFAULT_PERCENTILE;
+    private volatile long minDelayMillis = DEFAULT_MIN_DELAY_MILLIS;
+    private volatile int minSamples = DEFAULT_MIN_SAMPLES;
+    private volatile ExecutorService executor;
+
+    ///// PRIVATE METHODS /////
+
+    private static Future<Response> submit(CompletionService<Response> completion,
+                                           Map<Future<Response>, Attempt> running,
+                                           Attempt attempt) {
+        Future<Response> future;
+        try {
+            future = completion.submit(attempt);
+        } catch (RuntimeException e) {
+            attempt.abandon();
+            throw e;
+        }
+        running.put(future, attempt);
+        return future;
+    }
+
+    private ExecutorService getExecutor() {
+        ExecutorService result = executor;
+        return (result == null ? DefaultExecutorHolder.EXECUTOR : result);
+    }
+
+    private static IOException toIOException(Throwable cause) {
+        if (cause instanceof IOException) {
+            return (IOException) cause;
+        }
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new IOException(cause);
+    }
+
+    /**
+     * One attempt to send the request, which tells the gate when it finishes.
+     */
+    private static final class Attempt implements Callable<Response> {
+        private final HttpHandler handler;
+        private final Request request;
+        private final HedgeGate gate;
+        private final boolean hedge;
+
+        // Set by whichever of call() and abandon() runs first, so the gate is told only once.
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        private volatile long elapsedNanos;
+
+        Attempt(HttpHandler handler, Request request, HedgeGate gate, boolean hedge) {
+            this.handler = handler;
+            this.request = request;
+            this.gate = gate;
+            this.hedge = hedge;
+        }
+
+        @Override
+        public Response call() throws Exception {
+            if (!claimed.compareAndSet(false, true)) {
+                throw new CancellationException("Attempt abandoned before it started");
+            }
+            try {
+                long start = System.nanoTime();
+                Response response = handler.execute(request);
+                elapsedNanos = System.nanoTime() - start;
+                return response;
+            } finally {
+                finished();
+            }
+        }
+
+        /**
+         * Tells the gate that this attempt is finished if it hasn't started, and never will.
+         */
+        void abandon() {
+            if (claimed.compareAndSet(false, true)) {
+                finished();
+            }
+        }
+
+        private void finished() {
+            if (hedge) {
+                gate.hedgeFinished();
+            } else {
+                gate.primaryFinished();
+            }
+        }
+    }
+
+    /**
+     * Holds the default executor, which is only created if a policy without an executor is used.
+     */
+    private static final class DefaultExecutorHolder {
+        static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "keen-query-hedge-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+}
@@ -1,6 +1,8 @@
 package io.keen.client.java;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.StringReader;
@@ -9,6 +11,7 @@ import java.net.HttpURLConnection;
 import java.net.URI;
 import java.net.URL;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 import io.keen.client.java.exceptions.KeenQueryClientException;
 import io.keen.client.java.exceptions.ServerException;
@@ -45,6 +48,7 @@ public class KeenQueryClient {
     private static final String ENCODING = "UTF-8";
     private static final int DEFAULT_CONNECT_TIMEOUT = 30000;
     private static final int DEFAULT_READ_TIMEOUT = 30000;
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
 
     private final KeenJsonHandler jsonHandler;
     private final RequestUrlBuilder requestUrlBuilder;
@@ -52,6 +56,10 @@ public class KeenQueryClient {
     private final HttpHandler httpHandler;
     private final int connectTimeout;
     private final int readTimeout;
+    private final DatasetResultsCache datasetResultsCache;
+    private final SavedQueryCache savedQueryCache;
+    private final QueryRateLimiter rateLimiter;
+    private final HedgingPolicy hedgingPolicy;
 
     /**
      * Gets the default project that this {@link KeenQueryClient} is using.
@@ -285,6 +293,39 @@ public class KeenQueryClient {
         return rawMapResponseToQueryResult(request, response);
     }
 
+    /**
+     * Runs a query which must complete within the given time. The connect and read timeouts of
+     * the request are limited to the time left when it's sent, and any wait for the client's
+     * {@link QueryRateLimiter} counts towards the time.
+     *
+     * @param request The {@link KeenQueryRequest} to be executed.
+     * @param timeoutMillis The time allowed for the query, in milliseconds.
+     * @return The {@link QueryResult} result.
+     * @throws java.net.SocketTimeoutException If the query didn't complete in time.
+     * @throws IOException If there was an error communicating with the server or
+     * an error message received from the server.
+     */
+    public QueryResult execute(KeenQueryRequest request, long timeoutMillis) throws IOException {
+        Map<String, Object> response = getMapResponse(request, Deadline.after(timeoutMillis));
+
+        return rawMapResponseToQueryResult(request, response);
+    }
+
+    /**
+     * Validates and serializes a query once so that it can be executed repeatedly with different
+     * timeframes and filter values. Mark filter values to be supplied later with
+     * {@link QueryTemplate#parameter(String)}.
+     *
+     * @param request The query to prepare.
+     * @return The prepared {@link QueryTemplate}.
+     * @throws IOException If the query could not be serialized.
+     */
+    public QueryTemplate prepare(KeenQueryRequest request) throws IOException {
+        URL url = request.getRequestURL(requestUrlBuilder, project.getProjectId());
+
+        return new QueryTemplate(this, request, url, jsonHandler);
+    }
+
     /**
      * Provides an implementation of {@link SavedQueries} for performing operations against
      * the <a href="https://keen.io/docs/api/#saved-queries">Saved/Cached Query API</a> endpoints.
@@ -292,29 +333,35 @@ public class KeenQueryClient {
      * @return The SavedQueries implementation.
      */
     public SavedQueries getSavedQueriesInterface() {
-        return new SavedQueriesImpl(this);
+        return new SavedQueriesImpl(this, savedQueryCache);
     }
 
     public CachedDatasets getCachedDatasetsClient() {
-        return new CachedDatasetsClient(this);
+        return new CachedDatasetsClient(this, datasetResultsCache);
     }
 
     Map<String, Object> getMapResponse(KeenQueryRequest request) throws IOException {
+        return getMapResponse(request, Deadline.NONE);
+    }
+
+    Map<String, Object> getMapResponse(KeenQueryRequest request, Deadline deadline)
+            throws IOException {
         @SuppressWarnings("unchecked")
-        Map<String, Object> response = getResponse(Map.class, request);
+        Map<String, Object> response = getResponse(Map.class, request, deadline);
 
         return response;
     }
 
     List<Object> getListResponse(KeenQueryRequest request) throws IOException {
         @SuppressWarnings("unchecked")
-        List<Object> response = getResponse(List.class, request);
+        List<Object> response = getResponse(List.class, request, Deadline.NONE);
 
         return response;
     }
 
-    private <T> T getResponse(Class<T> containerType, KeenQueryRequest request) throws IOException {
-        Object response = getResponse(request);
+    private <T> T getResponse(Class<T> containerType, KeenQueryRequest request, Deadline deadline)
+            throws IOException {
+        Object response = getResponse(request, deadline);
 
         // Throw at runtime if the return type isn't as expected.
         if (!containerType.isAssignableFrom(response.getClass())) {
@@ -335,7 +382,7 @@ public class KeenQueryClient {
         boolean isGroupBy = request.groupedResponseExpected();
         boolean isInterval = request.intervalResponseExpected();
         boolean isMultiAnalysis = KeenQueryConstants.MULTI_ANALYSIS.equals(request.getAnalysisType());
-        boolean isFunnel = request instanceof Funnel;
+        boolean isFunnel = request.funnelResponseExpected();
 
         final Collection<String> groupByParams = request.groupedResponseExpected() ?
                 request.getGroupByParams() : Collections.<String>emptyList();
@@ -373,13 +420,42 @@ public class KeenQueryClient {
         return result;
     }
 
-    private Object getResponse(KeenQueryRequest request) throws IOException {
+    private Object getResponse(KeenQueryRequest request, Deadline deadline) throws IOException {
+        String analysisType = request.getAnalysisType();
+        if (null == rateLimiter) {
+            return sendQuery(request, new QueryPermits(analysisType, null), deadline);
+        }
+
+        QueryRateLimiter.Permit permit;
+        try {
+            permit = (deadline.isBounded() ?
+                    rateLimiter.acquire(project.getProjectId(), analysisType,
+                            TimeUnit.MILLISECONDS.toNanos(deadline.checkRemainingMillis())) :
+                    rateLimiter.acquire(project.getProjectId(), analysisType));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to send a query");
+        }
+
+        QueryPermits permits = new QueryPermits(analysisType, permit);
+        try {
+            return sendQuery(request, permits, deadline);
+        } finally {
+            permits.queryFinished();
+        }
+    }
+
+    private Object sendQuery(KeenQueryRequest request, QueryPermits permits, Deadline deadline)
+            throws IOException {
         Map<String, Object> queryArgs = request.constructRequestArgs();
         URL url = request.getRequestURL(requestUrlBuilder, project.getProjectId());
 
         String httpMethod = request.getHttpMethod();
         String authKey = request.getAuthKey(project);
-        Map<String, Object> wrappedResponse = sendRequest(url, httpMethod, authKey, queryArgs);
+        OutputSource requestBody = request.getRequestBody();
+        Map<String, Object> wrappedResponse = (null == requestBody ?
+                sendRequest(url, httpMethod, authKey, queryArgs, permits, deadline) :
+                sendRequest(url, httpMethod, authKey, requestBody, permits, deadline));
         Object response = wrappedResponse;
 
         // Issue #99 : Take a look at better dealing with root Map<> vs root List<> in the response.
@@ -672,6 +748,8 @@ public class KeenQueryClient {
      * @param authKey     The key to use for authentication of this request.
      * @param requestData The request data, which will be serialized into JSON and sent in the
      *                    request body.
+     * @param permits     The rate limiter permits of the query.
+     * @param deadline    The time by which the request must complete.
      *
      * @return The response from the server in the "result" map.
      * @throws IOException If there was an error communicating with the server.
@@ -679,7 +757,9 @@ public class KeenQueryClient {
     private Map<String, Object> sendRequest(final URL url,
                                             final String method,
                                             final String authKey,
-                                            final Map<String, ?> requestData)
+                                            final Map<String, ?> requestData,
+                                            final QueryPermits permits,
+                                            final Deadline deadline)
             throws IOException {
         boolean useOutputSource = true;
 
@@ -717,28 +797,88 @@ public class KeenQueryClient {
                     request = writer.toString();
                 }
 
-                KeenLogging.log(String.format(Locale.US,
-                        "Request ID: %s. Sent '%s' request '%s' to URL '%s'",
-                        requestId, method, request, url.toString()
-                ));
+                logRequest(requestId, method, request, url);
             } catch (IOException e) {
                 KeenLogging.log("Couldn't log request written to file: ", e);
             }
         }
 
-        // Send the request.
-        Request request = new Request(url, method, authKey, source, null, connectTimeout, readTimeout);
-        Response response = httpHandler.execute(request);
+        return executeRequest(requestId, url, method, authKey, source, permits, deadline);
+    }
+
+    /**
+     * Sends a request with an already-serialized body, such as a bound {@link QueryTemplate}.
+     *
+     * @param url         The URL to which the given data should be sent.
+     * @param method      The HTTP Method to use.
+     * @param authKey     The key to use for authentication of this request.
+     * @param source      The serialized request body.
+     * @param permits     The rate limiter permits of the query.
+     * @param deadline    The time by which the request must complete.
+     *
+     * @return The response from the server in the "result" map.
+     * @throws IOException If there was an error communicating with the server.
+     */
+    private Map<String, Object> sendRequest(final URL url,
+                                            final String method,
+                                            final String authKey,
+                                            final OutputSource source,
+                                            final QueryPermits permits,
+                                            final Deadline deadline)
+            throws IOException {
+        String requestId = UUID.randomUUID().toString();
+        if (KeenLogging.isLoggingEnabled()) {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            source.writeTo(body);
+            logRequest(requestId, method, body.toString(ENCODING), url);
+        }
+
+        return executeRequest(requestId, url, method, authKey, source, permits, deadline);
+    }
+
+    private static void logRequest(String requestId, String method, String request, URL url) {
+        KeenLogging.log(String.format(Locale.US,
+                "Request ID: %s. Sent '%s' request '%s' to URL '%s'",
+                requestId, method, request, url.toString()
+        ));
+    }
 
+    private Map<String, Object> executeRequest(final String requestId,
+                                               final URL url,
+                                               final String method,
+                                               final String authKey,
+                                               final OutputSource source,
+                                               final QueryPermits permits,
+                                               final Deadline deadline)
+            throws IOException {
+        // Send the request, limiting its timeouts to the time left.
+        Request request = new Request(url, method, authKey, source, null,
+                deadline.limit(connectTimeout), deadline.limit(readTimeout));
+        Response response;
+        if (null != hedgingPolicy &&
+                (HttpMethods.GET.equals(method) || HttpMethods.POST.equals(method))) {
+            // The first attempt releases the query's permit itself once its request completes,
+            // which may be after a duplicate has won.
+            permits.handOverPrimary();
+            response = hedgingPolicy.execute(httpHandler, request, deadline, permits);
+        } else {
+            response = httpHandler.execute(request);
+        }
+
+        String body = response.getBodyString();
         if (KeenLogging.isLoggingEnabled()) {
-            KeenLogging.log(String.format("Request ID: %s. Received response: '%s'", requestId, response.body));
+            KeenLogging.log(String.format("Request ID: %s. Received response: '%s'", requestId, body));
         }
 
         if (!response.isSuccess()) {
-            throw new ServerException(response.body);
+            String retryAfter = response.getHeader("Retry-After");
+            if (HTTP_TOO_MANY_REQUESTS == response.statusCode && null != rateLimiter) {
+                rateLimiter.onRateLimited(project.getProjectId(), retryAfter);
+            }
+            throw new ServerException(body, response.statusCode, retryAfter);
         }
 
-        if ((null == response.body || response.body.trim().isEmpty()) &&
+        if ((null == body || body.trim().isEmpty()) &&
             HttpURLConnection.HTTP_NO_CONTENT != response.statusCode) {
             throw new ServerException("Empty response when response was expected.");
         }
@@ -749,7 +889,7 @@ public class KeenQueryClient {
             responseMap = Collections.emptyMap();
         } else {
             // Parse the response into a map.
-            StringReader reader = new StringReader(response.body);
+            StringReader reader = new StringReader(body);
             responseMap = jsonHandler.readJson(reader);
         }
 
@@ -776,6 +916,66 @@ public class KeenQueryClient {
         return responseMap;
     }
 
+    /**
+     * The rate limiter permits of one query: the permit of its first attempt, acquired before the
+     * query is sent, and the permit of a duplicate sent by the {@link HedgingPolicy}, which is
+     * only sent if the rate limiter, if any, has a permit available immediately. Each permit is
+     * released once its attempt's request has completed, so that an attempt which lost a hedge
+     * still counts against the limits until its connection is free.
+     */
+    private final class QueryPermits implements HedgingPolicy.HedgeGate {
+        private final String analysisType;
+        private final QueryRateLimiter.Permit primary;
+        private volatile QueryRateLimiter.Permit hedge;
+
+        // Set once the hedging policy is responsible for telling us the first attempt finished.
+        private volatile boolean primaryHandedOver;
+
+        QueryPermits(String analysisType, QueryRateLimiter.Permit primary) {
+            this.analysisType = analysisType;
+            this.primary = primary;
+        }
+
+        @Override
+        public boolean tryStartHedge() {
+            if (null == rateLimiter) {
+                return true;
+            }
+            hedge = rateLimiter.tryAcquire(project.getProjectId(), analysisType);
+            return (null != hedge);
+        }
+
+        @Override
+        public void hedgeFinished() {
+            release(hedge);
+        }
+
+        @Override
+        public void primaryFinished() {
+            release(primary);
+        }
+
+        void handOverPrimary() {
+            primaryHandedOver = true;
+        }
+
+        /**
+         * Releases the first attempt's permit when the query returns, unless the hedging policy
+         * releases it when the attempt finishes.
+         */
+        void queryFinished() {
+            if (!primaryHandedOver) {
+                release(primary);
+            }
+        }
+
+        private void release(QueryRateLimiter.Permit permit) {
+            if (null != permit) {
+                rateLimiter.release(permit);
+            }
+        }
+    }
+
     private long queryResultToLong(QueryResult result) throws KeenQueryClientException {
         if (result == null) {
             throw new NullPointerException("Query Error: expected long response type but received null.");
@@ -815,6 +1015,10 @@ public class KeenQueryClient {
         project = builder.project;
         readTimeout = builder.readTimeout;
         connectTimeout = builder.connectTimeout;
+        datasetResultsCache = builder.datasetResultsCache;
+        savedQueryCache = new SavedQueryCache(builder.savedQueryResultTtl);
+        rateLimiter = builder.rateLimiter;
+        hedgingPolicy = builder.hedgingPolicy;
     }
 
     /**
@@ -835,6 +1039,10 @@ public class KeenQueryClient {
         private KeenProject project;
         private int connectTimeout = KeenQueryClient.DEFAULT_CONNECT_TIMEOUT;
         private int readTimeout = KeenQueryClient.DEFAULT_READ_TIMEOUT;
+        private DatasetResultsCache datasetResultsCache;
+        private long savedQueryResultTtl;
+        private QueryRateLimiter rateLimiter;
+        private HedgingPolicy hedgingPolicy;
 
         /**
          * Builder to create a KeenQueryClient with {@link KeenProject}.
@@ -993,6 +1201,118 @@ public class KeenQueryClient {
             return this;
         }
 
+        /**
+         * Gets the {@link DatasetResultsCache} used to keep closed Cached Dataset intervals. If
+         * null, every Cached Dataset results request goes to the server.
+         *
+         * @return The {@link DatasetResultsCache} to use.
+         */
+        public DatasetResultsCache getDatasetResultsCache() {
+            return datasetResultsCache;
+        }
+
+        /**
+         * Sets the {@link DatasetResultsCache} used to keep closed Cached Dataset intervals, so
+         * that repeated requests for absolute timeframes only fetch intervals which are missing
+         * or still open.
+         *
+         * @param datasetResultsCache The {@link DatasetResultsCache} to use.
+         */
+        public void setDatasetResultsCache(DatasetResultsCache datasetResultsCache) {
+            this.datasetResultsCache = datasetResultsCache;
+        }
+
+        /**
+         * Sets the {@link DatasetResultsCache} used to keep closed Cached Dataset intervals.
+         *
+         * @param datasetResultsCache The {@link DatasetResultsCache} to use.
+         * @return This instance (for method chaining).
+         */
+        public Builder withDatasetResultsCache(DatasetResultsCache datasetResultsCache) {
+            setDatasetResultsCache(datasetResultsCache);
+            return this;
+        }
+
+        /**
+         * Sets how long Saved/Cached Query results fetched by
+         * {@link SavedQueries#getResult(String)} may be reused before they're requested again.
+         * Concurrent requests for the same query always share a single fetch; this setting
+         * additionally keeps the result for callers which arrive shortly afterwards. Defaults to
+         * zero, which disables reuse once a fetch completes.
+         *
+         * @param savedQueryResultTtl in milliseconds
+         * @return This instance (for method chaining).
+         */
+        public Builder withSavedQueryResultTtl(long savedQueryResultTtl) {
+            this.savedQueryResultTtl = savedQueryResultTtl;
+            return this;
+        }
+
+        /**
+         * Gets the {@link QueryRateLimiter} which limits the rate and concurrency of this client's
+         * queries. If null, queries are sent as soon as they're made.
+         *
+         * @return The {@link QueryRateLimiter} to use.
+         */
+        public QueryRateLimiter getRateLimiter() {
+            return rateLimiter;
+        }
+
+        /**
+         * Sets the {@link QueryRateLimiter} which limits the rate and concurrency of this client's
+         * queries. Share one limiter between all clients for the same project so that they
+         * respect a single limit.
+         *
+         * @param rateLimiter The {@link QueryRateLimiter} to use.
+         */
+        public void setRateLimiter(QueryRateLimiter rateLimiter) {
+            this.rateLimiter = rateLimiter;
+        }
+
+        /**
+         * Sets the {@link QueryRateLimiter} which limits the rate and concurrency of this client's
+         * queries.
+         *
+         * @param rateLimiter The {@link QueryRateLimiter} to use.
+         * @return This instance (for method chaining).
+         */
+        public Builder withRateLimiter(QueryRateLimiter rateLimiter) {
+            setRateLimiter(rateLimiter);
+            return this;
+        }
+
+        /**
+         * Gets the {@link HedgingPolicy} which sends duplicates of slow queries. If null, each
+         * query is sent once.
+         *
+         * @return The {@link HedgingPolicy} to use.
+         */
+        public HedgingPolicy getHedgingPolicy() {
+            return hedgingPolicy;
+        }
+
+        /**
+         * Sets the {@link HedgingPolicy} which sends duplicates of slow queries to cut tail
+         * latency. The policy keeps this client's latency history, so don't share it with other
+         * clients.
+         *
+         * @param hedgingPolicy The {@link HedgingPolicy} to use.
+         */
+        public void setHedgingPolicy(HedgingPolicy hedgingPolicy) {
+            this.hedgingPolicy = hedgingPolicy;
+        }
+
+        /**
+         * Sets the {@link HedgingPolicy} which sends duplicates of slow queries.
+         *
+         * @param hedgingPolicy The {@link HedgingPolicy} to use.
+         * @return This instance (for method chaining).
+         */
+        public Builder withHedgingPolicy(HedgingPolicy hedgingPolicy) {
+            setHedgingPolicy(hedgingPolicy);
+            return this;
+        }
+
         /**
          * Builds a new Keen query client using the interfaces which have been specified explicitly on
          * this builder instance via the set* or with* methods, or the default interfaces if none
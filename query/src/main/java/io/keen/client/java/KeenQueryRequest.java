@@ -6,6 +6,7 @@ import java.util.Map;
 
 import io.keen.client.java.exceptions.KeenQueryClientException;
 import io.keen.client.java.http.HttpMethods;
+import io.keen.client.java.http.OutputSource;
 
 /**
  * Interface to be implemented by a query request
@@ -33,6 +34,21 @@ abstract class KeenQueryRequest {
 
     abstract boolean intervalResponseExpected();
 
+    boolean funnelResponseExpected() {
+        return false;
+    }
+
+    /**
+     * Gets the already-serialized body for requests which serialize themselves, such as bound
+     * {@link QueryTemplate}s. When this returns null the body is serialized from
+     * {@link #constructRequestArgs()}.
+     *
+     * @return The request body, or null.
+     */
+    OutputSource getRequestBody() {
+        return null;
+    }
+
     Collection<String> getGroupByParams() {
         throw new IllegalStateException(
                 "Not all KeenQueryRequest subclasses necessarily can provide GroupBy parameters.");
@@ -0,0 +1,92 @@
+package io.keen.client.java;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A histogram of recent request latencies, used by {@link HedgingPolicy} to work out how long a
+ * slow request is.
+ * <p>
+ * Latencies are counted in buckets which grow by a quarter of a power of two, from 1ms up to
+ * about 18 minutes, so percentiles are accurate to within about 19% whatever the scale. Once the
+ * window is full all counts are halved, so the histogram follows changes in latency while
+ * still reflecting the last few windows' worth of requests.
+ * </p>
+ * <p>
+ * Recording is synchronized; it's a handful of arithmetic operations per request.
+ * </p>
+ */
+final class LatencyHistogram {
+
+    // Four buckets per power of two, covering 2^0 to 2^20 milliseconds.
+    private static final int BUCKETS_PER_DOUBLING = 4;
+    private static final int NUM_BUCKETS = 20 * BUCKETS_PER_DOUBLING + 1;
+
+    private final long[] counts = new long[NUM_BUCKETS];
+    private final int window;
+    private long total;
+
+    /**
+     * @param window The number of samples after which older samples are given half the weight.
+     */
+    LatencyHistogram(int window) {
+        this.window = Math.max(1, window);
+    }
+
+    /**
+     * Records the latency of a request.
+     *
+     * @param nanos The latency in nanoseconds.
+     */
+    synchronized void record(long nanos) {
+        counts[bucketFor(TimeUnit.NANOSECONDS.toMicros(nanos) / 1000.0)]++;
+        total++;
+        if (total >= 2L * window) {
+            total = 0;
+            for (int i = 0; i < NUM_BUCKETS; i++) {
+                counts[i] /= 2;
+                total += counts[i];
+            }
+        }
+    }
+
+    /**
+     * @return The number of samples in the histogram, after decay.
+     */
+    synchronized long getCount() {
+        return total;
+    }
+
+    /**
+     * Estimates a percentile of the recorded latencies.
+     *
+     * @param percentile The percentile, between 0 and 100.
+     * @return The upper bound of the bucket containing the percentile in milliseconds, or -1 if
+     * nothing has been recorded.
+     */
+    synchronized long getPercentileMillis(double percentile) {
+        if (total == 0) {
+            return -1;
+        }
+        long rank = (long) Math.ceil(total * Math.min(100, Math.max(0, percentile)) / 100);
+        long seen = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank && counts[i] > 0) {
+                return upperBoundMillis(i);
+            }
+        }
+        return upperBoundMillis(NUM_BUCKETS - 1);
+    }
+
+    private static int bucketFor(double millis) {
+        if (millis <= 1) {
+            return 0;
+        }
+        int bucket = (int) Math.ceil(Math.log(millis) / Math.log(2) * BUCKETS_PER_DOUBLING);
+        return Math.min(bucket, NUM_BUCKETS - 1);
+    }
+
+    private static long upperBoundMillis(int bucket) {
+        return (long) Math.ceil(Math.pow(2, (double) bucket / BUCKETS_PER_DOUBLING));
+    }
+}
@@ -0,0 +1,629 @@
+package io.keen.client.java;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import io.keen.client.java.exceptions.RateLimitExceededException;
+
+/**
+ * Limits the rate and concurrency of queries sent by one or more {@link KeenQueryClient}s, so
+ * that bursts of queries from many threads are spread out instead of running into the API's
+ * per-project rate limits.
+ * <p>
+ * Each project has a token bucket which refills continuously at the configured rate and holds at
+ * most the burst size, and a limit on the number of queries in flight. Individual analysis types
+ * may have a tighter bucket and concurrency limit of their own; a query needs a permit from both.
+ * Because the bucket refills smoothly and waiting queries are released exactly when a token
+ * becomes available, throughput settles just under the limit rather than alternating between
+ * bursts and failures. A 429 response empties the project's bucket and, if it has a
+ * {@code Retry-After} header, pauses the project until the time it gives.
+ * </p>
+ * <p>
+ * Waiting queries are granted permits in arrival order. Queries of an analysis type which is at
+ * its own limit don't hold up queries of other types. A query which can't get a permit within
+ * the maximum wait, or at once in fail-fast mode, fails with a
+ * {@link RateLimitExceededException} instead of being sent.
+ * </p>
+ * <p>
+ * A limiter may be shared by clients for any number of projects, and is thread-safe.
+ * Configure it before sharing it.
+ * </p>
+ */
+public class QueryRateLimiter {
+
+    /**
+     * A permit to send one query, which must be released once the query completes.
+     */
+    public static final class Permit {
+        private final Lane projectLane;
+        private final Lane typeLane;
+        private boolean released;
+
+        private Permit(Lane projectLane, Lane typeLane) {
+            this.projectLane = projectLane;
+            this.typeLane = typeLane;
+        }
+    }
+
+    /**
+     * Constructs a limiter with no limits. Configure it with the {@code with} methods.
+     */
+    public QueryRateLimiter() {
+    }
+
+    /**
+     * Constructs a limiter which allows each project the given rate of queries, with a burst of
+     * one second's worth.
+     *
+     * @param queriesPerSecond The sustained rate of queries per project.
+     */
+    public QueryRateLimiter(double queriesPerSecond) {
+        withRate(queriesPerSecond, Math.max(1, (int) queriesPerSecond));
+    }
+
+    ///// CONFIGURATION /////
+
+    /**
+     * Sets the rate of queries allowed for each project.
+     *
+     * @param queriesPerSecond The sustained rate, or zero for no limit.
+     * @param burst            The number of queries which may be sent at once after a quiet
+     *                         period; at least 1.
+     * @return This instance (for method chaining).
+     */
+    public QueryRateLimiter withRate(double queriesPerSecond, int burst) {
+        projectLimits.rate(queriesPerSecond, burst);
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of queries in flight for each project.
+     *
+     * @param maxConcurrency The maximum, or zero for no limit.
+     * @return This instance (for method chaining).
+     */
+    public QueryRateLimiter withMaxConcurrency(int maxConcurrency) {
+        projectLimits.maxConcurrency = Math.max(0, maxConcurrency);
+        return this;
+    }
+
+    /**
+     * Sets the rate of queries of one analysis type allowed for each project. These queries also
+     * count towards the project's rate.
+     *
+     * @param analysisType     The analysis type, such as {@code "count"} or {@code "funnel"}.
+     * @param queriesPerSecond The sustained rate, or zero for no limit.
+     * @param burst            The number of queries which may be sent at once; at least 1.
+     * @return This instance (for method chaining).
+     */
+    public QueryRateLimiter withAnalysisTypeRate(String analysisType, double queriesPerSecond,
+                                                 int burst) {
+        getTypeLimits(analysisType).rate(queriesPerSecond, burst);
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of queries of one analysis type in flight for each project. These
+     * queries also count towards the project's limit.
+     *
+     * @param analysisType   The analysis type.
+     * @param maxConcurrency The maximum, or zero for no limit.
+     * @return This instance (for method chaining).
+     */
+    public QueryRateLimiter withAnalysisTypeMaxConcurrency(String analysisType,
+                                                           int maxConcurrency) {
+        getTypeLimits(analysisType).maxConcurrency = Math.max(0, maxConcurrency);
+        return this;
+    }
+
+    /**
+     * Sets how long a query may wait for a permit before failing. Defaults to zero, which waits
+     * as long as necessary.
+     *
+     * @param maxWaitMillis The maximum wait in milliseconds, or zero for no maximum.
+     * @return This instance (for method chaining).
+     */
+    public QueryRateLimiter withMaxWait(long maxWaitMillis) {
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxWaitMillis));
+        return this;
+    }
+
+    /**
+     * Sets whether queries fail immediately, rather than wait, when no permit is available.
+     *
+     * @param failFast Whether to fail fast.
+     * @return This instance (for method chaining).
+     */
+    public QueryRateLimiter withFailFast(boolean failFast) {
+        this.failFast = failFast;
+        return this;
+    }
+
+    ///// PUBLIC METHODS /////
+
+    /**
+     * Waits for a permit to send a query.
+     *
+     * @param projectId    The project the query is for.
+     * @param analysisType The query's analysis type, or null.
+     * @return The permit, which must be passed to {@link #release(Permit)}.
+     * @throws RateLimitExceededException If no permit was available in time.
+     * @throws InterruptedException       If the thread was interrupted while waiting.
+     */
+    public Permit acquire(String projectId, String analysisType) throws InterruptedException {
+        return acquire(projectId, analysisType, maxWaitNanos);
+    }
+
+    /**
+     * Waits for a permit to send a query, for at most the given time.
+     *
+     * @param projectId    The project the query is for.
+     * @param analysisType The query's analysis type, or null.
+     * @param maxWaitNanos The maximum wait in nanoseconds, or zero for no maximum.
+     * @return The permit.
+     * @throws RateLimitExceededException If no permit was available in time.
+     * @throws InterruptedException       If the thread was interrupted while waiting.
+     */
+    Permit acquire(String projectId, String analysisType, long maxWaitNanos)
+            throws InterruptedException {
+        long start = nanoTime();
+        lock.lock();
+        try {
+            long now = nanoTime();
+            Project project = getProject(projectId, now);
+            Lane typeLane = project.getTypeLane(analysisType, now);
+            Waiter waiter = new Waiter(project.projectLane, typeLane, nextTicket++,
+                    lock.newCondition());
+
+            dispatch(project, now);
+            if (typeLane.queue.isEmpty() && project.projectLane.canGrant(typeLane, now)) {
+                grant(waiter, now);
+            } else if (failFast) {
+                reject(start, projectId, analysisType);
+            } else {
+                typeLane.queue.addLast(waiter);
+                waiting++;
+                try {
+                    awaitGrant(project, waiter, start, maxWaitNanos, projectId, analysisType);
+                } finally {
+                    waiting--;
+                }
+            }
+
+            long waited = nanoTime() - start;
+            acquired.incrementAndGet();
+            totalWaitNanos.addAndGet(waited);
+            if (waited > maxWaitSeenNanos) {
+                maxWaitSeenNanos = waited;
+            }
+            return waiter.permit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets a permit to send a query only if one is available immediately and no other query is
+     * waiting for it. Used for optional work, such as duplicate hedged queries, which should
+     * never wait for or displace other queries.
+     *
+     * @param projectId    The project the query is for.
+     * @param analysisType The query's analysis type, or null.
+     * @return The permit, which must be passed to {@link #release(Permit)}, or null.
+     */
+    public Permit tryAcquire(String projectId, String analysisType) {
+        lock.lock();
+        try {
+            long now = nanoTime();
+            Project project = getProject(projectId, now);
+            Lane typeLane = project.getTypeLane(analysisType, now);
+
+            dispatch(project, now);
+            for (Lane lane : project.typeLanes.values()) {
+                if (!lane.queue.isEmpty()) {
+                    return null;
+                }
+            }
+            if (!project.projectLane.canGrant(typeLane, now)) {
+                return null;
+            }
+            Waiter waiter = new Waiter(project.projectLane, typeLane, nextTicket++, null);
+            grant(waiter, now);
+            acquired.incrementAndGet();
+            return waiter.permit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Releases a permit once its query has completed. Releasing a permit twice has no effect.
+     *
+     * @param permit The permit.
+     */
+    public void release(Permit permit) {
+        lock.lock();
+        try {
+            if (permit.released) {
+                return;
+            }
+            permit.released = true;
+            permit.projectLane.inFlight--;
+            permit.typeLane.inFlight--;
+            Project project = permit.projectLane.project;
+            dispatch(project, nanoTime());
+            signalHeads(project);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Tells the limiter that the API rejected a query for a project because of its rate limit.
+     * The project's bucket is emptied, and if the response asked the client to back off, no
+     * queries are granted for the project until that time.
+     *
+     * @param projectId  The project.
+     * @param retryAfter The value of the response's {@code Retry-After} header, or null.
+     */
+    public void onRateLimited(String projectId, String retryAfter) {
+        lock.lock();
+        try {
+            long now = nanoTime();
+            Lane lane = getProject(projectId, now).projectLane;
+            lane.refill(now);
+            lane.tokens = 0;
+            long pauseMillis = RetryPolicy.parseRetryAfter(retryAfter, System.currentTimeMillis());
+            if (pauseMillis > 0) {
+                lane.pausedUntilNanos = now + TimeUnit.MILLISECONDS.toNanos(pauseMillis);
+            }
+            signalHeads(lane.project);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    ///// METRICS /////
+
+    /**
+     * @return The number of permits granted.
+     */
+    public long getAcquiredCount() {
+        return acquired.get();
+    }
+
+    /**
+     * @return The number of queries which failed because no permit was available in time.
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * @return The total time granted queries spent waiting for their permits, in milliseconds.
+     */
+    public long getTotalWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.get());
+    }
+
+    /**
+     * @return The longest time a granted query waited for its permit, in milliseconds.
+     */
+    public long getMaxWaitMillis() {
+        lock.lock();
+        try {
+            return TimeUnit.NANOSECONDS.toMillis(maxWaitSeenNanos);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return The number of queries currently waiting for a permit.
+     */
+    public int getWaitingCount() {
+        lock.lock();
+        try {
+            return waiting;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    ///// TEST HOOKS /////
+
+    /**
+     * @return The current value of the monotonic clock, in nanoseconds.
+     */
+    long nanoTime() {
+        return System.nanoTime();
+    }
+
+    ///// PRIVATE TYPES /////
+
+    /**
+     * The configured limits for projects or for one analysis type.
+     */
+    private static final class Limits {
+        double tokensPerNano;
+        int burst = 1;
+        int maxConcurrency;
+
+        void rate(double queriesPerSecond, int burst) {
+            this.tokensPerNano = Math.max(0, queriesPerSecond) / TimeUnit.SECONDS.toNanos(1);
+            this.burst = Math.max(1, burst);
+        }
+    }
+
+    /**
+     * The token bucket, in-flight count and queue for a project or for one of its analysis types.
+     */
+    private static final class Lane {
+        final Project project;
+        final Limits limits;
+        final ArrayDeque<Waiter> queue = new ArrayDeque<Waiter>();
+        double tokens;
+        long refilledNanos;
+        long pausedUntilNanos;
+        int inFlight;
+
+        Lane(Project project, Limits limits, long now) {
+            this.project = project;
+            this.limits = limits;
+            this.tokens = limits.burst;
+            this.refilledNanos = now;
+            this.pausedUntilNanos = now;
+        }
+
+        void refill(long now) {
+            if (limits.tokensPerNano > 0 && now > refilledNanos) {
+                tokens = Math.min(limits.burst, tokens + (now - refilledNanos) * limits.tokensPerNano);
+            }
+            refilledNanos = now;
+        }
+
+        boolean hasCapacity(long now) {
+            if (now - pausedUntilNanos < 0) {
+                return false;
+            }
+            if (limits.maxConcurrency > 0 && inFlight >= limits.maxConcurrency) {
+                return false;
+            }
+            refill(now);
+            return limits.tokensPerNano <= 0 || tokens >= 1;
+        }
+
+        /**
+         * Checks whether both this (project) lane and an analysis type's lane can grant a permit.
+         */
+        boolean canGrant(Lane typeLane, long now) {
+            return hasCapacity(now) && typeLane.hasCapacity(now);
+        }
+
+        /**
+         * @return How long until a token is available, or zero if waiting for a permit to be
+         * released instead.
+         */
+        long nanosUntilToken(long now) {
+            long wait = Math.max(0, pausedUntilNanos - now);
+            if (limits.tokensPerNano > 0 && tokens < 1) {
+                wait = Math.max(wait, (long) Math.ceil((1 - tokens) / limits.tokensPerNano));
+            }
+            return wait;
+        }
+
+        void take() {
+            if (limits.tokensPerNano > 0) {
+                tokens -= 1;
+            }
+            inFlight++;
+        }
+    }
+
+    /**
+     * The lanes for one project.
+     */
+    private final class Project {
+        final Lane projectLane;
+        final Map<String, Lane> typeLanes = new HashMap<String, Lane>();
+
+        Project(long now) {
+            projectLane = new Lane(this, projectLimits, now);
+        }
+
+        Lane getTypeLane(String analysisType, long now) {
+            String key = (analysisType == null ? "" : analysisType);
+            Lane lane = typeLanes.get(key);
+            if (lane == null) {
+                Limits limits = typeLimits.get(key);
+                lane = new Lane(this, (limits == null ? UNLIMITED : limits), now);
+                typeLanes.put(key, lane);
+            }
+            return lane;
+        }
+    }
+
+    private static final class Waiter {
+        final Permit permit;
+        final long ticket;
+        final Condition condition;
+        boolean granted;
+
+        Waiter(Lane projectLane, Lane typeLane, long ticket, Condition condition) {
+            this.permit = new Permit(projectLane, typeLane);
+            this.ticket = ticket;
+            this.condition = condition;
+        }
+    }
+
+    ///// PRIVATE CONSTANTS /////
+
+    private static final Limits UNLIMITED = new Limits();
+
+    ///// PRIVATE FIELDS /////
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Limits projectLimits = new Limits();
+    private final Map<String, Limits> typeLimits = new HashMap<String, Limits>();
+    private final Map<String, Project> projects = new HashMap<String, Project>();
+
+    private volatile long maxWaitNanos;
+    private volatile boolean failFast;
+
+    // Guarded by lock.
+    private long nextTicket;
+    private int waiting;
+    private long maxWaitSeenNanos;
+
+    private final AtomicLong acquired = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+
+    ///// PRIVATE METHODS /////
+
+    private Limits getTypeLimits(String analysisType) {
+        lock.lock();
+        try {
+            Limits limits = typeLimits.get(analysisType);
+            if (limits == null) {
+                limits = new Limits();
+                typeLimits.put(analysisType, limits);
+            }
+            return limits;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Project getProject(String projectId, long now) {
+        Project project = projects.get(projectId);
+        if (project == null) {
+            project = new Project(now);
+            projects.put(projectId, project);
+        }
+        return project;
+    }
+
+    /**
+     * Waits, holding the lock except while blocked, until the waiter has been granted a permit.
+     * Only the waiter at the front of each analysis type's queue waits for a token to become
+     * available; the others wait to be woken when they reach the front.
+     */
+    private void awaitGrant(Project project, Waiter waiter, long start, long maxWait,
+                            String projectId, String analysisType) throws InterruptedException {
+        Lane typeLane = waiter.permit.typeLane;
+        while (true) {
+            long now = nanoTime();
+            dispatch(project, now);
+            if (waiter.granted) {
+                return;
+            }
+
+            long remaining = (maxWait > 0 ? maxWait - (now - start) : Long.MAX_VALUE);
+            if (remaining <= 0) {
+                remove(project, waiter);
+                reject(start, projectId, analysisType);
+            }
+
+            long delay = Long.MAX_VALUE;
+            if (typeLane.queue.peekFirst() == waiter) {
+                long tokenWait = Math.max(project.projectLane.nanosUntilToken(now),
+                        typeLane.nanosUntilToken(now));
+                if (tokenWait > 0) {
+                    delay = tokenWait;
+                }
+            }
+            delay = Math.min(delay, remaining);
+
+            try {
+                if (delay == Long.MAX_VALUE) {
+                    waiter.condition.await();
+                } else {
+                    waiter.condition.awaitNanos(delay);
+                }
+            } catch (InterruptedException e) {
+                if (!waiter.granted) {
+                    remove(project, waiter);
+                    throw e;
+                }
+                // Granted while being interrupted; keep the permit and the interrupt.
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Grants permits to waiting queries, oldest first, for as long as the project has capacity.
+     */
+    private void dispatch(Project project, long now) {
+        Lane projectLane = project.projectLane;
+        while (projectLane.hasCapacity(now)) {
+            Waiter next = null;
+            for (Lane typeLane : project.typeLanes.values()) {
+                Waiter head = typeLane.queue.peekFirst();
+                if (head != null && (next == null || head.ticket < next.ticket) &&
+                        typeLane.hasCapacity(now)) {
+                    next = head;
+                }
+            }
+            if (next == null) {
+                return;
+            }
+            next.permit.typeLane.queue.removeFirst();
+            grant(next, now);
+            next.condition.signal();
+
+            // The next query of the same type is now at the front, and waits for a token itself.
+            signalHead(next.permit.typeLane);
+        }
+    }
+
+    /**
+     * Wakes the query at the front of each of a project's queues, so that it recalculates how
+     * long to wait after the project's capacity changes without a permit being granted.
+     */
+    private static void signalHeads(Project project) {
+        for (Lane typeLane : project.typeLanes.values()) {
+            signalHead(typeLane);
+        }
+    }
+
+    private static void signalHead(Lane typeLane) {
+        Waiter head = typeLane.queue.peekFirst();
+        if (head != null) {
+            head.condition.signal();
+        }
+    }
+
+    private void remove(Project project, Waiter waiter) {
+        Lane typeLane = waiter.permit.typeLane;
+        boolean wasHead = (typeLane.queue.peekFirst() == waiter);
+        typeLane.queue.remove(waiter);
+        if (wasHead) {
+            signalHead(typeLane);
+        }
+        dispatch(project, nanoTime());
+    }
+
+    private void grant(Waiter waiter, long now) {
+        waiter.granted = true;
+        waiter.permit.projectLane.refill(now);
+        waiter.permit.projectLane.take();
+        waiter.permit.typeLane.refill(now);
+        waiter.permit.typeLane.take();
+    }
+
+    private void reject(long start, String projectId, String analysisType) {
+        rejected.incrementAndGet();
+        long waited = TimeUnit.NANOSECONDS.toMillis(nanoTime() - start);
+        throw new RateLimitExceededException(String.format(Locale.US,
+                "No permit available for a '%s' query on project %s after %d ms",
+                analysisType, projectId, waited), waited);
+    }
+}
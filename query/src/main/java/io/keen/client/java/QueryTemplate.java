@@ -0,0 +1,448 @@
+package io.keen.client.java;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import io.keen.client.java.exceptions.KeenQueryClientException;
+import io.keen.client.java.http.HttpMethods;
+import io.keen.client.java.http.OutputSource;
+import io.keen.client.java.result.QueryResult;
+
+/**
+ * <p>
+ * A query which has been validated and serialized once so that it can be executed many times
+ * with different timeframes and filter values. Get an instance from
+ * {@link KeenQueryClient#prepare(KeenQueryRequest)}.
+ * <p>
+ * Filter values which should be supplied at execution time are marked with
+ * {@link #parameter(String)} when building the query:
+ * <pre>
+ *     QueryTemplate template = queryClient.prepare(new Query.Builder(QueryType.COUNT)
+ *             .withEventCollection("purchases")
+ *             .withFilter("customer.id", FilterOperator.EQUAL_TO, QueryTemplate.parameter("customer"))
+ *             .build());
+ *
+ *     QueryResult result = template.bind(new RelativeTimeframe("this_7_days"))
+ *             .set("customer", "abc123")
+ *             .execute();
+ * </pre>
+ * Executing a binding writes the pre-serialized request body with only the bound values
+ * serialized per request, and reuses the request URL computed when the template was prepared.
+ * <p>
+ * Templates are immutable and may be shared between threads. Bindings may not.
+ */
+public final class QueryTemplate {
+
+    /**
+     * A placeholder for a value supplied when a {@link QueryTemplate} is bound.
+     */
+    public static final class Parameter {
+        private final String name;
+
+        private Parameter(String name) {
+            this.name = name;
+        }
+
+        /**
+         * @return The name of this parameter.
+         */
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public String toString() {
+            return "QueryTemplate.Parameter(" + name + ")";
+        }
+    }
+
+    /**
+     * Creates a placeholder to use in place of a filter value.
+     *
+     * @param name The name used to bind a value to this placeholder.
+     * @return The placeholder.
+     */
+    public static Parameter parameter(String name) {
+        if (null == name || name.trim().isEmpty()) {
+            throw new IllegalArgumentException("A parameter name is required.");
+        }
+
+        return new Parameter(name);
+    }
+
+    private static final String ENCODING = "UTF-8";
+
+    private final KeenQueryClient queryClient;
+    private final KeenJsonHandler jsonHandler;
+    private final KeenQueryRequest request;
+    private final URL url;
+
+    // The body is literals[0], value of slots[0], literals[1], ..., literals[n], followed by the
+    // timeframe members and a closing brace.
+    private final byte[][] literals;
+    private final String[] slots;
+    private final Set<String> parameterNames;
+    private final boolean hasStaticMembers;
+
+    // Used when a binding doesn't specify its own timeframe.
+    private final Object defaultTimeframe;
+    private final Object defaultTimezone;
+
+    QueryTemplate(KeenQueryClient queryClient,
+                  KeenQueryRequest request,
+                  URL url,
+                  KeenJsonHandler jsonHandler) throws IOException {
+        if (!HttpMethods.POST.equals(request.getHttpMethod())) {
+            throw new IllegalArgumentException("Only requests which POST a query can be prepared.");
+        }
+
+        this.queryClient = queryClient;
+        this.jsonHandler = jsonHandler;
+        this.request = request;
+        this.url = url;
+
+        Map<String, Object> args = new LinkedHashMap<String, Object>(request.constructRequestArgs());
+        defaultTimeframe = args.remove(KeenQueryConstants.TIMEFRAME);
+        defaultTimezone = args.remove(KeenQueryConstants.TIMEZONE);
+        hasStaticMembers = !args.isEmpty();
+
+        // Swap each placeholder for a unique marker, serialize once, then split around the
+        // markers.
+        String markerPrefix = "keen-slot-" + UUID.randomUUID().toString() + "-";
+        List<String> slotNames = new ArrayList<String>();
+        Object withMarkers = replaceParameters(args, markerPrefix, slotNames);
+
+        StringWriter writer = new StringWriter();
+        @SuppressWarnings("unchecked")
+        Map<String, Object> markedArgs = (Map<String, Object>) withMarkers;
+        jsonHandler.writeJson(writer, markedArgs);
+        String json = writer.toString().trim();
+
+        if (!json.endsWith("}")) {
+            throw new KeenQueryClientException("Unexpected serialization of query: " + json);
+        }
+
+        // Drop the closing brace so that the timeframe members can be appended.
+        json = json.substring(0, json.length() - 1);
+
+        literals = new byte[slotNames.size() + 1][];
+        slots = slotNames.toArray(new String[slotNames.size()]);
+        int start = 0;
+        for (int i = 0; i < slots.length; i++) {
+            String marker = "\"" + markerPrefix + i + "\"";
+            int markerIndex = json.indexOf(marker, start);
+            if (markerIndex < 0) {
+                throw new KeenQueryClientException("Could not locate parameter '" + slots[i] +
+                                                   "' in the serialized query.");
+            }
+            literals[i] = json.substring(start, markerIndex).getBytes(ENCODING);
+            start = markerIndex + marker.length();
+        }
+        literals[slots.length] = json.substring(start).getBytes(ENCODING);
+        parameterNames = Collections.unmodifiableSet(new LinkedHashSet<String>(slotNames));
+    }
+
+    /**
+     * Starts binding values to this template.
+     *
+     * @param timeframe The timeframe for this execution, or null to use the timeframe (if any) of
+     *                  the query the template was prepared from.
+     * @return A new binding.
+     */
+    public Binding bind(Timeframe timeframe) {
+        return new Binding(timeframe);
+    }
+
+    /**
+     * @return The names of the parameters which must be bound before executing.
+     */
+    public Set<String> getParameterNames() {
+        return parameterNames;
+    }
+
+    /**
+     * A set of values bound to a {@link QueryTemplate}, ready to execute.
+     */
+    public final class Binding extends KeenQueryRequest {
+        private final Timeframe timeframe;
+        private final Map<String, Object> values = new HashMap<String, Object>();
+
+        private Binding(Timeframe timeframe) {
+            this.timeframe = timeframe;
+        }
+
+        /**
+         * Binds a value to a named parameter.
+         *
+         * @param name  The name given to {@link QueryTemplate#parameter(String)}.
+         * @param value The filter value. Must not be null.
+         * @return This instance (for method chaining).
+         */
+        public Binding set(String name, Object value) {
+            if (!parameterNames.contains(name)) {
+                throw new IllegalArgumentException("Unknown query template parameter: " + name);
+            }
+
+            if (null == value) {
+                throw new IllegalArgumentException("Value for parameter '" + name +
+                                                   "' must be provided.");
+            }
+
+            values.put(name, value);
+            return this;
+        }
+
+        /**
+         * Executes the bound query using the client the template was prepared with.
+         *
+         * @return The {@link QueryResult} result.
+         * @throws IOException If there was an error communicating with the server or
+         * an error message received from the server.
+         */
+        public QueryResult execute() throws IOException {
+            return queryClient.execute(this);
+        }
+
+        @Override
+        URL getRequestURL(RequestUrlBuilder urlBuilder, String projectId) {
+            return url;
+        }
+
+        @Override
+        String getAuthKey(KeenProject project) {
+            return request.getAuthKey(project);
+        }
+
+        @Override
+        String getAnalysisType() {
+            return request.getAnalysisType();
+        }
+
+        @Override
+        boolean groupedResponseExpected() {
+            return request.groupedResponseExpected();
+        }
+
+        @Override
+        boolean intervalResponseExpected() {
+            return request.intervalResponseExpected();
+        }
+
+        @Override
+        Collection<String> getGroupByParams() {
+            return request.getGroupByParams();
+        }
+
+        @Override
+        boolean funnelResponseExpected() {
+            return request.funnelResponseExpected();
+        }
+
+        @Override
+        Map<String, Object> constructRequestArgs() {
+            // Only needed for logging; executions write the serialized body directly.
+            ensureAllBound();
+            Map<String, Object> args = new LinkedHashMap<String, Object>(request.constructRequestArgs());
+            args.remove(KeenQueryConstants.TIMEFRAME);
+            args.remove(KeenQueryConstants.TIMEZONE);
+            args.putAll(timeframeMembers());
+
+            @SuppressWarnings("unchecked")
+            Map<String, Object> bound = (Map<String, Object>) bindParameters(args, values);
+            return bound;
+        }
+
+        @Override
+        OutputSource getRequestBody() {
+            ensureAllBound();
+
+            return new OutputSource() {
+                @Override
+                public void writeTo(OutputStream out) throws IOException {
+                    StringBuilder json = new StringBuilder();
+                    for (int i = 0; i < slots.length; i++) {
+                        out.write(literals[i]);
+                        json.setLength(0);
+                        appendJsonValue(json, values.get(slots[i]));
+                        out.write(json.toString().getBytes(ENCODING));
+                    }
+                    out.write(literals[slots.length]);
+
+                    json.setLength(0);
+                    boolean first = !hasStaticMembers;
+                    for (Map.Entry<String, Object> member : timeframeMembers().entrySet()) {
+                        json.append(first ? "" : ",");
+                        appendJsonValue(json, member.getKey());
+                        json.append(':');
+                        appendJsonValue(json, member.getValue());
+                        first = false;
+                    }
+                    json.append('}');
+                    out.write(json.toString().getBytes(ENCODING));
+                }
+            };
+        }
+
+        private void ensureAllBound() {
+            for (String slot : slots) {
+                if (!values.containsKey(slot)) {
+                    throw new IllegalStateException("No value bound for query template parameter: " +
+                                                    slot);
+                }
+            }
+        }
+
+        private Map<String, Object> timeframeMembers() {
+            Map<String, Object> members = new LinkedHashMap<String, Object>(4);
+
+            if (null != timeframe) {
+                Map<String, Object> timeframeArgs = timeframe.constructTimeframeArgs();
+                if (null != timeframeArgs) {
+                    members.putAll(timeframeArgs);
+                }
+            } else if (null != defaultTimeframe) {
+                members.put(KeenQueryConstants.TIMEFRAME, defaultTimeframe);
+            }
+
+            // As in Query, a timezone on the timeframe takes precedence.
+            if (!members.containsKey(KeenQueryConstants.TIMEZONE) && null != defaultTimezone) {
+                members.put(KeenQueryConstants.TIMEZONE, defaultTimezone);
+            }
+
+            return members;
+        }
+    }
+
+    ///// PRIVATE METHODS /////
+
+    private static Object replaceParameters(Object value, String markerPrefix, List<String> slotNames) {
+        if (value instanceof Parameter) {
+            slotNames.add(((Parameter) value).getName());
+            return markerPrefix + (slotNames.size() - 1);
+        } else if (value instanceof Map) {
+            Map<Object, Object> copy = new LinkedHashMap<Object, Object>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                copy.put(entry.getKey(), replaceParameters(entry.getValue(), markerPrefix, slotNames));
+            }
+            return copy;
+        } else if (value instanceof Collection) {
+            List<Object> copy = new ArrayList<Object>();
+            for (Object item : (Collection<?>) value) {
+                copy.add(replaceParameters(item, markerPrefix, slotNames));
+            }
+            return copy;
+        }
+        return value;
+    }
+
+    private static Object bindParameters(Object value, Map<String, Object> values) {
+        if (value instanceof Parameter) {
+            return values.get(((Parameter) value).getName());
+        } else if (value instanceof Map) {
+            Map<Object, Object> copy = new LinkedHashMap<Object, Object>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                copy.put(entry.getKey(), bindParameters(entry.getValue(), values));
+            }
+            return copy;
+        } else if (value instanceof Collection) {
+            List<Object> copy = new ArrayList<Object>();
+            for (Object item : (Collection<?>) value) {
+                copy.add(bindParameters(item, values));
+            }
+            return copy;
+        }
+        return value;
+    }
+
+    // Bound values are usually strings, numbers or booleans, so they're written without going
+    // through the JSON handler. Anything more exotic falls back to the JSON handler.
+    private void appendJsonValue(StringBuilder json, Object value) throws IOException {
+        if (null == value) {
+            json.append("null");
+        } else if (value instanceof String) {
+            appendJsonString(json, (String) value);
+        } else if (value instanceof Boolean || value instanceof Integer || value instanceof Long ||
+                   value instanceof Short || value instanceof Byte) {
+            json.append(value.toString());
+        } else if ((value instanceof Double && !((Double) value).isNaN() && !((Double) value).isInfinite()) ||
+                   (value instanceof Float && !((Float) value).isNaN() && !((Float) value).isInfinite())) {
+            json.append(value.toString());
+        } else if (value instanceof Map) {
+            json.append('{');
+            boolean first = true;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                json.append(first ? "" : ",");
+                appendJsonString(json, String.valueOf(entry.getKey()));
+                json.append(':');
+                appendJsonValue(json, entry.getValue());
+                first = false;
+            }
+            json.append('}');
+        } else if (value instanceof Collection) {
+            json.append('[');
+            boolean first = true;
+            for (Object item : (Collection<?>) value) {
+                json.append(first ? "" : ",");
+                appendJsonValue(json, item);
+                first = false;
+            }
+            json.append(']');
+        } else {
+            json.append(serializeWithHandler(value));
+        }
+    }
+
+    private String serializeWithHandler(Object value) throws IOException {
+        StringWriter writer = new StringWriter();
+        jsonHandler.writeJson(writer, Collections.singletonMap("v", value));
+        String wrapped = writer.toString().trim();
+
+        // Strip the {"v": ... } wrapper.
+        int valueStart = wrapped.indexOf(':') + 1;
+        int valueEnd = wrapped.lastIndexOf('}');
+        return wrapped.substring(valueStart, valueEnd).trim();
+    }
+
+    private static void appendJsonString(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        json.append('"');
+    }
+}
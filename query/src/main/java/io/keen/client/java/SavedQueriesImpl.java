@@ -22,10 +22,16 @@ import io.keen.client.java.result.QueryResult;
  */
 final class SavedQueriesImpl implements SavedQueries {
     private final KeenQueryClient queryClient;
+    private final SavedQueryCache cache;
 
 
     SavedQueriesImpl(KeenQueryClient queryClient) {
+        this(queryClient, new SavedQueryCache(0));
+    }
+
+    SavedQueriesImpl(KeenQueryClient queryClient, SavedQueryCache cache) {
         this.queryClient = queryClient;
+        this.cache = cache;
     }
 
     @Override
@@ -39,7 +45,11 @@ final class SavedQueriesImpl implements SavedQueries {
                                   null /* miscProperties */);
 
 
-        return queryClient.getMapResponse(newSavedQueryRequest);
+        try {
+            return queryClient.getMapResponse(newSavedQueryRequest);
+        } finally {
+            cache.invalidate(queryName);
+        }
     }
 
     @Override
@@ -55,7 +65,11 @@ final class SavedQueriesImpl implements SavedQueries {
                                   null /* miscProperties */);
 
 
-        return queryClient.getMapResponse(newSavedQueryRequest);
+        try {
+            return queryClient.getMapResponse(newSavedQueryRequest);
+        } finally {
+            cache.invalidate(queryName);
+        }
     }
 
     @Override
@@ -69,7 +83,11 @@ final class SavedQueriesImpl implements SavedQueries {
                                   refreshRate,
                                   null /* miscProperties */);
 
-        return queryClient.getMapResponse(newCachedQueryRequest);
+        try {
+            return queryClient.getMapResponse(newCachedQueryRequest);
+        } finally {
+            cache.invalidate(queryName);
+        }
     }
 
     @Override
@@ -84,7 +102,11 @@ final class SavedQueriesImpl implements SavedQueries {
                                   refreshRate,
                                   null /* miscProperties */);
 
-        return queryClient.getMapResponse(newCachedQueryRequest);
+        try {
+            return queryClient.getMapResponse(newCachedQueryRequest);
+        } finally {
+            cache.invalidate(queryName);
+        }
     }
 
     @Override
@@ -127,12 +149,22 @@ final class SavedQueriesImpl implements SavedQueries {
     }
 
     @Override
-    public QueryResult getResult(String queryName) throws IOException {
+    public QueryResult getResult(final String queryName) throws IOException {
         if (null == queryName) {
             // Note that the PersistentAnalysis class will further validate queryName.
             throw new IllegalArgumentException("A query name is required.");
         }
 
+        // Concurrent requests for the same query share a single fetch and parse.
+        return cache.getResult(queryName, new SavedQueryCache.Loader() {
+            @Override
+            public QueryResult load() throws IOException {
+                return fetchResult(queryName);
+            }
+        });
+    }
+
+    private QueryResult fetchResult(String queryName) throws IOException {
         PersistentAnalysis getResultRequest =
                 new SavedQueryRequest(HttpMethods.GET,
                                       false /* needsMasterKey */,
@@ -161,6 +193,40 @@ final class SavedQueriesImpl implements SavedQueries {
 
         Map<String, Object> query = (Map)queryObj;
 
+        SavedQueryCache.ResultShape shape = parseResultShape(query);
+
+        // Now get the actual result and massage it into the right shape.
+        if (!response.containsKey(KeenQueryConstants.RESULT)) {
+            throw new ServerException(String.format(Locale.US,
+                                                    "The '%s' property is missing.",
+                                                    KeenQueryConstants.RESULT));
+        }
+
+        Object resultObj = response.get(KeenQueryConstants.RESULT);
+        Map<String, Object> result;
+
+        // It may be the case that (isFunnel == (!isMultiAnalysis && resultObj instanceof Map)), but
+        // this way we're being clear about when we expect result to be a Map.
+        if (!shape.isMultiAnalysis && resultObj instanceof Map) {
+            result = (Map)resultObj;
+        } else {
+            // For scalar/array/multi-analysis results, we usually receive a container object with a
+            // single "result" key but here we receive the result key in the Saved/Cached Query
+            // definition. So, wrap it in a container object before passing down to the result
+            // parsing code.
+            result = new HashMap<String, Object>();
+            result.put(KeenQueryConstants.RESULT, resultObj);
+        }
+
+        return queryClient.rawMapResponseToQueryResult(result,
+                                                       shape.isGroupBy,
+                                                       shape.isInterval,
+                                                       shape.isMultiAnalysis,
+                                                       shape.isFunnel,
+                                                       shape.groupByParams);
+    }
+
+    private static SavedQueryCache.ResultShape parseResultShape(Map<String, Object> query) {
         // Figure out if this query was originally grouped, and grab the group by params if so.
         boolean isGroupBy = false;
         List<?> groupByParamsRaw = null;
@@ -216,35 +282,11 @@ final class SavedQueriesImpl implements SavedQueries {
         // Figure out if this was originally a Funnel analysis.
         boolean isFunnel = KeenQueryConstants.FUNNEL.equals(analysisType);
 
-        // Now get the actual result and massage it into the right shape.
-        if (!response.containsKey(KeenQueryConstants.RESULT)) {
-            throw new ServerException(String.format(Locale.US,
-                                                    "The '%s' property is missing.",
-                                                    KeenQueryConstants.RESULT));
-        }
-
-        Object resultObj = response.get(KeenQueryConstants.RESULT);
-        Map<String, Object> result;
-
-        // It may be the case that (isFunnel == (!isMultiAnalysis && resultObj instanceof Map)), but
-        // this way we're being clear about when we expect result to be a Map.
-        if (!isMultiAnalysis && resultObj instanceof Map) {
-            result = (Map)resultObj;
-        } else {
-            // For scalar/array/multi-analysis results, we usually receive a container object with a
-            // single "result" key but here we receive the result key in the Saved/Cached Query
-            // definition. So, wrap it in a container object before passing down to the result
-            // parsing code.
-            result = new HashMap<String, Object>();
-            result.put(KeenQueryConstants.RESULT, resultObj);
-        }
-
-        return queryClient.rawMapResponseToQueryResult(result,
-                                                       isGroupBy,
-                                                       isInterval,
-                                                       isMultiAnalysis,
-                                                       isFunnel,
-                                                       groupByParams);
+        return new SavedQueryCache.ResultShape(isGroupBy,
+                                               isInterval,
+                                               isMultiAnalysis,
+                                               isFunnel,
+                                               Collections.unmodifiableCollection(groupByParams));
     }
 
     @Override
@@ -317,7 +359,21 @@ final class SavedQueriesImpl implements SavedQueries {
         // Lastly, push back the new full definition minus disallowed properties.
         PersistentAnalysis updatedSavedQueryRequest = new SavedQueryPut(queryName, newFullDef);
 
-        return queryClient.getMapResponse(updatedSavedQueryRequest);
+        try {
+            return queryClient.getMapResponse(updatedSavedQueryRequest);
+        } finally {
+            invalidateAfterUpdate(queryName, updates);
+        }
+    }
+
+    private void invalidateAfterUpdate(String queryName, Map<String, ?> updates) {
+        cache.invalidate(queryName);
+
+        // A rename means results may now be requested under the new name, too.
+        Object newQueryName = null == updates ? null : updates.get(KeenQueryConstants.QUERY_NAME);
+        if (newQueryName instanceof String) {
+            cache.invalidate((String)newQueryName);
+        }
     }
 
     private static void deepUpdate(Map<String, Object> map, Map<String, ?> updates) {
@@ -347,7 +403,11 @@ final class SavedQueriesImpl implements SavedQueries {
         PersistentAnalysis redefinedSavedQueryRequest = new SavedQueryPut(queryName,
                                                                           fullDefinition);
 
-        return queryClient.getMapResponse(redefinedSavedQueryRequest);
+        try {
+            return queryClient.getMapResponse(redefinedSavedQueryRequest);
+        } finally {
+            invalidateAfterUpdate(queryName, fullDefinition);
+        }
     }
 
     @Override
@@ -356,7 +416,11 @@ final class SavedQueriesImpl implements SavedQueries {
                                                                       true /* needsMasterKey */,
                                                                       queryName);
 
-        queryClient.getMapResponse(deleteQueryRequest);
+        try {
+            queryClient.getMapResponse(deleteQueryRequest);
+        } finally {
+            cache.invalidate(queryName);
+        }
     }
 
     @Override
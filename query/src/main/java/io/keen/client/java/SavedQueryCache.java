@@ -0,0 +1,188 @@
+package io.keen.client.java;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import io.keen.client.java.result.QueryResult;
+
+/**
+ * Shared state used by {@link SavedQueriesImpl} to avoid redundant work when many threads ask for
+ * the results of the same Saved/Cached Query at once:
+ * <ul>
+ *     <li>concurrent fetches of the same query's results are coalesced into a single request, and
+ *     every caller receives the same {@link QueryResult} (or the same failure);</li>
+ *     <li>results can optionally be kept for a short time after they're fetched.</li>
+ * </ul>
+ * One instance is owned by each {@link KeenQueryClient}.
+ */
+final class SavedQueryCache {
+
+    /**
+     * Produces the results for a Saved/Cached Query. Only called by one thread at a time for a
+     * given query name.
+     */
+    interface Loader {
+        QueryResult load() throws IOException;
+    }
+
+    /**
+     * The parts of a query definition needed to parse its results.
+     */
+    static final class ResultShape {
+        final boolean isGroupBy;
+        final boolean isInterval;
+        final boolean isMultiAnalysis;
+        final boolean isFunnel;
+        final Collection<String> groupByParams;
+
+        ResultShape(boolean isGroupBy,
+                    boolean isInterval,
+                    boolean isMultiAnalysis,
+                    boolean isFunnel,
+                    Collection<String> groupByParams) {
+            this.isGroupBy = isGroupBy;
+            this.isInterval = isInterval;
+            this.isMultiAnalysis = isMultiAnalysis;
+            this.isFunnel = isFunnel;
+            this.groupByParams = groupByParams;
+        }
+    }
+
+    private static final class Flight {
+        final CountDownLatch done = new CountDownLatch(1);
+        QueryResult result;
+        IOException ioException;
+        RuntimeException runtimeException;
+        Error error;
+    }
+
+    private static final class CachedResult {
+        final QueryResult result;
+        final long expiresAt;
+
+        CachedResult(QueryResult result, long expiresAt) {
+            this.result = result;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final long resultTtlMillis;
+    private final Map<String, Flight> inFlight = new HashMap<String, Flight>();
+    private final Map<String, CachedResult> results = new HashMap<String, CachedResult>();
+    // Incremented on every invalidation so that in-flight fetches started before an update don't
+    // put stale results into the cache.
+    private long generation;
+
+    /**
+     * @param resultTtlMillis How long fetched results may be reused, in milliseconds. Zero or less
+     *                        disables the result cache, but concurrent fetches are still
+     *                        coalesced.
+     */
+    SavedQueryCache(long resultTtlMillis) {
+        this.resultTtlMillis = resultTtlMillis;
+    }
+
+    QueryResult getResult(String queryName, Loader loader) throws IOException {
+        Flight flight;
+        boolean leader = false;
+        long startGeneration;
+
+        synchronized (this) {
+            CachedResult cached = results.get(queryName);
+            if (cached != null) {
+                if (cached.expiresAt > System.currentTimeMillis()) {
+                    return cached.result;
+                }
+                results.remove(queryName);
+            }
+
+            startGeneration = generation;
+            flight = inFlight.get(queryName);
+            if (flight == null) {
+                flight = new Flight();
+                inFlight.put(queryName, flight);
+                leader = true;
+            }
+        }
+
+        if (leader) {
+            fly(queryName, loader, flight, startGeneration);
+        } else {
+            try {
+                flight.done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for results of " + queryName);
+            }
+        }
+
+        if (flight.ioException != null) {
+            throw flight.ioException;
+        }
+        if (flight.runtimeException != null) {
+            throw flight.runtimeException;
+        }
+        if (flight.error != null) {
+            throw flight.error;
+        }
+        return flight.result;
+    }
+
+    /**
+     * Forgets everything known about a query. Called whenever a query is created, updated or
+     * deleted through this client.
+     *
+     * @param queryName The name of the query, or null to forget all queries.
+     */
+    synchronized void invalidate(String queryName) {
+        // Callers arriving after this point shouldn't join a fetch that may predate the change.
+        generation++;
+        if (queryName == null) {
+            inFlight.clear();
+            results.clear();
+        } else {
+            inFlight.remove(queryName);
+            results.remove(queryName);
+        }
+    }
+
+    ///// PRIVATE METHODS /////
+
+    private void fly(String queryName, Loader loader, Flight flight, long startGeneration) {
+        try {
+            flight.result = loader.load();
+        } catch (IOException e) {
+            flight.ioException = e;
+        } catch (RuntimeException e) {
+            flight.runtimeException = e;
+        } catch (Error e) {
+            flight.error = e;
+        } finally {
+            synchronized (this) {
+                if (inFlight.get(queryName) == flight) {
+                    inFlight.remove(queryName);
+                }
+                if (resultTtlMillis > 0 && flight.result != null && startGeneration == generation) {
+                    long now = System.currentTimeMillis();
+                    purgeExpired(now);
+                    results.put(queryName, new CachedResult(flight.result, now + resultTtlMillis));
+                }
+            }
+            flight.done.countDown();
+        }
+    }
+
+    private void purgeExpired(long now) {
+        Iterator<CachedResult> iterator = results.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().expiresAt <= now) {
+                iterator.remove();
+            }
+        }
+    }
+}
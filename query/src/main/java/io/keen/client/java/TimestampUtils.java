@@ -0,0 +1,53 @@
+package io.keen.client.java;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Helpers for comparing the ISO-8601 timestamps used in timeframes.
+ */
+final class TimestampUtils {
+    private TimestampUtils() {}
+
+    /**
+     * Value returned by {@link #parse(String)} when a timestamp can't be understood.
+     */
+    static final long UNPARSEABLE = Long.MIN_VALUE;
+
+    // SimpleDateFormat isn't thread safe, so a new instance is created for each parse.
+    private static final String[] PATTERNS = {
+            "yyyy-MM-dd'T'HH:mm:ss.SSSXXX",
+            "yyyy-MM-dd'T'HH:mm:ssXXX",
+            "yyyy-MM-dd'T'HH:mm:ss.SSSZ",
+            "yyyy-MM-dd'T'HH:mm:ssZ"
+    };
+
+    /**
+     * Parses an ISO-8601 timestamp with an explicit offset, such as "2018-10-01T00:00:00.000Z".
+     *
+     * @param timestamp The timestamp to parse.
+     * @return Milliseconds since the epoch, or {@link #UNPARSEABLE}.
+     */
+    static long parse(String timestamp) {
+        if (null == timestamp) {
+            return UNPARSEABLE;
+        }
+
+        for (String pattern : PATTERNS) {
+            SimpleDateFormat format = new SimpleDateFormat(pattern, Locale.US);
+            format.setLenient(false);
+            try {
+                Date date = format.parse(timestamp);
+                return date.getTime();
+            } catch (ParseException e) {
+                // Try the next pattern.
+            } catch (IllegalArgumentException e) {
+                // Try the next pattern.
+            }
+        }
+
+        return UNPARSEABLE;
+    }
+}
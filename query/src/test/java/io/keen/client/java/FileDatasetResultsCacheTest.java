@@ -0,0 +1,179 @@
+package io.keen.client.java;
+
+import io.keen.client.java.http.HttpHandler;
+import io.keen.client.java.http.Request;
+import io.keen.client.java.http.Response;
+import io.keen.client.java.result.DoubleResult;
+import io.keen.client.java.result.Group;
+import io.keen.client.java.result.GroupByResult;
+import io.keen.client.java.result.IntervalResultValue;
+import io.keen.client.java.result.ListResult;
+import io.keen.client.java.result.LongResult;
+import io.keen.client.java.result.MultiAnalysisResult;
+import io.keen.client.java.result.QueryResult;
+import io.keen.client.java.result.StringResult;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the {@link FileDatasetResultsCache} and its use by {@link CachedDatasetsClient}.
+ */
+public class FileDatasetResultsCacheTest {
+
+    private static final String PROJECT_ID = "<project ID>";
+    private static final String INDEX_KEY = "{\"organization.id\":\"specific-org-id\"}";
+
+    private File root;
+    private FileDatasetResultsCache cache;
+
+    @Before
+    public void setUp() throws IOException {
+        root = File.createTempFile("keen-dataset-cache", "");
+        assertTrue(root.delete());
+        assertTrue(root.mkdir());
+        cache = new FileDatasetResultsCache(root);
+    }
+
+    @After
+    public void tearDown() {
+        TestUtils.deleteRecursively(root);
+    }
+
+    @Test
+    public void roundTripsAllResultTypes() throws IOException {
+        Map<String, Object> groupProperties = new LinkedHashMap<String, Object>();
+        groupProperties.put("user.uuid", "a4dfaea788e41eccef2cfff8d05a60bd");
+        groupProperties.put("user.age", 42);
+        groupProperties.put("user.visits", 5000000000L);
+        groupProperties.put("user.admin", true);
+        groupProperties.put("user.score", 1.5);
+        groupProperties.put("user.team", null);
+
+        Map<String, QueryResult> analyses = new LinkedHashMap<String, QueryResult>();
+        analyses.put("select unique", new ListResult(Arrays.<QueryResult>asList(new StringResult("user1@example.com"), new StringResult("user2@example.com"))));
+        analyses.put("total count", new LongResult(11L));
+        analyses.put("average", new DoubleResult(2.25));
+        analyses.put("missing", null);
+
+        Map<Group, QueryResult> groups = new HashMap<Group, QueryResult>();
+        groups.put(new Group(groupProperties), new MultiAnalysisResult(analyses));
+
+        List<IntervalResultValue> intervals = Arrays.asList(
+                interval("2018-10-01T00:00:00.000Z", "2018-11-01T00:00:00.000Z", new GroupByResult(groups)),
+                interval("2018-11-01T00:00:00.000Z", "2018-12-01T00:00:00.000Z", new LongResult(7L)));
+
+        cache.put(PROJECT_ID, "dataset", INDEX_KEY, intervals);
+
+        List<IntervalResultValue> cached = new FileDatasetResultsCache(root).get(PROJECT_ID, "dataset", INDEX_KEY);
+        assertEquals(intervals, cached);
+    }
+
+    @Test
+    public void mergesAndOrdersIntervals() throws IOException {
+        IntervalResultValue october = interval("2018-10-01T00:00:00.000Z", "2018-11-01T00:00:00.000Z", new LongResult(1L));
+        IntervalResultValue november = interval("2018-11-01T00:00:00.000Z", "2018-12-01T00:00:00.000Z", new LongResult(2L));
+        IntervalResultValue replacedNovember = interval("2018-11-01T00:00:00.000Z", "2018-12-01T00:00:00.000Z", new LongResult(3L));
+
+        cache.put(PROJECT_ID, "dataset", INDEX_KEY, Collections.singletonList(november));
+        cache.put(PROJECT_ID, "dataset", INDEX_KEY, Arrays.asList(replacedNovember, october));
+
+        assertEquals(Arrays.asList(october, replacedNovember), cache.get(PROJECT_ID, "dataset", INDEX_KEY));
+        assertTrue(cache.get(PROJECT_ID, "other-dataset", INDEX_KEY).isEmpty());
+        assertTrue(cache.get(PROJECT_ID, "dataset", "{}").isEmpty());
+    }
+
+    @Test
+    public void discardsCorruptFiles() throws IOException {
+        cache.put(PROJECT_ID, "dataset", INDEX_KEY, Collections.singletonList(
+                interval("2018-10-01T00:00:00.000Z", "2018-11-01T00:00:00.000Z", new LongResult(1L))));
+
+        File[] files = root.listFiles();
+        assertEquals(1, files.length);
+        FileOutputStream out = new FileOutputStream(files[0]);
+        out.write(new byte[] {1, 2, 3});
+        out.close();
+
+        assertTrue(cache.get(PROJECT_ID, "dataset", INDEX_KEY).isEmpty());
+        assertEquals(0, root.listFiles().length);
+    }
+
+    @Test
+    public void onlyFetchesMissingAndOpenIntervals() throws IOException {
+        RecordingHttpHandler httpHandler = new RecordingHttpHandler();
+        KeenQueryClient queryClient = new KeenQueryClient.Builder(new KeenProject(PROJECT_ID, "<write key>", "<read key>", "<master key>"))
+                .withJsonHandler(new TestJsonHandler())
+                .withHttpHandler(httpHandler)
+                .withDatasetResultsCache(cache)
+                .build();
+        CachedDatasets cachedDatasets = queryClient.getCachedDatasetsClient();
+
+        DatasetDefinition definition = DatasetDefinition.DatasetDefinitionBuilder
+                .aDatasetDefinition()
+                .withDatasetName("dataset")
+                .withIndexBy(Collections.singletonList("organization.id"))
+                .withQuery(DatasetQuery.DatasetQueryBuilder.aDatasetQuery().withAnalysisType("count").build())
+                .withLatestSubtimeframeAvailable("2018-12-01T00:00:00.000Z")
+                .build();
+        Map<String, Object> indexByValues = Collections.<String, Object>singletonMap("organization.id", "specific-org-id");
+        AbsoluteTimeframe timeframe = new AbsoluteTimeframe("2018-10-01T00:00:00.000Z", "2019-01-01T00:00:00.000Z");
+
+        httpHandler.responses.add(new Response(200, "{\"result\":[" +
+                intervalJson("2018-10-01T00:00:00.000Z", "2018-11-01T00:00:00.000Z", 1) + "," +
+                intervalJson("2018-11-01T00:00:00.000Z", "2018-12-01T00:00:00.000Z", 2) + "," +
+                intervalJson("2018-12-01T00:00:00.000Z", "2019-01-01T00:00:00.000Z", 3) + "]}"));
+        List<IntervalResultValue> first = cachedDatasets.getResults(definition, indexByValues, timeframe);
+
+        // December is still open, so only it should be requested again.
+        httpHandler.responses.add(new Response(200, "{\"result\":[" +
+                intervalJson("2018-12-01T00:00:00.000Z", "2019-01-01T00:00:00.000Z", 3) + "]}"));
+        List<IntervalResultValue> second = cachedDatasets.getResults(definition, indexByValues, timeframe);
+
+        assertEquals(first, second);
+        assertEquals(3, second.size());
+        assertEquals(2, httpHandler.urls.size());
+        assertTrue(httpHandler.urls.get(0).contains("\"start\":\"2018-10-01T00:00:00.000Z\""));
+        assertTrue(httpHandler.urls.get(1).contains("\"start\":\"2018-12-01T00:00:00.000Z\""));
+
+        // A timeframe made up only of closed intervals is served without a request.
+        List<IntervalResultValue> closed = cachedDatasets.getResults(definition, indexByValues,
+                new AbsoluteTimeframe("2018-10-01T00:00:00.000Z", "2018-12-01T00:00:00.000Z"));
+        assertEquals(first.subList(0, 2), closed);
+        assertEquals(2, httpHandler.urls.size());
+    }
+
+    private static IntervalResultValue interval(String start, String end, QueryResult result) {
+        return new IntervalResultValue(new AbsoluteTimeframe(start, end), result);
+    }
+
+    private static String intervalJson(String start, String end, long value) {
+        return "{\"timeframe\":{\"start\":\"" + start + "\",\"end\":\"" + end + "\"},\"value\":" + value + "}";
+    }
+
+    private static class RecordingHttpHandler implements HttpHandler {
+        final LinkedList<Response> responses = new LinkedList<Response>();
+        final List<String> urls = new ArrayList<String>();
+
+        @Override
+        public Response execute(Request request) throws IOException {
+            urls.add(URLDecoder.decode(request.url.toString(), "UTF-8"));
+            return responses.isEmpty() ? new Response(500, "Unexpected HTTP request") : responses.removeFirst();
+        }
+    }
+}
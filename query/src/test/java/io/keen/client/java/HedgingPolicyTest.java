@@ -0,0 +1,275 @@
+package io.keen.client.java;
+
+import io.keen.client.java.http.HttpHandler;
+import io.keen.client.java.http.HttpMethods;
+import io.keen.client.java.http.Request;
+import io.keen.client.java.http.Response;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests {@link HedgingPolicy}, {@link LatencyHistogram} and per-query deadlines.
+ */
+public class HedgingPolicyTest {
+
+    private static final HedgingPolicy.HedgeGate ALWAYS = new HedgingPolicy.HedgeGate() {
+        @Override
+        public boolean tryStartHedge() {
+            return true;
+        }
+
+        @Override
+        public void hedgeFinished() {
+        }
+
+        @Override
+        public void primaryFinished() {
+        }
+    };
+
+    @Test
+    public void histogramEstimatesPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram(1000);
+        assertEquals(-1, histogram.getPercentileMillis(50));
+
+        for (int i = 0; i < 95; i++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+        for (int i = 0; i < 5; i++) {
+            histogram.record(TimeUnit.SECONDS.toNanos(2));
+        }
+
+        long p50 = histogram.getPercentileMillis(50);
+        long p99 = histogram.getPercentileMillis(99);
+        assertTrue("p50 " + p50, p50 >= 10 && p50 <= 12);
+        assertTrue("p99 " + p99, p99 >= 2000 && p99 < 2400);
+    }
+
+    @Test
+    public void histogramFollowsRecentLatencies() {
+        LatencyHistogram histogram = new LatencyHistogram(10);
+        for (int i = 0; i < 20; i++) {
+            histogram.record(TimeUnit.SECONDS.toNanos(1));
+        }
+        for (int i = 0; i < 100; i++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(5));
+        }
+
+        assertTrue(histogram.getCount() <= 20);
+        assertTrue(histogram.getPercentileMillis(90) < 10);
+    }
+
+    @Test
+    public void queriesAreNotHedgedUntilThereAreEnoughSamples() throws Exception {
+        HedgingPolicy policy = new HedgingPolicy().withMinSamples(5).withMinDelay(20);
+        ScriptedHttpHandler handler = new ScriptedHttpHandler();
+
+        for (int i = 0; i < 4; i++) {
+            policy.execute(handler, newRequest(), Deadline.NONE, ALWAYS);
+        }
+        assertEquals(-1, policy.getHedgeDelayMillis());
+
+        policy.execute(handler, newRequest(), Deadline.NONE, ALWAYS);
+        assertEquals(20, policy.getHedgeDelayMillis());
+        assertEquals(0, policy.getHedgedCount());
+    }
+
+    @Test
+    public void slowQueryIsHedgedAndTheLoserCancelled() throws Exception {
+        HedgingPolicy policy = warmedUpPolicy();
+        ScriptedHttpHandler handler = new ScriptedHttpHandler(10000, 0);
+
+        long start = System.nanoTime();
+        Response response = policy.execute(handler, newRequest(), Deadline.NONE, ALWAYS);
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals("{\"result\": 2}", response.body);
+        assertTrue("elapsed " + elapsed, elapsed < 5000);
+        assertEquals(1, policy.getHedgedCount());
+        assertEquals(1, policy.getHedgeWinCount());
+        assertTrue(handler.interrupted.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void failedAttemptWaitsForTheOther() throws Exception {
+        HedgingPolicy policy = warmedUpPolicy();
+        ScriptedHttpHandler handler = new ScriptedHttpHandler(200, -1);
+
+        Response response = policy.execute(handler, newRequest(), Deadline.NONE, ALWAYS);
+
+        assertEquals("{\"result\": 1}", response.body);
+        assertEquals(0, policy.getHedgeWinCount());
+    }
+
+    @Test
+    public void hedgeIsSkippedWhenTheGateSaysNo() throws Exception {
+        HedgingPolicy policy = warmedUpPolicy();
+        ScriptedHttpHandler handler = new ScriptedHttpHandler(200);
+        HedgingPolicy.HedgeGate never = new HedgingPolicy.HedgeGate() {
+            @Override
+            public boolean tryStartHedge() {
+                return false;
+            }
+
+            @Override
+            public void hedgeFinished() {
+                fail("No hedge was started");
+            }
+
+            @Override
+            public void primaryFinished() {
+            }
+        };
+
+        policy.execute(handler, newRequest(), Deadline.NONE, never);
+        assertEquals(1, handler.calls.get());
+        assertEquals(0, policy.getHedgedCount());
+    }
+
+    @Test
+    public void loserHoldsItsPermitUntilItsRequestCompletes() throws Exception {
+        HedgingPolicy policy = warmedUpPolicy();
+        // Like HttpURLConnection, the first attempt ignores the interrupt and completes late.
+        final CountDownLatch primaryDone = new CountDownLatch(1);
+        final CountDownLatch hedgeDone = new CountDownLatch(1);
+        HttpHandler handler = new HttpHandler() {
+            private final AtomicInteger calls = new AtomicInteger();
+
+            @Override
+            public Response execute(Request request) throws IOException {
+                if (calls.incrementAndGet() == 1) {
+                    long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(1000);
+                    while (System.nanoTime() < end) {
+                        try {
+                            Thread.sleep(10);
+                        } catch (InterruptedException e) {
+                            // Ignored, as a blocking socket read would.
+                        }
+                    }
+                }
+                return new Response(200, "{\"result\": 1}");
+            }
+        };
+        HedgingPolicy.HedgeGate gate = new HedgingPolicy.HedgeGate() {
+            @Override
+            public boolean tryStartHedge() {
+                return true;
+            }
+
+            @Override
+            public void hedgeFinished() {
+                hedgeDone.countDown();
+            }
+
+            @Override
+            public void primaryFinished() {
+                primaryDone.countDown();
+            }
+        };
+
+        policy.execute(handler, newRequest(), Deadline.NONE, gate);
+        assertEquals(1, policy.getHedgeWinCount());
+        assertEquals(0, hedgeDone.getCount());
+        assertEquals(1, primaryDone.getCount());
+
+        assertTrue(primaryDone.await(5, TimeUnit.SECONDS));
+        // The loser's late response isn't recorded as a slow query.
+        assertTrue(policy.getLatencyPercentileMillis(100) < 500);
+    }
+
+    @Test
+    public void hedgedQueryFailsAtTheDeadline() throws Exception {
+        HedgingPolicy policy = warmedUpPolicy();
+        ScriptedHttpHandler handler = new ScriptedHttpHandler(10000, 10000);
+
+        long start = System.nanoTime();
+        try {
+            policy.execute(handler, newRequest(), Deadline.after(200), ALWAYS);
+            fail("Expected the deadline to pass");
+        } catch (SocketTimeoutException e) {
+            // Expected.
+        }
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 5000);
+    }
+
+    @Test
+    public void deadlineLimitsRequestTimeouts() throws Exception {
+        ScriptedHttpHandler handler = new ScriptedHttpHandler();
+        KeenQueryClient client = new KeenQueryClient.Builder(
+                new KeenProject("<project ID>", "<write key>", "<read key>"))
+                .withJsonHandler(new TestJsonHandler())
+                .withHttpHandler(handler)
+                .build();
+        Query query = new Query.Builder(QueryType.COUNT)
+                .withEventCollection("clicks")
+                .withTimeframe(new RelativeTimeframe("this_7_days"))
+                .build();
+
+        client.execute(query);
+        assertEquals(30000, handler.requests.get(0).readTimeout);
+
+        client.execute(query, 500);
+        Request request = handler.requests.get(1);
+        assertTrue(request.connectTimeout > 0 && request.connectTimeout <= 500);
+        assertTrue(request.readTimeout > 0 && request.readTimeout <= 500);
+    }
+
+    private static HedgingPolicy warmedUpPolicy() throws IOException {
+        HedgingPolicy policy = new HedgingPolicy().withMinSamples(5).withMinDelay(50);
+        ScriptedHttpHandler handler = new ScriptedHttpHandler();
+        for (int i = 0; i < 5; i++) {
+            policy.execute(handler, newRequest(), Deadline.NONE, ALWAYS);
+        }
+        return policy;
+    }
+
+    private static Request newRequest() throws IOException {
+        return new Request(new URL("https://api.keen.io/3.0/projects/p/queries/count"),
+                HttpMethods.POST, "<read key>", null, null, 30000, 30000);
+    }
+
+    /**
+     * Responds to each call after a scripted delay, or fails if the delay is negative. Calls
+     * beyond the script respond at once. The response names the call it answers.
+     */
+    private static class ScriptedHttpHandler implements HttpHandler {
+        final long[] delays;
+        final AtomicInteger calls = new AtomicInteger();
+        final List<Request> requests = Collections.synchronizedList(new ArrayList<Request>());
+        final CountDownLatch interrupted = new CountDownLatch(1);
+
+        ScriptedHttpHandler(long... delays) {
+            this.delays = delays;
+        }
+
+        @Override
+        public Response execute(Request request) throws IOException {
+            requests.add(request);
+            int call = calls.incrementAndGet();
+            long delay = (call <= delays.length ? delays[call - 1] : 0);
+            if (delay < 0) {
+                throw new IOException("Attempt " + call + " failed");
+            }
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                throw new IOException("Attempt " + call + " cancelled");
+            }
+            return new Response(200, "{\"result\": " + call + "}");
+        }
+    }
+}
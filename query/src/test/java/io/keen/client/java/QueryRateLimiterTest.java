@@ -0,0 +1,197 @@
+package io.keen.client.java;
+
+import io.keen.client.java.exceptions.RateLimitExceededException;
+import io.keen.client.java.exceptions.ServerException;
+import io.keen.client.java.http.HttpHandler;
+import io.keen.client.java.http.Request;
+import io.keen.client.java.http.Response;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests {@link QueryRateLimiter}, and a {@link KeenQueryClient} sending queries through one.
+ */
+public class QueryRateLimiterTest {
+
+    private static final String PROJECT_ID = "<project ID>";
+
+    @Test
+    public void failFastRejectsWhenBucketIsEmpty() throws Exception {
+        QueryRateLimiter limiter = new QueryRateLimiter().withRate(1, 2).withFailFast(true);
+
+        limiter.acquire(PROJECT_ID, "count");
+        limiter.acquire(PROJECT_ID, "count");
+        assertRejected(limiter, PROJECT_ID, "count");
+
+        // Other projects have their own bucket.
+        limiter.acquire("other project", "count");
+        assertEquals(3, limiter.getAcquiredCount());
+        assertEquals(1, limiter.getRejectedCount());
+    }
+
+    @Test
+    public void concurrencyIsLimited() throws Exception {
+        QueryRateLimiter limiter = new QueryRateLimiter().withMaxConcurrency(1).withFailFast(true);
+
+        QueryRateLimiter.Permit permit = limiter.acquire(PROJECT_ID, "count");
+        assertRejected(limiter, PROJECT_ID, "sum");
+
+        // Releasing twice doesn't free a second slot.
+        limiter.release(permit);
+        limiter.release(permit);
+        limiter.acquire(PROJECT_ID, "sum");
+        assertRejected(limiter, PROJECT_ID, "count");
+    }
+
+    @Test
+    public void analysisTypeLimitDoesNotBlockOtherTypes() throws Exception {
+        QueryRateLimiter limiter = new QueryRateLimiter()
+                .withAnalysisTypeMaxConcurrency("funnel", 1)
+                .withFailFast(true);
+
+        limiter.acquire(PROJECT_ID, "funnel");
+        limiter.acquire(PROJECT_ID, "count");
+        limiter.acquire(PROJECT_ID, "count");
+        assertRejected(limiter, PROJECT_ID, "funnel");
+    }
+
+    @Test
+    public void queriesAreSpacedAtTheRate() throws Exception {
+        QueryRateLimiter limiter = new QueryRateLimiter().withRate(20, 1);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 6; i++) {
+            limiter.release(limiter.acquire(PROJECT_ID, "count"));
+        }
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // The first query goes at once and each of the other five waits 50ms for a token.
+        assertTrue("elapsed " + elapsed, elapsed >= 240 && elapsed < 2000);
+        assertTrue(limiter.getTotalWaitMillis() >= 240);
+        assertTrue(limiter.getMaxWaitMillis() >= 40);
+    }
+
+    @Test
+    public void waitersAreGrantedInArrivalOrder() throws Exception {
+        final QueryRateLimiter limiter = new QueryRateLimiter().withMaxConcurrency(1);
+        final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+
+        QueryRateLimiter.Permit held = limiter.acquire(PROJECT_ID, "count");
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 4; i++) {
+            final int id = i;
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        QueryRateLimiter.Permit permit =
+                                limiter.acquire(PROJECT_ID, (id % 2 == 0 ? "count" : "sum"));
+                        order.add(id);
+                        limiter.release(permit);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+            waitForWaiting(limiter, i + 1);
+        }
+
+        limiter.release(held);
+        for (Thread thread : threads) {
+            thread.join(5000);
+        }
+        assertEquals(Arrays.asList(0, 1, 2, 3), order);
+    }
+
+    @Test
+    public void waitIsBounded() throws Exception {
+        QueryRateLimiter limiter = new QueryRateLimiter().withMaxConcurrency(1).withMaxWait(50);
+
+        limiter.acquire(PROJECT_ID, "count");
+        try {
+            limiter.acquire(PROJECT_ID, "count");
+            fail("Expected the wait to time out");
+        } catch (RateLimitExceededException e) {
+            assertTrue(e.getWaitedMillis() >= 40);
+        }
+        assertEquals(0, limiter.getWaitingCount());
+    }
+
+    @Test
+    public void tooManyRequestsPausesTheProject() throws Exception {
+        Map<String, List<String>> headers = new HashMap<String, List<String>>();
+        headers.put("Retry-After", Collections.singletonList("60"));
+        CountingHttpHandler httpHandler = new CountingHttpHandler(
+                new Response(429, "{\"message\": \"Too many requests\"}", headers));
+        QueryRateLimiter limiter = new QueryRateLimiter().withRate(100, 10).withFailFast(true);
+        KeenQueryClient client = new KeenQueryClient.Builder(
+                new KeenProject(PROJECT_ID, "<write key>", "<read key>"))
+                .withJsonHandler(new TestJsonHandler())
+                .withHttpHandler(httpHandler)
+                .withRateLimiter(limiter)
+                .build();
+
+        try {
+            client.count("clicks", new RelativeTimeframe("this_7_days"));
+            fail("Expected a server error");
+        } catch (ServerException e) {
+            assertEquals(429, e.getStatusCode());
+        }
+
+        try {
+            client.count("clicks", new RelativeTimeframe("this_7_days"));
+            fail("Expected the query to be held back");
+        } catch (RateLimitExceededException e) {
+            // Expected.
+        }
+        assertEquals(1, httpHandler.requests);
+    }
+
+    private static void assertRejected(QueryRateLimiter limiter, String projectId,
+                                       String analysisType) throws InterruptedException {
+        try {
+            limiter.acquire(projectId, analysisType);
+            fail("Expected no permit to be available");
+        } catch (RateLimitExceededException e) {
+            // Expected.
+        }
+    }
+
+    private static void waitForWaiting(QueryRateLimiter limiter, int count)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (limiter.getWaitingCount() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(count, limiter.getWaitingCount());
+    }
+
+    private static class CountingHttpHandler implements HttpHandler {
+        final Response response;
+        int requests;
+
+        CountingHttpHandler(Response response) {
+            this.response = response;
+        }
+
+        @Override
+        public Response execute(Request request) throws IOException {
+            requests++;
+            return response;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package io.keen.client.java;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.keen.client.java.http.HttpHandler;
+import io.keen.client.java.http.Request;
+import io.keen.client.java.http.Response;
+import io.keen.client.java.result.QueryResult;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests that executing a bound {@link QueryTemplate} sends the same request as the equivalent
+ * {@link Query}.
+ */
+public class QueryTemplateTest {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private RecordingHttpHandler httpHandler;
+    private KeenQueryClient queryClient;
+
+    @Before
+    public void setUp() {
+        httpHandler = new RecordingHttpHandler();
+        queryClient = new KeenQueryClient.Builder(new KeenProject("<project ID>", "<write key>", "<read key>", "<master key>"))
+                .withJsonHandler(new TestJsonHandler())
+                .withHttpHandler(httpHandler)
+                .build();
+    }
+
+    @Test
+    public void boundTemplateMatchesEquivalentQuery() throws IOException {
+        QueryTemplate template = queryClient.prepare(new Query.Builder(QueryType.COUNT)
+                .withEventCollection("purchases")
+                .withFilter("customer.id", FilterOperator.EQUAL_TO, QueryTemplate.parameter("customer"))
+                .withFilter("price", FilterOperator.GREATER_THAN, 10)
+                .withGroupBy("item.name")
+                .withTimezone("US/Pacific")
+                .build());
+
+        QueryResult templateResult = template.bind(new RelativeTimeframe("this_7_days"))
+                .set("customer", "ab\"c\n123")
+                .execute();
+
+        QueryResult queryResult = queryClient.execute(new Query.Builder(QueryType.COUNT)
+                .withEventCollection("purchases")
+                .withFilter("customer.id", FilterOperator.EQUAL_TO, "ab\"c\n123")
+                .withFilter("price", FilterOperator.GREATER_THAN, 10)
+                .withGroupBy("item.name")
+                .withTimezone("US/Pacific")
+                .withTimeframe(new RelativeTimeframe("this_7_days"))
+                .build());
+
+        assertEquals(queryResult, templateResult);
+        assertEquals(2, httpHandler.bodies.size());
+        assertEquals(httpHandler.bodies.get(1), httpHandler.bodies.get(0));
+        assertEquals(httpHandler.urls.get(1), httpHandler.urls.get(0));
+    }
+
+    @Test
+    public void timeframeCanBeReboundOrDefaulted() throws IOException {
+        QueryTemplate template = queryClient.prepare(new Query.Builder(QueryType.SUM)
+                .withEventCollection("purchases")
+                .withTargetProperty("price")
+                .withFilter("store.id", FilterOperator.IN, QueryTemplate.parameter("stores"))
+                .withTimeframe(new RelativeTimeframe("this_1_days"))
+                .build());
+
+        template.bind(new AbsoluteTimeframe("2018-10-01T00:00:00.000Z", "2018-11-01T00:00:00.000Z"))
+                .set("stores", Arrays.asList(1, 2, 3))
+                .execute();
+        template.bind(null)
+                .set("stores", Arrays.asList("a", "b"))
+                .execute();
+
+        JsonNode absolute = httpHandler.bodies.get(0);
+        assertEquals("2018-10-01T00:00:00.000Z", absolute.get("timeframe").get("start").asText());
+        assertEquals("[1,2,3]", absolute.get("filters").get(0).get("property_value").toString());
+        assertEquals("price", absolute.get("target_property").asText());
+
+        JsonNode defaulted = httpHandler.bodies.get(1);
+        assertEquals("this_1_days", defaulted.get("timeframe").asText());
+        assertEquals("[\"a\",\"b\"]", defaulted.get("filters").get(0).get("property_value").toString());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void unboundParametersAreRejected() throws IOException {
+        QueryTemplate template = queryClient.prepare(new Query.Builder(QueryType.COUNT)
+                .withEventCollection("purchases")
+                .withFilter("customer.id", FilterOperator.EQUAL_TO, QueryTemplate.parameter("customer"))
+                .build());
+
+        template.bind(new RelativeTimeframe("this_7_days")).execute();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownParametersAreRejected() throws IOException {
+        QueryTemplate template = queryClient.prepare(new Query.Builder(QueryType.COUNT)
+                .withEventCollection("purchases")
+                .build());
+
+        template.bind(new RelativeTimeframe("this_7_days")).set("customer", "abc");
+    }
+
+    private static class RecordingHttpHandler implements HttpHandler {
+        final List<JsonNode> bodies = new ArrayList<JsonNode>();
+        final List<String> urls = new ArrayList<String>();
+
+        @Override
+        public Response execute(Request request) throws IOException {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            request.body.writeTo(body);
+            bodies.add(OBJECT_MAPPER.readTree(body.toString("UTF-8")));
+            urls.add(request.url.toString());
+            return new Response(200, "{\"result\": 42}");
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package io.keen.client.java;
+
+import io.keen.client.java.result.LongResult;
+import io.keen.client.java.result.QueryResult;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the request coalescing and result caching in {@link SavedQueryCache}.
+ */
+public class SavedQueryCacheTest {
+
+    private static final int NUM_CALLERS = 16;
+
+    @Test
+    public void concurrentCallersShareOneLoad() throws Exception {
+        final SavedQueryCache cache = new SavedQueryCache(0);
+        final CountDownLatch release = new CountDownLatch(1);
+        final BlockingLoader loader = new BlockingLoader(release);
+
+        List<Future<QueryResult>> futures = startCallers(cache, loader, NUM_CALLERS);
+
+        // Give every caller a chance to join the in-flight load before letting it finish.
+        assertTrue(loader.started.await(5, TimeUnit.SECONDS));
+        Thread.sleep(200);
+        release.countDown();
+
+        QueryResult first = futures.get(0).get(5, TimeUnit.SECONDS);
+        for (Future<QueryResult> future : futures) {
+            assertSame(first, future.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, loader.loads.get());
+
+        // With no TTL the next call loads again.
+        cache.getResult("query", loader);
+        assertEquals(2, loader.loads.get());
+    }
+
+    @Test
+    public void failuresAreSharedAndNotCached() throws Exception {
+        SavedQueryCache cache = new SavedQueryCache(60000);
+        final AtomicInteger loads = new AtomicInteger();
+        SavedQueryCache.Loader failing = new SavedQueryCache.Loader() {
+            @Override
+            public QueryResult load() throws IOException {
+                loads.incrementAndGet();
+                throw new IOException("boom");
+            }
+        };
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                cache.getResult("query", failing);
+                fail("Expected an IOException");
+            } catch (IOException e) {
+                assertEquals("boom", e.getMessage());
+            }
+        }
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void resultsAreReusedUntilInvalidated() throws Exception {
+        SavedQueryCache cache = new SavedQueryCache(60000);
+        CountDownLatch released = new CountDownLatch(0);
+        BlockingLoader loader = new BlockingLoader(released);
+
+        QueryResult first = cache.getResult("query", loader);
+        assertSame(first, cache.getResult("query", loader));
+        assertEquals(1, loader.loads.get());
+
+        cache.getResult("other-query", loader);
+        assertEquals(2, loader.loads.get());
+
+        cache.invalidate("query");
+        cache.getResult("query", loader);
+        assertEquals(3, loader.loads.get());
+        cache.getResult("other-query", loader);
+        assertEquals(3, loader.loads.get());
+    }
+
+    @Test
+    public void resultsExpire() throws Exception {
+        SavedQueryCache cache = new SavedQueryCache(50);
+        BlockingLoader loader = new BlockingLoader(new CountDownLatch(0));
+
+        cache.getResult("query", loader);
+        cache.getResult("query", loader);
+        assertEquals(1, loader.loads.get());
+
+        Thread.sleep(100);
+        cache.getResult("query", loader);
+        assertEquals(2, loader.loads.get());
+    }
+
+    private static List<Future<QueryResult>> startCallers(final SavedQueryCache cache,
+                                                         final SavedQueryCache.Loader loader,
+                                                         int count) {
+        ExecutorService executor = Executors.newFixedThreadPool(count);
+        List<Future<QueryResult>> futures = new ArrayList<Future<QueryResult>>();
+        for (int i = 0; i < count; i++) {
+            futures.add(executor.submit(new Callable<QueryResult>() {
+                @Override
+                public QueryResult call() throws Exception {
+                    return cache.getResult("query", loader);
+                }
+            }));
+        }
+        executor.shutdown();
+        return futures;
+    }
+
+    private static class BlockingLoader implements SavedQueryCache.Loader {
+        final CountDownLatch started = new CountDownLatch(1);
+        final AtomicInteger loads = new AtomicInteger();
+        private final CountDownLatch release;
+
+        BlockingLoader(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public QueryResult load() throws IOException {
+            int load = loads.incrementAndGet();
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            return new LongResult(load);
+        }
+    }
+}